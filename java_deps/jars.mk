@@ -38,3 +38,10 @@ HAMCREST_JAR = hamcrest-core-1.1.jar
 
 MOCKITO_JAR = mockito-core-1.9.5.jar
 MOCKITO_SOURCE_JAR = mockito-core-1.9.5-sources.jar
+
+# Only used to build and run the translator benchmarks.
+JMH_JARS = \
+    jmh-core-1.12.jar \
+    jmh-generator-annprocess-1.12.jar \
+    jopt-simple-4.6.jar \
+    commons-math3-3.2.jar
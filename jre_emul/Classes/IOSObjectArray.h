@@ -76,4 +76,15 @@ FOUNDATION_EXPORT id IOSObjectArray_Set(IOSObjectArray *array, NSUInteger index,
 
 @end
 
+// Variants of IOSObjectArray_Get and IOSObjectArray_Set that skip the index
+// check. The translator only emits these for accesses it has proven to be in
+// range. IOSObjectArray_SetUnchecked still checks the value's type.
+__attribute__ ((unused))
+static inline id IOSObjectArray_GetUnchecked(
+    __unsafe_unretained IOSObjectArray *array, NSUInteger index) {
+  return array->buffer_[index];
+}
+FOUNDATION_EXPORT id IOSObjectArray_SetUnchecked(
+    IOSObjectArray *array, NSUInteger index, id value);
+
 #endif // _IOSObjectArray_H_
@@ -142,6 +142,15 @@ id IOSObjectArray_Set(
   return array->buffer_[index] = RETAIN_(value);
 }
 
+id IOSObjectArray_SetUnchecked(
+    __unsafe_unretained IOSObjectArray *array, NSUInteger index, __unsafe_unretained id value) {
+  IOSObjectArray_checkValue(array, value);
+#if ! __has_feature(objc_arc)
+  [array->buffer_[index] autorelease];
+#endif
+  return array->buffer_[index] = RETAIN_(value);
+}
+
 - (id)replaceObjectAtIndex:(NSUInteger)index withObject:(id)value {
   IOSArray_checkIndex(size_, index);
   IOSObjectArray_checkValue(self, value);
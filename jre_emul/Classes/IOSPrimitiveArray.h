@@ -69,6 +69,31 @@ FOUNDATION_EXPORT C_TYPE *IOS##U_NAME##Array_GetRef(IOS##U_NAME##Array *array, N
 - (C_TYPE)replace##U_NAME##AtIndex:(NSUInteger)index with##U_NAME:(C_TYPE)value; \
 - (void)get##U_NAME##s:(C_TYPE *)buffer length:(NSUInteger)length; \
 
+/*!
+ * Defines inline accessors that skip the index check. The translator only
+ * emits these for accesses it has proven to be in range, such as a[i] in
+ * "for (int i = 0; i < a.length; i++)" where neither a nor i is reassigned.
+ * For IOSIntArray this would define:
+ *
+ *  int IOSIntArray_GetUnchecked(IOSIntArray *array, NSUInteger index);
+ *  int *IOSIntArray_GetRefUnchecked(IOSIntArray *array, NSUInteger index);
+ *
+ * @define PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS
+ * @param U_NAME Uppercase name of the primitive type. (e.g. "Char")
+ * @param C_TYPE Objective-C type for the primitive type, (e.g. "unichar")
+ */
+#define PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(U_NAME, C_TYPE) \
+__attribute__ ((unused)) \
+static inline C_TYPE IOS##U_NAME##Array_GetUnchecked( \
+    __unsafe_unretained IOS##U_NAME##Array *array, NSUInteger index) { \
+  return array->buffer_[index]; \
+} \
+__attribute__ ((unused)) \
+static inline C_TYPE *IOS##U_NAME##Array_GetRefUnchecked( \
+    __unsafe_unretained IOS##U_NAME##Array *array, NSUInteger index) { \
+  return &array->buffer_[index]; \
+}
+
 
 // ********** IOSBooleanArray **********
 
@@ -81,6 +106,8 @@ PRIMITIVE_ARRAY_INTERFACE(boolean, Boolean, BOOL)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Boolean, BOOL)
+
 
 // ********** IOSCharArray **********
 
@@ -99,6 +126,8 @@ PRIMITIVE_ARRAY_INTERFACE(char, Char, unichar)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Char, unichar)
+
 
 // ********** IOSByteArray **********
 
@@ -127,6 +156,8 @@ PRIMITIVE_ARRAY_INTERFACE(byte, Byte, char)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Byte, char)
+
 
 // ********** IOSShortArray **********
 
@@ -139,6 +170,8 @@ PRIMITIVE_ARRAY_INTERFACE(short, Short, short)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Short, short)
+
 
 // ********** IOSIntArray **********
 
@@ -151,6 +184,8 @@ PRIMITIVE_ARRAY_INTERFACE(int, Int, int)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Int, int)
+
 
 // ********** IOSLongArray **********
 
@@ -163,6 +198,8 @@ PRIMITIVE_ARRAY_INTERFACE(long, Long, long long)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Long, long long)
+
 
 // ********** IOSFloatArray **********
 
@@ -175,6 +212,8 @@ PRIMITIVE_ARRAY_INTERFACE(float, Float, float)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Float, float)
+
 
 // ********** IOSDoubleArray **********
 
@@ -187,4 +226,6 @@ PRIMITIVE_ARRAY_INTERFACE(double, Double, double)
 
 @end
 
+PRIMITIVE_ARRAY_UNCHECKED_ACCESSORS(Double, double)
+
 #endif // _IOSPrimitiveArray_H_
@@ -137,6 +137,46 @@ typedef struct J2ObjcClassInfo {
   const J2ObjCAttribute *attributes;
 } J2ObjcClassInfo;
 
+// Compact metadata, generated with --compact-metadata. Strings are offsets
+// into a character array shared by the types of a source file, where offset
+// 0 is NULL. The metadata is expanded on its first use.
+
+typedef struct J2ObjcCompactMethodInfo {
+  uint32_t selector;
+  uint32_t javaName;
+  uint32_t returnType;
+  uint16_t modifiers;
+  uint32_t exceptions;
+} J2ObjcCompactMethodInfo;
+
+typedef struct J2ObjcCompactFieldInfo {
+  uint32_t name;
+  uint32_t javaName;
+  uint16_t modifiers;
+  uint32_t type;
+  const void *staticRef;
+  J2ObjcRawValue constantValue;
+} J2ObjcCompactFieldInfo;
+
+typedef struct J2ObjcCompactClassInfo {
+  const char *strings;
+  uint32_t typeName;
+  uint32_t packageName;
+  uint32_t enclosingName;
+  uint16_t modifiers;
+  uint16_t methodCount;
+  const J2ObjcCompactMethodInfo *methods;
+  uint16_t fieldCount;
+  const J2ObjcCompactFieldInfo *fields;
+  uint16_t superclassTypeArgsCount;
+  const uint32_t *superclassTypeArgs;
+} J2ObjcCompactClassInfo;
+
+// Returns the expanded metadata of a compact class info, which is stored in
+// *info the first time. Safe to call from multiple threads.
+extern J2ObjcClassInfo *JreExpandClassInfo(
+    const J2ObjcCompactClassInfo *compact, J2ObjcClassInfo **info);
+
 // Autoboxing support.
 
 extern id<JavaLangReflectType> JreTypeForString(const char *typeStr);
@@ -89,3 +89,67 @@ NSMethodSignature *JreSignatureOrNull(struct objc_method_description *methodDesc
     return nil;
   }
 }
+
+static inline const char *CompactString(const J2ObjcCompactClassInfo *compact, uint32_t offset) {
+  return offset ? compact->strings + offset : NULL;
+}
+
+J2ObjcClassInfo *JreExpandClassInfo(
+    const J2ObjcCompactClassInfo *compact, J2ObjcClassInfo **info) {
+  J2ObjcClassInfo *result = *info;
+  if (result) {
+    return result;
+  }
+  result = calloc(1, sizeof(J2ObjcClassInfo));
+  result->typeName = CompactString(compact, compact->typeName);
+  result->packageName = CompactString(compact, compact->packageName);
+  result->enclosingName = CompactString(compact, compact->enclosingName);
+  result->modifiers = compact->modifiers;
+
+  result->methodCount = compact->methodCount;
+  if (compact->methodCount > 0) {
+    J2ObjcMethodInfo *methods = calloc(compact->methodCount, sizeof(J2ObjcMethodInfo));
+    for (uint16_t i = 0; i < compact->methodCount; i++) {
+      const J2ObjcCompactMethodInfo *method = &compact->methods[i];
+      methods[i].selector = CompactString(compact, method->selector);
+      methods[i].javaName = CompactString(compact, method->javaName);
+      methods[i].returnType = CompactString(compact, method->returnType);
+      methods[i].modifiers = method->modifiers;
+      methods[i].exceptions = CompactString(compact, method->exceptions);
+    }
+    result->methods = methods;
+  }
+
+  result->fieldCount = compact->fieldCount;
+  if (compact->fieldCount > 0) {
+    J2ObjcFieldInfo *fields = calloc(compact->fieldCount, sizeof(J2ObjcFieldInfo));
+    for (uint16_t i = 0; i < compact->fieldCount; i++) {
+      const J2ObjcCompactFieldInfo *field = &compact->fields[i];
+      fields[i].name = CompactString(compact, field->name);
+      fields[i].javaName = CompactString(compact, field->javaName);
+      fields[i].modifiers = field->modifiers;
+      fields[i].type = CompactString(compact, field->type);
+      fields[i].staticRef = field->staticRef;
+      fields[i].constantValue = field->constantValue;
+    }
+    result->fields = fields;
+  }
+
+  result->superclassTypeArgsCount = compact->superclassTypeArgsCount;
+  if (compact->superclassTypeArgsCount > 0) {
+    const char **typeArgs = calloc(compact->superclassTypeArgsCount, sizeof(char *));
+    for (uint16_t i = 0; i < compact->superclassTypeArgsCount; i++) {
+      typeArgs[i] = CompactString(compact, compact->superclassTypeArgs[i]);
+    }
+    result->superclassTypeArgs = typeArgs;
+  }
+
+  // Another thread may have expanded the same metadata.
+  if (!__sync_bool_compare_and_swap(info, NULL, result)) {
+    free((void *) result->methods);
+    free((void *) result->fields);
+    free((void *) result->superclassTypeArgs);
+    free(result);
+  }
+  return *info;
+}
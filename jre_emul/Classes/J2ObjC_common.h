@@ -101,6 +101,27 @@
   - (oneway void)release {} \
   - (id)autorelease { return self; }
 
+/*!
+ * An inline monitor, used instead of @synchronized by code translated with
+ * --inline-monitors. Translated classes that directly extend
+ * java.lang.Object hold a pointer to their monitor in a __monitor instance
+ * variable, which is allocated the first time the object is locked.
+ */
+typedef struct JreMonitor JreMonitor;
+
+/*!
+ * Acquires the inline monitor of an object, allocating it if necessary.
+ *
+ * @param obj The object that holds the monitor.
+ * @param monitor The object's __monitor instance variable.
+ */
+FOUNDATION_EXPORT void JreMonitorEnter(id obj, JreMonitor **monitor);
+
+/*!
+ * Releases an inline monitor acquired by JreMonitorEnter.
+ */
+FOUNDATION_EXPORT void JreMonitorExit(JreMonitor *monitor);
+
 /*!
  * Returns correct result when casting a double to an integral type. In C, a
  * float >= Integer.MAX_VALUE (allowing for rounding) returns 0x80000000,
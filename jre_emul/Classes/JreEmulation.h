@@ -144,6 +144,12 @@ static inline id JreOperatorRetainedAssign(id *pIvar, id self, id value) {
 FOUNDATION_EXPORT
     IOSObjectArray *JreEmulationMainArguments(int argc, const char *argv[]);
 
+// Concatenates the arguments into a new string, as the Java string "+"
+// operator does. Each character of types describes one argument: '$' is an
+// NSString and '@' any other object (both are "null" if nil), and 'B', 'C',
+// 'D', 'F', 'I', 'J', 'S' and 'Z' are the Java primitive types.
+FOUNDATION_EXPORT NSString *JreStrcat(const char *types, ...);
+
 #if __has_feature(objc_arc)
 #define J2OBJC_FIELD_SETTER(CLASS, FIELD, TYPE) \
   static inline TYPE CLASS##_set_##FIELD(CLASS *instance, TYPE value) { \
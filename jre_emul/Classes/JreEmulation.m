@@ -21,6 +21,7 @@
 
 #import "JreEmulation.h"
 #import "IOSClass.h"
+#import "java/lang/AssertionError.h"
 #import "java/lang/NullPointerException.h"
 
 void JreThrowNullPointerException() {
@@ -59,3 +60,69 @@ FOUNDATION_EXPORT
   }
   return args;
 }
+
+// Appends the decimal digits of value to result.
+static void JreStrcatAppendLong(NSMutableString *result, long long value) {
+  char buf[24];
+  char *p = buf + sizeof(buf);
+  *--p = '\0';
+  unsigned long long n = value < 0 ? -(unsigned long long) value : (unsigned long long) value;
+  do {
+    *--p = '0' + (n % 10);
+    n /= 10;
+  } while (n);
+  if (value < 0) {
+    *--p = '-';
+  }
+  CFStringAppendCString((ARCBRIDGE CFMutableStringRef) result, p, kCFStringEncodingASCII);
+}
+
+NSString *JreStrcat(const char *types, ...) {
+  va_list args;
+  va_start(args, types);
+  NSMutableString *result = [NSMutableString string];
+  for (const char *type = types; *type; type++) {
+    switch (*type) {
+      case '$': {
+        NSString *s = va_arg(args, NSString *);
+        [result appendString:s ? s : @"null"];
+        break;
+      }
+      case '@': {
+        id obj = va_arg(args, id);
+        [result appendString:obj ? [obj description] : @"null"];
+        break;
+      }
+      case 'C': {
+        unichar c = (unichar) va_arg(args, int);
+        CFStringAppendCharacters((ARCBRIDGE CFMutableStringRef) result, &c, 1);
+        break;
+      }
+      case 'Z':
+        [result appendString:va_arg(args, int) ? @"true" : @"false"];
+        break;
+      case 'B':
+      case 'I':
+      case 'S':
+        // Smaller integer types are promoted to int when passed.
+        JreStrcatAppendLong(result, va_arg(args, int));
+        break;
+      case 'J':
+        JreStrcatAppendLong(result, va_arg(args, long long));
+        break;
+      case 'F':
+        // Floats are promoted to double when passed.
+        [result appendString:[NSString valueOfFloat:(float) va_arg(args, double)]];
+        break;
+      case 'D':
+        [result appendString:[NSString valueOfDouble:va_arg(args, double)]];
+        break;
+      default:
+        va_end(args);
+        @throw AUTORELEASE([[JavaLangAssertionError alloc]
+            initWithNSString:[NSString stringWithFormat:@"invalid JreStrcat type: %c", *type]]);
+    }
+  }
+  va_end(args);
+  return result;
+}
@@ -25,6 +25,7 @@
 #define __OBJC_SNYC_H_
 
 #include <objc/objc.h>
+#include "J2ObjC_common.h"
 
 // Begin synchronizing on 'obj'.  
 // Allocates recursive pthread_mutex associated with 'obj' if needed.
@@ -54,6 +55,14 @@ enum {
 	OBJC_SYNC_NOT_INITIALIZED         = -3		
 };
 
+// Objects of translated classes with an inline monitor (see JreMonitorEnter)
+// return the address of their __monitor instance variable. The functions
+// above use that monitor instead of the one in the side table, so both
+// kinds of translated code lock the same monitor.
+@protocol JreInlineMonitor
+- (JreMonitor **)__monitorRef;
+@end
+
 // Returns true if an object has a pthread_mutux allocated for it on this thread.
 BOOL j2objc_sync_holds_lock(id obj);
 
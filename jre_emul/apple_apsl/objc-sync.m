@@ -24,6 +24,7 @@
 #include <pthread.h>
 #include <AssertMacros.h>
 #include <libkern/OSAtomic.h>
+#include <objc/runtime.h>
 
 #include "JreEmulation.h"
 #include "objc-sync.h"
@@ -269,6 +270,135 @@ static SyncData* id2data(id object, enum usage why)
 }
 
 
+//
+// Inline monitors. Unlike the side table above, a monitor is found through
+// its object's __monitor instance variable, without any global lock. The
+// owner and lock count are only written by the owning thread, so a thread
+// can test whether it holds the monitor without locking its mutex.
+//
+struct JreMonitor {
+    pthread_mutex_t  mutex;
+    pthread_cond_t   conditionVariable;
+    pthread_t        owner;
+    int              lockCount;
+};
+
+// Frees an inline monitor when the object that holds it is deallocated.
+@interface JreMonitorOwner : NSObject {
+ @public
+    JreMonitor *monitor;
+}
+@end
+
+@implementation JreMonitorOwner
+
+- (void)dealloc {
+    pthread_cond_destroy(&monitor->conditionVariable);
+    pthread_mutex_destroy(&monitor->mutex);
+    free(monitor);
+#if !__has_feature(objc_arc)
+    [super dealloc];
+#endif
+}
+
+@end
+
+static char sMonitorOwnerKey;
+
+static JreMonitor *monitor_create(id obj, JreMonitor **monitorp)
+{
+    JreMonitor *monitor = calloc(1, sizeof(JreMonitor));
+    pthread_mutex_init(&monitor->mutex, NULL);
+    pthread_cond_init(&monitor->conditionVariable, NULL);
+    if (!__sync_bool_compare_and_swap(monitorp, NULL, monitor)) {
+        // Another thread allocated the monitor first.
+        pthread_cond_destroy(&monitor->conditionVariable);
+        pthread_mutex_destroy(&monitor->mutex);
+        free(monitor);
+        return *monitorp;
+    }
+    JreMonitorOwner *owner = [[JreMonitorOwner alloc] init];
+    owner->monitor = monitor;
+    objc_setAssociatedObject(obj, &sMonitorOwnerKey, owner, OBJC_ASSOCIATION_RETAIN);
+    RELEASE_(owner);
+    return monitor;
+}
+
+static inline BOOL monitor_is_owned(JreMonitor *monitor)
+{
+    return monitor && pthread_equal(monitor->owner, pthread_self());
+}
+
+void JreMonitorEnter(id obj, JreMonitor **monitorp)
+{
+    JreMonitor *monitor = *monitorp;
+    if (!monitor) {
+        monitor = monitor_create(obj, monitorp);
+    }
+    pthread_t self = pthread_self();
+    if (pthread_equal(monitor->owner, self)) {
+        monitor->lockCount++;
+        return;
+    }
+    pthread_mutex_lock(&monitor->mutex);
+    monitor->owner = self;
+    monitor->lockCount = 1;
+}
+
+static int monitor_exit(JreMonitor *monitor)
+{
+    if (!monitor_is_owned(monitor)) {
+        return OBJC_SYNC_NOT_OWNING_THREAD_ERROR;
+    }
+    if (--monitor->lockCount == 0) {
+        monitor->owner = NULL;
+        pthread_mutex_unlock(&monitor->mutex);
+    }
+    return OBJC_SYNC_SUCCESS;
+}
+
+void JreMonitorExit(JreMonitor *monitor)
+{
+    monitor_exit(monitor);
+}
+
+static int monitor_wait(JreMonitor *monitor, long long milliSecondsMaxWait)
+{
+    if (!monitor_is_owned(monitor)) {
+        return OBJC_SYNC_NOT_OWNING_THREAD_ERROR;
+    }
+    int lockCount = monitor->lockCount;
+    monitor->owner = NULL;
+    monitor->lockCount = 0;
+    int result;
+    if ( milliSecondsMaxWait == 0 ) {
+        result = pthread_cond_wait(&monitor->conditionVariable, &monitor->mutex);
+    }
+    else {
+        struct timespec maxWait;
+        maxWait.tv_sec  = (time_t)(milliSecondsMaxWait / 1000);
+        maxWait.tv_nsec = (long)((milliSecondsMaxWait - (maxWait.tv_sec * 1000)) * 1000000);
+        result = pthread_cond_timedwait_relative_np(
+            &monitor->conditionVariable, &monitor->mutex, &maxWait);
+    }
+    monitor->owner = pthread_self();
+    monitor->lockCount = lockCount;
+    if ( result == ETIMEDOUT )
+        return OBJC_SYNC_TIMED_OUT;
+    return result;
+}
+
+// Returns the address of an object's inline monitor, or NULL if its class
+// doesn't have one. The method lookup is cached by the runtime.
+static inline JreMonitor **monitor_for(id obj)
+{
+    if (class_respondsToSelector(object_getClass(obj), @selector(__monitorRef))) {
+        return [(id<JreInlineMonitor>) obj __monitorRef];
+    }
+    return NULL;
+}
+
+
 __private_extern__ __attribute__((noinline))
 int objc_sync_nil(void)
 {
@@ -284,6 +414,11 @@ int objc_sync_enter(id obj)
     int result = OBJC_SYNC_SUCCESS;
 
     if (obj) {
+        JreMonitor **monitorp = monitor_for(obj);
+        if (monitorp) {
+            JreMonitorEnter(obj, monitorp);
+            return OBJC_SYNC_SUCCESS;
+        }
         SyncData* data = id2data(obj, ACQUIRE);
         require_action_string(data != NULL, done, result = OBJC_SYNC_NOT_INITIALIZED, "id2data failed");
 
@@ -309,6 +444,10 @@ int objc_sync_exit(id obj)
     int result = OBJC_SYNC_SUCCESS;
 
     if (obj) {
+        JreMonitor **monitorp = monitor_for(obj);
+        if (monitorp) {
+            return monitor_exit(*monitorp);
+        }
         SyncData* data = id2data(obj, RELEASE);
         require_action_string(data != NULL, done, result = OBJC_SYNC_NOT_OWNING_THREAD_ERROR, "id2data failed");
 
@@ -332,6 +471,10 @@ int objc_sync_wait(id obj, long long milliSecondsMaxWait)
 {
     int result = OBJC_SYNC_SUCCESS;
 
+    JreMonitor **monitorp = monitor_for(obj);
+    if (monitorp) {
+        return monitor_wait(*monitorp, milliSecondsMaxWait);
+    }
     SyncData* data = id2data(obj, CHECK);
     if (!data) {
       return OBJC_SYNC_NOT_OWNING_THREAD_ERROR;
@@ -371,6 +514,13 @@ int objc_sync_notify(id obj)
 {
     int result = OBJC_SYNC_SUCCESS;
 
+    JreMonitor **monitorp = monitor_for(obj);
+    if (monitorp) {
+        if (!monitor_is_owned(*monitorp)) {
+            return OBJC_SYNC_NOT_OWNING_THREAD_ERROR;
+        }
+        return pthread_cond_signal(&(*monitorp)->conditionVariable);
+    }
     SyncData* data = id2data(obj, CHECK);
     if (!data) {
       return OBJC_SYNC_NOT_OWNING_THREAD_ERROR;
@@ -393,6 +543,13 @@ int objc_sync_notifyAll(id obj)
 {
     int result = OBJC_SYNC_SUCCESS;
 
+    JreMonitor **monitorp = monitor_for(obj);
+    if (monitorp) {
+        if (!monitor_is_owned(*monitorp)) {
+            return OBJC_SYNC_NOT_OWNING_THREAD_ERROR;
+        }
+        return pthread_cond_broadcast(&(*monitorp)->conditionVariable);
+    }
     SyncData* data = id2data(obj, CHECK);
     if (!data) {
       return OBJC_SYNC_NOT_OWNING_THREAD_ERROR;
@@ -412,6 +569,10 @@ done:
 // Returns true if an object has a pthread_mutux allocated for it on this thread.
 BOOL j2objc_sync_holds_lock(id obj) {
   nil_chk(obj);
+  JreMonitor **monitorp = monitor_for(obj);
+  if (monitorp) {
+    return monitor_is_owned(*monitorp);
+  }
   SyncData* data = id2data(obj, TEST);
   return data ? YES : NO;
 }
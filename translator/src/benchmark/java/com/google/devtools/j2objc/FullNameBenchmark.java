@@ -0,0 +1,79 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.devtools.j2objc.gen.ObjectiveCHeaderGenerator;
+import com.google.devtools.j2objc.gen.ObjectiveCImplementationGenerator;
+import com.google.devtools.j2objc.util.NameTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of generating the header and implementation of a file of the
+ * {@link TranslatorBenchmark} corpus, with and without NameTable's full name
+ * cache. Generation is where most type names are looked up. The cache is
+ * kept between operations, as it is between the units of a translation.
+ *
+ * <p>Run with "make benchmark BENCHMARK_ARGS=FullNameBenchmark" in the
+ * translator directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FullNameBenchmark {
+
+  /**
+   * Whether the full name cache is enabled.
+   */
+  @State(Scope.Thread)
+  public static class Cache {
+    @Param({ "true", "false" })
+    public boolean enabled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      NameTable.clearFullNameCache();
+      NameTable.setFullNameCacheEnabled(enabled);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      NameTable.setFullNameCacheEnabled(true);
+      NameTable.clearFullNameCache();
+    }
+  }
+
+  @Benchmark
+  public void generate(Cache cache, TranslatorBenchmark.GenerationInput input) {
+    ObjectiveCHeaderGenerator.generate(input.unit);
+    ObjectiveCImplementationGenerator.generate(input.unit);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.devtools.j2objc.ast.TreeNode;
+import com.google.devtools.j2objc.gen.HiddenFieldDetector;
+import com.google.devtools.j2objc.gen.ImplementationScanner;
+import com.google.devtools.j2objc.gen.InvokedConstructorFinder;
+import com.google.devtools.j2objc.types.ImplementationImportCollector;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks comparing the implementation generator's hidden field,
+ * invoked constructor and import scans run as separate traversals with
+ * {@link ImplementationScanner}, which runs them in one. Each translates a
+ * file of the {@link TranslatorBenchmark} corpus. Besides the number of
+ * operations per second, each benchmark reports the rate it visits nodes at,
+ * as "nodeVisits".
+ *
+ * <p>Run with "make benchmark BENCHMARK_ARGS=PassFusionBenchmark" in the
+ * translator directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PassFusionBenchmark {
+
+  /**
+   * Counts the nodes the scans visit.
+   */
+  @State(Scope.Thread)
+  @AuxCounters
+  public static class Visits {
+    public long nodeVisits;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      nodeVisits = 0;
+    }
+  }
+
+  @Benchmark
+  public Object separateScans(TranslatorBenchmark.GenerationInput input, final Visits visits) {
+    HiddenFieldDetector detector = new HiddenFieldDetector() {
+      @Override
+      public boolean preVisit(TreeNode node) {
+        visits.nodeVisits++;
+        return super.preVisit(node);
+      }
+    };
+    detector.run(input.unit);
+    InvokedConstructorFinder finder = new InvokedConstructorFinder() {
+      @Override
+      public boolean preVisit(TreeNode node) {
+        visits.nodeVisits++;
+        return super.preVisit(node);
+      }
+    };
+    finder.run(input.unit);
+    ImplementationImportCollector collector = new ImplementationImportCollector() {
+      @Override
+      public boolean preVisit(TreeNode node) {
+        visits.nodeVisits++;
+        return super.preVisit(node);
+      }
+    };
+    collector.collect(input.unit);
+    return new Object[] {
+      detector.getFieldNameConflicts(), finder.getInvokedConstructors(), collector.getImports()
+    };
+  }
+
+  @Benchmark
+  public Object fusedScan(TranslatorBenchmark.GenerationInput input, final Visits visits) {
+    ImplementationScanner scanner = new ImplementationScanner() {
+      @Override
+      public boolean preVisit(TreeNode node) {
+        visits.nodeVisits++;
+        return super.preVisit(node);
+      }
+    };
+    scanner.collect(input.unit);
+    return new Object[] {
+      scanner.getFieldNameConflicts(), scanner.getInvokedConstructors(), scanner.getImports()
+    };
+  }
+}
@@ -0,0 +1,479 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.ast.CompilationUnit;
+import com.google.devtools.j2objc.ast.TreeConverter;
+import com.google.devtools.j2objc.gen.ObjectiveCHeaderGenerator;
+import com.google.devtools.j2objc.gen.ObjectiveCImplementationGenerator;
+import com.google.devtools.j2objc.translate.AnonymousClassConverter;
+import com.google.devtools.j2objc.translate.ArrayRewriter;
+import com.google.devtools.j2objc.translate.Autoboxer;
+import com.google.devtools.j2objc.translate.BoxingEliminator;
+import com.google.devtools.j2objc.translate.ComplexExpressionExtractor;
+import com.google.devtools.j2objc.translate.CopyAllFieldsWriter;
+import com.google.devtools.j2objc.translate.DestructorGenerator;
+import com.google.devtools.j2objc.translate.EnhancedForRewriter;
+import com.google.devtools.j2objc.translate.Functionizer;
+import com.google.devtools.j2objc.translate.GwtConverter;
+import com.google.devtools.j2objc.translate.InitializationNormalizer;
+import com.google.devtools.j2objc.translate.InnerClassExtractor;
+import com.google.devtools.j2objc.translate.JavaToIOSMethodTranslator;
+import com.google.devtools.j2objc.translate.JavaToIOSTypeConverter;
+import com.google.devtools.j2objc.translate.NilCheckResolver;
+import com.google.devtools.j2objc.translate.OperatorRewriter;
+import com.google.devtools.j2objc.translate.OuterReferenceFixer;
+import com.google.devtools.j2objc.translate.OuterReferenceResolver;
+import com.google.devtools.j2objc.translate.Rewriter;
+import com.google.devtools.j2objc.translate.StaticVarRewriter;
+import com.google.devtools.j2objc.translate.StringBuilderRewriter;
+import com.google.devtools.j2objc.translate.TypeSorter;
+import com.google.devtools.j2objc.translate.UnsequencedExpressionRewriter;
+import com.google.devtools.j2objc.types.MethodMappingIndex;
+import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.JdtParser;
+import com.google.devtools.j2objc.util.NameTable;
+import com.google.devtools.j2objc.util.TimeTracker;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the translator's phases: parsing, each step of
+ * {@link TranslationProcessor#applyMutations}, and header and implementation
+ * generation. Each benchmark translates one file of a fixed corpus taken from
+ * the Guava and libcore sources in this tree, selected with the "file"
+ * parameter. Besides the number of operations per second, each benchmark
+ * reports the rate its operations allocate memory at, as "allocatedBytes".
+ *
+ * <p>Run with "make benchmark" in the translator directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslatorBenchmark {
+
+  // Corpus files, relative to the j2objc root.
+  private static final Map<String, String> CORPUS = ImmutableMap.of(
+      "CharMatcher", "guava/sources/com/google/common/base/CharMatcher.java",
+      "ImmutableList", "guava/sources/com/google/common/collect/ImmutableList.java",
+      "ArrayList", "jre_emul/android/libcore/luni/src/main/java/java/util/ArrayList.java",
+      "Collections", "jre_emul/android/libcore/luni/src/main/java/java/util/Collections.java");
+
+  private static final String[] SOURCE_ROOTS = {
+    "guava/sources",
+    "jre_emul/android/libcore/luni/src/main/java",
+    "jre_emul/apache_harmony/classlib/modules/luni/src/main/java"
+  };
+
+  /**
+   * The source of the file being translated, with the options and parser
+   * used to translate it.
+   */
+  @State(Scope.Thread)
+  public static class Corpus {
+    @Param({ "CharMatcher", "ImmutableList", "ArrayList", "Collections" })
+    public String file;
+
+    String path;
+    String source;
+    private JdtParser parser;
+    private File outputDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      File root = new File(System.getProperty("j2objc.root", ".."));
+      StringBuilder sourcepath = new StringBuilder();
+      for (String sourceRoot : SOURCE_ROOTS) {
+        if (sourcepath.length() > 0) {
+          sourcepath.append(File.pathSeparatorChar);
+        }
+        sourcepath.append(new File(root, sourceRoot).getPath());
+      }
+      outputDir = Files.createTempDir();
+      // Enable the optional steps, so every step is measured.
+      Options.load(new String[] {
+        "-d", outputDir.getPath(),
+        "-sourcepath", sourcepath.toString(),
+        "-classpath", System.getProperty("java.class.path"),
+        "-encoding", "UTF-8",
+        "--extract-unsequenced",
+        "--final-methods-as-functions"
+      });
+      TranslationProcessor.loadMappingFiles();
+      parser = J2ObjC.createParser();
+      path = new File(root, CORPUS.get(file)).getPath();
+      source = Files.toString(new File(path), Charsets.UTF_8);
+      checkSteps();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      delete(outputDir);
+      Options.reset();
+    }
+
+    org.eclipse.jdt.core.dom.CompilationUnit parse() {
+      return parser.parse(path, source);
+    }
+
+    /**
+     * Parses the file and sets up the per-file translation state.
+     */
+    org.eclipse.jdt.core.dom.CompilationUnit parseForTranslation() {
+      OuterReferenceResolver.cleanup();
+      org.eclipse.jdt.core.dom.CompilationUnit unit = parse();
+      NameTable.initialize();
+      Types.initialize(unit);
+      return unit;
+    }
+
+    /**
+     * Verifies that the steps benchmarked are the ones applyMutations() runs,
+     * in the same order.
+     */
+    private void checkSteps() {
+      final List<String> ticks = Lists.newArrayList();
+      TimeTracker recorder = new TimeTracker() {
+        private int level = 0;
+
+        @Override
+        public void tick(String event) {
+          if (level == 1) {
+            ticks.add(event);
+          }
+        }
+
+        @Override
+        public void push() {
+          level++;
+        }
+
+        @Override
+        public void pop() {
+          level--;
+        }
+      };
+      TranslationProcessor.applyMutations(parseForTranslation(), path, source, recorder);
+      List<String> steps = Lists.newArrayList();
+      for (Step step : Step.values()) {
+        steps.add(step.getTickName());
+      }
+      if (!steps.equals(ticks)) {
+        throw new IllegalStateException(
+            "benchmark steps " + steps + " don't match applyMutations() steps " + ticks);
+      }
+    }
+
+    private static void delete(File file) {
+      File[] children = file.listFiles();
+      if (children != null) {
+        for (File child : children) {
+          delete(child);
+        }
+      }
+      file.delete();
+    }
+  }
+
+  /**
+   * The steps of applyMutations(), each named by its TimeTracker tick.
+   */
+  public enum Step {
+    OUTER_REFERENCE_RESOLVER("OuterReferenceResolver") {
+      @Override
+      void run(MutationInput input) {
+        OuterReferenceResolver.resolve(input.jdtUnit);
+      }
+    },
+    GWT_CONVERTER("GwtConverter") {
+      @Override
+      void run(MutationInput input) {
+        new GwtConverter().run(input.jdtUnit);
+      }
+    },
+    REWRITER("Rewriter") {
+      @Override
+      void run(MutationInput input) {
+        new Rewriter().run(input.jdtUnit);
+      }
+    },
+    STRING_BUILDER_REWRITER("StringBuilderRewriter") {
+      @Override
+      void run(MutationInput input) {
+        new StringBuilderRewriter().run(input.jdtUnit);
+      }
+    },
+    ENHANCED_FOR_REWRITER("EnhancedForRewriter") {
+      @Override
+      void run(MutationInput input) {
+        new EnhancedForRewriter().run(input.jdtUnit);
+      }
+    },
+    AUTOBOXER("Autoboxer") {
+      @Override
+      void run(MutationInput input) {
+        new Autoboxer(input.jdtUnit.getAST()).run(input.jdtUnit);
+      }
+    },
+    BOXING_ELIMINATOR("BoxingEliminator") {
+      @Override
+      void run(MutationInput input) {
+        new BoxingEliminator().run(input.jdtUnit);
+      }
+    },
+    ANONYMOUS_CLASS_CONVERTER("AnonymousClassConverter") {
+      @Override
+      void run(MutationInput input) {
+        new AnonymousClassConverter(input.jdtUnit).run(input.jdtUnit);
+      }
+    },
+    INNER_CLASS_EXTRACTOR("InnerClassConverter") {
+      @Override
+      void run(MutationInput input) {
+        new InnerClassExtractor(input.jdtUnit).run(input.jdtUnit);
+      }
+    },
+    INITIALIZATION_NORMALIZER("InitializationNormalizer") {
+      @Override
+      void run(MutationInput input) {
+        new InitializationNormalizer().run(input.jdtUnit);
+      }
+    },
+    OUTER_REFERENCE_FIXER("OuterReferenceFixer") {
+      @Override
+      void run(MutationInput input) {
+        new OuterReferenceFixer().run(input.jdtUnit);
+      }
+    },
+    UNSEQUENCED_EXPRESSION_REWRITER("UnsequencedExpressionRewriter") {
+      @Override
+      void run(MutationInput input) {
+        new UnsequencedExpressionRewriter().run(input.jdtUnit);
+      }
+    },
+    COMPLEX_EXPRESSION_EXTRACTOR("ComplexExpressionExtractor") {
+      @Override
+      void run(MutationInput input) {
+        new ComplexExpressionExtractor().run(input.jdtUnit);
+      }
+    },
+    NIL_CHECK_RESOLVER("NilCheckResolver") {
+      @Override
+      void run(MutationInput input) {
+        new NilCheckResolver().run(input.jdtUnit);
+      }
+    },
+    JAVA_TO_IOS_TYPE_CONVERTER("JavaToIOSTypeConverter") {
+      @Override
+      void run(MutationInput input) {
+        new JavaToIOSTypeConverter().run(input.jdtUnit);
+      }
+    },
+    JAVA_TO_IOS_METHOD_TRANSLATOR("JavaToIOSMethodTranslator") {
+      @Override
+      void run(MutationInput input) {
+        new JavaToIOSMethodTranslator(input.jdtUnit.getAST(),
+            MethodMappingIndex.get(Options.getMethodMappings())).run(input.jdtUnit);
+      }
+    },
+    ARRAY_REWRITER("ArrayRewriter") {
+      @Override
+      void run(MutationInput input) {
+        new ArrayRewriter().run(input.jdtUnit);
+      }
+    },
+    STATIC_VAR_REWRITER("StaticVarRewriter") {
+      @Override
+      void run(MutationInput input) {
+        new StaticVarRewriter().run(input.jdtUnit);
+      }
+    },
+    TYPE_SORTER("TypeSorter") {
+      @Override
+      void run(MutationInput input) {
+        TypeSorter.sortTypes(input.jdtUnit);
+      }
+    },
+    TREE_CONVERTER("TreeConverter") {
+      @Override
+      void run(MutationInput input) {
+        Types.verifyNode(input.jdtUnit);
+        input.unit = TreeConverter.convertCompilationUnit(
+            input.jdtUnit, input.corpus.path, input.corpus.source);
+      }
+    },
+    DESTRUCTOR_GENERATOR("DestructorGenerator") {
+      @Override
+      void run(MutationInput input) {
+        new DestructorGenerator().run(input.unit);
+      }
+    },
+    COPY_ALL_FIELDS_WRITER("CopyAllFieldsWriter") {
+      @Override
+      void run(MutationInput input) {
+        new CopyAllFieldsWriter().run(input.unit);
+      }
+    },
+    OPERATOR_REWRITER("OperatorRewriter") {
+      @Override
+      void run(MutationInput input) {
+        new OperatorRewriter().run(input.unit);
+      }
+    },
+    FUNCTIONIZER("Functionizer") {
+      @Override
+      void run(MutationInput input) {
+        new Functionizer().run(input.unit);
+      }
+    };
+
+    private final String tickName;
+
+    private Step(String tickName) {
+      this.tickName = tickName;
+    }
+
+    String getTickName() {
+      return tickName;
+    }
+
+    abstract void run(MutationInput input);
+  }
+
+  /**
+   * A freshly parsed file, with the steps before the one being measured
+   * already applied. Steps modify the tree, so this is set up again for
+   * every invocation; JMH excludes the setup from the measured time.
+   */
+  @State(Scope.Thread)
+  public static class MutationInput {
+    @Param({
+      "OUTER_REFERENCE_RESOLVER", "GWT_CONVERTER", "REWRITER", "STRING_BUILDER_REWRITER",
+      "ENHANCED_FOR_REWRITER", "AUTOBOXER", "BOXING_ELIMINATOR", "ANONYMOUS_CLASS_CONVERTER",
+      "INNER_CLASS_EXTRACTOR", "INITIALIZATION_NORMALIZER", "OUTER_REFERENCE_FIXER",
+      "UNSEQUENCED_EXPRESSION_REWRITER", "COMPLEX_EXPRESSION_EXTRACTOR", "NIL_CHECK_RESOLVER",
+      "JAVA_TO_IOS_TYPE_CONVERTER", "JAVA_TO_IOS_METHOD_TRANSLATOR", "ARRAY_REWRITER",
+      "STATIC_VAR_REWRITER", "TYPE_SORTER", "TREE_CONVERTER", "DESTRUCTOR_GENERATOR",
+      "COPY_ALL_FIELDS_WRITER", "OPERATOR_REWRITER", "FUNCTIONIZER"
+    })
+    public Step step;
+
+    Corpus corpus;
+    org.eclipse.jdt.core.dom.CompilationUnit jdtUnit;
+    CompilationUnit unit;
+
+    @Setup(Level.Invocation)
+    public void setUp(Corpus corpus) {
+      this.corpus = corpus;
+      jdtUnit = corpus.parseForTranslation();
+      unit = null;
+      for (Step previous : Step.values()) {
+        if (previous == step) {
+          break;
+        }
+        previous.run(this);
+      }
+    }
+  }
+
+  /**
+   * A fully translated file, for the generator benchmarks.
+   */
+  @State(Scope.Thread)
+  public static class GenerationInput {
+    CompilationUnit unit;
+
+    @Setup(Level.Trial)
+    public void setUp(Corpus corpus) {
+      unit = TranslationProcessor.applyMutations(
+          corpus.parseForTranslation(), corpus.path, corpus.source, TimeTracker.noop());
+    }
+  }
+
+  /**
+   * Counts the bytes allocated by the measured operations, but not by
+   * their setup. JMH reports this as a rate, like the operations.
+   */
+  @State(Scope.Thread)
+  @AuxCounters
+  public static class Allocation {
+    public long allocatedBytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      allocatedBytes = 0;
+    }
+
+    void add(long start) {
+      if (start >= 0) {
+        allocatedBytes += Profiler.allocatedBytes() - start;
+      }
+    }
+  }
+
+  @Benchmark
+  public org.eclipse.jdt.core.dom.CompilationUnit parse(Corpus corpus, Allocation allocation) {
+    long start = Profiler.allocatedBytes();
+    org.eclipse.jdt.core.dom.CompilationUnit unit = corpus.parse();
+    allocation.add(start);
+    return unit;
+  }
+
+  @Benchmark
+  public void mutate(MutationInput input, Allocation allocation) {
+    long start = Profiler.allocatedBytes();
+    input.step.run(input);
+    allocation.add(start);
+  }
+
+  @Benchmark
+  public void generateHeader(GenerationInput input, Allocation allocation) {
+    long start = Profiler.allocatedBytes();
+    ObjectiveCHeaderGenerator.generate(input.unit);
+    allocation.add(start);
+  }
+
+  @Benchmark
+  public void generateImplementation(GenerationInput input, Allocation allocation) {
+    long start = Profiler.allocatedBytes();
+    ObjectiveCImplementationGenerator.generate(input.unit);
+    allocation.add(start);
+  }
+}
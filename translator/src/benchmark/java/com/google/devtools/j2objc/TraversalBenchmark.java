@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.devtools.j2objc.ast.TreeVisitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of traversing a translated file of the
+ * {@link TranslatorBenchmark} corpus with a visitor that visits every node.
+ * Like the TranslatorBenchmark benchmarks, it reports the rate the
+ * traversals allocate memory at, as "allocatedBytes"; JMH's "-prof gc"
+ * profiler can be used as well.
+ *
+ * <p>Run with "make benchmark BENCHMARK_ARGS=TraversalBenchmark" in the
+ * translator directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TraversalBenchmark {
+
+  private final TreeVisitor visitor = new TreeVisitor();
+
+  @Benchmark
+  public void traverse(
+      TranslatorBenchmark.GenerationInput input, TranslatorBenchmark.Allocation allocation) {
+    long start = Profiler.allocatedBytes();
+    visitor.run(input.unit);
+    allocation.add(start);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.devtools.j2objc.util.ClassHierarchy;
+import com.google.devtools.j2objc.util.JdtParser;
+import com.google.devtools.j2objc.util.TimeTracker;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+import java.util.logging.Logger;
+
+/**
+ * Processes files by recording the classes they declare, the methods those
+ * classes override and the methods that invoke super methods, so the
+ * translation of each file can tell which methods need dynamic dispatch.
+ */
+public class ClassHierarchyProcessor extends FileProcessor {
+
+  private static final Logger logger = Logger.getLogger(ClassHierarchyProcessor.class.getName());
+
+  private final ClassHierarchy.Builder builder = ClassHierarchy.builder();
+
+  public ClassHierarchyProcessor(JdtParser parser) {
+    super(parser);
+  }
+
+  @Override
+  protected void processUnit(String path, String source, CompilationUnit unit, TimeTracker ticker) {
+    logger.finest("reading class hierarchy: " + path);
+    unit.accept(new ASTVisitor() {
+      @Override
+      public void endVisit(TypeDeclaration node) {
+        ITypeBinding type = node.resolveBinding();
+        if (type != null && !type.isInterface()) {
+          builder.addClass(type);
+        }
+      }
+
+      @Override
+      public void endVisit(MethodDeclaration node) {
+        IMethodBinding method = node.resolveBinding();
+        if (method != null) {
+          builder.addOverrides(method);
+        }
+      }
+
+      @Override
+      public void endVisit(SuperMethodInvocation node) {
+        ASTNode parent = node.getParent();
+        while (parent != null && !(parent instanceof MethodDeclaration)) {
+          parent = parent.getParent();
+        }
+        IMethodBinding method =
+            parent != null ? ((MethodDeclaration) parent).resolveBinding() : null;
+        if (method != null) {
+          builder.addSuperInvoker(method);
+        }
+      }
+    });
+    ticker.tick("Read class hierarchy");
+  }
+
+  public ClassHierarchy getClassHierarchy() {
+    return builder.build();
+  }
+}
@@ -16,6 +16,7 @@ package com.google.devtools.j2objc;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import com.google.devtools.j2objc.translate.DeadCodeEliminator;
 import com.google.devtools.j2objc.util.DeadCodeMap;
@@ -34,6 +35,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -49,6 +51,9 @@ public class DeadCodeProcessor extends FileProcessor {
   private final DeadCodeMap deadCodeMap;
   private final File tempDir;
   private List<String> resultSources = Lists.newArrayList();
+  // Rewritten sources keyed by the path they were saved to, so the
+  // translation pass doesn't need to read them back.
+  private Map<String, String> rewrittenSources = Maps.newHashMap();
 
   private DeadCodeProcessor(JdtParser parser, DeadCodeMap deadCodeMap, File tempDir) {
     super(parser);
@@ -99,6 +104,7 @@ public class DeadCodeProcessor extends FileProcessor {
         ErrorUtil.error(e.getMessage());
       }
       path = outFile.getAbsolutePath();
+      rewrittenSources.put(path, newSource);
       ticker.tick("Print new source to file");
     }
     resultSources.add(path);
@@ -129,4 +135,12 @@ public class DeadCodeProcessor extends FileProcessor {
     Options.insertSourcePath(0, tempDir.getPath());
     return resultSources;
   }
+
+  /**
+   * Returns the rewritten sources, keyed by the paths returned by
+   * postProcess().
+   */
+  public Map<String, String> getRewrittenSources() {
+    return rewrittenSources;
+  }
 }
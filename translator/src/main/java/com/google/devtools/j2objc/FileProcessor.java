@@ -16,23 +16,35 @@ package com.google.devtools.j2objc;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ErrorUtil;
 import com.google.devtools.j2objc.util.JdtParser;
 import com.google.devtools.j2objc.util.NameTable;
+import com.google.devtools.j2objc.util.PathIndex;
 import com.google.devtools.j2objc.util.TimeTracker;
 
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.PackageDeclaration;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.Reader;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -48,19 +60,59 @@ abstract class FileProcessor {
 
   private static final Logger logger = Logger.getLogger(FileProcessor.class.getName());
 
+  // Estimated heap used while parsing a batch, per byte of its sources. JDT
+  // holds the ASTs, bindings and lookup environment of a whole batch until
+  // the batch is done, which costs tens of bytes per source byte.
+  private static final int PARSE_BYTES_PER_SOURCE_BYTE = 40;
+
   private final JdtParser parser;
-  private final List<String> batchSources = Lists.newArrayList();
-  private final boolean doBatching = Options.batchTranslateMaximum() > 0;
+  // The size in bytes of each source to be batched, in the order they were
+  // added, keyed by the path it is parsed from.
+  private final Map<String, Long> batchSources = Maps.newLinkedHashMap();
+  // The jar that each batched jar entry is read from, keyed by its path.
+  private final Map<String, String> batchJarEntries = Maps.newHashMap();
+  // Sources already read into memory, keyed by the path they are parsed
+  // from. Each is removed when it is read for parsing, so it is only held
+  // while needed. Batches parsed concurrently read it from worker threads.
+  private final Map<String, String> sourceContents = Maps.newConcurrentMap();
+  private final boolean doBatching =
+      Options.batchTranslateMaximum() > 0 || Options.batchTranslateMemory() > 0;
+  private final List<QueuedSource> queuedSources = Lists.newArrayList();
+  private Profiler profiler = null;
+  // The timings printed by a worker thread, held with its messages until
+  // they are printed in order. Null on threads that print them immediately.
+  private final ThreadLocal<ByteArrayOutputStream> deferredTimings =
+      new ThreadLocal<ByteArrayOutputStream>();
+
+  // A source file waiting to be processed by a worker thread. If source is
+  // null, it is read from path.
+  private static class QueuedSource {
+    private final String path;
+    private final String source;
+
+    private QueuedSource(String path, String source) {
+      this.path = path;
+      this.source = source;
+    }
+  }
 
   public FileProcessor(JdtParser parser) {
     this.parser = Preconditions.checkNotNull(parser);
   }
 
+  /**
+   * Records the cost of each processing step in the specified profiler.
+   */
+  void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
   public void processFiles(Iterable<String> files) {
     for (String file : files) {
       processFile(file);
     }
     processBatchSources();
+    processQueuedSources();
   }
 
   public void processFile(String file) {
@@ -106,29 +158,19 @@ abstract class FileProcessor {
   protected void processJavaFile(String filename) {
     File f = getFileOrNull(filename);
     if (f != null) {
-      if (doBatching) {
-        batchSources.add(filename);
-      } else {
-        processSource(filename);
-      }
+      addSourceFile(filename, f);
       return;
     }
     if (f == null) {
       for (String pathEntry : Options.getSourcePathEntries()) {
         if (pathEntry.endsWith(".jar")) {
-          String source = getJarEntryOrNull(pathEntry, filename);
-          if (source != null) {
-            processSource(filename, source);
+          if (addJarEntryIfPresent(pathEntry, filename)) {
             return;
           }
         } else {
           f = getFileOrNull(pathEntry + File.separatorChar + filename);
           if (f != null) {
-            if (doBatching) {
-              batchSources.add(f.getPath());
-            } else {
-              processSource(f.getPath());
-            }
+            addSourceFile(f.getPath(), f);
             return;
           }
         }
@@ -137,26 +179,53 @@ abstract class FileProcessor {
     ErrorUtil.error("No such file: " + filename);
   }
 
-  private String getJarEntryOrNull(String jarFile, String path) {
-    File f = new File(jarFile);
-    if (!f.exists() || !f.isFile()) {
-      return null;
+  private void addSourceFile(String path, File f) {
+    if (doBatching) {
+      batchSources.put(path, f.length());
+    } else {
+      addSource(path, null);
+    }
+  }
+
+  private boolean addJarEntryIfPresent(String jarFile, String path) {
+    // Only open jars that have the entry.
+    if (!PathIndex.contains(jarFile, path)) {
+      return false;
     }
     try {
-      ZipFile zfile = new ZipFile(f);
+      ZipFile zfile = new ZipFile(jarFile);
       try {
         ZipEntry entry = zfile.getEntry(path);
         if (entry != null) {
-          Reader in = new InputStreamReader(zfile.getInputStream(entry));
-          return CharStreams.toString(in);
+          addJarEntry(jarFile, zfile, entry);
+          return true;
         }
       } finally {
-        zfile.close();  // Also closes input stream.
+        zfile.close();
       }
     } catch (IOException e) {
       ErrorUtil.warning(e.getMessage());
     }
-    return null;
+    return false;
+  }
+
+  /**
+   * Batches a jar entry to be read with the rest of its batch, or reads and
+   * processes it now.
+   */
+  private void addJarEntry(String jarFile, ZipFile zfile, ZipEntry entry) throws IOException {
+    String path = entry.getName();
+    if (doBatching) {
+      batchSources.put(path, entry.getSize());
+      batchJarEntries.put(path, jarFile);
+    } else {
+      addSource(path, readJarEntry(zfile, entry));
+    }
+  }
+
+  private static String readJarEntry(ZipFile zfile, ZipEntry entry) throws IOException {
+    Reader in = new InputStreamReader(zfile.getInputStream(entry), Options.getCharset());
+    return CharStreams.toString(in);  // The stream is closed with the jar.
   }
 
   protected void processJarFile(String filename) {
@@ -171,10 +240,8 @@ abstract class FileProcessor {
         Enumeration<? extends ZipEntry> enumerator = zfile.entries();
         while (enumerator.hasMoreElements()) {
           ZipEntry entry = enumerator.nextElement();
-          String path = entry.getName();
-          if (path.endsWith(".java")) {
-            Reader in = new InputStreamReader(zfile.getInputStream(entry));
-            processSource(path, CharStreams.toString(in));
+          if (entry.getName().endsWith(".java")) {
+            addJarEntry(filename, zfile, entry);
           }
         }
       } finally {
@@ -185,25 +252,65 @@ abstract class FileProcessor {
     }
   }
 
+  /**
+   * Supplies the contents of source files that were generated in memory,
+   * keyed by path, so they are used instead of reading those files.
+   */
+  public void addSourceContents(Map<String, String> contents) {
+    sourceContents.putAll(contents);
+  }
+
+  /**
+   * Returns the contents of a source file, reading it unless it was already
+   * read into memory.
+   */
+  private String getSource(String path) throws IOException {
+    String source = sourceContents.remove(path);
+    return source != null ? source : Files.toString(new File(path), Options.getCharset());
+  }
+
+  /**
+   * Processes a source file now, or queues it for a worker thread if more
+   * than one thread is used. A null source is read from the path.
+   */
+  private void addSource(String path, String source) {
+    if (getThreadCount() > 1) {
+      if (source == null) {
+        source = sourceContents.remove(path);
+      }
+      queuedSources.add(new QueuedSource(path, source));
+    } else if (source == null) {
+      processSource(path);
+    } else {
+      processSource(path, source);
+    }
+  }
+
   protected void processSource(String path) {
     try {
-      processSource(path, Files.toString(new File(path), Options.getCharset()));
+      processSource(path, getSource(path));
     } catch (IOException e) {
       ErrorUtil.warning(e.getMessage());
     }
   }
 
   protected void processSource(String path, String source) {
+    logProcessing(path);
+    parseAndProcessSource(path, source);
+  }
+
+  private void parseAndProcessSource(String path, String source) {
     logger.finest("parsing " + path);
     TimeTracker ticker = getTicker(path);
     ticker.push();
 
-    int errorCount = ErrorUtil.errorCount();
+    int errorCount = ErrorUtil.threadErrorCount();
     CompilationUnit unit = parser.parse(path, source);
-    if (ErrorUtil.errorCount() > errorCount) {
+    if (ErrorUtil.threadErrorCount() > errorCount) {
       return;
     }
 
+    ticker.setTree(unit);
     ticker.tick("Parsing file");
 
     ErrorUtil.setCurrentFileName(path);
@@ -215,7 +322,7 @@ abstract class FileProcessor {
 
     ticker.pop();
     ticker.tick("Total processing time");
-    ticker.printResults(System.out);
+    printTimings(ticker);
   }
 
   protected void processBatchSources() {
@@ -223,46 +330,337 @@ abstract class FileProcessor {
       return;
     }
 
-    JdtParser.Handler handler = new JdtParser.Handler() {
-      @Override
-      public void handleParsedUnit(String path, CompilationUnit unit) {
-        if (logger.isLoggable(Level.INFO)) {
-          System.out.println("translating " + path);
+    List<List<String>> batches;
+    if (Options.batchTranslateMemory() > 0) {
+      // Concurrently parsed batches share the budget.
+      long budget = Options.batchTranslateMemory() * 1024L * 1024L / getThreadCount();
+      batches = partitionByPackage(batchSources, budget, Options.batchTranslateMaximum());
+    } else {
+      batches = Lists.partition(
+          Lists.newArrayList(batchSources.keySet()), Options.batchTranslateMaximum());
+    }
+    if (getThreadCount() > 1 && batches.size() > 1) {
+      processBatchesConcurrently(batches);
+    } else {
+      JdtParser.Handler handler = new JdtParser.Handler() {
+        @Override
+        public void handleParsedUnit(String path, String source, CompilationUnit unit) {
+          logBatchProcessing(path);
+          processParsedBatchUnit(path, source, unit);
         }
-        TimeTracker ticker = getTicker(path);
-        ticker.push();
-        processUnit(path, unit, ticker);
+      };
+      for (List<String> batch : batches) {
+        parseBatch(batch, handler);
       }
-    };
-    final int maxBatchSize = Options.batchTranslateMaximum();
-    for (int from = 0; from < batchSources.size(); from += maxBatchSize) {
-      int to = from + maxBatchSize;
-      if ( to > batchSources.size()) {
-        to = batchSources.size();
+    }
+    batchSources.clear();
+    batchJarEntries.clear();
+  }
+
+  /**
+   * Parses a batch, reading each source once for both the parser and the
+   * handler. Jar entries are read from their jar, which is opened once for
+   * the batch.
+   */
+  private void parseBatch(List<String> batch, JdtParser.Handler handler) {
+    final Map<String, ZipFile> jars = Maps.newHashMap();
+    try {
+      parser.parseFiles(batch, new JdtParser.SourceProvider() {
+        @Override
+        public String getSource(String path) throws IOException {
+          String jarFile = batchJarEntries.get(path);
+          if (jarFile == null) {
+            return FileProcessor.this.getSource(path);
+          }
+          ZipFile zfile = jars.get(jarFile);
+          if (zfile == null) {
+            zfile = new ZipFile(jarFile);
+            jars.put(jarFile, zfile);
+          }
+          ZipEntry entry = zfile.getEntry(path);
+          if (entry == null) {
+            throw new IOException("No such entry: " + jarFile + "!" + path);
+          }
+          return readJarEntry(zfile, entry);
+        }
+      }, handler);
+    } finally {
+      for (ZipFile zfile : jars.values()) {
+        try {
+          zfile.close();
+        } catch (IOException e) {
+          ErrorUtil.warning(e.getMessage());
+        }
       }
-      parser.parseFiles(batchSources.subList(from, to), handler);
     }
   }
 
-  private void processUnit(String path, CompilationUnit unit, TimeTracker ticker) {
+  /**
+   * Parses and processes batches on a pool of worker threads, each batch
+   * with its own ASTParser. As with queued sources, messages and timings are
+   * held until a batch completes, then printed in batch order, each unit's
+   * "translating" line in the same place as in a single-threaded run.
+   */
+  private void processBatchesConcurrently(List<List<String>> batches) {
+    ExecutorService executor = Executors.newFixedThreadPool(getThreadCount());
     try {
-      ErrorUtil.setCurrentFileName(path);
-      NameTable.initialize();
-      Types.initialize(unit);
-      processUnit(path, Files.toString(new File(path), Options.getCharset()), unit, ticker);
-      NameTable.cleanup();
-      Types.cleanup();
-
-      ticker.pop();
-      ticker.tick("Total processing time");
+      List<Future<List<BatchOutput>>> results = Lists.newArrayListWithCapacity(batches.size());
+      for (final List<String> batch : batches) {
+        results.add(executor.submit(new Callable<List<BatchOutput>>() {
+          @Override
+          public List<BatchOutput> call() {
+            final List<BatchOutput> outputs = Lists.newArrayList();
+            beginDeferredOutput();
+            parseBatch(batch, new JdtParser.Handler() {
+              @Override
+              public void handleParsedUnit(String path, String source, CompilationUnit unit) {
+                // Messages so far include the unit's parsing errors, which
+                // precede its "translating" line.
+                outputs.add(new BatchOutput(endDeferredOutput(), path));
+                beginDeferredOutput();
+                processParsedBatchUnit(path, source, unit);
+              }
+            });
+            outputs.add(new BatchOutput(endDeferredOutput(), null));
+            return outputs;
+          }
+        }));
+      }
+      for (Future<List<BatchOutput>> result : results) {
+        for (BatchOutput output : result.get()) {
+          output.output.print();
+          if (output.name != null) {
+            logBatchProcessing(output.name);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    } catch (ExecutionException e) {
+      throw new AssertionError(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // Output held while a batch is processed, followed by the name of the
+  // unit that was processed next, or null at the end of the batch.
+  private static class BatchOutput {
+    private final DeferredOutput output;
+    private final String name;
+
+    private BatchOutput(DeferredOutput output, String name) {
+      this.output = output;
+      this.name = name;
+    }
+  }
+
+  // The messages and timings a worker thread printed, in the order they are
+  // printed by a single-threaded run: a unit's timings follow its messages.
+  private static class DeferredOutput {
+    private final List<String> messages;
+    private final String timings;
+
+    private DeferredOutput(List<String> messages, String timings) {
+      this.messages = messages;
+      this.timings = timings;
+    }
+
+    private void print() {
+      ErrorUtil.printDeferredOutput(messages);
+      System.out.print(timings);
+    }
+  }
+
+  /**
+   * Holds the calling thread's messages and timings until
+   * endDeferredOutput() is called, rather than printing them immediately.
+   */
+  private void beginDeferredOutput() {
+    ErrorUtil.beginDeferredOutput();
+    deferredTimings.set(new ByteArrayOutputStream());
+  }
+
+  private DeferredOutput endDeferredOutput() {
+    ByteArrayOutputStream timings = deferredTimings.get();
+    deferredTimings.remove();
+    return new DeferredOutput(ErrorUtil.endDeferredOutput(), timings.toString());
+  }
+
+  private void printTimings(TimeTracker ticker) {
+    ByteArrayOutputStream deferred = deferredTimings.get();
+    if (deferred != null) {
+      PrintStream out = new PrintStream(deferred);
+      ticker.printResults(out);
+      out.flush();
+    } else {
       ticker.printResults(System.out);
-    } catch (IOException e) {
-      ErrorUtil.error(e.getMessage());
     }
   }
 
+  /**
+   * Splits source files, given their sizes keyed by path, into batches whose
+   * estimated parsing cost fits the budget, with at most maxFiles files each
+   * if maxFiles is positive. Files are grouped by directory, which is their
+   * package in a source tree, and directories are visited in sorted order so
+   * a package is batched with its neighbors; these usually reference each
+   * other, so their bindings are resolved once in the same batch. A package
+   * too large for the budget is split, and a single file over the budget
+   * gets a batch of its own.
+   */
+  static List<List<String>> partitionByPackage(
+      Map<String, Long> sourceSizes, long budget, int maxFiles) {
+    List<String> sorted = Lists.newArrayList(sourceSizes.keySet());
+    Collections.sort(sorted, new Comparator<String>() {
+      @Override
+      public int compare(String a, String b) {
+        int result = getDirectory(a).compareTo(getDirectory(b));
+        return result != 0 ? result : a.compareTo(b);
+      }
+    });
+    Map<String, Long> packageCosts = Maps.newHashMap();
+    for (String path : sorted) {
+      String directory = getDirectory(path);
+      Long packageCost = packageCosts.get(directory);
+      long cost = getParseCost(sourceSizes.get(path));
+      packageCosts.put(directory, (packageCost != null ? packageCost : 0) + cost);
+    }
+    List<List<String>> batches = Lists.newArrayList();
+    List<String> batch = Lists.newArrayList();
+    long batchCost = 0;
+    String lastDirectory = null;
+    for (String path : sorted) {
+      String directory = getDirectory(path);
+      long cost = getParseCost(sourceSizes.get(path));
+      if (!directory.equals(lastDirectory)) {
+        // Start a new batch rather than split a package that would fit in one.
+        long packageCost = packageCosts.get(directory);
+        if (batchCost + packageCost > budget && packageCost <= budget) {
+          batchCost = addBatch(batches, batch);
+        }
+        lastDirectory = directory;
+      }
+      if (batchCost + cost > budget || (maxFiles > 0 && batch.size() >= maxFiles)) {
+        batchCost = addBatch(batches, batch);
+      }
+      batch.add(path);
+      batchCost += cost;
+    }
+    addBatch(batches, batch);
+    return batches;
+  }
+
+  // Adds a copy of a non-empty batch to batches and clears it. Returns the
+  // cost of the now-empty batch.
+  private static long addBatch(List<List<String>> batches, List<String> batch) {
+    if (!batch.isEmpty()) {
+      batches.add(Lists.newArrayList(batch));
+      batch.clear();
+    }
+    return 0;
+  }
+
+  private static long getParseCost(long size) {
+    return size * PARSE_BYTES_PER_SOURCE_BYTE;
+  }
+
+  private static String getDirectory(String path) {
+    int index = path.lastIndexOf(File.separatorChar);
+    return index >= 0 ? path.substring(0, index) : "";
+  }
+
+  private void logBatchProcessing(String name) {
+    if (logger.isLoggable(Level.INFO)) {
+      System.out.println("translating " + name);
+    }
+  }
+
+  private void processParsedBatchUnit(String path, String source, CompilationUnit unit) {
+    TimeTracker ticker = getTicker(path);
+    ticker.setTree(unit);
+    ticker.push();
+    processBatchUnit(path, source, unit, ticker);
+  }
+
+  /**
+   * Parses and processes the queued sources on a pool of worker threads.
+   * Each file is parsed with its own ASTParser, so workers share no JDT
+   * state. Each file's messages and timings are held until it completes, then
+   * printed in the order the files were queued, so output matches a
+   * single-threaded run.
+   */
+  protected void processQueuedSources() {
+    if (queuedSources.isEmpty()) {
+      return;
+    }
+    List<QueuedSource> sources = Lists.newArrayList(queuedSources);
+    queuedSources.clear();
+
+    ExecutorService executor = Executors.newFixedThreadPool(getThreadCount());
+    try {
+      List<Future<DeferredOutput>> results = Lists.newArrayListWithCapacity(sources.size());
+      for (final QueuedSource queued : sources) {
+        results.add(executor.submit(new Callable<DeferredOutput>() {
+          @Override
+          public DeferredOutput call() {
+            beginDeferredOutput();
+            try {
+              String source = queued.source != null
+                  ? queued.source : Files.toString(new File(queued.path), Options.getCharset());
+              parseAndProcessSource(queued.path, source);
+            } catch (IOException e) {
+              ErrorUtil.warning(e.getMessage());
+            }
+            return endDeferredOutput();
+          }
+        }));
+      }
+      for (int i = 0; i < sources.size(); i++) {
+        logProcessing(sources.get(i).path);
+        results.get(i).get().print();
+      }
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    } catch (ExecutionException e) {
+      throw new AssertionError(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void processBatchUnit(
+      String path, String source, CompilationUnit unit, TimeTracker ticker) {
+    ErrorUtil.setCurrentFileName(path);
+    NameTable.initialize();
+    Types.initialize(unit);
+    processUnit(path, source, unit, ticker);
+    NameTable.cleanup();
+    Types.cleanup();
+
+    ticker.pop();
+    ticker.tick("Total processing time");
+    printTimings(ticker);
+  }
+
+  /**
+   * Returns how many files may be processed concurrently. Subclasses that
+   * aren't thread-safe use the default of one.
+   */
+  protected int getThreadCount() {
+    return 1;
+  }
+
+  /**
+   * Called before a source file is processed. With multiple threads it is
+   * instead called when that file's output is printed, in queued order.
+   */
+  protected void logProcessing(String path) {
+  }
+
   protected TimeTracker getTicker(String name) {
-    if (logger.isLoggable(Level.FINEST)) {
+    if (profiler != null) {
+      return profiler.start(name);
+    } else if (logger.isLoggable(Level.FINEST)) {
       return TimeTracker.start(name);
     } else {
       return TimeTracker.noop();
@@ -16,6 +16,8 @@
 
 package com.google.devtools.j2objc;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.devtools.j2objc.util.ErrorUtil;
 import com.google.devtools.j2objc.util.JdtParser;
 
@@ -29,6 +31,8 @@ import java.net.URLClassLoader;
 import java.text.DateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.logging.Level;
@@ -55,9 +59,28 @@ public class J2ObjC {
 
   private static final Logger logger = Logger.getLogger(J2ObjC.class.getName());
 
-  private static void exit() {
-    Options.deleteTemporaryDirectory();
-    System.exit(ErrorUtil.errorCount());
+  private static final String WORKER_FLAG = "--worker";
+
+  // Plugin classes found in each plugin jar, keyed by the jar's path and
+  // modification time so that a translation worker only scans a jar once.
+  private static final Map<String, List<Class<? extends Plugin>>> pluginClasses =
+      Maps.newHashMap();
+
+  /**
+   * Thrown to end a translation with the specified exit status, so that a
+   * translation worker can report the status rather than exit.
+   */
+  static class ExitException extends RuntimeException {
+    private final int status;
+
+    ExitException(int status) {
+      super("exit status " + status);
+      this.status = status;
+    }
+
+    int getStatus() {
+      return status;
+    }
   }
 
   public static String getFileHeader(String sourceFileName) {
@@ -81,40 +104,16 @@ public class J2ObjC {
 
   private static void initPlugins(String[] pluginPaths, String pluginOptionString)
       throws IOException {
-    @SuppressWarnings("resource")
-    JarFileLoader classLoader = new JarFileLoader();
     for (String path : pluginPaths) {
       if (path.endsWith(".jar")) {
-        JarInputStream jarStream = null;
-        try {
-          jarStream = new JarInputStream(new FileInputStream(path));
-          classLoader.addJarFile(new File(path).getAbsolutePath());
-
-          JarEntry entry;
-          while ((entry = jarStream.getNextJarEntry()) != null) {
-            String entryName = entry.getName();
-            if (!entryName.endsWith(".class")) {
-              continue;
-            }
-
-            String className = entryName.replaceAll("/", "\\.").substring(
-                0, entryName.length() - ".class".length());
-
-            try {
-              Class<?> clazz = classLoader.loadClass(className);
-              if (Plugin.class.isAssignableFrom(clazz)) {
-                Constructor<?> cons = clazz.getDeclaredConstructor();
-                Plugin plugin = (Plugin) cons.newInstance();
-                plugin.initPlugin(pluginOptionString);
-                Options.getPlugins().add(plugin);
-              }
-            } catch (Exception e) {
-              throw new IOException("plugin exception: ", e);
-            }
-          }
-        } finally {
-          if (jarStream != null) {
-            jarStream.close();
+        for (Class<? extends Plugin> clazz : getPluginClasses(path)) {
+          try {
+            Constructor<? extends Plugin> cons = clazz.getDeclaredConstructor();
+            Plugin plugin = cons.newInstance();
+            plugin.initPlugin(pluginOptionString);
+            Options.getPlugins().add(plugin);
+          } catch (Exception e) {
+            throw new IOException("plugin exception: ", e);
           }
         }
       } else {
@@ -123,9 +122,53 @@ public class J2ObjC {
     }
   }
 
+  private static synchronized List<Class<? extends Plugin>> getPluginClasses(String path)
+      throws IOException {
+    File jarFile = new File(path).getAbsoluteFile();
+    String key = jarFile.getPath() + ':' + jarFile.lastModified();
+    List<Class<? extends Plugin>> classes = pluginClasses.get(key);
+    if (classes != null) {
+      return classes;
+    }
+    classes = Lists.newArrayList();
+    @SuppressWarnings("resource")
+    JarFileLoader classLoader = new JarFileLoader();
+    JarInputStream jarStream = null;
+    try {
+      jarStream = new JarInputStream(new FileInputStream(jarFile));
+      classLoader.addJarFile(jarFile.getPath());
+
+      JarEntry entry;
+      while ((entry = jarStream.getNextJarEntry()) != null) {
+        String entryName = entry.getName();
+        if (!entryName.endsWith(".class")) {
+          continue;
+        }
+
+        String className = entryName.replaceAll("/", "\\.").substring(
+            0, entryName.length() - ".class".length());
+
+        try {
+          Class<?> clazz = classLoader.loadClass(className);
+          if (Plugin.class.isAssignableFrom(clazz)) {
+            classes.add(clazz.asSubclass(Plugin.class));
+          }
+        } catch (Exception e) {
+          throw new IOException("plugin exception: ", e);
+        }
+      }
+    } finally {
+      if (jarStream != null) {
+        jarStream.close();
+      }
+    }
+    pluginClasses.put(key, classes);
+    return classes;
+  }
+
   public static void error(Exception e) {
     logger.log(Level.SEVERE, "Exiting due to exception", e);
-    System.exit(1);
+    throw new ExitException(1);
   }
 
   private static void checkErrors() {
@@ -134,11 +177,11 @@ public class J2ObjC {
       errors += ErrorUtil.warningCount();
     }
     if (errors > 0) {
-      System.exit(1);
+      throw new ExitException(1);
     }
   }
 
-  private static JdtParser createParser() {
+  static JdtParser createParser() {
     JdtParser parser = new JdtParser();
     parser.addClasspathEntries(Options.getClassPathEntries());
     parser.addClasspathEntries(Options.getBootClasspath());
@@ -154,9 +197,32 @@ public class J2ObjC {
    * Entry point for tool.
    *
    * @param args command-line arguments: flags and source file names
-   * @throws IOException
    */
   public static void main(String[] args) {
+    if (args.length == 1 && args[0].equals(WORKER_FLAG)) {
+      System.exit(new TranslationWorker(System.in, System.out).run());
+    }
+    System.exit(run(args));
+  }
+
+  /**
+   * Translates the sources specified by a command-line.
+   *
+   * @param args command-line arguments: flags and source file names
+   * @return the tool's exit status
+   */
+  static int run(String[] args) {
+    try {
+      translate(args);
+      return ErrorUtil.errorCount();
+    } catch (ExitException e) {
+      return e.getStatus();
+    } finally {
+      Options.deleteTemporaryDirectory();
+    }
+  }
+
+  private static void translate(String[] args) {
     if (args.length == 0) {
       Options.help(true);
     }
@@ -168,7 +234,7 @@ public class J2ObjC {
       }
     } catch (IOException e) {
       ErrorUtil.error(e.getMessage());
-      System.exit(1);
+      throw new ExitException(1);
     }
 
     try {
@@ -177,22 +243,57 @@ public class J2ObjC {
       error(e);
     }
 
+    // Worker threads read the mappings, so they're loaded before any start.
+    TranslationProcessor.loadMappingFiles();
+
     JdtParser parser = createParser();
 
     // Remove dead-code first, so modified file paths are replaced in the
     // translation list.
     DeadCodeProcessor deadCodeProcessor = DeadCodeProcessor.create(parser);
+    TranslationProcessor translationProcessor = new TranslationProcessor(parser);
+    Profiler profiler = Options.getProfileFile() != null ? new Profiler() : null;
+    translationProcessor.setProfiler(profiler);
     if (deadCodeProcessor != null) {
+      deadCodeProcessor.setProfiler(profiler);
       deadCodeProcessor.processFiles(Arrays.asList(files));
       checkErrors();
       files = deadCodeProcessor.postProcess().toArray(new String[0]);
+      translationProcessor.addSourceContents(deadCodeProcessor.getRewrittenSources());
+    }
+
+    // With --closed-world, functions can replace methods that no translated
+    // class overrides, which is only known once every source file is read.
+    // This costs an extra parse of every file. With --build-closure, files
+    // added during translation might override them.
+    if (Options.finalMethodsAsFunctions() && Options.closedWorld() && !Options.buildClosure()) {
+      ClassHierarchyProcessor hierarchyProcessor = new ClassHierarchyProcessor(parser);
+      hierarchyProcessor.setProfiler(profiler);
+      if (deadCodeProcessor != null) {
+        hierarchyProcessor.addSourceContents(
+            Maps.newHashMap(deadCodeProcessor.getRewrittenSources()));
+      }
+      hierarchyProcessor.processFiles(Arrays.asList(files));
+      checkErrors();
+      translationProcessor.setClassHierarchy(hierarchyProcessor.getClassHierarchy());
     }
 
-    TranslationProcessor translationProcessor = new TranslationProcessor(parser);
     translationProcessor.processFiles(Arrays.asList(files));
     translationProcessor.postProcess();
+    if (Options.getStaticInitReportFile() != null) {
+      try {
+        translationProcessor.writeStaticInitReport(Options.getStaticInitReportFile());
+      } catch (IOException e) {
+        ErrorUtil.error("cannot write static init report: " + e.getMessage());
+      }
+    }
+    if (profiler != null) {
+      try {
+        profiler.write(Options.getProfileFile());
+      } catch (IOException e) {
+        ErrorUtil.error("cannot write profile: " + e.getMessage());
+      }
+    }
     checkErrors();
-
-    exit();
   }
 }
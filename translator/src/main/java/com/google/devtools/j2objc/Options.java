@@ -17,10 +17,12 @@
 package com.google.devtools.j2objc;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
 import com.google.devtools.j2objc.util.ErrorUtil;
 
@@ -35,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 import java.util.logging.Logger;
 
 /**
@@ -72,9 +75,20 @@ public class Options {
   private static boolean extractUnsequencedModifications = false;
   private static boolean docCommentsEnabled = false;
   private static boolean finalMethodsAsFunctions = false;
+  private static boolean closedWorld = false;
+  private static boolean unboxLocals = false;
+  private static boolean directStaticConstants = false;
+  private static boolean compactMetadata = false;
+  private static List<Pattern> metadataKeepRules = null;
+  private static boolean inlineMonitors = false;
   private static int batchTranslateMaximum = 0;
+  private static int batchTranslateMemory = 0;
+  private static int translationThreads = 1;
 
   private static File proGuardUsageFile = null;
+  private static File cacheDirectory = null;
+  private static File profileFile = null;
+  private static File staticInitReportFile = null;
 
   private static final String JRE_MAPPINGS_FILE = "JRE.mappings";
   private static final List<String> mappingFiles = Lists.newArrayList(JRE_MAPPINGS_FILE);
@@ -90,6 +104,10 @@ public class Options {
   private static String bootclasspath = System.getProperty("sun.boot.class.path");
   private static Map<String, String> packagePrefixes = Maps.newHashMap();
   private static final String BATCH_PROCESSING_MAX_FLAG = "--batch-translate-max=";
+  private static final String BATCH_PROCESSING_MEMORY_FLAG = "--batch-translate-memory=";
+  private static final String THREADS_FLAG = "--threads=";
+  private static final String PROFILE_FLAG = "--profile=";
+  private static final String STATIC_INIT_REPORT_FLAG = "--static-init-report=";
 
   static {
     // Load string resources.
@@ -120,6 +138,58 @@ public class Options {
     Logger.getLogger("com.google.devtools.j2objc").setLevel(level);
   }
 
+  /**
+   * Restores every option to its default value, so that a translation worker
+   * can load a new command-line for each request. Plugins should be ended
+   * before their options are reset.
+   */
+  public static void reset() {
+    sourcePathEntries = Lists.newArrayList(".");
+    classPathEntries = Lists.newArrayList(".");
+    pluginPathEntries = Lists.newArrayList();
+    pluginOptionString = "";
+    plugins = new ArrayList<Plugin>();
+    outputDirectory = new File(".");
+    usePackageDirectories = true;
+    implementationSuffix = ".m";
+    ignoreMissingImports = false;
+    memoryManagementOption = null;
+    emitLineDirectives = false;
+    warningsAsErrors = false;
+    deprecatedDeclarations = false;
+    classMappings = Maps.newLinkedHashMap();
+    methodMappings = Maps.newLinkedHashMap();
+    memoryDebug = false;
+    generateNativeStubs = false;
+    stripGwtIncompatible = false;
+    segmentedHeaders = false;
+    fileEncoding = System.getProperty("file.encoding", "UTF-8");
+    jsniWarnings = true;
+    buildClosure = false;
+    stripReflection = false;
+    extractUnsequencedModifications = false;
+    docCommentsEnabled = false;
+    finalMethodsAsFunctions = false;
+    closedWorld = false;
+    unboxLocals = false;
+    directStaticConstants = false;
+    compactMetadata = false;
+    metadataKeepRules = null;
+    inlineMonitors = false;
+    batchTranslateMaximum = 0;
+    batchTranslateMemory = 0;
+    translationThreads = 1;
+    proGuardUsageFile = null;
+    cacheDirectory = null;
+    profileFile = null;
+    staticInitReportFile = null;
+    mappingFiles.clear();
+    mappingFiles.add(JRE_MAPPINGS_FILE);
+    deleteTemporaryDirectory();
+    bootclasspath = System.getProperty("sun.boot.class.path");
+    packagePrefixes = Maps.newHashMap();
+  }
+
   /**
    * Load the options from a command-line, returning the arguments that were
    * not option-related (usually files).  If help is requested or an error is
@@ -176,6 +246,11 @@ public class Options {
           usage("--dead-code-report requires an argument");
         }
         proGuardUsageFile = new File(args[nArg]);
+      } else if (arg.equals("--cache-dir")) {
+        if (++nArg == args.length) {
+          usage("--cache-dir requires an argument");
+        }
+        cacheDirectory = new File(args[nArg]);
       } else if (arg.equals("--prefix")) {
         if (++nArg == args.length) {
           usage("--prefix requires an argument");
@@ -253,11 +328,39 @@ public class Options {
         extractUnsequencedModifications = true;
       } else if (arg.equals("--doc-comments")) {
         docCommentsEnabled = true;
+      } else if (arg.startsWith(PROFILE_FLAG)) {
+        profileFile = new File(arg.substring(PROFILE_FLAG.length()));
       } else if (arg.startsWith(BATCH_PROCESSING_MAX_FLAG)) {
         batchTranslateMaximum =
             Integer.parseInt(arg.substring(BATCH_PROCESSING_MAX_FLAG.length()));
+      } else if (arg.startsWith(BATCH_PROCESSING_MEMORY_FLAG)) {
+        parseBatchTranslateMemory(arg.substring(BATCH_PROCESSING_MEMORY_FLAG.length()));
+      } else if (arg.equals("-j")) {
+        if (++nArg == args.length) {
+          usage("-j requires an argument");
+        }
+        parseTranslationThreads(args[nArg]);
+      } else if (arg.startsWith(THREADS_FLAG)) {
+        parseTranslationThreads(arg.substring(THREADS_FLAG.length()));
       } else if (arg.equals("--final-methods-as-functions")) {
         finalMethodsAsFunctions = true;
+      } else if (arg.equals("--closed-world")) {
+        closedWorld = true;
+      } else if (arg.equals("--unbox-locals")) {
+        unboxLocals = true;
+      } else if (arg.equals("--direct-static-constants")) {
+        directStaticConstants = true;
+      } else if (arg.equals("--inline-monitors")) {
+        inlineMonitors = true;
+      } else if (arg.equals("--compact-metadata")) {
+        compactMetadata = true;
+      } else if (arg.equals("--keep-metadata")) {
+        if (++nArg == args.length) {
+          usage("--keep-metadata requires an argument");
+        }
+        addMetadataKeepRules(args[nArg]);
+      } else if (arg.startsWith(STATIC_INIT_REPORT_FLAG)) {
+        staticInitReportFile = new File(arg.substring(STATIC_INIT_REPORT_FLAG.length()));
       } else if (arg.startsWith("-h") || arg.equals("--help")) {
         help(false);
       } else if (arg.startsWith("-")) {
@@ -311,6 +414,45 @@ public class Options {
     addPrefixProperties(props);
   }
 
+  /**
+   * Adds the metadata keep rules in a file, one per line. Blank lines and
+   * lines that start with '#' are ignored.
+   */
+  private static void addMetadataKeepRules(String filename) throws IOException {
+    for (String line : Files.readLines(new File(filename), Charsets.UTF_8)) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        addMetadataKeepRule(line);
+      }
+    }
+  }
+
+  /**
+   * Adds a rule that keeps the reflection metadata of the classes it
+   * matches. A rule is a binary class name, such as "foo.bar.Outer$Inner",
+   * where "*" matches any part of a name without a '.', and "**" matches
+   * any part of a name.
+   */
+  @VisibleForTesting
+  public static void addMetadataKeepRule(String rule) {
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < rule.length(); i++) {
+      char c = rule.charAt(i);
+      if (c != '*') {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      } else if (i + 1 < rule.length() && rule.charAt(i + 1) == '*') {
+        regex.append(".*");
+        i++;
+      } else {
+        regex.append("[^.]*");
+      }
+    }
+    if (metadataKeepRules == null) {
+      metadataKeepRules = Lists.newArrayList();
+    }
+    metadataKeepRules.add(Pattern.compile(regex.toString()));
+  }
+
   @VisibleForTesting
   static void addPrefixProperties(Properties props) {
     for (String pkg : props.stringPropertyNames()) {
@@ -318,6 +460,28 @@ public class Options {
     }
   }
 
+  private static void parseTranslationThreads(String value) {
+    try {
+      translationThreads = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      usage("invalid thread count: " + value);
+    }
+    if (translationThreads < 1) {
+      usage("thread count must be at least 1");
+    }
+  }
+
+  private static void parseBatchTranslateMemory(String value) {
+    try {
+      batchTranslateMemory = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      usage("invalid batch memory size: " + value);
+    }
+    if (batchTranslateMemory < 1) {
+      usage("batch memory size must be at least 1 megabyte");
+    }
+  }
+
   /**
    * Check that the memory management option wasn't previously set to a
    * different value.  If okay, then set the option.
@@ -333,13 +497,13 @@ public class Options {
   public static void usage(String invalidUseMsg) {
     System.err.println("j2objc: " + invalidUseMsg);
     System.err.println(usageMessage);
-    System.exit(1);
+    throw new J2ObjC.ExitException(1);
   }
 
   public static void help(boolean errorExit) {
     System.err.println(helpMessage);
     // javac exits with 2, but any non-zero value works.
-    System.exit(errorExit ? 2 : 0);
+    throw new J2ObjC.ExitException(errorExit ? 2 : 0);
   }
 
   private static List<String> getPathArgument(String argument) {
@@ -515,6 +679,35 @@ public class Options {
     return proGuardUsageFile;
   }
 
+  /**
+   * The directory of the translation cache, or null if translated files
+   * aren't cached.
+   */
+  public static File getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+  @VisibleForTesting
+  public static void setCacheDirectory(File dir) {
+    cacheDirectory = dir;
+  }
+
+  /**
+   * The file a JSON profile of the translation is written to, or null if
+   * the translation isn't profiled.
+   */
+  public static File getProfileFile() {
+    return profileFile;
+  }
+
+  /**
+   * The file that lists the translated classes still initialized lazily, or
+   * null if no report is written.
+   */
+  public static File getStaticInitReportFile() {
+    return staticInitReportFile;
+  }
+
   public static List<String> getBootClasspath() {
     return getPathArgument(bootclasspath);
   }
@@ -640,6 +833,35 @@ public class Options {
     return batchTranslateMaximum;
   }
 
+  /**
+   * The heap budget in megabytes for parsing batched sources, or zero if
+   * batches are sized only by file count. With a budget, batched sources
+   * are partitioned by package into batches whose estimated parsing cost
+   * fits the budget.
+   */
+  public static int batchTranslateMemory() {
+    return batchTranslateMemory;
+  }
+
+  @VisibleForTesting
+  public static void setBatchTranslateMemory(int megabytes) {
+    batchTranslateMemory = megabytes;
+  }
+
+  /**
+   * The number of threads used to translate independent compilation units.
+   * Batches partitioned by memory budget are also parsed concurrently, each
+   * in its own parser.
+   */
+  public static int translationThreads() {
+    return translationThreads;
+  }
+
+  @VisibleForTesting
+  public static void setTranslationThreads(int n) {
+    translationThreads = n;
+  }
+
   public static boolean finalMethodsAsFunctions() {
     return finalMethodsAsFunctions;
   }
@@ -653,4 +875,104 @@ public class Options {
   public static void resetFinalMethodsAsFunctions() {
     finalMethodsAsFunctions = false;
   }
+
+  /**
+   * Returns true if the translated classes are never extended by code that
+   * is translated separately, so methods that no translated class overrides
+   * don't need dynamic dispatch.
+   */
+  public static boolean closedWorld() {
+    return closedWorld;
+  }
+
+  @VisibleForTesting
+  public static void enableClosedWorld() {
+    closedWorld = true;
+  }
+
+  @VisibleForTesting
+  public static void resetClosedWorld() {
+    closedWorld = false;
+  }
+
+  public static boolean unboxLocals() {
+    return unboxLocals;
+  }
+
+  @VisibleForTesting
+  public static void enableUnboxLocals() {
+    unboxLocals = true;
+  }
+
+  @VisibleForTesting
+  public static void resetUnboxLocals() {
+    unboxLocals = false;
+  }
+
+  public static boolean directStaticConstants() {
+    return directStaticConstants;
+  }
+
+  @VisibleForTesting
+  public static void enableDirectStaticConstants() {
+    directStaticConstants = true;
+  }
+
+  @VisibleForTesting
+  public static void resetDirectStaticConstants() {
+    directStaticConstants = false;
+  }
+
+  public static boolean compactMetadata() {
+    return compactMetadata;
+  }
+
+  @VisibleForTesting
+  public static void enableCompactMetadata() {
+    compactMetadata = true;
+  }
+
+  @VisibleForTesting
+  public static void resetCompactMetadata() {
+    compactMetadata = false;
+  }
+
+  /**
+   * Returns true if the reflection metadata of a class is generated, given
+   * its binary name. Without keep rules, every class keeps its metadata.
+   */
+  public static boolean keepsMetadata(String binaryName) {
+    if (metadataKeepRules == null) {
+      return true;
+    }
+    for (Pattern rule : metadataKeepRules) {
+      if (rule.matcher(binaryName).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static List<Pattern> getMetadataKeepRules() {
+    return metadataKeepRules;
+  }
+
+  @VisibleForTesting
+  public static void resetMetadataKeepRules() {
+    metadataKeepRules = null;
+  }
+
+  public static boolean inlineMonitors() {
+    return inlineMonitors;
+  }
+
+  @VisibleForTesting
+  public static void enableInlineMonitors() {
+    inlineMonitors = true;
+  }
+
+  @VisibleForTesting
+  public static void resetInlineMonitors() {
+    inlineMonitors = false;
+  }
 }
@@ -0,0 +1,397 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.primitives.Longs;
+import com.google.devtools.j2objc.ast.TreeNode;
+import com.google.devtools.j2objc.ast.TreeVisitor;
+import com.google.devtools.j2objc.util.TimeTracker;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the cost of each translation step of each file, and writes them
+ * with per-step totals and percentiles as a JSON report. For each step the
+ * report has the elapsed nanoseconds, the bytes allocated by the translating
+ * thread (when the JVM supports measuring it), the number of nodes in the
+ * tree before and after, and the size of any file it generated.
+ *
+ * <p>Steps are the time slices of the {@link TimeTracker} returned by
+ * {@link #start}. Counting tree nodes takes a traversal after every step, so
+ * the time and memory this takes are excluded from the measurements.
+ */
+class Profiler {
+
+  private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private static final boolean allocationSupported = isAllocationSupported();
+
+  private static final int MAX_LEVELS = 16;
+  private static final double[] PERCENTILES = { 50, 90, 99, 100 };
+  private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "max" };
+
+  private final List<Sample> samples = Lists.newArrayList();
+
+  private static class Sample {
+    final String file;
+    final String step;
+    final int level;
+    final long nanos;
+    final long allocatedBytes;
+    final int nodesBefore;
+    final int nodesAfter;
+    final long outputBytes;
+
+    Sample(String file, String step, int level, long nanos, long allocatedBytes,
+        int nodesBefore, int nodesAfter, long outputBytes) {
+      this.file = file;
+      this.step = step;
+      this.level = level;
+      this.nanos = nanos;
+      this.allocatedBytes = allocatedBytes;
+      this.nodesBefore = nodesBefore;
+      this.nodesAfter = nodesAfter;
+      this.outputBytes = outputBytes;
+    }
+  }
+
+  /**
+   * Returns a tracker that records the steps of processing a file.
+   */
+  TimeTracker start(String file) {
+    return new Tracker(file);
+  }
+
+  private synchronized void add(Sample sample) {
+    samples.add(sample);
+  }
+
+  void write(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (dir != null && !dir.exists()) {
+      dir.mkdirs();
+    }
+    Files.write(toJson(), file, Charsets.UTF_8);
+  }
+
+  synchronized String toJson() {
+    // Group the samples by file, keeping each file's steps in order.
+    Map<String, List<Sample>> samplesByFile = Maps.newTreeMap();
+    Map<String, List<Sample>> samplesByStep = Maps.newLinkedHashMap();
+    for (Sample sample : samples) {
+      getList(samplesByFile, sample.file).add(sample);
+      getList(samplesByStep, sample.step).add(sample);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n  \"files\": [");
+    boolean firstFile = true;
+    for (Map.Entry<String, List<Sample>> entry : samplesByFile.entrySet()) {
+      sb.append(firstFile ? "\n" : ",\n");
+      firstFile = false;
+      sb.append("    {\"file\": ");
+      TranslationWorker.appendJsonString(sb, entry.getKey());
+      sb.append(", \"steps\": [");
+      boolean firstStep = true;
+      for (Sample sample : entry.getValue()) {
+        sb.append(firstStep ? "\n" : ",\n");
+        firstStep = false;
+        sb.append("      {\"step\": ");
+        TranslationWorker.appendJsonString(sb, sample.step);
+        sb.append(", \"level\": ").append(sample.level);
+        sb.append(", \"nanos\": ").append(sample.nanos);
+        appendField(sb, "allocatedBytes", sample.allocatedBytes);
+        appendField(sb, "nodesBefore", sample.nodesBefore);
+        appendField(sb, "nodesAfter", sample.nodesAfter);
+        appendField(sb, "outputBytes", sample.outputBytes);
+        sb.append('}');
+      }
+      sb.append("]}");
+    }
+    sb.append("\n  ],\n  \"steps\": [");
+
+    List<StepTotals> totals = Lists.newArrayList();
+    for (Map.Entry<String, List<Sample>> entry : samplesByStep.entrySet()) {
+      totals.add(new StepTotals(entry.getKey(), entry.getValue()));
+    }
+    // Most expensive first.
+    Collections.sort(totals, new Comparator<StepTotals>() {
+      @Override
+      public int compare(StepTotals a, StepTotals b) {
+        return Longs.compare(b.nanos[b.nanos.length - 1], a.nanos[a.nanos.length - 1]);
+      }
+    });
+    boolean firstStep = true;
+    for (StepTotals total : totals) {
+      sb.append(firstStep ? "\n" : ",\n");
+      firstStep = false;
+      total.appendJson(sb);
+    }
+    sb.append("\n  ]\n}\n");
+    return sb.toString();
+  }
+
+  private static List<Sample> getList(Map<String, List<Sample>> map, String key) {
+    List<Sample> list = map.get(key);
+    if (list == null) {
+      list = Lists.newArrayList();
+      map.put(key, list);
+    }
+    return list;
+  }
+
+  /**
+   * Appends a field, unless its value wasn't measured.
+   */
+  private static void appendField(StringBuilder sb, String name, long value) {
+    if (value >= 0) {
+      sb.append(", \"").append(name).append("\": ").append(value);
+    }
+  }
+
+  /**
+   * The aggregated measurements of one step across all files.
+   */
+  private static class StepTotals {
+    private final String step;
+    private final int count;
+
+    // Sorted per-file values, with the sum as the last element.
+    private final long[] nanos;
+    private final long[] allocatedBytes;
+
+    private long nodesBefore = -1;
+    private long nodesAfter = -1;
+    private long outputBytes = -1;
+
+    StepTotals(String step, List<Sample> samples) {
+      this.step = step;
+      count = samples.size();
+      nanos = new long[count + 1];
+      allocatedBytes = new long[count + 1];
+      boolean allocationMeasured = true;
+      for (int i = 0; i < count; i++) {
+        Sample sample = samples.get(i);
+        nanos[i] = sample.nanos;
+        allocatedBytes[i] = sample.allocatedBytes;
+        allocationMeasured &= sample.allocatedBytes >= 0;
+        nodesBefore = addMeasured(nodesBefore, sample.nodesBefore);
+        nodesAfter = addMeasured(nodesAfter, sample.nodesAfter);
+        outputBytes = addMeasured(outputBytes, sample.outputBytes);
+      }
+      sortAndSum(nanos);
+      if (allocationMeasured) {
+        sortAndSum(allocatedBytes);
+      } else {
+        allocatedBytes[count] = -1;
+      }
+    }
+
+    private static long addMeasured(long total, long value) {
+      if (value < 0) {
+        return total;
+      }
+      return total < 0 ? value : total + value;
+    }
+
+    private static void sortAndSum(long[] values) {
+      int n = values.length - 1;
+      Arrays.sort(values, 0, n);
+      long sum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += values[i];
+      }
+      values[n] = sum;
+    }
+
+    void appendJson(StringBuilder sb) {
+      sb.append("    {\"step\": ");
+      TranslationWorker.appendJsonString(sb, step);
+      sb.append(", \"count\": ").append(count);
+      sb.append(", \"totalNanos\": ").append(nanos[count]);
+      appendPercentiles(sb, "nanos", nanos);
+      if (allocatedBytes[count] >= 0) {
+        sb.append(", \"totalAllocatedBytes\": ").append(allocatedBytes[count]);
+        appendPercentiles(sb, "allocatedBytes", allocatedBytes);
+      }
+      appendField(sb, "totalNodesBefore", nodesBefore);
+      appendField(sb, "totalNodesAfter", nodesAfter);
+      appendField(sb, "totalOutputBytes", outputBytes);
+      sb.append('}');
+    }
+
+    /**
+     * Appends nearest-rank percentiles of the sorted per-file values.
+     */
+    private void appendPercentiles(StringBuilder sb, String name, long[] values) {
+      sb.append(", \"").append(name).append("\": {");
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        int rank = (int) Math.ceil(PERCENTILES[i] / 100 * count);
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append('"').append(PERCENTILE_NAMES[i]).append("\": ")
+            .append(values[Math.max(rank, 1) - 1]);
+      }
+      sb.append('}');
+    }
+  }
+
+  private static boolean isAllocationSupported() {
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+      return bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled();
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of bytes the current thread has allocated, or -1 if
+   * the JVM can't measure it.
+   */
+  static long allocatedBytes() {
+    if (!allocationSupported) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(
+        Thread.currentThread().getId());
+  }
+
+  private class Tracker extends TimeTracker {
+    private final String file;
+    private int currentLevel = 0;
+    private final long[] lastNanos = new long[MAX_LEVELS];
+    private final long[] lastBytes = new long[MAX_LEVELS];
+    private final int[] lastNodes = new int[MAX_LEVELS];
+
+    // The time and memory spent counting nodes, which are excluded from
+    // each step, and their values at each level's last tick.
+    private long overheadNanos = 0;
+    private long overheadBytes = 0;
+    private final long[] lastOverheadNanos = new long[MAX_LEVELS];
+    private final long[] lastOverheadBytes = new long[MAX_LEVELS];
+
+    private ASTNode jdtRoot;
+    private TreeNode root;
+
+    Tracker(String file) {
+      this.file = file;
+      lastNodes[0] = -1;
+      mark();
+    }
+
+    @Override
+    public void setTree(ASTNode root) {
+      jdtRoot = root;
+      this.root = null;
+    }
+
+    @Override
+    public void setTree(TreeNode root) {
+      jdtRoot = null;
+      this.root = root;
+    }
+
+    @Override
+    public void tick(String event) {
+      record(event, -1);
+    }
+
+    @Override
+    public void tick(String event, File output) {
+      record(event, output.length());
+    }
+
+    @Override
+    public void push() {
+      currentLevel++;
+      lastNodes[currentLevel] = countNodes();
+      mark();
+    }
+
+    @Override
+    public void pop() {
+      currentLevel--;
+    }
+
+    private void record(String event, long outputBytes) {
+      long nanos = System.nanoTime() - lastNanos[currentLevel]
+          - (overheadNanos - lastOverheadNanos[currentLevel]);
+      long bytes = -1;
+      if (allocationSupported) {
+        bytes = allocatedBytes() - lastBytes[currentLevel]
+            - (overheadBytes - lastOverheadBytes[currentLevel]);
+      }
+      int nodes = countNodes();
+      add(new Sample(file, event, currentLevel, nanos, bytes, lastNodes[currentLevel], nodes,
+          outputBytes));
+      lastNodes[currentLevel] = nodes;
+      mark();
+    }
+
+    private void mark() {
+      lastNanos[currentLevel] = System.nanoTime();
+      lastBytes[currentLevel] = allocatedBytes();
+      lastOverheadNanos[currentLevel] = overheadNanos;
+      lastOverheadBytes[currentLevel] = overheadBytes;
+    }
+
+    /**
+     * Returns the size of the current tree, or -1 if there is none.
+     */
+    private int countNodes() {
+      if (jdtRoot == null && root == null) {
+        return -1;
+      }
+      long startNanos = System.nanoTime();
+      long startBytes = allocatedBytes();
+      final int[] count = new int[1];
+      if (jdtRoot != null) {
+        jdtRoot.accept(new ASTVisitor(true) {
+          @Override
+          public boolean preVisit2(ASTNode node) {
+            count[0]++;
+            return true;
+          }
+        });
+      } else {
+        root.accept(new TreeVisitor() {
+          @Override
+          public boolean preVisit(TreeNode node) {
+            count[0]++;
+            return true;
+          }
+        });
+      }
+      overheadNanos += System.nanoTime() - startNanos;
+      overheadBytes += allocatedBytes() - startBytes;
+      return count[0];
+    }
+  }
+}
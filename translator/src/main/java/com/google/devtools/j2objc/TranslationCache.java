@@ -0,0 +1,359 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.util.ErrorUtil;
+
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.IAnnotationBinding;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.SimpleName;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * An on-disk cache of translated files, so that sources whose translation
+ * can't have changed aren't translated again. A cache entry is keyed on the
+ * source's contents, the options and mappings that affect translation, and a
+ * digest of the API of every type the source references. The generated files
+ * for an entry are copied back to the output directory on a hit.
+ */
+class TranslationCache {
+
+  private static final Logger logger = Logger.getLogger(TranslationCache.class.getName());
+
+  private static final String ENTRY_FILE = "entry.properties";
+  private static final String KEY_PROPERTY = "key";
+  private static final String OUTPUTS_PROPERTY = "outputs";
+  private static final String DEPENDENCIES_PROPERTY = "dependencies";
+  private static final Joiner LIST_JOINER = Joiner.on(',');
+  private static final Splitter LIST_SPLITTER = Splitter.on(',').omitEmptyStrings();
+
+  private final File cacheDir;
+  private final File outputDir;
+
+  // Digest of all translation inputs that are shared by every file, computed
+  // lazily because the mapping files are loaded lazily.
+  private String runKey = null;
+
+  private TranslationCache(File cacheDir, File outputDir) {
+    this.cacheDir = cacheDir;
+    this.outputDir = outputDir;
+  }
+
+  /**
+   * Returns a cache for the --cache-dir directory, or null if no cache
+   * directory was specified.
+   */
+  public static TranslationCache create() {
+    File cacheDir = Options.getCacheDirectory();
+    if (cacheDir == null) {
+      return null;
+    }
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+      ErrorUtil.warning("cannot create cache directory: " + cacheDir);
+      return null;
+    }
+    return new TranslationCache(cacheDir, Options.getOutputDirectory());
+  }
+
+  /**
+   * Returns the cache key for a parsed source file.
+   */
+  public String computeKey(String source, CompilationUnit unit, Map<String, String> mappings) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(getRunKey(mappings), Charsets.UTF_8);
+    hasher.putString(source, Charsets.UTF_8);
+    for (String signature : getReferencedTypeSignatures(unit)) {
+      hasher.putString(signature, Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Copies the cached output files for a source to the output directory.
+   *
+   * @return the cached build-closure dependencies of the source, or null if
+   *     there isn't a valid entry for this key
+   */
+  public List<String> restore(String relativePath, String key) {
+    File entryDir = getEntryDir(relativePath);
+    Properties entry = readEntry(entryDir);
+    if (entry == null || !key.equals(entry.getProperty(KEY_PROPERTY))) {
+      return null;
+    }
+    List<String> outputs = Lists.newArrayList(
+        LIST_SPLITTER.split(entry.getProperty(OUTPUTS_PROPERTY, "")));
+    try {
+      for (int i = 0; i < outputs.size(); i++) {
+        File cachedFile = new File(entryDir, Integer.toString(i));
+        if (!cachedFile.exists()) {
+          return null;
+        }
+        File outputFile = new File(outputDir, outputs.get(i));
+        Files.createParentDirs(outputFile);
+        Files.copy(cachedFile, outputFile);
+      }
+    } catch (IOException e) {
+      logger.fine("cache restore failed for " + relativePath + ": " + e);
+      return null;
+    }
+    logger.finest("restored " + relativePath + " from translation cache");
+    return Lists.newArrayList(
+        LIST_SPLITTER.split(entry.getProperty(DEPENDENCIES_PROPERTY, "")));
+  }
+
+  /**
+   * Saves the output files generated for a source, which are specified
+   * relative to the output directory.
+   */
+  public void store(
+      String relativePath, String key, List<String> outputs, List<String> dependencies) {
+    File entryDir = getEntryDir(relativePath);
+    try {
+      if (!entryDir.isDirectory() && !entryDir.mkdirs() && !entryDir.isDirectory()) {
+        throw new IOException("cannot create " + entryDir);
+      }
+      // Invalidate any previous entry before its outputs are replaced.
+      File entryFile = new File(entryDir, ENTRY_FILE);
+      entryFile.delete();
+      for (int i = 0; i < outputs.size(); i++) {
+        Files.copy(new File(outputDir, outputs.get(i)), new File(entryDir, Integer.toString(i)));
+      }
+      Properties entry = new Properties();
+      entry.setProperty(KEY_PROPERTY, key);
+      entry.setProperty(OUTPUTS_PROPERTY, LIST_JOINER.join(outputs));
+      entry.setProperty(DEPENDENCIES_PROPERTY, LIST_JOINER.join(dependencies));
+
+      // Write the entry file last, and atomically, so that an interrupted
+      // store never leaves an entry whose key matches partial outputs.
+      File tmpFile = new File(entryDir, ENTRY_FILE + ".tmp");
+      OutputStream out = new FileOutputStream(tmpFile);
+      try {
+        entry.store(out, relativePath);
+      } finally {
+        out.close();
+      }
+      if (!tmpFile.renameTo(entryFile)) {
+        throw new IOException("cannot rename " + tmpFile);
+      }
+    } catch (IOException e) {
+      ErrorUtil.warning("cannot update translation cache: " + e.getMessage());
+    }
+  }
+
+  private File getEntryDir(String relativePath) {
+    return new File(cacheDir, Hashing.sha1().hashString(relativePath, Charsets.UTF_8).toString());
+  }
+
+  private static Properties readEntry(File entryDir) {
+    File entryFile = new File(entryDir, ENTRY_FILE);
+    if (!entryFile.exists()) {
+      return null;
+    }
+    Properties entry = new Properties();
+    try {
+      InputStream in = new FileInputStream(entryFile);
+      try {
+        entry.load(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return entry;
+  }
+
+  private synchronized String getRunKey(Map<String, String> methodMappings) {
+    if (runKey == null) {
+      Hasher hasher = Hashing.sha1().newHasher();
+      hasher.putString(getTranslatorVersion(), Charsets.UTF_8);
+      hasher.putString(getOptionsKey(), Charsets.UTF_8);
+      putMap(hasher, Options.getClassMappings());
+      putMap(hasher, methodMappings);
+      putMap(hasher, Options.getPackagePrefixes());
+      runKey = hasher.hash().toString();
+    }
+    return runKey;
+  }
+
+  private static void putMap(Hasher hasher, Map<String, String> map) {
+    for (String key : new TreeSet<String>(map.keySet())) {
+      hasher.putString(key, Charsets.UTF_8).putString(map.get(key), Charsets.UTF_8);
+    }
+    hasher.putInt(map.size());
+  }
+
+  /**
+   * Returns the options that affect the contents of generated files.
+   */
+  private static String getOptionsKey() {
+    return Joiner.on(';').join(
+        Options.getMemoryManagementOption(),
+        Options.getImplementationFileSuffix(),
+        Options.usePackageDirectories(),
+        Options.emitLineDirectives(),
+        Options.generateDeprecatedDeclarations(),
+        Options.memoryDebug(),
+        Options.generateNativeStubs(),
+        Options.stripGwtIncompatibleMethods(),
+        Options.generateSegmentedHeaders(),
+        Options.jsniWarnings(),
+        Options.stripReflection(),
+        Options.extractUnsequencedModifications(),
+        Options.docCommentsEnabled(),
+        Options.finalMethodsAsFunctions(),
+        Options.closedWorld(),
+        Options.unboxLocals(),
+        Options.directStaticConstants(),
+        Options.compactMetadata(),
+        String.valueOf(Options.getMetadataKeepRules()),
+        Options.inlineMonitors(),
+        Options.fileEncoding());
+  }
+
+  /**
+   * Identifies the translator build, so that an updated translator doesn't
+   * reuse another build's output.
+   */
+  private static String getTranslatorVersion() {
+    CodeSource codeSource = J2ObjC.class.getProtectionDomain().getCodeSource();
+    URL location = codeSource != null ? codeSource.getLocation() : null;
+    if (location != null && "file".equals(location.getProtocol())) {
+      File f = new File(location.getPath());
+      return f.getPath() + ':' + f.lastModified() + ':' + f.length();
+    }
+    return "";
+  }
+
+  /**
+   * Returns a sorted list of signatures of the types referenced by a unit,
+   * and their supertypes. Types declared by the unit are covered by its
+   * source and are skipped.
+   */
+  private static List<String> getReferencedTypeSignatures(final CompilationUnit unit) {
+    final Set<ITypeBinding> types = Sets.newHashSet();
+    unit.accept(new ASTVisitor() {
+      @Override
+      public boolean visit(SimpleName node) {
+        addType(getReferencedType(node.resolveBinding()));
+        return true;
+      }
+
+      @Override
+      public void endVisit(SimpleName node) {
+        addType(node.resolveTypeBinding());
+      }
+
+      private void addType(ITypeBinding type) {
+        while (type != null && type.isArray()) {
+          type = type.getElementType();
+        }
+        if (type == null || type.isPrimitive() || type.isTypeVariable()) {
+          return;
+        }
+        type = type.getTypeDeclaration();
+        if (types.add(type)) {
+          addType(type.getSuperclass());
+          for (ITypeBinding intrface : type.getInterfaces()) {
+            addType(intrface);
+          }
+          addType(type.getDeclaringClass());
+        }
+      }
+    });
+
+    List<String> signatures = Lists.newArrayList();
+    for (ITypeBinding type : types) {
+      if (unit.findDeclaringNode(type) == null) {
+        signatures.add(getSignature(type));
+      }
+    }
+    Collections.sort(signatures);
+    return signatures;
+  }
+
+  private static ITypeBinding getReferencedType(IBinding binding) {
+    if (binding instanceof ITypeBinding) {
+      return (ITypeBinding) binding;
+    } else if (binding instanceof IMethodBinding) {
+      return ((IMethodBinding) binding).getDeclaringClass();
+    } else if (binding instanceof IVariableBinding) {
+      return ((IVariableBinding) binding).getDeclaringClass();
+    }
+    return null;
+  }
+
+  /**
+   * Returns a string describing the parts of a type that can affect how
+   * references to it are translated. Private members are ignored, since
+   * other types can't refer to them.
+   */
+  private static String getSignature(ITypeBinding type) {
+    List<String> members = Lists.newArrayList();
+    for (IAnnotationBinding annotation : type.getAnnotations()) {
+      members.add("@" + annotation);
+    }
+    for (IVariableBinding field : type.getDeclaredFields()) {
+      if (!Modifier.isPrivate(field.getModifiers())) {
+        members.add(field.getModifiers() + " " + field.getKey() + " " + field.getType().getKey()
+            + " " + field.getConstantValue());
+      }
+    }
+    for (IMethodBinding method : type.getDeclaredMethods()) {
+      if (!Modifier.isPrivate(method.getModifiers())) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method.getModifiers()).append(' ').append(method.getKey());
+        for (IAnnotationBinding annotation : method.getAnnotations()) {
+          sb.append(" @").append(annotation);
+        }
+        members.add(sb.toString());
+      }
+    }
+    for (ITypeBinding member : type.getDeclaredTypes()) {
+      members.add(member.getModifiers() + " " + member.getKey());
+    }
+    Collections.sort(members);
+    return type.getModifiers() + " " + type.getKey() + " {" + LIST_JOINER.join(members) + "}";
+  }
+}
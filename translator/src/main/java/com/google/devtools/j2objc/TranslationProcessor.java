@@ -14,15 +14,23 @@
 
 package com.google.devtools.j2objc;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.ast.AbstractTypeDeclaration;
 import com.google.devtools.j2objc.ast.CompilationUnit;
 import com.google.devtools.j2objc.ast.TreeConverter;
+import com.google.devtools.j2objc.ast.TreeUtil;
 import com.google.devtools.j2objc.gen.ObjectiveCHeaderGenerator;
 import com.google.devtools.j2objc.gen.ObjectiveCImplementationGenerator;
 import com.google.devtools.j2objc.gen.ObjectiveCSegmentedHeaderGenerator;
+import com.google.devtools.j2objc.gen.SourceFileGenerator;
 import com.google.devtools.j2objc.translate.AnonymousClassConverter;
 import com.google.devtools.j2objc.translate.ArrayRewriter;
 import com.google.devtools.j2objc.translate.Autoboxer;
+import com.google.devtools.j2objc.translate.BoxingEliminator;
 import com.google.devtools.j2objc.translate.ComplexExpressionExtractor;
 import com.google.devtools.j2objc.translate.CopyAllFieldsWriter;
 import com.google.devtools.j2objc.translate.DestructorGenerator;
@@ -39,15 +47,19 @@ import com.google.devtools.j2objc.translate.OuterReferenceFixer;
 import com.google.devtools.j2objc.translate.OuterReferenceResolver;
 import com.google.devtools.j2objc.translate.Rewriter;
 import com.google.devtools.j2objc.translate.StaticVarRewriter;
+import com.google.devtools.j2objc.translate.StringBuilderRewriter;
 import com.google.devtools.j2objc.translate.TypeSorter;
 import com.google.devtools.j2objc.translate.UnsequencedExpressionRewriter;
 import com.google.devtools.j2objc.types.HeaderImportCollector;
 import com.google.devtools.j2objc.types.IOSTypeBinding;
 import com.google.devtools.j2objc.types.ImplementationImportCollector;
 import com.google.devtools.j2objc.types.Import;
+import com.google.devtools.j2objc.types.MethodMappingIndex;
 import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.ClassHierarchy;
 import com.google.devtools.j2objc.util.ErrorUtil;
 import com.google.devtools.j2objc.util.JdtParser;
+import com.google.devtools.j2objc.util.PathIndex;
 import com.google.devtools.j2objc.util.TimeTracker;
 
 import org.eclipse.jdt.core.dom.ITypeBinding;
@@ -57,15 +69,15 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * Processes source files by translating each source into an Objective-C header
@@ -83,29 +95,63 @@ class TranslationProcessor extends FileProcessor {
   // Relative paths of files that have either been processed or added to pendingfiles.
   Set<String> seenFiles = Sets.newHashSet();
 
+  // Mapping files bundled with the translator can't change, so they are only
+  // parsed once when a translation worker handles several requests.
+  private static final Map<String, Properties> resourceMappings = Maps.newHashMap();
+
+  // Previously translated output, or null if no cache directory is set.
+  private final TranslationCache cache = TranslationCache.create();
+
+  // The classes of all translated files, or null if they weren't read first.
+  private ClassHierarchy classHierarchy = null;
+
+  // Translated classes that still need lazy initialization, by qualified name.
+  private final Set<String> lazilyInitializedClasses = Sets.newTreeSet();
+
   public TranslationProcessor(JdtParser parser) {
     super(parser);
   }
 
+  /**
+   * Sets the classes declared by all the files to be translated, so methods
+   * that none of them override can be called as functions.
+   */
+  public void setClassHierarchy(ClassHierarchy classHierarchy) {
+    this.classHierarchy = classHierarchy;
+  }
+
   @Override
   public void processFiles(Iterable<String> files) {
     super.processFiles(files);
     if (Options.buildClosure()) {
       while (!pendingFiles.isEmpty()) {
-        String file = pendingFiles.remove();
-        if (!processedFiles.contains(file)) {
-          processFile(file);
+        List<String> round = Lists.newArrayList(pendingFiles);
+        pendingFiles.clear();
+        if (getThreadCount() > 1) {
+          // Workers add dependencies in completion order, so sort to keep
+          // the translation order deterministic.
+          Collections.sort(round);
         }
+        for (String file : round) {
+          if (!processedFiles.contains(file)) {
+            processFile(file);
+          }
+        }
+        processQueuedSources();
       }
     }
   }
 
   @Override
-  protected void processSource(String path, String source) {
+  protected int getThreadCount() {
+    return Options.translationThreads();
+  }
+
+  @Override
+  protected void logProcessing(String path) {
     if (logger.isLoggable(Level.INFO)) {
       System.out.println("translating " + path);
     }
-    super.processSource(path, source);
   }
 
   @Override
@@ -113,14 +159,43 @@ class TranslationProcessor extends FileProcessor {
       String path, String source, org.eclipse.jdt.core.dom.CompilationUnit unit,
       TimeTracker ticker) {
     String relativePath = getRelativePath(path, unit);
-    processedFiles.add(relativePath);
-    seenFiles.add(relativePath);
+    synchronized (this) {
+      processedFiles.add(relativePath);
+      seenFiles.add(relativePath);
+    }
 
-    CompilationUnit newUnit = applyMutations(unit, path, source, ticker);
+    // Plugins may depend on seeing every unit, so they disable the cache. So
+    // does the class hierarchy, since other files determine which methods
+    // are called as functions, and the static initialization report, which
+    // needs every translated class.
+    String cacheKey = null;
+    if (cache != null && Options.getPlugins().isEmpty() && classHierarchy == null
+        && Options.getStaticInitReportFile() == null) {
+      cacheKey = cache.computeKey(source, unit, Options.getMethodMappings());
+      ticker.tick("Cache lookup");
+      List<String> dependencies = cache.restore(relativePath, cacheKey);
+      if (dependencies != null) {
+        if (Options.buildClosure()) {
+          for (String typeName : dependencies) {
+            maybeAddToClosure(typeName);
+          }
+        }
+        return;
+      }
+    }
+    int errorCount = ErrorUtil.threadErrorCount();
+    int warningCount = ErrorUtil.threadWarningCount();
+
+    CompilationUnit newUnit = applyMutations(unit, path, source, classHierarchy, ticker);
     ticker.tick("Tree mutations");
 
+    if (Options.getStaticInitReportFile() != null) {
+      recordLazyInitialization(newUnit);
+    }
+
     if (unit.types().isEmpty()) {
       logger.finest("skipping dead file " + path);
+      OuterReferenceResolver.cleanup();
       return;
     }
 
@@ -129,9 +204,26 @@ class TranslationProcessor extends FileProcessor {
     generateObjectiveCSource(newUnit, ticker);
     ticker.tick("Source generation");
 
+    List<String> dependencies = null;
+    if (Options.buildClosure() || cacheKey != null) {
+      dependencies = getDependencies(newUnit);
+    }
+    // Only cache clean translations, so diagnostics are reported every run.
+    if (cacheKey != null && ErrorUtil.threadErrorCount() == errorCount
+        && ErrorUtil.threadWarningCount() == warningCount) {
+      List<String> outputs = Lists.newArrayList(
+          SourceFileGenerator.getOutputFileName(newUnit, ".h"),
+          SourceFileGenerator.getOutputFileName(
+              newUnit, Options.getImplementationFileSuffix()));
+      cache.store(relativePath, cacheKey, outputs, dependencies);
+      ticker.tick("Cache update");
+    }
+
     if (Options.buildClosure()) {
       // Add out-of-date dependencies to translation list.
-      checkDependencies(newUnit);
+      for (String typeName : dependencies) {
+        maybeAddToClosure(typeName);
+      }
     }
 
     OuterReferenceResolver.cleanup();
@@ -148,6 +240,17 @@ class TranslationProcessor extends FileProcessor {
   public static CompilationUnit applyMutations(
       org.eclipse.jdt.core.dom.CompilationUnit unit, String path, String source,
       TimeTracker ticker) {
+    return applyMutations(unit, path, source, null, ticker);
+  }
+
+  /**
+   * Translates a parsed source file, as above. If classHierarchy isn't null,
+   * it summarizes all the files being translated, and methods that none of
+   * them override may be called as functions.
+   */
+  public static CompilationUnit applyMutations(
+      org.eclipse.jdt.core.dom.CompilationUnit unit, String path, String source,
+      ClassHierarchy classHierarchy, TimeTracker ticker) {
     ticker.push();
 
     OuterReferenceResolver.resolve(unit);
@@ -161,6 +264,10 @@ class TranslationProcessor extends FileProcessor {
     new Rewriter().run(unit);
     ticker.tick("Rewriter");
 
+    // Append to builders in loops that grow strings.
+    new StringBuilderRewriter().run(unit);
+    ticker.tick("StringBuilderRewriter");
+
     // Rewrite enhanced for loops into correct C code.
     new EnhancedForRewriter().run(unit);
     ticker.tick("EnhancedForRewriter");
@@ -169,6 +276,13 @@ class TranslationProcessor extends FileProcessor {
     new Autoboxer(unit.getAST()).run(unit);
     ticker.tick("Autoboxer");
 
+    // Remove boxing conversions whose wrapper objects are never used.
+    BoxingEliminator boxingEliminator = new BoxingEliminator();
+    boxingEliminator.run(unit);
+    logger.fine(String.format("%s: %d boxing conversions removed", path,
+        boxingEliminator.getBoxesRemoved()));
+    ticker.tick("BoxingEliminator");
+
     // Extract inner and anonymous classes
     new AnonymousClassConverter(unit).run(unit);
     ticker.tick("AnonymousClassConverter");
@@ -194,18 +308,17 @@ class TranslationProcessor extends FileProcessor {
     ticker.tick("ComplexExpressionExtractor");
 
     // Adds nil_chk calls wherever an expression is dereferenced.
-    new NilCheckResolver().run(unit);
+    NilCheckResolver nilCheckResolver = new NilCheckResolver();
+    nilCheckResolver.run(unit);
+    logger.fine(String.format("%s: %d nil_chk calls added, %d elided", path,
+        nilCheckResolver.getNilChecksAdded(), nilCheckResolver.getNilChecksElided()));
     ticker.tick("NilCheckResolver");
 
     // Translate core Java type use to similar iOS types
     new JavaToIOSTypeConverter().run(unit);
     ticker.tick("JavaToIOSTypeConverter");
-    Map<String, String> methodMappings = Options.getMethodMappings();
-    if (methodMappings.isEmpty()) {
-      // Method maps are loaded here so tests can call translate() directly.
-      loadMappingFiles();
-    }
-    new JavaToIOSMethodTranslator(unit.getAST(), methodMappings).run(unit);
+    new JavaToIOSMethodTranslator(
+        unit.getAST(), MethodMappingIndex.get(Options.getMethodMappings())).run(unit);
     ticker.tick("JavaToIOSMethodTranslator");
 
     new ArrayRewriter().run(unit);
@@ -223,6 +336,8 @@ class TranslationProcessor extends FileProcessor {
     Types.verifyNode(unit);
 
     CompilationUnit newUnit = TreeConverter.convertCompilationUnit(unit, path, source);
+    ticker.setTree(newUnit);
+    ticker.tick("TreeConverter");
 
     // Add dealloc/finalize method(s), if necessary.  This is done
     // after inner class extraction, so that each class releases
@@ -237,12 +352,15 @@ class TranslationProcessor extends FileProcessor {
     ticker.tick("OperatorRewriter");
 
     if (Options.finalMethodsAsFunctions()) {
-      new Functionizer().run(newUnit);
+      new Functionizer(classHierarchy).run(newUnit);
       ticker.tick("Functionizer");
     }
 
     for (Plugin plugin : Options.getPlugins()) {
-      plugin.processUnit(newUnit);
+      // Plugins may not be thread-safe.
+      synchronized (plugin) {
+        plugin.processUnit(newUnit);
+      }
     }
 
     // Make sure we still have a valid AST.
@@ -262,15 +380,21 @@ class TranslationProcessor extends FileProcessor {
     } else {
       ObjectiveCHeaderGenerator.generate(unit);
     }
-    ticker.tick("Header generation");
+    ticker.tick("Header generation", getOutputFile(unit, ".h"));
 
     // write implementation file
     ObjectiveCImplementationGenerator.generate(unit);
-    ticker.tick("Implementation generation");
+    ticker.tick("Implementation generation",
+        getOutputFile(unit, Options.getImplementationFileSuffix()));
 
     ticker.pop();
   }
 
+  private static File getOutputFile(CompilationUnit unit, String suffix) {
+    return new File(Options.getOutputDirectory(),
+        SourceFileGenerator.getOutputFileName(unit, suffix));
+  }
+
   public void postProcess() {
     for (Plugin plugin : Options.getPlugins()) {
       plugin.endProcessing(Options.getOutputDirectory());
@@ -288,7 +412,31 @@ class TranslationProcessor extends FileProcessor {
     }
   }
 
-  private void checkDependencies(CompilationUnit unit) {
+  private synchronized void recordLazyInitialization(CompilationUnit unit) {
+    for (AbstractTypeDeclaration type : unit.getTypes()) {
+      if (TreeUtil.needsStaticInitialization(type)) {
+        lazilyInitializedClasses.add(type.getTypeBinding().getQualifiedName());
+      }
+    }
+  }
+
+  /**
+   * Writes the qualified names of the translated classes that still need
+   * lazy initialization, one per line. Reads of their static fields check
+   * that +initialize has run.
+   */
+  public void writeStaticInitReport(File file) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (String name : lazilyInitializedClasses) {
+      sb.append(name).append('\n');
+    }
+    Files.write(sb, file, Charsets.UTF_8);
+  }
+
+  /**
+   * Returns the qualified names of the types a unit's generated files import.
+   */
+  private static List<String> getDependencies(CompilationUnit unit) {
     HeaderImportCollector hdrCollector = new HeaderImportCollector();
     hdrCollector.collect(unit);
     ImplementationImportCollector implCollector = new ImplementationImportCollector();
@@ -296,16 +444,17 @@ class TranslationProcessor extends FileProcessor {
     Set<Import> imports = hdrCollector.getForwardDeclarations();
     imports.addAll(hdrCollector.getSuperTypes());
     imports.addAll(implCollector.getImports());
+    Set<String> typeNames = Sets.newTreeSet();
     for (Import imp : imports) {
-      maybeAddToClosure(imp.getType());
+      ITypeBinding type = imp.getType();
+      if (!(type instanceof IOSTypeBinding)) {  // Ignore core types.
+        typeNames.add(type.getErasure().getQualifiedName());
+      }
     }
+    return Lists.newArrayList(typeNames);
   }
 
-  private void maybeAddToClosure(ITypeBinding type) {
-    if (type instanceof IOSTypeBinding) {
-      return;  // Ignore core types.
-    }
-    String typeName = type.getErasure().getQualifiedName();
+  private synchronized void maybeAddToClosure(String typeName) {
     String sourceName = typeName.replace('.', File.pathSeparatorChar) + ".java";
     if (seenFiles.contains(sourceName)) {
       return;
@@ -344,9 +493,9 @@ class TranslationProcessor extends FileProcessor {
 
   private File findSourceFile(String path) {
     for (String sourcePath : Options.getSourcePathEntries()) {
-      File f = findFile(path, sourcePath);
-      if (f != null) {
-        return f;
+      if (PathIndex.contains(sourcePath, path)) {
+        File f = new File(sourcePath);
+        return f.isDirectory() ? new File(f, path) : f;
       }
     }
     return null;
@@ -355,48 +504,21 @@ class TranslationProcessor extends FileProcessor {
   private boolean findClassFile(String typeName) {
     // Zip/jar files always use forward slashes.
     String path = typeName.replace('.', '/') + ".class";
-    for (String classPath : Options.getClassPathEntries()) {
-      File f = findFile(path, classPath);
-      if (f != null) {
-        return true;
-      }
-    }
-    // See if it's a JRE class.
-    try {
-      Class.forName(typeName);
-      return true;
-    } catch (ClassNotFoundException e) {
-      // Fall-through.
-    }
-    return false;
+    // Check the boot classpath rather than loading the class, since it is
+    // what the parser resolves JRE types against.
+    return PathIndex.contains(Options.getClassPathEntries(), path)
+        || PathIndex.contains(Options.getBootClasspath(), path);
   }
 
-  private File findFile(String path, String sourcePath) {
-    File f = new File(sourcePath);
-    if (f.isDirectory()) {
-      File source = new File(f, path);
-      if (source.exists()) {
-        return source;
-      }
-    } else if (f.isFile() && sourcePath.endsWith(".jar")) {
-      try {
-        ZipFile zfile = new ZipFile(f);
-        try {
-          ZipEntry entry = zfile.getEntry(path);
-          if (entry != null) {
-            return f;
-          }
-        } finally {
-          zfile.close();
-        }
-      } catch (IOException e) {
-        ErrorUtil.warning(e.getMessage());
-      }
+  /**
+   * Loads the class and method mappings, unless they're already loaded.
+   * Units read the mappings without locking, so this needs to be called
+   * before any are translated.
+   */
+  static void loadMappingFiles() {
+    if (!Options.getMethodMappings().isEmpty()) {
+      return;
     }
-    return null;
-  }
-
-  private static void loadMappingFiles() {
     for (String resourceName : Options.getMappingFiles()) {
       Properties mappings = new Properties();
       try {
@@ -408,6 +530,8 @@ class TranslationProcessor extends FileProcessor {
           } finally {
             reader.close();
           }
+        } else if (resourceMappings.containsKey(resourceName)) {
+          mappings = resourceMappings.get(resourceName);
         } else {
           InputStream stream = J2ObjC.class.getResourceAsStream(resourceName);
           if (stream == null) {
@@ -418,6 +542,7 @@ class TranslationProcessor extends FileProcessor {
             } finally {
               stream.close();
             }
+            resourceMappings.put(resourceName, mappings);
           }
         }
       } catch (IOException e) {
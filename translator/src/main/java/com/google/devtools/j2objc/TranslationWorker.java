@@ -0,0 +1,347 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.devtools.j2objc.translate.OuterReferenceResolver;
+import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.ErrorUtil;
+import com.google.devtools.j2objc.util.NameTable;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a stream of requests in a single JVM, so that build systems
+ * that invoke the translator many times don't pay for JVM startup, class
+ * loading and JIT warmup, plugin jar scanning and mapping file parsing on
+ * every invocation.
+ *
+ * <p>Requests and responses are JSON objects, using the field names of
+ * Bazel's JSON worker protocol. Each request has the command-line arguments
+ * for one translation:
+ * <pre>
+ *   {"arguments": ["-d", "build", "Foo.java"], "requestId": 0}
+ * </pre>
+ * and each response has the exit status and everything the translator
+ * printed while processing that request:
+ * <pre>
+ *   {"exitCode": 0, "output": "translating Foo.java\n...", "requestId": 0}
+ * </pre>
+ * Requests are handled one at a time, and the worker exits when its input
+ * is closed.
+ */
+class TranslationWorker {
+
+  private final JsonReader in;
+  private final PrintStream out;
+
+  TranslationWorker(InputStream in, PrintStream out) {
+    this.in = new JsonReader(new BufferedReader(new InputStreamReader(in, Charsets.UTF_8)));
+    this.out = out;
+  }
+
+  /**
+   * Processes requests until the input is closed.
+   *
+   * @return the worker's exit status
+   */
+  int run() {
+    try {
+      Map<String, Object> request;
+      while ((request = in.readRequest()) != null) {
+        Object id = request.get("requestId");
+        int requestId = id instanceof Number ? ((Number) id).intValue() : 0;
+        List<String> arguments = Lists.newArrayList();
+        Object args = request.get("arguments");
+        if (args instanceof List) {
+          for (Object arg : (List<?>) args) {
+            arguments.add(String.valueOf(arg));
+          }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int exitCode = translate(arguments.toArray(new String[arguments.size()]), output);
+        writeResponse(exitCode, output.toString("UTF-8"), requestId);
+      }
+      return 0;
+    } catch (IOException e) {
+      System.err.println("j2objc: invalid worker request: " + e.getMessage());
+      return 1;
+    }
+  }
+
+  /**
+   * Runs one translation, with everything it prints redirected to output.
+   */
+  private int translate(String[] args, ByteArrayOutputStream output)
+      throws UnsupportedEncodingException {
+    resetState();
+    PrintStream capture = new PrintStream(output, true, "UTF-8");
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    PrintStream errorStream = ErrorUtil.setErrorStream(capture);
+    System.setOut(capture);
+    System.setErr(capture);
+    try {
+      return J2ObjC.run(args);
+    } catch (RuntimeException e) {
+      e.printStackTrace(capture);
+      return 1;
+    } catch (AssertionError e) {
+      e.printStackTrace(capture);
+      return 1;
+    } finally {
+      System.setOut(stdout);
+      System.setErr(stderr);
+      ErrorUtil.setErrorStream(errorStream);
+      capture.flush();
+    }
+  }
+
+  /**
+   * Clears all static state left by the previous translation.
+   */
+  private static void resetState() {
+    Options.reset();
+    ErrorUtil.reset();
+    NameTable.cleanup();
+    Types.cleanup();
+    OuterReferenceResolver.cleanup();
+  }
+
+  private void writeResponse(int exitCode, String output, int requestId) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"exitCode\":").append(exitCode);
+    sb.append(",\"output\":");
+    appendJsonString(sb, output);
+    sb.append(",\"requestId\":").append(requestId).append('}');
+    out.println(sb);
+    out.flush();
+  }
+
+  static void appendJsonString(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"': sb.append("\\\""); break;
+        case '\\': sb.append("\\\\"); break;
+        case '\n': sb.append("\\n"); break;
+        case '\r': sb.append("\\r"); break;
+        case '\t': sb.append("\\t"); break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+
+  /**
+   * A minimal reader for the JSON values used by the worker protocol.
+   * Numbers are returned as Longs or Doubles, arrays as Lists and objects
+   * as Maps.
+   */
+  static class JsonReader {
+    private final PushbackReader in;
+
+    JsonReader(Reader in) {
+      this.in = new PushbackReader(in);
+    }
+
+    /**
+     * Returns the next request object, or null at the end of the input.
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> readRequest() throws IOException {
+      int c = skipWhitespace();
+      if (c == -1) {
+        return null;
+      }
+      in.unread(c);
+      Object value = readValue();
+      if (!(value instanceof Map)) {
+        throw new IOException("request is not an object");
+      }
+      return (Map<String, Object>) value;
+    }
+
+    Object readValue() throws IOException {
+      int c = skipWhitespace();
+      switch (c) {
+        case '{':
+          return readObject();
+        case '[':
+          return readArray();
+        case '"':
+          return readString();
+        case 't':
+          expect("rue");
+          return Boolean.TRUE;
+        case 'f':
+          expect("alse");
+          return Boolean.FALSE;
+        case 'n':
+          expect("ull");
+          return null;
+        default:
+          if (c == '-' || (c >= '0' && c <= '9')) {
+            return readNumber(c);
+          }
+          throw new IOException(c == -1 ? "unexpected end of input" : "unexpected '"
+              + (char) c + "'");
+      }
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+      Map<String, Object> map = Maps.newLinkedHashMap();
+      int c = skipWhitespace();
+      if (c == '}') {
+        return map;
+      }
+      while (true) {
+        if (c != '"') {
+          throw new IOException("expected a field name");
+        }
+        String name = readString();
+        if (skipWhitespace() != ':') {
+          throw new IOException("expected ':' after " + name);
+        }
+        map.put(name, readValue());
+        c = skipWhitespace();
+        if (c == '}') {
+          return map;
+        }
+        if (c != ',') {
+          throw new IOException("expected ',' or '}'");
+        }
+        c = skipWhitespace();
+      }
+    }
+
+    private List<Object> readArray() throws IOException {
+      List<Object> list = Lists.newArrayList();
+      int c = skipWhitespace();
+      if (c == ']') {
+        return list;
+      }
+      in.unread(c);
+      while (true) {
+        list.add(readValue());
+        c = skipWhitespace();
+        if (c == ']') {
+          return list;
+        }
+        if (c != ',') {
+          throw new IOException("expected ',' or ']'");
+        }
+      }
+    }
+
+    private String readString() throws IOException {
+      StringBuilder sb = new StringBuilder();
+      while (true) {
+        int c = read();
+        if (c == '"') {
+          return sb.toString();
+        }
+        if (c == '\\') {
+          c = read();
+          switch (c) {
+            case 'b': sb.append('\b'); break;
+            case 'f': sb.append('\f'); break;
+            case 'n': sb.append('\n'); break;
+            case 'r': sb.append('\r'); break;
+            case 't': sb.append('\t'); break;
+            case 'u':
+              char[] hex = new char[4];
+              for (int i = 0; i < 4; i++) {
+                hex[i] = (char) read();
+              }
+              try {
+                sb.append((char) Integer.parseInt(new String(hex), 16));
+              } catch (NumberFormatException e) {
+                throw new IOException("invalid escape: \\u" + new String(hex));
+              }
+              break;
+            default:
+              sb.append((char) c);  // '"', '\\' and '/'
+          }
+        } else {
+          sb.append((char) c);
+        }
+      }
+    }
+
+    private Number readNumber(int first) throws IOException {
+      StringBuilder sb = new StringBuilder();
+      sb.append((char) first);
+      int c;
+      while ((c = in.read()) != -1 && "0123456789+-.eE".indexOf(c) >= 0) {
+        sb.append((char) c);
+      }
+      if (c != -1) {
+        in.unread(c);
+      }
+      String number = sb.toString();
+      try {
+        if (number.indexOf('.') >= 0 || number.indexOf('e') >= 0 || number.indexOf('E') >= 0) {
+          return Double.valueOf(number);
+        }
+        return Long.valueOf(number);
+      } catch (NumberFormatException e) {
+        throw new IOException("invalid number: " + number);
+      }
+    }
+
+    private void expect(String rest) throws IOException {
+      for (int i = 0; i < rest.length(); i++) {
+        if (read() != rest.charAt(i)) {
+          throw new IOException("invalid literal");
+        }
+      }
+    }
+
+    private int read() throws IOException {
+      int c = in.read();
+      if (c == -1) {
+        throw new IOException("unexpected end of input");
+      }
+      return c;
+    }
+
+    private int skipWhitespace() throws IOException {
+      int c;
+      do {
+        c = in.read();
+      } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+      return c;
+    }
+  }
+}
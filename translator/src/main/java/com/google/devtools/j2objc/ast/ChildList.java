@@ -14,20 +14,33 @@
 
 package com.google.devtools.j2objc.ast;
 
-import com.google.common.collect.Lists;
-
 import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * List type for lists of child nodes. Nodes added or removed from a ChildList
  * are reparented appropriately.
+ * <p>
+ * The child links are kept in an array. Visitors may add or remove nodes
+ * while the list is traversed, so a list that is modified during a traversal
+ * copies its array first, and the traversal continues over the children the
+ * list had when it started. Traversals of unmodified lists don't allocate.
  */
 class ChildList<T extends TreeNode> extends AbstractList<T> {
 
+  private static final ChildLink<?>[] EMPTY_LINKS = new ChildLink<?>[0];
+  private static final int MIN_CAPACITY = 4;
+
   private final Class<T> childType;
   private final TreeNode parent;
-  private List<ChildLink<T>> delegate = Lists.newArrayList();
+  private ChildLink<?>[] links = EMPTY_LINKS;
+  private int size = 0;
+
+  // The number of traversals in progress, and whether the links array may be
+  // in use by one of them.
+  private int traversals = 0;
+  private boolean shared = false;
 
   public ChildList(Class<T> childType, TreeNode parent) {
     this.childType = childType;
@@ -39,25 +52,36 @@ class ChildList<T extends TreeNode> extends AbstractList<T> {
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public T get(int index) {
-    return delegate.get(index).get();
+    checkIndex(index);
+    return (T) links[index].get();
   }
 
   @Override
   public int size() {
-    return delegate.size();
+    return size;
   }
 
   @Override
   public void add(int index, T node) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
     ChildLink<T> link = new Link(childType, parent);
     link.set(node);
-    delegate.add(index, link);
+    prepareForWrite(size + 1);
+    System.arraycopy(links, index, links, index + 1, size - index);
+    links[index] = link;
+    size++;
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public T remove(int index) {
-    ChildLink<T> link = delegate.remove(index);
+    checkIndex(index);
+    ChildLink<T> link = (ChildLink<T>) links[index];
+    removeLink(index);
     T node = link.get();
     link.set(null);
     return node;
@@ -71,12 +95,48 @@ class ChildList<T extends TreeNode> extends AbstractList<T> {
   }
 
   public void accept(TreeVisitor visitor) {
-    // Copy all the children into an array to avoid a
-    // ConcurrentModificationException if the visitor removes one of the nodes.
-    ChildLink<?>[] array = delegate.toArray(new ChildLink<?>[delegate.size()]);
-    for (ChildLink<?> link : array) {
-      link.accept(visitor);
+    // Iterate over the current array, which is copied rather than modified
+    // if the visitor adds or removes one of the nodes.
+    ChildLink<?>[] array = links;
+    int n = size;
+    traversals++;
+    shared = true;
+    try {
+      for (int i = 0; i < n; i++) {
+        array[i].accept(visitor);
+      }
+    } finally {
+      if (--traversals == 0) {
+        shared = false;
+      }
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void removeLink(int index) {
+    prepareForWrite(size);
+    System.arraycopy(links, index + 1, links, index, size - index - 1);
+    links[--size] = null;
+  }
+
+  /**
+   * Makes the links array writable and large enough for a number of links,
+   * copying it if it's too small or in use by a traversal.
+   */
+  private void prepareForWrite(int minCapacity) {
+    int capacity = links.length;
+    if (minCapacity > capacity) {
+      capacity = Math.max(Math.max(capacity * 2, minCapacity), MIN_CAPACITY);
+    } else if (!shared) {
+      return;
     }
+    links = Arrays.copyOf(links, capacity);
+    shared = false;
   }
 
   private class Link extends ChildLink<T> {
@@ -88,7 +148,12 @@ class ChildList<T extends TreeNode> extends AbstractList<T> {
     @Override
     public void remove() {
       super.remove();
-      delegate.remove(this);
+      for (int i = 0; i < size; i++) {
+        if (links[i] == this) {
+          removeLink(i);
+          break;
+        }
+      }
     }
   }
 }
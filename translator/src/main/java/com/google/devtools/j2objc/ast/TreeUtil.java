@@ -19,8 +19,10 @@ import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.devtools.j2objc.util.BindingUtil;
+import com.google.devtools.j2objc.util.NameTable;
 
 import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.IVariableBinding;
 
 import java.io.File;
@@ -167,6 +169,25 @@ public class TreeUtil {
     return Lists.newArrayList(getMethodDeclarations(node));
   }
 
+  /**
+   * Returns true if a type is initialized lazily, by code that must run
+   * before its static members are used: enums, and types with a static
+   * initializer.
+   */
+  public static boolean needsStaticInitialization(AbstractTypeDeclaration node) {
+    if (node instanceof EnumDeclaration) {
+      return true;
+    }
+    for (MethodDeclaration method : getMethodDeclarations(node)) {
+      IMethodBinding binding = method.getMethodBinding();
+      if (BindingUtil.isStatic(binding) && NameTable.CLINIT_NAME.equals(binding.getName())
+          && binding.getParameterTypes().length == 0 && BindingUtil.isSynthetic(binding)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Gets a variable binding for the given expression if the expression
    * represents a variable. Returns null otherwise.
@@ -54,6 +54,13 @@ public class HiddenFieldDetector extends TreeVisitor {
     return detector.fieldNameConflicts;
   }
 
+  /**
+   * Returns the parameters that hide fields, after this detector has been
+   * run.
+   */
+  public Set<IVariableBinding> getFieldNameConflicts() {
+    return fieldNameConflicts;
+  }
 
   @Override
   public boolean visit(TypeDeclaration node) {
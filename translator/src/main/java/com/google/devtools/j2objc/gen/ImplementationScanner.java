@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.gen;
+
+import com.google.devtools.j2objc.ast.ConstructorInvocation;
+import com.google.devtools.j2objc.ast.MethodDeclaration;
+import com.google.devtools.j2objc.ast.TypeDeclaration;
+import com.google.devtools.j2objc.types.ImplementationImportCollector;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+
+import java.util.Set;
+
+/**
+ * Collects the imports of a unit while also running the hidden field and
+ * invoked constructor scans, so the implementation generator only walks
+ * the unit once. The scans only read the tree and the collector visits all
+ * the nodes they depend on, so the results are the same as running each
+ * one on its own.
+ */
+public class ImplementationScanner extends ImplementationImportCollector {
+  private final HiddenFieldDetector hiddenFieldDetector = new HiddenFieldDetector();
+  private final InvokedConstructorFinder constructorFinder = new InvokedConstructorFinder();
+
+  public Set<IVariableBinding> getFieldNameConflicts() {
+    return hiddenFieldDetector.getFieldNameConflicts();
+  }
+
+  public Set<IMethodBinding> getInvokedConstructors() {
+    return constructorFinder.getInvokedConstructors();
+  }
+
+  @Override
+  public boolean visit(TypeDeclaration node) {
+    hiddenFieldDetector.visit(node);
+    return super.visit(node);
+  }
+
+  @Override
+  public boolean visit(MethodDeclaration node) {
+    hiddenFieldDetector.visit(node);
+    return super.visit(node);
+  }
+
+  @Override
+  public boolean visit(ConstructorInvocation node) {
+    constructorFinder.visit(node);
+    return super.visit(node);
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.gen;
+
+import com.google.common.collect.Sets;
+import com.google.devtools.j2objc.ast.ConstructorInvocation;
+import com.google.devtools.j2objc.ast.TreeVisitor;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+
+import java.util.Set;
+
+/**
+ * Finds the constructors that are invoked by other constructors of the
+ * same class.
+ */
+public class InvokedConstructorFinder extends TreeVisitor {
+  private final Set<IMethodBinding> invokedConstructors = Sets.newLinkedHashSet();
+
+  /**
+   * Returns the constructors invoked with "this(...)", after this finder has
+   * been run.
+   */
+  public Set<IMethodBinding> getInvokedConstructors() {
+    return invokedConstructors;
+  }
+
+  @Override
+  public boolean visit(ConstructorInvocation node) {
+    invokedConstructors.add(node.getMethodBinding());
+    return false;
+  }
+}
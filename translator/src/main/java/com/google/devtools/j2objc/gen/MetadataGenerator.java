@@ -14,9 +14,11 @@
 
 package com.google.devtools.j2objc.gen;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.devtools.j2objc.ast.AbstractTypeDeclaration;
 import com.google.devtools.j2objc.ast.EnumConstantDeclaration;
 import com.google.devtools.j2objc.ast.EnumDeclaration;
@@ -33,6 +35,7 @@ import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.IVariableBinding;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Generates the "__metadata" method for a class.
@@ -41,17 +44,78 @@ import java.util.List;
  */
 public class MetadataGenerator {
 
+  /**
+   * The strings of the compact metadata in a file. Each string is stored
+   * once, in a single character array, and is referenced by its offset.
+   * Offset 0 holds an empty string, which stands for NULL.
+   */
+  public static class StringPool {
+    private final String name;
+    private final Map<String, Integer> offsets = Maps.newLinkedHashMap();
+    private int size = 1;
+
+    public StringPool(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isEmpty() {
+      return offsets.isEmpty();
+    }
+
+    public int getOffset(String s) {
+      if (s == null) {
+        return 0;
+      }
+      Integer offset = offsets.get(s);
+      if (offset == null) {
+        offset = size;
+        offsets.put(s, offset);
+        size += s.getBytes(Charsets.UTF_8).length + 1;
+      }
+      return offset;
+    }
+
+    /**
+     * Returns the definition of the character array, with one string per
+     * line.
+     */
+    public String getDefinition() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("static const char ").append(name).append("[] =\n  \"\\0\"");
+      for (String s : offsets.keySet()) {
+        sb.append("\n  \"").append(s).append("\\0\"");
+      }
+      sb.append(";\n");
+      return sb.toString();
+    }
+  }
+
   private final StringBuilder builder;
   private final AbstractTypeDeclaration typeNode;
   private final ITypeBinding type;
+  private final StringPool strings;
   private boolean generated = false;
   private int methodMetadataCount = 0;
   private int fieldMetadataCount = 0;
 
   public MetadataGenerator(AbstractTypeDeclaration typeNode) {
+    this(typeNode, null);
+  }
+
+  /**
+   * Creates a generator of compact metadata, if strings isn't null. Its
+   * strings are added to the pool, which must be defined before the
+   * metadata.
+   */
+  public MetadataGenerator(AbstractTypeDeclaration typeNode, StringPool strings) {
     this.builder = new StringBuilder();
     this.typeNode = Preconditions.checkNotNull(typeNode);
     this.type = typeNode.getTypeBinding();
+    this.strings = strings;
   }
 
   public String getMetadataSource() {
@@ -72,15 +136,14 @@ public class MetadataGenerator {
     generateMethodsMetadata();
     generateFieldsMetadata();
     int superclassTypeArgsSize = printSuperclassTypeArguments();
-    printf("  static J2ObjcClassInfo _%s = { ", fullName);
-    printf("\"%s\", ", type.getName());
-    String pkgName = type.getPackage().getName();
-    if (Strings.isNullOrEmpty(pkgName)) {
-      printf("NULL, ");
+    if (strings != null) {
+      printf("  static const J2ObjcCompactClassInfo _%s = { %s, ", fullName, strings.getName());
     } else {
-      printf("\"%s\", ", pkgName);
+      printf("  static J2ObjcClassInfo _%s = { ", fullName);
     }
-    printf("%s, ", getEnclosingName());
+    printf("%s, ", str(type.getName()));
+    printf("%s, ", str(Strings.emptyToNull(type.getPackage().getName())));
+    printf("%s, ", str(getEnclosingName()));
     printf("0x%s, ", Integer.toHexString(getTypeModifiers()));
     printf("%s, ", Integer.toString(methodMetadataCount));
     print(methodMetadataCount > 0 ? "methods, " : "NULL, ");
@@ -89,15 +152,21 @@ public class MetadataGenerator {
     printf("%s, ", Integer.toString(superclassTypeArgsSize));
     printf(superclassTypeArgsSize > 0 ? "superclass_type_args" : "NULL");
     println("};");
-    printf("  return &_%s;\n}\n", fullName);
+    if (strings != null) {
+      // The runtime expands compact metadata on the first reflective access.
+      println("  static J2ObjcClassInfo *info;");
+      printf("  return JreExpandClassInfo(&_%s, &info);\n}\n", fullName);
+    } else {
+      printf("  return &_%s;\n}\n", fullName);
+    }
   }
 
   private String getEnclosingName() {
     ITypeBinding declaringType = type.getDeclaringClass();
     if (declaringType == null) {
-      return "NULL";
+      return null;
     }
-    StringBuilder sb = new StringBuilder("\"");
+    StringBuilder sb = new StringBuilder();
     List<String> types = Lists.newArrayList();
     while (declaringType != null) {
       types.add(declaringType.getName());
@@ -109,7 +178,6 @@ public class MetadataGenerator {
         sb.append("$");
       }
     }
-    sb.append("\"");
     return sb.toString();
   }
 
@@ -122,7 +190,8 @@ public class MetadataGenerator {
       }
     }
     if (methodMetadata.size() > 0) {
-      builder.append("  static J2ObjcMethodInfo methods[] = {\n");
+      builder.append(strings != null ? "  static const J2ObjcCompactMethodInfo methods[] = {\n"
+          : "  static J2ObjcMethodInfo methods[] = {\n");
       for (String metadata : methodMetadata) {
         builder.append(metadata);
       }
@@ -144,7 +213,8 @@ public class MetadataGenerator {
       fieldMetadata.add(generateFieldMetadata(f.getVariableBinding(), f.getName(), typeName));
     }
     if (fieldMetadata.size() > 0) {
-      builder.append("  static J2ObjcFieldInfo fields[] = {\n");
+      builder.append(strings != null ? "  static const J2ObjcCompactFieldInfo fields[] = {\n"
+          : "  static J2ObjcFieldInfo fields[] = {\n");
       for (String metadata : fieldMetadata) {
         builder.append(metadata);
       }
@@ -173,8 +243,8 @@ public class MetadataGenerator {
       }
     }
     return String.format(
-        "    { \"%s\", %s, 0x%x, \"%s\", %s, %s },\n",
-        objcName, cStr(javaName), modifiers, getTypeName(var.getType()), staticRef,
+        "    { %s, %s, 0x%x, %s, %s, %s },\n",
+        str(objcName), str(javaName), modifiers, str(getTypeName(var.getType())), staticRef,
         constantValue);
   }
 
@@ -207,9 +277,9 @@ public class MetadataGenerator {
 
     int modifiers = getMethodModifiers(method);
     String returnTypeStr = method.isConstructor() ? null : getTypeName(method.getReturnType());
-    return String.format("    { \"%s\", %s, %s, 0x%x, %s },\n",
-        selector, cStr(methodName), cStr(returnTypeStr), modifiers,
-        cStr(getThrownExceptions(method)));
+    return String.format("    { %s, %s, %s, 0x%x, %s },\n",
+        str(selector), str(methodName), str(returnTypeStr), modifiers,
+        str(getThrownExceptions(method)));
   }
 
   private String getThrownExceptions(IMethodBinding method) {
@@ -233,12 +303,13 @@ public class MetadataGenerator {
     if (typeArgs.length == 0) {
       return 0;
     }
-    print("  static const char *superclass_type_args[] = {");
+    print(strings != null ? "  static const uint32_t superclass_type_args[] = {"
+        : "  static const char *superclass_type_args[] = {");
     for (int i = 0; i < typeArgs.length; i++) {
       if (i != 0) {
         print(", ");
       }
-      printf("\"%s\"", getTypeName(typeArgs[i]));
+      print(str(getTypeName(typeArgs[i])));
     }
     println("};");
     return typeArgs.length;
@@ -308,7 +379,14 @@ public class MetadataGenerator {
     return modifiers;
   }
 
-  private String cStr(String s) {
+  /**
+   * Returns a string's C literal, or its offset in the string pool when
+   * compact metadata is generated.
+   */
+  private String str(String s) {
+    if (strings != null) {
+      return Integer.toString(strings.getOffset(s));
+    }
     return s == null ? "NULL" : "\"" + s + "\"";
   }
 
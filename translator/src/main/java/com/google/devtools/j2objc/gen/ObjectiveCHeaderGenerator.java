@@ -39,6 +39,7 @@ import com.google.devtools.j2objc.ast.TypeDeclaration;
 import com.google.devtools.j2objc.ast.VariableDeclarationFragment;
 import com.google.devtools.j2objc.types.HeaderImportCollector;
 import com.google.devtools.j2objc.types.IOSMethod;
+import com.google.devtools.j2objc.types.IOSMethodBinding;
 import com.google.devtools.j2objc.types.Import;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.BindingUtil;
@@ -85,17 +86,22 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
 
   public void generate() {
     CompilationUnit unit = getUnit();
-    println(J2ObjC.getFileHeader(unit.getSourceFileFullPath()));
+    open(unit);
+    try {
+      println(J2ObjC.getFileHeader(unit.getSourceFileFullPath()));
 
-    generateFileHeader();
+      generateFileHeader();
 
-    for (AbstractTypeDeclaration type : unit.getTypes()) {
-      newline();
-      generate(type);
-    }
+      for (AbstractTypeDeclaration type : unit.getTypes()) {
+        newline();
+        generate(type);
+      }
 
-    generateFileFooter();
-    save(unit);
+      generateFileFooter();
+      save(unit);
+    } finally {
+      discard();
+    }
   }
 
   private String getSuperTypeName(TypeDeclaration node) {
@@ -142,6 +148,10 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
     if (!isInterface) {
       println(" {");
       printInstanceVariables(node);
+      if (Options.inlineMonitors() && BindingUtil.declaresInlineMonitor(binding)) {
+        println(" @public");
+        println("  JreMonitor *__monitor;");
+      }
       println("}");
     }
     printMethods(methods);
@@ -153,6 +163,7 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
       printStaticInitFunction(node, methods);
       printFieldSetters(node);
       printStaticFields(node);
+      printPublicFunctions(methods);
     }
 
     printIncrementAndDecrementFunctions(binding);
@@ -170,6 +181,21 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
     printExternalNativeMethodCategory(node, typeName);
   }
 
+  private void printPublicFunctions(List<MethodDeclaration> methods) {
+    boolean needsNewLine = true;
+    for (MethodDeclaration method : methods) {
+      IMethodBinding m = method.getMethodBinding();
+      if (isPublicFunction(m)) {
+        if (needsNewLine) {
+          newline();
+          needsNewLine = false;
+        }
+        printf("FOUNDATION_EXPORT %s;\n",
+            functionDeclaration(method, IOSMethodBinding.getIOSMethod(m)));
+      }
+    }
+  }
+
   private static final Set<String> NEEDS_INC_AND_DEC = ImmutableSet.of(
       "int", "long", "double", "float", "short", "byte", "char");
 
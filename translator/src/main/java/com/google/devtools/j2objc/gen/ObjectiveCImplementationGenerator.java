@@ -20,6 +20,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.J2ObjC;
 import com.google.devtools.j2objc.Options;
@@ -47,7 +48,6 @@ import com.google.devtools.j2objc.ast.TypeDeclaration;
 import com.google.devtools.j2objc.ast.VariableDeclarationFragment;
 import com.google.devtools.j2objc.types.IOSMethod;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
-import com.google.devtools.j2objc.types.ImplementationImportCollector;
 import com.google.devtools.j2objc.types.Import;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.BindingUtil;
@@ -63,6 +63,7 @@ import org.eclipse.jdt.core.dom.Modifier;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -76,8 +77,10 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
   private Set<IVariableBinding> fieldHiders;
   private final String suffix;
   private final Set<String> invokedConstructors = Sets.newHashSet();
+  private Set<Import> imports;
   private final ListMultimap<AbstractTypeDeclaration, Comment> blockComments =
       ArrayListMultimap.create();
+  private final Map<AbstractTypeDeclaration, String> compactMetadata = Maps.newHashMap();
 
   /**
    * Generate an Objective-C implementation file for each type declared in a
@@ -89,7 +92,6 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
 
   private ObjectiveCImplementationGenerator(CompilationUnit unit) {
     super(unit, Options.emitLineDirectives());
-    fieldHiders = HiddenFieldDetector.getFieldNameConflicts(unit);
     suffix = Options.getImplementationFileSuffix();
   }
 
@@ -100,32 +102,40 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
 
   public void generate() {
     CompilationUnit unit = getUnit();
-    println(J2ObjC.getFileHeader(unit.getSourceFileFullPath()));
-    List<AbstractTypeDeclaration> typesToGenerate = collectTypes(unit);
-    if (!typesToGenerate.isEmpty()) {
-      findBlockComments(unit, typesToGenerate);
-      findInvokedConstructors(unit);
-      printStart(unit.getSourceFileFullPath());
-      printImports(unit);
-      pushIgnoreDeprecatedDeclarationsPragma();
-      boolean needsNewLine = true;
-      for (AbstractTypeDeclaration type : typesToGenerate) {
-        if (type instanceof TypeDeclaration) {
-          needsNewLine = printFinalFunctionDecls((TypeDeclaration) type, needsNewLine);
+    open(unit);
+    try {
+      println(J2ObjC.getFileHeader(unit.getSourceFileFullPath()));
+      List<AbstractTypeDeclaration> typesToGenerate = collectTypes(unit);
+      if (!typesToGenerate.isEmpty()) {
+        findBlockComments(unit, typesToGenerate);
+        analyze(unit);
+        printStart(unit.getSourceFileFullPath());
+        printImports(unit);
+        if (Options.compactMetadata() && !Options.stripReflection()) {
+          printCompactMetadataStrings(typesToGenerate);
+        }
+        pushIgnoreDeprecatedDeclarationsPragma();
+        boolean needsNewLine = true;
+        for (AbstractTypeDeclaration type : typesToGenerate) {
+          if (type instanceof TypeDeclaration) {
+            needsNewLine = printFinalFunctionDecls((TypeDeclaration) type, needsNewLine);
+          }
+        }
+        for (AbstractTypeDeclaration type : typesToGenerate) {
+          generate(type);
+        }
+        popIgnoreDeprecatedDeclarationsPragma();
+      } else {
+        // Print a dummy C function so compiled object file is valid.
+        List<AbstractTypeDeclaration> types = unit.getTypes();
+        if (!types.isEmpty()) {
+          printf("void %s_unused() {}\n", NameTable.getFullName(types.get(0).getTypeBinding()));
         }
       }
-      for (AbstractTypeDeclaration type : typesToGenerate) {
-        generate(type);
-      }
-      popIgnoreDeprecatedDeclarationsPragma();
-    } else {
-      // Print a dummy C function so compiled object file is valid.
-      List<AbstractTypeDeclaration> types = unit.getTypes();
-      if (!types.isEmpty()) {
-        printf("void %s_unused() {}\n", NameTable.getFullName(types.get(0).getTypeBinding()));
-      }
+      save(unit);
+    } finally {
+      discard();
     }
-    save(unit);
   }
 
   private List<AbstractTypeDeclaration> collectTypes(CompilationUnit unit) {
@@ -184,14 +194,18 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     return sb.toString();
   }
 
-  private void findInvokedConstructors(CompilationUnit unit) {
-    unit.accept(new TreeVisitor() {
-      @Override
-      public boolean visit(ConstructorInvocation node) {
-        invokedConstructors.add(methodKey(node.getMethodBinding()));
-        return false;
-      }
-    });
+  /**
+   * Finds the hidden fields, invoked constructors and imports of a unit, in
+   * a single traversal.
+   */
+  private void analyze(CompilationUnit unit) {
+    ImplementationScanner scanner = new ImplementationScanner();
+    scanner.collect(unit);
+    fieldHiders = scanner.getFieldNameConflicts();
+    for (IMethodBinding constructor : scanner.getInvokedConstructors()) {
+      invokedConstructors.add(methodKey(constructor));
+    }
+    imports = scanner.getImports();
   }
 
   /**
@@ -237,6 +251,7 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
       printStaticReferencesMethod(node);
       printStaticVars(node);
       printMethods(node);
+      printMonitorRefMethod(node);
       if (!Options.stripReflection()) {
         printTypeAnnotationsMethod(node);
         printMethodAnnotationMethods(methods);
@@ -526,6 +541,8 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     printInitFlagDefinition(node, methods);
     newline();
     printf("%s *%s_values[%s];\n", typeName, typeName, constants.size());
+    printf("static NSDictionary *%s_namesToValues;\n", typeName);
+    printf("static IOSClass *%s_valuesType;\n", typeName);
 
     newline();
     printf("@implementation %s\n", typeName);
@@ -557,6 +574,16 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
       }
       printf("NSString:@\"%s\" withInt:%d];\n", name, i);
     }
+    // The name table and array type are built once, so that valueOf and
+    // values don't have to search the constants or look up the class.
+    printf("    NSMutableDictionary *namesToValues = "
+        + "[[NSMutableDictionary alloc] initWithCapacity:%d];\n", constants.size());
+    printf("    for (int i = 0; i < %d; i++) {\n", constants.size());
+    printf("      [namesToValues setObject:%s_values[i] forKey:[%s_values[i] name]];\n",
+        typeName, typeName);
+    println("    }");
+    printf("    %s_namesToValues = namesToValues;\n", typeName);
+    printf("    %s_valuesType = [IOSClass classWithClass:[%s class]];\n", typeName, typeName);
     if (initializeMethod != null) {
       for (Statement s : initializeMethod.getBody().getStatements()) {
         printf("    %s", StatementGenerator.generate(
@@ -568,15 +595,13 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
 
     // Print generated values and valueOf methods.
     println("+ (IOSObjectArray *)values {");
-    printf("  return [IOSObjectArray arrayWithObjects:%s_values count:%s type:"
-           + "[IOSClass classWithClass:[%s class]]];\n", typeName, constants.size(), typeName);
+    printf("  return [IOSObjectArray arrayWithObjects:%s_values count:%s type:%s_valuesType];\n",
+        typeName, constants.size(), typeName);
     println("}\n");
     printf("+ (%s *)valueOfWithNSString:(NSString *)name {\n", typeName);
-    printf("  for (int i = 0; i < %s; i++) {\n", constants.size());
-    printf("    %s *e = %s_values[i];\n", typeName, typeName);
-    printf("    if ([name isEqual:[e name]]) {\n");
-    printf("      return e;\n");
-    printf("    }\n");
+    printf("  %s *e = name ? [%s_namesToValues objectForKey:name] : nil;\n", typeName, typeName);
+    printf("  if (e) {\n");
+    printf("    return e;\n");
     printf("  }\n");
     if (Options.useReferenceCounting()) {
       printf("  @throw [[[JavaLangIllegalArgumentException alloc] initWithNSString:name]"
@@ -609,7 +634,9 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     if (methodBody != null) {
       newline();
       syncLineNumbers(m.getName());  // avoid doc-comment
-      print(super.methodDeclaration(m) + " " + reindent(methodBody) + "\n");
+      print(super.methodDeclaration(m) + " ");
+      printReindented(methodBody);
+      newline();
     }
   }
 
@@ -624,7 +651,9 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     String methodBody = generateMethodBody(m);
     if (methodBody != null) {
       newline();
-      println(super.mappedMethodDeclaration(m, mappedMethod) + " " + reindent(methodBody));
+      print(super.mappedMethodDeclaration(m, mappedMethod) + " ");
+      printReindented(methodBody);
+      newline();
     }
   }
 
@@ -658,6 +687,12 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     if (isStatic && isSynchronized) {
       methodBody = String.format("{\n@synchronized([%s getClass]) {\n%s}\n}\n",
           NameTable.getFullName(binding.getDeclaringClass()), methodBody);
+    } else if (isSynchronized && Options.inlineMonitors()
+        && BindingUtil.hasInlineMonitor(binding.getDeclaringClass())) {
+      String receiver = isFunction ? "this$" : "self";
+      methodBody = String.format("{\nJreMonitorEnter(%s, &%s->__monitor);\n@try {\n%s}\n"
+          + "@finally {\nJreMonitorExit(%s->__monitor);\n}\n}\n",
+          receiver, receiver, methodBody, receiver);
     } else if (isSynchronized) {
       methodBody = String.format("{\n@synchronized(%s) {\n%s}\n}\n",
           isFunction ? "this$" : "self", methodBody);
@@ -721,11 +756,15 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     newline();
     syncLineNumbers(m.getName());  // avoid doc-comment
     if (invokedConstructors.contains(methodKey(binding))) {
-      print(super.constructorDeclaration(m, true) + " " + reindent(methodBody) + "\n\n");
+      print(super.constructorDeclaration(m, true) + " ");
+      printReindented(methodBody);
+      print("\n\n");
       print(super.constructorDeclaration(m, false) + " {\n"
           + "  return " + generateStatement(createInnerConstructorInvocation(m), false) + ";\n}\n");
     } else {
-      print(super.constructorDeclaration(m, false) + " " + reindent(methodBody) + "\n");
+      print(super.constructorDeclaration(m, false) + " ");
+      printReindented(methodBody);
+      newline();
     }
   }
 
@@ -773,11 +812,15 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     newline();
     syncLineNumbers(m.getName());  // avoid doc-comment
     if (invokedConstructors.contains(methodKey(binding))) {
-      print(super.constructorDeclaration(m, true) + " " + reindent(sb.toString()) + "\n\n");
+      print(super.constructorDeclaration(m, true) + " ");
+      printReindented(sb.toString());
+      print("\n\n");
       print(super.constructorDeclaration(m, false) + " {\n"
           + "  return " + generateStatement(createInnerConstructorInvocation(m), false) + ";\n}\n");
     } else {
-      print(super.constructorDeclaration(m, false) + " " + reindent(sb.toString()) + "\n");
+      print(super.constructorDeclaration(m, false) + " ");
+      printReindented(sb.toString());
+      newline();
     }
   }
 
@@ -791,7 +834,9 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     }
     sb.append(className + "_initialized = YES;\n");
     sb.append("}\n}");
-    print("\n+ (void)initialize " + reindent(sb.toString()) + "\n");
+    print("\n+ (void)initialize ");
+    printReindented(sb.toString());
+    newline();
   }
 
   private String generateStatement(Statement stmt, boolean asFunction) {
@@ -815,10 +860,6 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
   }
 
   private void printImports(CompilationUnit node) {
-    ImplementationImportCollector collector = new ImplementationImportCollector();
-    collector.collect(node);
-    Set<Import> imports = collector.getImports();
-
     if (!imports.isEmpty()) {
       Set<String> includeStmts = Sets.newTreeSet();
       for (Import imp : imports) {
@@ -867,7 +908,7 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
   private boolean printFinalFunctionDecls(TypeDeclaration node, boolean needsNewLine) {
     for (MethodDeclaration method : TreeUtil.getMethodDeclarations(node)) {
       IMethodBinding m = method.getMethodBinding();
-      if (BindingUtil.isFunction(m)) {
+      if (BindingUtil.isFunction(m) && !isPublicFunction(m)) {
         if (needsNewLine) {
           newline();  // Start a new section.
           needsNewLine = false;
@@ -1038,7 +1079,50 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     }
   }
 
+  /**
+   * Lets the runtime find the inline monitor, so code that locks the object
+   * with @synchronized uses the same monitor.
+   */
+  private void printMonitorRefMethod(TypeDeclaration node) {
+    if (Options.inlineMonitors() && BindingUtil.declaresInlineMonitor(node.getTypeBinding())) {
+      println("\n- (JreMonitor **)__monitorRef {");
+      println("  return &__monitor;");
+      println("}");
+    }
+  }
+
+  /**
+   * Generates the compact metadata of all types first, so the string pool
+   * they share is defined before their __metadata methods.
+   */
+  private void printCompactMetadataStrings(List<AbstractTypeDeclaration> types) {
+    MetadataGenerator.StringPool strings = new MetadataGenerator.StringPool(
+        NameTable.getFullName(types.get(0).getTypeBinding()) + "_metadataStrings");
+    for (AbstractTypeDeclaration type : types) {
+      if (keepsMetadata(type)) {
+        compactMetadata.put(type, new MetadataGenerator(type, strings).getMetadataSource());
+      }
+    }
+    if (!strings.isEmpty()) {
+      newline();
+      print(strings.getDefinition());
+    }
+  }
+
   private void printMetadata(AbstractTypeDeclaration node) {
-    print(new MetadataGenerator(node).getMetadataSource());
+    if (!keepsMetadata(node)) {
+      return;
+    }
+    if (Options.compactMetadata()) {
+      print(compactMetadata.get(node));
+    } else {
+      print(new MetadataGenerator(node).getMetadataSource());
+    }
+  }
+
+  private static boolean keepsMetadata(AbstractTypeDeclaration node) {
+    ITypeBinding type = node.getTypeBinding();
+    String name = type.getBinaryName();
+    return Options.keepsMetadata(name != null ? name : type.getQualifiedName());
   }
 }
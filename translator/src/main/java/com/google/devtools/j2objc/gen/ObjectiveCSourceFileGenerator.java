@@ -89,6 +89,14 @@ public abstract class ObjectiveCSourceFileGenerator extends SourceFileGenerator
 
   protected abstract void generate(AnnotationTypeDeclaration node);
 
+  /**
+   * Opens the file generated from a unit, so it is written as it is
+   * generated.
+   */
+  public void open(CompilationUnit node) {
+    open(getOutputFileName(node));
+  }
+
   public void save(CompilationUnit node) {
     save(getOutputFileName(node));
   }
@@ -230,10 +238,20 @@ public abstract class ObjectiveCSourceFileGenerator extends SourceFileGenerator
     sb.append(var.getName().getIdentifier());
   }
 
+  /**
+   * Returns true if a function replaces an instance method that is visible
+   * outside its class, so the function is declared in the class's header.
+   */
+  protected static boolean isPublicFunction(IMethodBinding m) {
+    return BindingUtil.isFunction(m) && !BindingUtil.isStatic(m) && !BindingUtil.isPrivate(m)
+        && !BindingUtil.isPrivate(m.getDeclaringClass());
+  }
+
   protected String functionDeclaration(MethodDeclaration method, IOSMethod mappedMethod) {
     StringBuffer sb = new StringBuffer();
     IMethodBinding m = method.getMethodBinding();
-    sb.append(BindingUtil.isStatic(m) ? "" : "__attribute__ ((unused)) static ");
+    sb.append(BindingUtil.isStatic(m) || isPublicFunction(m)
+        ? "" : "__attribute__ ((unused)) static ");
     Type returnType = method.getReturnType();
     sb.append(String.format("%s %s(",
         NameTable.getObjCType(returnType.getTypeBinding()),
@@ -17,15 +17,18 @@
 package com.google.devtools.j2objc.gen;
 
 import com.google.common.base.CharMatcher;
-import com.google.common.io.LineReader;
 import com.google.devtools.j2objc.ast.TreeNode;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.Writer;
 
 /**
  * Builds source text.  This is similar to a StringBuilder, but tracks line
  * numbers and outputs them as CPP line directives when directed.
+ * <p>
+ * A builder can also stream its text to a writer, so that a generated file
+ * isn't held in memory: once an output is set, the text is written in chunks
+ * as it is printed, and only the unwritten text can be read back.
  *
  * @author Tom Ball
  */
@@ -34,6 +37,16 @@ public class SourceBuilder {
   private int indention = 0;
   private int currentLine = -1;
 
+  // The writer text is streamed to, or null if it's kept in the buffer.
+  private Writer out = null;
+  private IOException outputError = null;
+  private char lastWrittenChar = 0;
+
+  /**
+   * The number of chars buffered before they are written to the output.
+   */
+  private static final int FLUSH_THRESHOLD = 8192;
+
   /**
    * If true, generate CPP line directives.  It's necessary to store this
    * here rather than directly use Options.getLineDirectives(), so that the
@@ -76,12 +89,14 @@ public class SourceBuilder {
   public void print(String s) {
     buffer.append(s);
     currentLine += NEWLINE_MATCHER.countIn(s);
+    flushIfFull();
   }
 
   public void print(char c) {
     buffer.append(c);
     if (c == '\n') {
       currentLine++;
+      flushIfFull();
     }
   }
 
@@ -101,6 +116,7 @@ public class SourceBuilder {
   public void newline() {
     buffer.append('\n');
     currentLine++;
+    flushIfFull();
   }
 
   public void indent() {
@@ -115,7 +131,7 @@ public class SourceBuilder {
   }
 
   public void printIndent() {
-    buffer.append(pad(indention * DEFAULT_INDENTION));
+    appendPad(indention * DEFAULT_INDENTION);
   }
 
   // StringBuilder compatibility.
@@ -134,19 +150,25 @@ public class SourceBuilder {
     return this;
   }
 
+  // The following methods only apply to builders without an output, since
+  // the text of a streaming builder may already have been written.
   public char charAt(int i) {
+    assert out == null;
     return buffer.charAt(i);
   }
 
   public int length() {
+    assert out == null;
     return buffer.length();
   }
 
   public String substring(int start, int end) {
+    assert out == null;
     return buffer.substring(start, end);
   }
 
   public void replace(int start, int end, String str) {
+    assert out == null;
     buffer.replace(start, end, str);
   }
 
@@ -161,6 +183,12 @@ public class SourceBuilder {
     return result;
   }
 
+  private void appendPad(int n) {
+    for (int i = 0; i < n; i++) {
+      buffer.append(' ');
+    }
+  }
+
   public void reset() {
     buffer.setLength(0);
   }
@@ -185,45 +213,136 @@ public class SourceBuilder {
    * Fix line indention, based on brace count.
    */
   public String reindent(String code) {
-    try {
-      // Remove indention from each line.
-      StringBuffer sb = new StringBuffer();
-      LineReader lr = new LineReader(new StringReader(code));
-      String line = lr.readLine();
-      while (line != null) {
-        sb.append(line.trim());
-        line = lr.readLine();
-        if (line != null) {
-          sb.append('\n');
-        }
+    SourceBuilder builder = new SourceBuilder(false);
+    builder.indention = indention;
+    builder.printReindented(code);
+    return builder.toString();
+  }
+
+  /**
+   * Prints code with its line indention fixed, based on brace count. This is
+   * equivalent to print(reindent(code)), but indents each line as it is
+   * printed.
+   */
+  public void printReindented(String code) {
+    int indent = indention * DEFAULT_INDENTION;
+    int length = code.length();
+    int lineStart = 0;
+    boolean firstLine = true;
+    while (lineStart < length) {
+      int lineEnd = lineStart;
+      char c = 0;
+      while (lineEnd < length && (c = code.charAt(lineEnd)) != '\n' && c != '\r') {
+        lineEnd++;
       }
-      String strippedCode = sb.toString();
-
-      // Now indent it again.
-      int indent = indention * DEFAULT_INDENTION;
-      sb.setLength(0);  // reset buffer
-      lr = new LineReader(new StringReader(strippedCode));
-      line = lr.readLine();
-      while (line != null) {
-        if (line.startsWith("}")) {
-          indent -= DEFAULT_INDENTION;
-        }
-        if (!line.startsWith("#line")) {
-          sb.append(pad(indent));
-        }
-        sb.append(line);
-        if (line.endsWith("{")) {
-          indent += DEFAULT_INDENTION;
-        }
-        line = lr.readLine();
-        if (line != null) {
-          sb.append('\n');
-        }
+      int nextLine = lineEnd;
+      if (nextLine < length) {
+        nextLine += c == '\r' && nextLine + 1 < length && code.charAt(nextLine + 1) == '\n'
+            ? 2 : 1;
       }
-      return sb.toString();
+
+      // Trim the line.
+      int start = lineStart;
+      int end = lineEnd;
+      while (start < end && code.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && code.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      if (start == end && nextLine >= length) {
+        break;  // Trailing blank lines aren't printed.
+      }
+
+      if (!firstLine) {
+        buffer.append('\n');
+        currentLine++;
+      }
+      firstLine = false;
+      if (code.startsWith("}", start)) {
+        indent -= DEFAULT_INDENTION;
+      }
+      if (!code.startsWith("#line", start)) {
+        appendPad(indent);
+      }
+      buffer.append(code, start, end);
+      if (end > start && code.charAt(end - 1) == '{') {
+        indent += DEFAULT_INDENTION;
+      }
+      flushIfFull();
+      lineStart = nextLine;
+    }
+  }
+
+  /**
+   * Streams this builder's text to a writer, starting with any text already
+   * printed. The writer is closed by {@link #close()}, which must be called
+   * even if the text is abandoned.
+   */
+  public void setOutput(Writer writer) {
+    out = writer;
+    flushIfFull();
+  }
+
+  /**
+   * Returns whether this builder's text is written to an output, rather than
+   * kept in the buffer.
+   */
+  public boolean isStreaming() {
+    return out != null;
+  }
+
+  /**
+   * Writes the buffered text to the output, if it's at least the flush
+   * threshold. A write error is reported when the builder is closed.
+   */
+  private void flushIfFull() {
+    if (out != null && buffer.length() >= FLUSH_THRESHOLD) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    int length = buffer.length();
+    if (length == 0 || outputError != null) {
+      return;
+    }
+    try {
+      out.append(buffer);
+      lastWrittenChar = buffer.charAt(length - 1);
     } catch (IOException e) {
-      // Should never happen with string readers.
-      throw new AssertionError(e);
+      outputError = e;
+    }
+    buffer.setLength(0);
+  }
+
+  /**
+   * Writes the rest of the text to the output, ending it with a newline if
+   * it doesn't already, and closes the output.
+   *
+   * @throws IOException if writing any of the text failed
+   */
+  public void close() throws IOException {
+    assert out != null;
+    int length = buffer.length();
+    char lastChar = length > 0 ? buffer.charAt(length - 1) : lastWrittenChar;
+    if (lastChar != '\n') {
+      buffer.append('\n');
+    }
+    flush();
+    Writer writer = out;
+    out = null;
+    try {
+      writer.close();
+    } catch (IOException e) {
+      if (outputError == null) {
+        outputError = e;
+      }
+    }
+    if (outputError != null) {
+      IOException e = outputError;
+      outputError = null;
+      throw e;
     }
   }
 
@@ -27,7 +27,11 @@ import com.google.devtools.j2objc.util.ErrorUtil;
 import org.eclipse.jdt.core.dom.Modifier;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 
 /**
  * This class handles common actions shared by the header, implementation, and
@@ -36,10 +40,17 @@ import java.io.IOException;
  * @author Tom Ball
  */
 public abstract class SourceFileGenerator {
+  private static final int OUTPUT_BUFFER_SIZE = 8192;
+
   private final SourceBuilder builder;
   private final CompilationUnit unit;
   private final File outputDirectory;
 
+  // While streaming, the temporary file the output is written to, and the
+  // file it's renamed to when saved.
+  private File partialFile = null;
+  private File outputFile = null;
+
   public SourceFileGenerator(CompilationUnit unit, boolean emitLineDirectives) {
     builder = new SourceBuilder(emitLineDirectives);
     this.unit = unit;
@@ -55,12 +66,20 @@ public abstract class SourceFileGenerator {
    * Note: class names are still camel-cased to avoid name collisions.
    */
   protected String getOutputFileName(CompilationUnit node) {
+    return getOutputFileName(node, getSuffix());
+  }
+
+  /**
+   * Returns the name a file generated from a unit with the specified suffix
+   * is saved as, relative to the output directory.
+   */
+  public static String getOutputFileName(CompilationUnit node, String suffix) {
     PackageDeclaration pkg = node.getPackage();
     if (pkg != null && Options.usePackageDirectories()) {
       return pkg.getName().getFullyQualifiedName().replace('.', File.separatorChar)
-          + File.separatorChar + node.getMainTypeName() + getSuffix();
+          + File.separatorChar + node.getMainTypeName() + suffix;
     } else {
-      return node.getMainTypeName() + getSuffix();
+      return node.getMainTypeName() + suffix;
     }
   }
 
@@ -126,14 +145,70 @@ public abstract class SourceFileGenerator {
     return text.substring(start + 4, end);
   }
 
+  /**
+   * Opens a temporary file next to the file this generator's output is saved
+   * as, so the output is written as it is generated rather than built in
+   * memory. {@link #save(String)} renames it to the output file, so a
+   * previous output file is only replaced by a complete one. If generation
+   * fails, {@link #discard()} deletes it.
+   */
+  protected void open(String path) {
+    outputFile = getOutputFile(path);
+    try {
+      partialFile = File.createTempFile(outputFile.getName(), ".tmp", outputFile.getParentFile());
+      FileOutputStream stream = new FileOutputStream(partialFile);
+      CharsetEncoder encoder = Options.getCharset().newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      builder.setOutput(Channels.newWriter(stream.getChannel(), encoder, OUTPUT_BUFFER_SIZE));
+    } catch (IOException e) {
+      ErrorUtil.error(e.getMessage());
+      discard();
+    }
+  }
+
+  /**
+   * Closes and deletes the temporary file opened by {@link #open(String)},
+   * if it hasn't been saved.
+   */
+  protected void discard() {
+    if (builder.isStreaming()) {
+      try {
+        builder.close();
+      } catch (IOException e) {
+        // The partial output is deleted anyway.
+      }
+    }
+    if (partialFile != null) {
+      partialFile.delete();
+      partialFile = null;
+    }
+    outputFile = null;
+    reset();
+  }
+
+  private File getOutputFile(String path) {
+    File file = new File(outputDirectory, path);
+    File dir = file.getParentFile();
+    if (dir != null && !dir.exists()) {
+      // Another translation thread may create the directory concurrently.
+      if (!dir.mkdirs() && !dir.isDirectory()) {
+        ErrorUtil.warning("cannot create output directory: " + outputDirectory);
+      }
+    }
+    return file;
+  }
+
   protected void save(String path) {
     try {
-      File outputFile = new File(outputDirectory, path);
-      File dir = outputFile.getParentFile();
-      if (dir != null && !dir.exists()) {
-        if (!dir.mkdirs()) {
-          ErrorUtil.warning("cannot create output directory: " + outputDirectory);
+      if (builder.isStreaming()) {
+        builder.close();
+        if (partialFile.renameTo(outputFile)) {
+          partialFile = null;
+        } else {
+          ErrorUtil.error("cannot write output file: " + outputFile);
         }
+        return;
       }
       String source = builder.toString();
 
@@ -142,11 +217,11 @@ public abstract class SourceFileGenerator {
         source += '\n';
       }
 
-      Files.write(source, outputFile, Options.getCharset());
+      Files.write(source, getOutputFile(path), Options.getCharset());
     } catch (IOException e) {
       ErrorUtil.error(e.getMessage());
     } finally {
-      reset();
+      discard();
     }
   }
 
@@ -202,6 +277,10 @@ public abstract class SourceFileGenerator {
     return builder.reindent(code);
   }
 
+  protected void printReindented(String code) {
+    builder.printReindented(code);
+  }
+
   protected CompilationUnit getUnit() {
     return unit;
   }
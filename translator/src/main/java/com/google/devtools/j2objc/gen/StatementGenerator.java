@@ -794,18 +794,19 @@ public class StatementGenerator extends TreeVisitor {
   }
 
   /**
-   * Converts a string concatenation expression into a NSString format string and a
-   * list of arguments for it, containing all the non-literal expressions.  If the
-   * expression is all literals, then a string concatenation is printed.  If not,
-   * then a NSString stringWithFormat: message is output.
+   * Converts a string concatenation expression into a call to the JreStrcat
+   * runtime function. Adjacent literals and constants are combined into a
+   * single string argument, and each other operand is passed as is, described
+   * by a type tag, so no format string needs to be parsed at runtime. If the
+   * expression is all literals, then a string literal is printed.
    */
-  @SuppressWarnings("fallthrough")
   private void printStringConcatenation(Expression leftOperand, Expression rightOperand,
       List<Expression> extendedOperands) {
     // Copy all operands into a single list.
     List<Expression> operands = Lists.newArrayList(leftOperand, rightOperand);
     operands.addAll(extendedOperands);
-    StringBuilder format = new StringBuilder();
+    StringBuilder types = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
 
     List<Expression> args = Lists.newArrayList();
     for (Expression operand : operands) {
@@ -816,7 +817,7 @@ public class StatementGenerator extends TreeVisitor {
         if (value instanceof String) {
           String s = (String) value;
           if (UnicodeUtils.hasValidCppCharacters(s)) {
-            format.append(s.replace("%", "%%"));
+            literal.append(s);
           } else {
             ErrorUtil.error(operand,
                 "String constant has Unicode or octal escape sequences that are not valid in "
@@ -824,97 +825,72 @@ public class StatementGenerator extends TreeVisitor {
           }
           continue;
         } else if (value != null) {
-          format.append(value.toString());
+          literal.append(value.toString());
           continue;
         } // else fall through to next section.
       }
       if (operand instanceof StringLiteral) {
-        String s = ((StringLiteral) operand).getLiteralValue();
-        if (UnicodeUtils.hasValidCppCharacters(s)) {
-          format.append(s.replace("%", "%%"));
-        } else {
-          // Convert to NSString invocation when printing args.
-          format.append("%@");
-          args.add(operand);
-        }
+        // Literals with characters that aren't valid in C99 are built from
+        // their characters when printed.
+        literal.append(((StringLiteral) operand).getLiteralValue());
       } else if (operand instanceof BooleanLiteral) {
-        format.append(String.valueOf(((BooleanLiteral) operand).booleanValue()));
+        literal.append(String.valueOf(((BooleanLiteral) operand).booleanValue()));
       } else if (operand instanceof CharacterLiteral) {
-        format.append(((CharacterLiteral) operand).charValue());
+        literal.append(((CharacterLiteral) operand).charValue());
       } else if (operand instanceof NumberLiteral) {
-        format.append(((NumberLiteral) operand).getToken());
+        literal.append(((NumberLiteral) operand).getToken());
+      } else if (operand instanceof NullLiteral) {
+        literal.append("null");
       } else {
+        addLiteralArgument(literal, types, args);
+        types.append(getConcatenationTypeTag(operand.getTypeBinding()));
         args.add(operand);
-
-        // Append format specifier.
-        ITypeBinding operandType = operand.getTypeBinding();
-        if (operandType.isPrimitive()) {
-          String type = operandType.getBinaryName();
-          assert type.length() == 1;
-          switch (type.charAt(0)) {
-            case 'B':  // byte
-            case 'I':  // int
-            case 'S':  // short
-              format.append("%d");
-              break;
-            case 'J':  // long
-              format.append("%lld");
-              break;
-            case 'D':  // double
-            case 'F':  // float
-              format.append("%f");
-              break;
-            case 'C':  // char
-              format.append("%C");
-              break;
-            case 'Z':  // boolean
-              format.append("%@");
-              break;
-            default:
-              throw new AssertionError("unknown primitive type: " + type);
-          }
-        } else {
-          format.append("%@");
-        }
       }
     }
 
-    String formatStr = UnicodeUtils.escapeStringLiteral(format.toString());
     if (args.isEmpty()) {
-      buffer.append("@\"" + formatStr.replace("%%", "%") + "\""); // unescape % character
+      buffer.append(generateStringLiteral(new StringLiteral(literal.toString())));
       return;
     }
+    addLiteralArgument(literal, types, args);
 
-    buffer.append("[NSString stringWithFormat:@\"");
-    buffer.append(formatStr);
-    buffer.append("\", ");
-    for (Iterator<Expression> iter = args.iterator(); iter.hasNext(); ) {
-      printStringConcatenationArg(iter.next());
-      if (iter.hasNext()) {
-        buffer.append(", ");
+    buffer.append("JreStrcat(\"");
+    buffer.append(types.toString());
+    buffer.append('"');
+    for (Expression arg : args) {
+      buffer.append(", ");
+      if (arg instanceof StringLiteral) {
+        buffer.append(generateStringLiteral((StringLiteral) arg));
+      } else {
+        arg.accept(this);
       }
     }
-    buffer.append(']');
+    buffer.append(')');
   }
 
-  private void printStringConcatenationArg(Expression arg) {
-    if (arg.getTypeBinding().isEqualTo(Types.resolveJavaType("boolean"))) {
-      buffer.append("[JavaLangBoolean toStringWithBoolean:");
-      arg.accept(this);
-      buffer.append(']');
-      return;
-    }
-    if (arg instanceof StringLiteral) {
-      // Strings with all valid C99 characters were previously converted,
-      // so this literal needs to be defined with a char array.
-      buffer.append(buildStringFromChars(((StringLiteral) arg).getLiteralValue()));
-      return;
+  /**
+   * Adds any pending literal text as a string argument.
+   */
+  private static void addLiteralArgument(
+      StringBuilder literal, StringBuilder types, List<Expression> args) {
+    if (literal.length() > 0) {
+      types.append('$');
+      args.add(new StringLiteral(literal.toString()));
+      literal.setLength(0);
     }
-    if (arg instanceof NullLiteral) {
-      buffer.append("@\"null\"");
-      return;
+  }
+
+  /**
+   * Returns the JreStrcat type tag for an operand: the binary name of a
+   * primitive type, '$' for a string or '@' for any other object.
+   */
+  private static char getConcatenationTypeTag(ITypeBinding type) {
+    if (type.isPrimitive()) {
+      String name = type.getBinaryName();
+      assert name.length() == 1;
+      return name.charAt(0);
     }
-    arg.accept(this);
+    return Types.isJavaStringType(type) ? '$' : '@';
   }
 
   // Some native objective-c methods are declared to return NSUInteger.
@@ -1577,7 +1553,7 @@ public class StatementGenerator extends TreeVisitor {
   private void printStringSwitchStatement(SwitchStatement node) {
     buffer.append("{\n");
 
-    // Define an array of all the string constant case values.
+    // Collect all the string constant case values.
     List<String> caseValues = Lists.newArrayList();
     List<Statement> stmts = node.getStatements();
     for (Statement stmt : stmts) {
@@ -1589,15 +1565,22 @@ public class StatementGenerator extends TreeVisitor {
         }
       }
     }
-    buffer.append("NSArray *__caseValues = [NSArray arrayWithObjects:");
-    for (String value : caseValues) {
-      buffer.append("@\"" + UnicodeUtils.escapeStringLiteral(value) + "\", ");
+    // Map each case value to its index in a dictionary that is built once,
+    // so executing the switch is a single hash lookup and allocates nothing.
+    buffer.append("static NSDictionary *__caseIndexes;\n");
+    buffer.append("static dispatch_once_t __caseIndexesOnce;\n");
+    buffer.append("dispatch_once(&__caseIndexesOnce, ^{\n");
+    buffer.append("__caseIndexes = [[NSDictionary alloc] initWithObjectsAndKeys:");
+    for (int i = 0; i < caseValues.size(); i++) {
+      buffer.append("[NSNumber numberWithInt:" + i + "], ");
+      buffer.append("@\"" + UnicodeUtils.escapeStringLiteral(caseValues.get(i)) + "\", ");
     }
     buffer.append("nil];\n");
-    buffer.append("NSUInteger __index = [__caseValues indexOfObject:");
+    buffer.append("});\n");
+    buffer.append("NSNumber *__index = [__caseIndexes objectForKey:");
     node.getExpression().accept(this);
     buffer.append("];\n");
-    buffer.append("switch (__index) {\n");
+    buffer.append("switch (__index ? [__index intValue] : -1) {\n");
     for (Statement stmt : stmts) {
       if (stmt instanceof SwitchCase) {
         SwitchCase caseStmt = (SwitchCase) stmt;
@@ -1619,6 +1602,15 @@ public class StatementGenerator extends TreeVisitor {
 
   @Override
   public boolean visit(SynchronizedStatement node) {
+    Expression lock = node.getExpression();
+    if (Options.inlineMonitors() && lock instanceof ThisExpression
+        && BindingUtil.hasInlineMonitor(lock.getTypeBinding())) {
+      // Lock the object's own monitor, without @synchronized's side table.
+      buffer.append("{\nJreMonitorEnter(self, &self->__monitor);\n@try ");
+      node.getBody().accept(this);
+      buffer.append("@finally {\nJreMonitorExit(self->__monitor);\n}\n}\n");
+      return false;
+    }
     buffer.append("@synchronized (");
     node.getExpression().accept(this);
     buffer.append(") ");
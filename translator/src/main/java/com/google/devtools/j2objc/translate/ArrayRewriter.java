@@ -29,6 +29,7 @@ import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.ArrayAccess;
 import org.eclipse.jdt.core.dom.ArrayCreation;
 import org.eclipse.jdt.core.dom.ArrayInitializer;
@@ -38,8 +39,11 @@ import org.eclipse.jdt.core.dom.ConstructorInvocation;
 import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
 import org.eclipse.jdt.core.dom.Expression;
 import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
 import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.InfixExpression;
 import org.eclipse.jdt.core.dom.InstanceofExpression;
 import org.eclipse.jdt.core.dom.MethodInvocation;
 import org.eclipse.jdt.core.dom.Modifier;
@@ -50,6 +54,8 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
 import org.eclipse.jdt.core.dom.SuperMethodInvocation;
 import org.eclipse.jdt.core.dom.TypeLiteral;
+import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import java.util.List;
 import java.util.Map;
@@ -59,6 +65,10 @@ import java.util.Map;
  * Must be run after JavaToIOSMethodTranslator because the varargs conversion
  * needs to know if the method is mapped.
  *
+ * Element accesses are rewritten to IOSArray functions that check the index.
+ * Accesses that are provably in range, such as a[i] in the body of
+ * "for (int i = 0; i < a.length; i++)", use unchecked variants instead.
+ *
  * @author Keith Stanger
  */
 public class ArrayRewriter extends ErrorReportingASTVisitor {
@@ -94,6 +104,9 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
   private Map<IOSTypeBinding, IOSMethodBinding> singleDimMethods = Maps.newHashMap();
   private Map<IOSTypeBinding, IOSMethodBinding> multiDimMethods = Maps.newHashMap();
 
+  // Maps the index variable of each enclosing in-range loop to its array variable.
+  private final Map<IVariableBinding, IVariableBinding> inRangeIndexes = Maps.newHashMap();
+
   private final IOSMethodBinding arrayCountMethod = IOSMethodBinding.newMethod(
       IOSMethod.create("IOSArray count"), Modifier.PUBLIC, Types.resolveJavaType("int"),
       ARRAY_BASE_TYPE);
@@ -318,15 +331,175 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
     ITypeBinding componentType = arrayType.getComponentType();
     IOSTypeBinding iosArrayBinding = Types.resolveArrayType(componentType);
 
+    boolean checked = !isInRange(node);
     Assignment assignment = getArrayAssignment(node);
     if (assignment != null && !componentType.isPrimitive()) {
       assignment.getRightHandSide().accept(this);
-      ASTUtil.setProperty(assignment, newArrayAssignment(ast, assignment, node, componentType));
+      ASTUtil.setProperty(
+          assignment, newArrayAssignment(ast, assignment, node, componentType, checked));
     } else {
       boolean assignable = assignment != null || needsAssignableAccess(node);
       ASTUtil.setProperty(node, newArrayAccess(
-          ast, node, componentType, iosArrayBinding, assignable));
+          ast, node, componentType, iosArrayBinding, assignable, checked));
+    }
+  }
+
+  private boolean isInRange(ArrayAccess node) {
+    IVariableBinding index = getLocalVariable(node.getIndex());
+    IVariableBinding array = getLocalVariable(node.getArray());
+    return index != null && array != null && array.equals(inRangeIndexes.get(index));
+  }
+
+  private static IVariableBinding getLocalVariable(Expression node) {
+    if (node instanceof SimpleName) {
+      IVariableBinding var = Types.getVariableBinding(node);
+      if (var != null && !var.isField()) {
+        return var;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean visit(ForStatement node) {
+    IVariableBinding index = getLoopIndex(node);
+    if (index != null) {
+      IVariableBinding array = getLoopArray(node, index);
+      if (array != null && !isAssigned(node.getBody(), index, array)) {
+        inRangeIndexes.put(index, array);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void endVisit(ForStatement node) {
+    IVariableBinding index = getLoopIndex(node);
+    if (index != null) {
+      inRangeIndexes.remove(index);
+    }
+  }
+
+  /**
+   * Returns the index variable of a loop that declares a single int variable
+   * initialized to a non-negative constant and whose only updater increments
+   * it, or null if the loop doesn't have that form.
+   */
+  private static IVariableBinding getLoopIndex(ForStatement node) {
+    List<Expression> initializers = ASTUtil.getInitializers(node);
+    List<Expression> updaters = ASTUtil.getUpdaters(node);
+    if (initializers.size() != 1 || updaters.size() != 1
+        || !(initializers.get(0) instanceof VariableDeclarationExpression)) {
+      return null;
+    }
+    List<VariableDeclarationFragment> fragments =
+        ASTUtil.getFragments((VariableDeclarationExpression) initializers.get(0));
+    if (fragments.size() != 1) {
+      return null;
+    }
+    VariableDeclarationFragment fragment = fragments.get(0);
+    IVariableBinding index = Types.getVariableBinding(fragment);
+    Expression init = fragment.getInitializer();
+    if (index == null || !index.getType().getName().equals("int") || init == null) {
+      return null;
+    }
+    Object value = init.resolveConstantExpressionValue();
+    if (!(value instanceof Integer) || ((Integer) value).intValue() < 0) {
+      return null;
+    }
+    Expression updater = updaters.get(0);
+    Expression operand = null;
+    if (updater instanceof PostfixExpression) {
+      PostfixExpression postfix = (PostfixExpression) updater;
+      if (postfix.getOperator() == PostfixExpression.Operator.INCREMENT) {
+        operand = postfix.getOperand();
+      }
+    } else if (updater instanceof PrefixExpression) {
+      PrefixExpression prefix = (PrefixExpression) updater;
+      if (prefix.getOperator() == PrefixExpression.Operator.INCREMENT) {
+        operand = prefix.getOperand();
+      }
+    }
+    return operand != null && index.equals(getLocalVariable(operand)) ? index : null;
+  }
+
+  /**
+   * Returns the local array variable of a loop whose condition is
+   * "index < array.length", or null if the loop has a different condition.
+   * The array may already be nil-checked.
+   */
+  private static IVariableBinding getLoopArray(ForStatement node, IVariableBinding index) {
+    if (!(node.getExpression() instanceof InfixExpression)) {
+      return null;
+    }
+    InfixExpression condition = (InfixExpression) node.getExpression();
+    if (condition.getOperator() != InfixExpression.Operator.LESS
+        || condition.hasExtendedOperands()
+        || !index.equals(getLocalVariable(condition.getLeftOperand()))) {
+      return null;
+    }
+    Expression length = condition.getRightOperand();
+    Expression arrayExpr = null;
+    if (length instanceof QualifiedName) {
+      QualifiedName name = (QualifiedName) length;
+      if (name.getName().getIdentifier().equals("length")) {
+        arrayExpr = name.getQualifier();
+      }
+    } else if (length instanceof FieldAccess) {
+      FieldAccess access = (FieldAccess) length;
+      if (access.getName().getIdentifier().equals("length")) {
+        arrayExpr = access.getExpression();
+      }
+    }
+    if (arrayExpr instanceof MethodInvocation) {
+      MethodInvocation invocation = (MethodInvocation) arrayExpr;
+      IMethodBinding method = Types.getMethodBinding(invocation);
+      if (method instanceof IOSMethodBinding && method.getName().equals("nil_chk")
+          && invocation.arguments().size() == 1) {
+        arrayExpr = ASTUtil.getArguments(invocation).get(0);
+      }
+    }
+    if (arrayExpr == null || !Types.getTypeBinding(arrayExpr).isArray()) {
+      return null;
     }
+    return getLocalVariable(arrayExpr);
+  }
+
+  /**
+   * Returns true if either variable is assigned, incremented or decremented
+   * within a loop body.
+   */
+  private static boolean isAssigned(
+      ASTNode body, final IVariableBinding index, final IVariableBinding array) {
+    final boolean[] assigned = new boolean[1];
+    body.accept(new ASTVisitor() {
+      private void check(Expression target) {
+        IVariableBinding var = getLocalVariable(target);
+        if (index.equals(var) || array.equals(var)) {
+          assigned[0] = true;
+        }
+      }
+
+      @Override
+      public void endVisit(Assignment node) {
+        check(node.getLeftHandSide());
+      }
+
+      @Override
+      public void endVisit(PostfixExpression node) {
+        check(node.getOperand());
+      }
+
+      @Override
+      public void endVisit(PrefixExpression node) {
+        PrefixExpression.Operator op = node.getOperator();
+        if (op == PrefixExpression.Operator.INCREMENT
+            || op == PrefixExpression.Operator.DECREMENT) {
+          check(node.getOperand());
+        }
+      }
+    });
+    return assigned[0];
   }
 
   private static Assignment getArrayAssignment(ArrayAccess node) {
@@ -360,11 +533,15 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
   private Map<String, IOSMethodBinding> accessFunctions = Maps.newHashMap();
 
   private IOSMethodBinding getArrayAccessBinding(
-      ITypeBinding componentType, IOSTypeBinding iosArrayBinding, boolean assignable) {
+      ITypeBinding componentType, IOSTypeBinding iosArrayBinding, boolean assignable,
+      boolean checked) {
     String name = iosArrayBinding.getName() + "_Get";
     if (assignable) {
       name += "Ref";
     }
+    if (!checked) {
+      name += "Unchecked";
+    }
     IOSMethodBinding binding = accessFunctions.get(name);
     if (binding == null) {
       ITypeBinding declaredReturnType =
@@ -381,8 +558,9 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
 
   private MethodInvocation newArrayAccess(
       AST ast, ArrayAccess arrayAccessNode, ITypeBinding componentType,
-      IOSTypeBinding iosArrayBinding, boolean assignable) {
-    IOSMethodBinding binding = getArrayAccessBinding(componentType, iosArrayBinding, assignable);
+      IOSTypeBinding iosArrayBinding, boolean assignable, boolean checked) {
+    IOSMethodBinding binding =
+        getArrayAccessBinding(componentType, iosArrayBinding, assignable, checked);
     if (!componentType.isPrimitive()) {
       binding = IOSMethodBinding.newTypedInvocation(binding, componentType);
     }
@@ -395,24 +573,28 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
     return invocation;
   }
 
-  private static IOSMethodBinding createObjectArrayAssignmentFunction() {
+  private static IOSMethodBinding createObjectArrayAssignmentFunction(String name) {
     ITypeBinding idType = Types.resolveIOSType("id");
     ITypeBinding objArrayType = Types.resolveIOSType("IOSObjectArray");
     return IOSMethodBinding.newFunction(
-        "IOSObjectArray_Set", idType, objArrayType, objArrayType, Types.resolveJavaType("int"),
-        idType);
+        name, idType, objArrayType, objArrayType, Types.resolveJavaType("int"), idType);
   }
 
-  private IOSMethodBinding objectArrayAssignmentFunction = createObjectArrayAssignmentFunction();
+  private IOSMethodBinding objectArrayAssignmentFunction =
+      createObjectArrayAssignmentFunction("IOSObjectArray_Set");
+  private IOSMethodBinding objectArrayUncheckedAssignmentFunction =
+      createObjectArrayAssignmentFunction("IOSObjectArray_SetUnchecked");
 
   private MethodInvocation newArrayAssignment(
-      AST ast, Assignment assignmentNode, ArrayAccess arrayAccessNode, ITypeBinding componentType) {
+      AST ast, Assignment assignmentNode, ArrayAccess arrayAccessNode, ITypeBinding componentType,
+      boolean checked) {
     Assignment.Operator op = assignmentNode.getOperator();
     assert !componentType.isPrimitive();
     assert op == Assignment.Operator.ASSIGN;
 
-    IOSMethodBinding binding =
-        IOSMethodBinding.newTypedInvocation(objectArrayAssignmentFunction, componentType);
+    IOSMethodBinding binding = IOSMethodBinding.newTypedInvocation(
+        checked ? objectArrayAssignmentFunction : objectArrayUncheckedAssignmentFunction,
+        componentType);
 
     MethodInvocation invocation = ASTFactory.newMethodInvocation(ast, binding, null);
     List<Expression> args = ASTUtil.getArguments(invocation);
@@ -0,0 +1,309 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.types.GeneratedVariableBinding;
+import com.google.devtools.j2objc.types.NodeCopier;
+import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.ASTUtil;
+import com.google.devtools.j2objc.util.BindingUtil;
+import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes boxing conversions whose wrapper objects are never observed, after
+ * the Autoboxer has made all conversions explicit. Unboxing a value that was
+ * just boxed, as in "Integer.valueOf(x).intValue()", is replaced by the
+ * primitive value. With --unbox-locals, local wrapper variables that are
+ * only assigned boxed primitives and only read to be unboxed, such as a
+ * loop's running total, are changed to primitive variables.
+ */
+public class BoxingEliminator extends ErrorReportingASTVisitor {
+
+  private static final String VALUE_METHOD = "Value";
+  private static final String VALUEOF_METHOD = "valueOf";
+
+  private int boxesRemoved = 0;
+
+  /**
+   * Returns the number of valueOf calls removed.
+   */
+  public int getBoxesRemoved() {
+    return boxesRemoved;
+  }
+
+  @Override
+  public boolean visit(MethodDeclaration node) {
+    Block body = node.getBody();
+    if (Options.unboxLocals() && body != null) {
+      for (VariableDeclarationStatement decl : findPrimitiveLocals(body)) {
+        unboxLocal(decl);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void endVisit(MethodInvocation node) {
+    Expression receiver = node.getExpression();
+    if (isUnbox(node) && receiver instanceof MethodInvocation
+        && isBox((MethodInvocation) receiver, Types.getTypeBinding(node))) {
+      Expression value = ASTUtil.getArguments((MethodInvocation) receiver).get(0);
+      AST ast = node.getAST();
+      value = NodeCopier.copySubtree(ast, value);
+      if (needsParentheses(value)) {
+        value = ASTFactory.newParenthesizedExpression(ast, value);
+      }
+      ASTUtil.setProperty(node, value);
+      boxesRemoved++;
+    }
+  }
+
+  /**
+   * Returns the declarations of the local wrapper variables in a method body
+   * that can be primitive: every assignment boxes a primitive value of the
+   * variable's type, and every read unboxes it. Such a variable is never
+   * null, and its identity is never compared or passed anywhere.
+   */
+  private List<VariableDeclarationStatement> findPrimitiveLocals(Block body) {
+    final Map<IVariableBinding, VariableDeclarationStatement> candidates = Maps.newLinkedHashMap();
+    body.accept(new ASTVisitor() {
+      @Override
+      public boolean visit(AnonymousClassDeclaration node) {
+        return false;
+      }
+
+      @Override
+      public boolean visit(TypeDeclarationStatement node) {
+        return false;
+      }
+
+      @Override
+      public void endVisit(VariableDeclarationStatement node) {
+        List<VariableDeclarationFragment> fragments = ASTUtil.getFragments(node);
+        if (fragments.size() != 1) {
+          return;
+        }
+        VariableDeclarationFragment fragment = fragments.get(0);
+        IVariableBinding var = Types.getVariableBinding(fragment);
+        ITypeBinding type = var.getType();
+        Expression init = fragment.getInitializer();
+        if (fragment.getExtraDimensions() == 0 && Types.isBoxedPrimitive(type)
+            && (init == null || isBox(init, Types.getPrimitiveType(type)))) {
+          candidates.put(var, node);
+        }
+      }
+    });
+    if (candidates.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final Set<IVariableBinding> escaping = Sets.newHashSet();
+    body.accept(new ASTVisitor() {
+      private int typeDepth = 0;
+
+      @Override
+      public boolean visit(AnonymousClassDeclaration node) {
+        typeDepth++;
+        return true;
+      }
+
+      @Override
+      public void endVisit(AnonymousClassDeclaration node) {
+        typeDepth--;
+      }
+
+      @Override
+      public boolean visit(TypeDeclarationStatement node) {
+        typeDepth++;
+        return true;
+      }
+
+      @Override
+      public void endVisit(TypeDeclarationStatement node) {
+        typeDepth--;
+      }
+
+      @Override
+      public boolean visit(SimpleName node) {
+        IVariableBinding var = Types.getVariableBinding(node);
+        if (var != null && candidates.containsKey(var)
+            && (typeDepth > 0 || !isPrimitiveUse(node, var))) {
+          escaping.add(var);
+        }
+        return false;
+      }
+    });
+
+    List<VariableDeclarationStatement> result = Lists.newArrayList();
+    for (Map.Entry<IVariableBinding, VariableDeclarationStatement> entry : candidates.entrySet()) {
+      if (!escaping.contains(entry.getKey())) {
+        result.add(entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if a reference to a wrapper variable declares it, assigns it
+   * a boxed primitive, or unboxes it.
+   */
+  private static boolean isPrimitiveUse(SimpleName name, IVariableBinding var) {
+    ITypeBinding primitiveType = Types.getPrimitiveType(var.getType());
+    ASTNode parent = name.getParent();
+    if (parent instanceof VariableDeclarationFragment) {
+      return ((VariableDeclarationFragment) parent).getName() == name;
+    }
+    if (parent instanceof Assignment) {
+      Assignment assignment = (Assignment) parent;
+      return assignment.getLeftHandSide() == name
+          && assignment.getOperator() == Assignment.Operator.ASSIGN
+          && isBox(assignment.getRightHandSide(), primitiveType);
+    }
+    if (parent instanceof MethodInvocation) {
+      MethodInvocation invocation = (MethodInvocation) parent;
+      return invocation.getExpression() == name && isUnbox(invocation)
+          && Types.getTypeBinding(invocation).isEqualTo(primitiveType);
+    }
+    return false;
+  }
+
+  /**
+   * Changes a local wrapper variable to its primitive type, removing the
+   * boxing of the values assigned to it and the unboxing of its reads.
+   */
+  private void unboxLocal(VariableDeclarationStatement decl) {
+    AST ast = decl.getAST();
+    final VariableDeclarationFragment fragment = ASTUtil.getFragments(decl).get(0);
+    final IVariableBinding oldVar = Types.getVariableBinding(fragment);
+    final ITypeBinding primitiveType = Types.getPrimitiveType(oldVar.getType());
+    final IVariableBinding newVar = new GeneratedVariableBinding(oldVar.getName(),
+        oldVar.getModifiers(), primitiveType, false, false, oldVar.getDeclaringClass(),
+        oldVar.getDeclaringMethod());
+
+    decl.setType(ASTFactory.newType(ast, primitiveType));
+    Types.addBinding(fragment, newVar);
+    Expression init = fragment.getInitializer();
+    if (init != null) {
+      fragment.setInitializer(unboxedValue(init));
+      boxesRemoved++;
+    }
+
+    final List<SimpleName> references = Lists.newArrayList();
+    decl.getParent().accept(new ASTVisitor() {
+      @Override
+      public boolean visit(SimpleName node) {
+        if (Types.getVariableBinding(node) == oldVar) {
+          references.add(node);
+        }
+        return false;
+      }
+    });
+    // Rewrite the references in reverse, so the reads in an assignment's value
+    // are rewritten before the value is copied.
+    for (SimpleName name : Lists.reverse(references)) {
+      Types.addBinding(name, newVar);
+      ASTNode parent = name.getParent();
+      if (parent instanceof Assignment) {
+        Assignment assignment = (Assignment) parent;
+        assignment.setRightHandSide(unboxedValue(assignment.getRightHandSide()));
+        Types.addBinding(assignment, primitiveType);
+        boxesRemoved++;
+      } else if (parent instanceof MethodInvocation) {
+        ASTUtil.setProperty(parent, NodeCopier.copySubtree(ast, name));
+      }
+    }
+  }
+
+  private static Expression unboxedValue(Expression boxExpr) {
+    Expression value = ASTUtil.getArguments((MethodInvocation) boxExpr).get(0);
+    return NodeCopier.copySubtree(boxExpr.getAST(), value);
+  }
+
+  /**
+   * Returns true if an expression is a wrapper's valueOf call on a primitive
+   * value of the wrapped type.
+   */
+  private static boolean isBox(Expression expr, ITypeBinding primitiveType) {
+    if (!(expr instanceof MethodInvocation)) {
+      return false;
+    }
+    IMethodBinding method = Types.getMethodBinding(expr);
+    if (method == null || !method.getName().equals(VALUEOF_METHOD)
+        || !BindingUtil.isStatic(method)) {
+      return false;
+    }
+    ITypeBinding wrapperType = method.getDeclaringClass();
+    ITypeBinding[] paramTypes = method.getParameterTypes();
+    if (!Types.isBoxedPrimitive(wrapperType) || paramTypes.length != 1
+        || !paramTypes[0].isEqualTo(Types.getPrimitiveType(wrapperType))
+        || !paramTypes[0].isEqualTo(primitiveType)) {
+      return false;
+    }
+    Expression value = ASTUtil.getArguments((MethodInvocation) expr).get(0);
+    return Types.getTypeBinding(value).isEqualTo(primitiveType);
+  }
+
+  /**
+   * Returns true if an invocation is a wrapper's value method for its own
+   * primitive type, such as Integer.intValue().
+   */
+  private static boolean isUnbox(MethodInvocation node) {
+    IMethodBinding method = Types.getMethodBinding(node);
+    if (method == null || BindingUtil.isStatic(method) || method.getParameterTypes().length != 0) {
+      return false;
+    }
+    ITypeBinding wrapperType = method.getDeclaringClass();
+    return Types.isBoxedPrimitive(wrapperType) && method.getName().equals(
+        Types.getPrimitiveType(wrapperType).getName() + VALUE_METHOD);
+  }
+
+  private static boolean needsParentheses(Expression expr) {
+    return !(expr instanceof Name || expr instanceof MethodInvocation
+        || expr instanceof ParenthesizedExpression || expr instanceof FieldAccess
+        || expr instanceof ArrayAccess || expr.getNodeType() == ASTNode.NUMBER_LITERAL
+        || expr.getNodeType() == ASTNode.CHARACTER_LITERAL
+        || expr.getNodeType() == ASTNode.BOOLEAN_LITERAL);
+  }
+}
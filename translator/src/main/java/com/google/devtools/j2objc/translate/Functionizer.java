@@ -48,6 +48,7 @@ import com.google.devtools.j2objc.types.GeneratedVariableBinding;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.BindingUtil;
+import com.google.devtools.j2objc.util.ClassHierarchy;
 import com.google.devtools.j2objc.util.ErrorUtil;
 import com.google.devtools.j2objc.util.NameTable;
 
@@ -62,9 +63,11 @@ import java.util.Map;
 import java.util.Stack;
 
 /**
- * Converts methods that don't need dynamic dispatch to C functions. This optimization
- * initially just targets private methods, but will be expanded to include final methods
- * that don't override superclass methods.
+ * Converts methods that don't need dynamic dispatch to C functions. These are
+ * private methods, final methods, methods of final classes and, when the class
+ * hierarchy of all translated files is known, methods that none of those files
+ * override. Each method is kept as a wrapper that calls its function, for
+ * callers outside the translated files.
  *
  * @author Tom Ball
  */
@@ -75,6 +78,17 @@ public class Functionizer extends TreeVisitor {
   // Map each functionalized method to its function.
   private Map<IMethodBinding, IMethodBinding> functionMap = Maps.newHashMap();
 
+  // The classes of all translated files, or null if only this unit is known.
+  private final ClassHierarchy classHierarchy;
+
+  public Functionizer() {
+    this(null);
+  }
+
+  public Functionizer(ClassHierarchy classHierarchy) {
+    this.classHierarchy = classHierarchy;
+  }
+
   @Override
   public boolean visit(CompilationUnit node) {
     determineReferenceCounts(node);
@@ -173,27 +187,91 @@ public class Functionizer extends TreeVisitor {
 
   private boolean canFunctionize(IMethodBinding m) {
     m = getDeclaration(m);
+    if (!isFunctionCandidate(m)) {
+      return false;
+    }
 
+    if (BindingUtil.isPrivate(m) || BindingUtil.isPrivate(m.getDeclaringClass())) {
+      // Only functionize if the method is invoked from within the outer class or any
+      // of its member classes.
+      Integer n = referenceCounts.get(m);
+      return n == null ? false : n.intValue() > 0;
+    }
+    // Methods that invoke super methods aren't in referenceCounts.
+    return referenceCounts.containsKey(m) && isDevirtualizable(m);
+  }
+
+  private static boolean isFunctionCandidate(IMethodBinding m) {
     // Never functionize these types of methods.
     if (BindingUtil.isFunction(m) || BindingUtil.isAbstract(m) || BindingUtil.isSynthetic(m)
         || m.isAnnotationMember() || m.isConstructor() || BindingUtil.isDestructor(m)) {
       return false;
     }
+    return !isEqualsOrHashCode(m);
+  }
 
-    // Don't functionize equals/hash, since they are often called by collections.
-    String name = m.getName();
-    if ((name.equals("hashCode") && m.getParameterTypes().length == 0)
-        || (name.equals("equals") && m.getParameterTypes().length == 1)) {
+  /**
+   * Returns true if a non-private method never needs dynamic dispatch, because
+   * it's final, its class is final, or no translated class overrides it. Static
+   * methods, native methods and methods of local and anonymous classes are
+   * left as methods, since these are rarely invoked directly.
+   */
+  private boolean isDevirtualizable(IMethodBinding m) {
+    ITypeBinding declaringClass = m.getDeclaringClass();
+    if (BindingUtil.isStatic(m) || BindingUtil.isNative(m) || declaringClass.isInterface()
+        || declaringClass.isEnum() || declaringClass.isLocal() || declaringClass.isAnonymous()) {
+      return false;
+    }
+    if (classHierarchy != null && classHierarchy.invokesSuper(m)) {
       return false;
     }
+    if (BindingUtil.isFinal(m) || BindingUtil.isFinal(declaringClass)) {
+      return true;
+    }
+    return classHierarchy != null && !classHierarchy.isOverridden(m);
+  }
 
-    if (BindingUtil.isPrivate(m) || BindingUtil.isPrivate(m.getDeclaringClass())) {
-      // Only functionize if the method is invoked from within the outer class or any
-      // of its member classes.
-      Integer n = referenceCounts.get(m);
-      return n == null ? false : n.intValue() > 0;
+  /**
+   * Returns the function for a method declared in another translated file,
+   * or null if that file keeps it as a method. The other file makes the same
+   * decision from the same class hierarchy.
+   */
+  private IMethodBinding getExternalFunction(IMethodBinding m) {
+    m = m.getMethodDeclaration();
+    if (classHierarchy == null || m instanceof IOSMethodBinding
+        || !classHierarchy.containsClass(m.getDeclaringClass())) {
+      return null;
     }
-    return false;
+    IMethodBinding function = functionMap.get(m);
+    if (function == null) {
+      if (!isFunctionCandidate(m) || BindingUtil.isPrivate(m)
+          || BindingUtil.isPrivate(m.getDeclaringClass()) || isOverloaded(m)
+          || !isDevirtualizable(m)) {
+        return null;
+      }
+      function = newFunctionBinding(m);
+      functionMap.put(m, function);
+    }
+    return function;
+  }
+
+  // Overloaded functions are numbered in declaration order, which a class file
+  // may not preserve, so only the declaring unit calls them.
+  private static boolean isOverloaded(IMethodBinding m) {
+    int count = 0;
+    for (IMethodBinding method : m.getDeclaringClass().getDeclaredMethods()) {
+      if (method.getName().equals(m.getName())) {
+        count++;
+      }
+    }
+    return count > 1;
+  }
+
+  // Don't functionize equals/hash, since they are often called by collections.
+  private static boolean isEqualsOrHashCode(IMethodBinding m) {
+    String name = m.getName();
+    return (name.equals("hashCode") && m.getParameterTypes().length == 0)
+        || (name.equals("equals") && m.getParameterTypes().length == 1);
   }
 
   @Override
@@ -209,6 +287,9 @@ public class Functionizer extends TreeVisitor {
     if (functionBinding == null && BindingUtil.isFunction(binding)) {
       functionBinding = binding;
     }
+    if (functionBinding == null) {
+      functionBinding = getExternalFunction(binding);
+    }
     boolean isFunction = functionBinding != null;
     if (isFunction) {
       MethodInvocation functionInvocation = new MethodInvocation(functionBinding, null);
@@ -234,7 +315,7 @@ public class Functionizer extends TreeVisitor {
         args.add(0, new SimpleName(selfParam));
       } else {
         boolean needsInstanceParam = isInstance && needsReceiver;
-        if (sameClassMember(declaringClass, getEnclosingType(enclosingMethod))
+        if (inheritsMember(declaringClass, getEnclosingType(enclosingMethod))
             && needsInstanceParam) {
           // Add this parameter.
           args.add(0, new ThisExpression(declaringClass));
@@ -279,19 +360,13 @@ public class Functionizer extends TreeVisitor {
   private MethodDeclaration makeFunction(MethodDeclaration method) {
     IMethodBinding m = method.getMethodBinding();
     ITypeBinding declaringClass = m.getDeclaringClass();
-    ITypeBinding[] paramTypes = m.getParameterTypes();
     List<SingleVariableDeclaration> params = TreeUtil.copyList(method.getParameters());
     if (!BindingUtil.isStatic(m)) {
-      List<ITypeBinding> list = Lists.newArrayList(paramTypes);
-      list.add(0, m.getDeclaringClass());
-      paramTypes = list.toArray(new ITypeBinding[list.size()]);
       GeneratedVariableBinding var = new GeneratedVariableBinding(NameTable.SELF_NAME, 0,
           declaringClass, false, true, declaringClass, null);
       params.add(0, new SingleVariableDeclaration(var));
     }
-    String functionName = NameTable.makeFunctionName(declaringClass, m);
-    IOSMethodBinding newBinding =
-        IOSMethodBinding.newFunction(m, functionName, paramTypes);
+    IOSMethodBinding newBinding = newFunctionBinding(m);
     MethodDeclaration function = new MethodDeclaration(newBinding);
     function.getParameters().addAll(params);
 
@@ -341,6 +416,22 @@ public class Functionizer extends TreeVisitor {
     return function;
   }
 
+  /**
+   * Returns the binding of a method's function, whose first parameter is the
+   * instance if the method isn't static.
+   */
+  private static IOSMethodBinding newFunctionBinding(IMethodBinding m) {
+    ITypeBinding declaringClass = m.getDeclaringClass();
+    ITypeBinding[] paramTypes = m.getParameterTypes();
+    if (!BindingUtil.isStatic(m)) {
+      List<ITypeBinding> list = Lists.newArrayList(paramTypes);
+      list.add(0, declaringClass);
+      paramTypes = list.toArray(new ITypeBinding[list.size()]);
+    }
+    String functionName = NameTable.makeFunctionName(declaringClass, m);
+    return IOSMethodBinding.newFunction(m, functionName, paramTypes);
+  }
+
   /**
    *  Replace method block statements with single statement that invokes function.
    */
@@ -373,6 +464,19 @@ public class Functionizer extends TreeVisitor {
     return enclosingType.getTypeDeclaration().isEqualTo(declaringClass.getTypeDeclaration());
   }
 
+  /**
+   * Check if a type declares or inherits a member of declaringClass.
+   */
+  private static boolean inheritsMember(ITypeBinding declaringClass, ITypeBinding type) {
+    while (type != null) {
+      if (sameClassMember(declaringClass, type)) {
+        return true;
+      }
+      type = type.getSuperclass();
+    }
+    return false;
+  }
+
   private static ITypeBinding getEnclosingType(MethodDeclaration md) {
     return TreeUtil.getOwningType(md).getTypeBinding().getErasure();
   }
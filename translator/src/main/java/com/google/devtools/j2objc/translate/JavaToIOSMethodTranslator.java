@@ -16,9 +16,8 @@
 
 package com.google.devtools.j2objc.translate;
 
-import com.google.common.base.Function;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.devtools.j2objc.types.GeneratedMethodBinding;
 import com.google.devtools.j2objc.types.GeneratedVariableBinding;
@@ -26,6 +25,7 @@ import com.google.devtools.j2objc.types.IOSMethod;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
 import com.google.devtools.j2objc.types.IOSParameter;
 import com.google.devtools.j2objc.types.JavaMethod;
+import com.google.devtools.j2objc.types.MethodMappingIndex;
 import com.google.devtools.j2objc.types.NodeCopier;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTUtil;
@@ -67,23 +67,19 @@ import java.util.Map;
 public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
   private AST ast;
   private Map<IMethodBinding, JavaMethod> descriptions = Maps.newLinkedHashMap();
-  private List<IMethodBinding> overridableMethods = Lists.newArrayList();
-  private List<IMethodBinding> mappedMethods = Lists.newArrayList();
-  private final ITypeBinding javaLangCloneable;
 
-  private final Map<String, IOSMethod> methodMappings;
+  // The methods below are indexed by MethodMappingIndex.getSignatureKey(),
+  // since a method can only override methods with the same key.
+  private ListMultimap<String, IMethodBinding> describedMethods = ArrayListMultimap.create();
+  private ListMultimap<String, IMethodBinding> overridableMethods = ArrayListMultimap.create();
+  private ListMultimap<String, IMethodBinding> mappedMethods = ArrayListMultimap.create();
+  private final ITypeBinding javaLangCloneable;
 
-  private static final Function<String, IOSMethod> IOS_METHOD_FROM_STRING =
-      new Function<String, IOSMethod>() {
-    public IOSMethod apply(String value) {
-      return IOSMethod.create(value);
-    }
-  };
+  private final MethodMappingIndex methodMappings;
 
-  public JavaToIOSMethodTranslator(AST ast, Map<String, String> methodMappings) {
+  public JavaToIOSMethodTranslator(AST ast, MethodMappingIndex methodMappings) {
     this.ast = ast;
-    this.methodMappings =
-        ImmutableMap.copyOf(Maps.transformValues(methodMappings, IOS_METHOD_FROM_STRING));
+    this.methodMappings = methodMappings;
     loadTargetMethods(ast.resolveWellKnownType("java.lang.Object"));
     loadTargetMethods(ast.resolveWellKnownType("java.lang.Class"));
     loadTargetMethods(ast.resolveWellKnownType("java.lang.String"));
@@ -103,10 +99,11 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
       // track all non-final public, protected and package-private methods
       int mods = method.getModifiers();
       if (!Modifier.isPrivate(mods)) {
+        String key = MethodMappingIndex.getSignatureKey(method);
         if (!Modifier.isFinal(mods)) {
-          overridableMethods.add(method);
+          overridableMethods.put(key, method);
         }
-        mappedMethods.add(method);
+        mappedMethods.put(key, method);
         addDescription(method);
       }
     }
@@ -115,15 +112,16 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
   private void loadCharSequenceMethods() {
     ITypeBinding charSequence = Types.resolveJavaType("java.lang.CharSequence");
     for (IMethodBinding method : charSequence.getDeclaredMethods()) {
+      String key = MethodMappingIndex.getSignatureKey(method);
       if (method.getName().equals("length")) {
-        overridableMethods.add(0, method);
+        overridableMethods.get(key).add(0, method);
         NameTable.rename(method, "sequenceLength");
-        mappedMethods.add(method);
+        mappedMethods.put(key, method);
         addDescription(method);
       } else if (method.getName().equals("subSequence")) {
-        overridableMethods.add(0, method);
+        overridableMethods.get(key).add(0, method);
         NameTable.rename(method, "subSequenceFrom");
-        mappedMethods.add(method);
+        mappedMethods.put(key, method);
         addDescription(method);
       }
     }
@@ -131,16 +129,21 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(MethodDeclaration node) {
-    // See if method has been directly mapped.
     IMethodBinding binding = Types.getMethodBinding(node);
+    if (!methodMappings.hasMappedSignature(binding)) {
+      return true;
+    }
+
+    // See if method has been directly mapped.
     JavaMethod desc = getDescription(binding);
     if (desc != null) {
-      mapMethod(node, binding, methodMappings.get(desc.getKey()));
+      mapMethod(node, binding, methodMappings.getMapping(desc.getKey()));
       return true;
     }
 
     // See if an overrideable superclass method has been mapped.
-    for (IMethodBinding overridable : overridableMethods) {
+    String signatureKey = MethodMappingIndex.getSignatureKey(binding);
+    for (IMethodBinding overridable : overridableMethods.get(signatureKey)) {
       if (!binding.isConstructor() &&
           (binding.isEqualTo(overridable) || binding.overrides(overridable))) {
         JavaMethod md = getDescription(overridable);
@@ -148,7 +151,7 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
           continue;
         }
         String key = md.getKey();
-        IOSMethod iosMethod = methodMappings.get(key);
+        IOSMethod iosMethod = methodMappings.getMapping(key);
         if (iosMethod != null) {
           mapMethod(node, binding, iosMethod);
         }
@@ -204,7 +207,7 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
           return false;
         }
       }
-      IOSMethod iosMethod = methodMappings.get(key);
+      IOSMethod iosMethod = methodMappings.getMapping(key);
       if (iosMethod != null) {
         IOSMethodBinding methodBinding = IOSMethodBinding.newMappedMethod(iosMethod, binding);
         MethodInvocation newInvocation = ASTFactory.newMethodInvocation(ast, methodBinding,
@@ -238,6 +241,10 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
   @Override
   public void endVisit(MethodInvocation node) {
     IMethodBinding binding = Types.getMethodBinding(node);
+    if (!methodMappings.hasMappedSignature(binding)) {
+      return;
+    }
+    String signatureKey = MethodMappingIndex.getSignatureKey(binding);
     JavaMethod md = getDescription(binding);
     if (md == null && !binding.getName().equals("clone")) { // never map clone()
       IVariableBinding receiver =
@@ -245,7 +252,7 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
       ITypeBinding clazz =
           receiver != null ? receiver.getType() : binding.getDeclaringClass();
       if (clazz != null && !clazz.isArray()) {
-        for (IMethodBinding method : descriptions.keySet()) {
+        for (IMethodBinding method : describedMethods.get(signatureKey)) {
           if (binding.isSubsignature(method)
               && clazz.isAssignmentCompatible(method.getDeclaringClass())) {
             md = descriptions.get(method);
@@ -256,7 +263,7 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
     }
     if (md != null) {
       String key = md.getKey();
-      IOSMethod iosMethod = methodMappings.get(key);
+      IOSMethod iosMethod = methodMappings.getMapping(key);
       if (iosMethod == null) {
         ErrorUtil.error(node, createMissingMethodMessage(binding));
         return;
@@ -273,11 +280,11 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
       }
     } else {
       // Not mapped, check if it overrides a mapped method.
-      for (IMethodBinding methodBinding : mappedMethods) {
+      for (IMethodBinding methodBinding : mappedMethods.get(signatureKey)) {
         if (binding.overrides(methodBinding)) {
           JavaMethod desc = getDescription(methodBinding);
           if (desc != null) {
-            IOSMethod iosMethod = methodMappings.get(desc.getKey());
+            IOSMethod iosMethod = methodMappings.getMapping(desc.getKey());
             if (iosMethod != null) {
               IOSMethodBinding newBinding = IOSMethodBinding.newMappedMethod(iosMethod, binding);
               Types.addBinding(node, newBinding);
@@ -313,10 +320,13 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
     }
 
     IMethodBinding binding = Types.getMethodBinding(node);
+    if (!methodMappings.hasMappedSignature(binding)) {
+      return true;
+    }
     JavaMethod md = getDescription(binding);
     if (md != null) {
       String key = md.getKey();
-      IOSMethod iosMethod = methodMappings.get(key);
+      IOSMethod iosMethod = methodMappings.getMapping(key);
       if (iosMethod == null) {
         // Method has same name as a mapped method's, but it's ignored since
         // it doesn't override it.
@@ -326,11 +336,12 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
       Types.addBinding(node, newBinding);
     } else {
       // Not mapped, check if it overrides a mapped method.
-      for (IMethodBinding methodBinding : mappedMethods) {
+      String signatureKey = MethodMappingIndex.getSignatureKey(binding);
+      for (IMethodBinding methodBinding : mappedMethods.get(signatureKey)) {
         if (binding.overrides(methodBinding)) {
           JavaMethod desc = getDescription(methodBinding);
           if (desc != null) {
-            IOSMethod iosMethod = methodMappings.get(desc.getKey());
+            IOSMethod iosMethod = methodMappings.getMapping(desc.getKey());
             if (iosMethod != null) {
               IOSMethodBinding newBinding = IOSMethodBinding.newMappedMethod(iosMethod, binding);
               Types.addBinding(node, newBinding);
@@ -351,8 +362,9 @@ public class JavaToIOSMethodTranslator extends ErrorReportingASTVisitor {
 
   private JavaMethod addDescription(IMethodBinding binding) {
     JavaMethod desc = JavaMethod.getJavaMethod(binding);
-    if (desc != null && methodMappings.containsKey(desc.getKey())) {
+    if (desc != null && methodMappings.isMapped(desc.getKey())) {
       descriptions.put(binding, desc);
+      describedMethods.put(MethodMappingIndex.getSignatureKey(binding), binding);
       return desc;
     }
     return null;  // binding isn't mapped.
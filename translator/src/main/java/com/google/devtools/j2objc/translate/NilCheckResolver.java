@@ -14,7 +14,9 @@
 
 package com.google.devtools.j2objc.translate;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
 import com.google.devtools.j2objc.types.NodeCopier;
@@ -25,12 +27,20 @@ import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.ArrayCreation;
+import org.eclipse.jdt.core.dom.AssertStatement;
 import org.eclipse.jdt.core.dom.Assignment;
 import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BooleanLiteral;
+import org.eclipse.jdt.core.dom.BreakStatement;
 import org.eclipse.jdt.core.dom.CastExpression;
 import org.eclipse.jdt.core.dom.CatchClause;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
 import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.ContinueStatement;
 import org.eclipse.jdt.core.dom.DoStatement;
 import org.eclipse.jdt.core.dom.EnhancedForStatement;
 import org.eclipse.jdt.core.dom.Expression;
@@ -40,31 +50,56 @@ import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.IfStatement;
 import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.InstanceofExpression;
+import org.eclipse.jdt.core.dom.LabeledStatement;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
 import org.eclipse.jdt.core.dom.NullLiteral;
 import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
 import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.ReturnStatement;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
 import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
 import org.eclipse.jdt.core.dom.SwitchCase;
 import org.eclipse.jdt.core.dom.SwitchStatement;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.ThrowStatement;
 import org.eclipse.jdt.core.dom.TryStatement;
 import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 import org.eclipse.jdt.core.dom.WhileStatement;
 
-import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Adds nil_chk calls where required to maintain compatibility Java's
  * NullPointerException being thrown when null is dereferenced.
  *
- * TODO(kstanger): We need to be more strict with fields. When an external call
- * such as a MethodInvocation or ConstructorInvocation is encountered it could
- * have the side-effect of re-assigning the field. Therefore when encountering
- * such nodes we need to clear all non-local variables from the set of safe
- * vars.
+ * Each method is analyzed as a forward dataflow problem over its control
+ * flow: at every point the set of variables that are known to be non-null
+ * is computed, and an expression only needs a nil_chk if it may be null
+ * there. A variable is known to be non-null after it's dereferenced,
+ * assigned a non-null value, or tested with "!= null" or instanceof. Loops
+ * are iterated until the state at their head is stable, and break, continue,
+ * return, throw and exceptions reaching catch and finally blocks are
+ * followed. Rewriter has already replaced the labels that break and continue
+ * statements refer to with "break_" and "continue_" labels on empty
+ * statements after the jumps, which are followed the same way. Fields are only tracked when accessed through this object or
+ * statically, and are forgotten at every call, since the callee may
+ * reassign them.
+ *
+ * The nil_chk of a local variable that a loop doesn't assign is moved out of
+ * the loop, when the dereference is the first thing the loop condition does.
  *
  * @author Keith Stanger
  */
@@ -73,72 +108,154 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
   private static final IOSMethodBinding NIL_CHK_DECL = IOSMethodBinding.newFunction(
       "nil_chk", Types.resolveIOSType("id"), null, Types.resolveIOSType("id"));
 
-  // Contains the set of "safe" variables that don't need nil checks. A new
-  // "scope" is added to the stack when entering conditionally executed code
-  // such as if-statements, loops, conditional operators (&&, ||).
-  private final ArrayList<Set<IVariableBinding>> safeVarsStack = Lists.newArrayList();
+  // The variables known to be non-null at the current point of the method,
+  // or null if the current point can't be reached, such as after a return.
+  private Set<IVariableBinding> safeVars = Sets.newHashSet();
+
+  // The states where the condition that was just visited is true or false.
+  // conditionNode is the expression they were computed for.
+  private Expression conditionNode = null;
+  private Set<IVariableBinding> safeVarsTrue = null;
+  private Set<IVariableBinding> safeVarsFalse = null;
+
+  // The statements that can be targeted by a break or continue, innermost last.
+  private final List<JumpTarget> jumpTargets = Lists.newArrayList();
+
+  // The jumps to labels that haven't been reached yet, by label.
+  private final Map<String, List<ForwardJump>> forwardJumps = Maps.newHashMap();
+
+  // The variables assigned by each enclosing finally block, innermost last.
+  private final List<Set<IVariableBinding>> finallyAssignments = Lists.newArrayList();
+
+  // Greater than zero while a loop is iterated to find the state at its head,
+  // when nothing is counted and the tree isn't modified.
+  private int analysisDepth = 0;
+
+  private int nilChecksAdded = 0;
+  private int nilChecksElided = 0;
+
+  // A statement that can be the target of a break or continue, and the
+  // states of the jumps to it.
+  private static class JumpTarget {
+    private final String label;
+    private final boolean isLoop;
+    private final boolean isSwitch;
+    private final int finallyDepth;
+    private Set<IVariableBinding> breakState = null;
+    private Set<IVariableBinding> continueState = null;
 
-  // These sets are used to pass down to parent nodes the set of variables that
-  // are safe given that the expression is true or false.
-  private Set<IVariableBinding> safeVarsTrue = Sets.newHashSet();
-  private Set<IVariableBinding> safeVarsFalse = Sets.newHashSet();
+    private JumpTarget(String label, boolean isLoop, boolean isSwitch, int finallyDepth) {
+      this.label = label;
+      this.isLoop = isLoop;
+      this.isSwitch = isSwitch;
+      this.finallyDepth = finallyDepth;
+    }
+  }
+
+  // A jump to a label that follows it, and the variables assigned by the
+  // finally blocks enclosing the jump. The label's depth isn't known until
+  // it's reached, so neither is which of these blocks the jump runs.
+  private static class ForwardJump {
+    private final Set<IVariableBinding> state;
+    private final List<Set<IVariableBinding>> finallyAssignments;
+
+    private ForwardJump(
+        Set<IVariableBinding> state, List<Set<IVariableBinding>> finallyAssignments) {
+      this.state = state;
+      this.finallyAssignments = finallyAssignments;
+    }
+  }
 
-  private void pushScope() {
-    safeVarsStack.add(Sets.<IVariableBinding>newHashSet());
+  /**
+   * Returns the number of nil_chk calls added.
+   */
+  public int getNilChecksAdded() {
+    return nilChecksAdded;
   }
 
-  private void popScope() {
-    safeVarsStack.remove(safeVarsStack.size() - 1);
+  /**
+   * Returns the number of dereferences that didn't need a nil_chk, because
+   * the expression was known to be non-null.
+   */
+  public int getNilChecksElided() {
+    return nilChecksElided;
   }
 
-  // A node visitor must call this before visiting a child if it wishes to use
-  // the contents of safeVarsTrue or safeVarsFalse.
-  private void clearConditionalSafeVars() {
-    safeVarsTrue.clear();
-    safeVarsFalse.clear();
+  private static Set<IVariableBinding> copy(Set<IVariableBinding> state) {
+    return state != null ? Sets.newHashSet(state) : null;
   }
 
-  private void addSafeVar(IVariableBinding var) {
-    if (safeVarsStack.size() > 0) {
-      safeVarsStack.get(safeVarsStack.size() - 1).add(var);
+  // Returns the state where both paths join: the variables that are
+  // non-null on both.
+  private static Set<IVariableBinding> meet(Set<IVariableBinding> a, Set<IVariableBinding> b) {
+    if (a == null) {
+      return copy(b);
+    }
+    Set<IVariableBinding> result = Sets.newHashSet(a);
+    if (b != null) {
+      result.retainAll(b);
     }
+    return result;
   }
 
-  private void addSafeVars(Set<IVariableBinding> vars) {
-    if (safeVarsStack.size() > 0) {
-      safeVarsStack.get(safeVarsStack.size() - 1).addAll(vars);
+  private static void removeFields(Set<IVariableBinding> state) {
+    if (state != null) {
+      for (Iterator<IVariableBinding> iter = state.iterator(); iter.hasNext(); ) {
+        if (iter.next().isField()) {
+          iter.remove();
+        }
+      }
     }
   }
 
-  private void removeSafeVar(IVariableBinding var) {
-    for (Set<IVariableBinding> scope : safeVarsStack) {
-      scope.remove(var);
+  private void addSafeVar(IVariableBinding var) {
+    if (safeVars != null) {
+      safeVars.add(var);
     }
   }
 
-  private Set<IVariableBinding> getAllSafeVars() {
-    Set<IVariableBinding> safeVars = Sets.newHashSet();
-    for (Set<IVariableBinding> scope : safeVarsStack) {
-      safeVars.addAll(scope);
+  private void removeSafeVar(IVariableBinding var) {
+    if (safeVars != null) {
+      safeVars.remove(var);
     }
-    return safeVars;
   }
 
-  private boolean isSafeVar(IVariableBinding var) {
-    for (Set<IVariableBinding> scope : safeVarsStack) {
-      if (scope.contains(var)) {
-        return true;
+  /**
+   * Returns the variable read by an expression if it can be tracked: a
+   * local variable, a static field, or a field of this object read by its
+   * simple name or through "this".
+   */
+  private static IVariableBinding getTrackedVariable(Expression e) {
+    IVariableBinding var = Types.getVariableBinding(e);
+    if (var == null || Modifier.isVolatile(var.getModifiers())) {
+      return null;
+    }
+    if (!var.isField() || BindingUtil.isStatic(var) || e instanceof SimpleName) {
+      return var;
+    }
+    if (e instanceof FieldAccess) {
+      Expression target = ((FieldAccess) e).getExpression();
+      if (target instanceof ThisExpression && ((ThisExpression) target).getQualifier() == null) {
+        return var;
       }
     }
-    return false;
+    return null;
   }
 
   private boolean needsNilCheck(Expression e) {
+    return needsNilCheck(e, safeVars);
+  }
+
+  // Returns true if an expression may be null, given the set of variables
+  // known to be non-null.
+  private static boolean needsNilCheck(Expression e, Set<IVariableBinding> knownVars) {
     IVariableBinding sym = Types.getVariableBinding(e);
     if (sym != null) {
+      if (knownVars != null && knownVars.contains(sym) && getTrackedVariable(e) != null) {
+        return false;
+      }
       // Outer class references should always be non-nil.
-      return !isSafeVar(sym) && !sym.getName().startsWith("this$")
-          && !sym.getName().equals("outer$");
+      return !sym.getName().startsWith("this$") && !sym.getName().equals("outer$");
     }
     IMethodBinding method = Types.getMethodBinding(e);
     if (method != null) {
@@ -148,10 +265,10 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
                && method.getName().equals("valueOf"));
     }
     if (e instanceof ParenthesizedExpression) {
-      return needsNilCheck(((ParenthesizedExpression) e).getExpression());
+      return needsNilCheck(((ParenthesizedExpression) e).getExpression(), knownVars);
     }
     if (e instanceof CastExpression) {
-      return needsNilCheck(((CastExpression) e).getExpression());
+      return needsNilCheck(((CastExpression) e).getExpression(), knownVars);
     }
     switch (e.getNodeType()) {
       case ASTNode.ARRAY_ACCESS:
@@ -163,26 +280,40 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
 
   private void addNilCheck(Expression node, boolean deferAdd) {
     if (!needsNilCheck(node)) {
+      if (analysisDepth == 0 && needsNilCheck(node, null)) {
+        nilChecksElided++;
+      }
       return;
     }
-    IVariableBinding var = Types.getVariableBinding(node);
+    IVariableBinding var = getTrackedVariable(node);
     if (var != null) {
       addSafeVar(var);
-      safeVarsTrue.add(var);
-      safeVarsFalse.add(var);
     }
+    if (analysisDepth > 0) {
+      return;
+    }
+    nilChecksAdded++;
     if (deferAdd) {
       Types.addNilCheck(node);
     } else {
-      AST ast = node.getAST();
-      IOSMethodBinding nilChkBinding = IOSMethodBinding.newTypedInvocation(
-          NIL_CHK_DECL, Types.getTypeBinding(node));
-      MethodInvocation nilChkInvocation = ASTFactory.newMethodInvocation(ast, nilChkBinding, null);
-      ASTUtil.getArguments(nilChkInvocation).add(NodeCopier.copySubtree(ast, node));
-      ASTUtil.setProperty(node, nilChkInvocation);
+      ASTUtil.setProperty(node, newNilCheck(node));
     }
   }
 
+  private static MethodInvocation newNilCheck(Expression node) {
+    AST ast = node.getAST();
+    IOSMethodBinding nilChkBinding = IOSMethodBinding.newTypedInvocation(
+        NIL_CHK_DECL, Types.getTypeBinding(node));
+    MethodInvocation nilChkInvocation = ASTFactory.newMethodInvocation(ast, nilChkBinding, null);
+    ASTUtil.getArguments(nilChkInvocation).add(NodeCopier.copySubtree(ast, node));
+    return nilChkInvocation;
+  }
+
+  // A call may reassign any field.
+  private void invalidateFields() {
+    removeFields(safeVars);
+  }
+
   @Override
   public void endVisit(ArrayAccess node) {
     addNilCheck(node.getArray(), false);
@@ -195,19 +326,32 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(QualifiedName node) {
-    if (!needsNilCheck(node.getQualifier())) {
+    Name qualifier = node.getQualifier();
+    IVariableBinding var = Types.getVariableBinding(node);
+    IVariableBinding qualifierVar = Types.getVariableBinding(qualifier);
+    if (qualifierVar == null) {
+      // The qualifier is a type or package name.
       return true;
     }
 
     // Instance references to static fields don't need to be nil-checked.
     // This is true in Java (surprisingly), where instance.FIELD returns
     // FIELD even when instance is null.
-    IVariableBinding var = Types.getVariableBinding(node);
-    IVariableBinding qualifierVar = Types.getVariableBinding(node.getQualifier());
-    if (var != null && qualifierVar != null && BindingUtil.isStatic(var)
-        && !BindingUtil.isStatic(qualifierVar)) {
+    if (var != null && BindingUtil.isStatic(var) && !BindingUtil.isStatic(qualifierVar)) {
+      return true;
+    }
+
+    if (!needsNilCheck(qualifier)) {
+      if (analysisDepth == 0 && needsNilCheck(qualifier, null)) {
+        nilChecksElided++;
+      }
       return true;
     }
+    if (analysisDepth > 0) {
+      qualifier.accept(this);
+      addNilCheck(qualifier, false);
+      return false;
+    }
 
     // We can't substitute the qualifier with a nil_chk because it must have a
     // Name type, so we have to convert to a FieldAccess node.
@@ -219,65 +363,151 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
   @Override
   public void endVisit(MethodInvocation node) {
     IMethodBinding binding = Types.getMethodBinding(node);
-    if (BindingUtil.isStatic(binding)) {
-      return;
+    if (!BindingUtil.isStatic(binding)) {
+      Expression receiver = node.getExpression();
+      if (receiver != null) {
+        addNilCheck(receiver, true);
+      }
     }
-    Expression receiver = node.getExpression();
-    if (receiver != null) {
-      addNilCheck(receiver, true);
+    // Boxing, unboxing and getClass() can't call back into other code.
+    if (!Types.isBoxedPrimitive(binding.getDeclaringClass())
+        && !binding.getName().equals("getClass")) {
+      invalidateFields();
     }
   }
 
+  @Override
+  public void endVisit(SuperMethodInvocation node) {
+    invalidateFields();
+  }
+
+  @Override
+  public void endVisit(ClassInstanceCreation node) {
+    invalidateFields();
+  }
+
+  @Override
+  public void endVisit(ConstructorInvocation node) {
+    invalidateFields();
+  }
+
+  @Override
+  public void endVisit(SuperConstructorInvocation node) {
+    invalidateFields();
+  }
+
   @Override
   public boolean visit(MethodDeclaration node) {
-    assert safeVarsStack.isEmpty();
+    assert jumpTargets.isEmpty() && finallyAssignments.isEmpty() && forwardJumps.isEmpty();
     Block body = node.getBody();
     if (body != null) {
-      pushScope();
+      safeVars = Sets.newHashSet();
       body.accept(this);
-      popScope();
+      safeVars = Sets.newHashSet();
+      forwardJumps.clear();
     }
     return false;
   }
 
+  // Visits a boolean expression, leaving the states where it's true and false
+  // in safeVarsTrue and safeVarsFalse.
+  private void acceptCondition(Expression node) {
+    conditionNode = null;
+    node.accept(this);
+    if (conditionNode != node) {
+      safeVarsTrue = copy(safeVars);
+      safeVarsFalse = copy(safeVars);
+    }
+    conditionNode = null;
+  }
+
+  private void setConditionStates(
+      Expression node, Set<IVariableBinding> stateTrue, Set<IVariableBinding> stateFalse) {
+    conditionNode = node;
+    safeVarsTrue = stateTrue;
+    safeVarsFalse = stateFalse;
+    safeVars = meet(stateTrue, stateFalse);
+  }
+
   @Override
   public boolean visit(IfStatement node) {
-    return handleConditional(
-        node.getExpression(), node.getThenStatement(), node.getElseStatement());
+    acceptCondition(node.getExpression());
+    Set<IVariableBinding> elseState = safeVarsFalse;
+    safeVars = safeVarsTrue;
+    node.getThenStatement().accept(this);
+    Set<IVariableBinding> thenState = safeVars;
+    safeVars = elseState;
+    if (node.getElseStatement() != null) {
+      node.getElseStatement().accept(this);
+    }
+    safeVars = meet(thenState, safeVars);
+    return false;
   }
 
   @Override
   public boolean visit(ConditionalExpression node) {
-    return handleConditional(
-        node.getExpression(), node.getThenExpression(), node.getElseExpression());
-  }
-
-  private boolean handleConditional(Expression expr, ASTNode thenNode, ASTNode elseNode) {
-    clearConditionalSafeVars();
-    expr.accept(this);
-    Set<IVariableBinding> safeVarsElse = getAllSafeVars();
-    safeVarsElse.addAll(safeVarsFalse);
-    pushScope();
-    addSafeVars(safeVarsTrue);
-    thenNode.accept(this);
-    popScope();
-    if (elseNode != null) {
-      pushScope();
-      addSafeVars(safeVarsElse);
-      elseNode.accept(this);
-      popScope();
+    acceptCondition(node.getExpression());
+    Set<IVariableBinding> elseState = safeVarsFalse;
+    safeVars = safeVarsTrue;
+    node.getThenExpression().accept(this);
+    Set<IVariableBinding> thenState = safeVars;
+    safeVars = elseState;
+    node.getElseExpression().accept(this);
+    safeVars = meet(thenState, safeVars);
+    return false;
+  }
+
+  @Override
+  public boolean visit(ParenthesizedExpression node) {
+    acceptCondition(node.getExpression());
+    setConditionStates(node, safeVarsTrue, safeVarsFalse);
+    return false;
+  }
+
+  @Override
+  public boolean visit(PrefixExpression node) {
+    if (node.getOperator() != PrefixExpression.Operator.NOT) {
+      return true;
     }
+    acceptCondition(node.getOperand());
+    setConditionStates(node, safeVarsFalse, safeVarsTrue);
     return false;
   }
 
+  @Override
+  public void endVisit(BooleanLiteral node) {
+    // The branch that can't be taken is unreachable.
+    boolean value = node.booleanValue();
+    setConditionStates(node, value ? copy(safeVars) : null, value ? null : copy(safeVars));
+  }
+
+  @Override
+  public void endVisit(InstanceofExpression node) {
+    IVariableBinding var = getTrackedVariable(node.getLeftOperand());
+    if (var != null) {
+      Set<IVariableBinding> stateTrue = copy(safeVars);
+      if (stateTrue != null) {
+        stateTrue.add(var);
+      }
+      setConditionStates(node, stateTrue, copy(safeVars));
+    }
+  }
+
   @Override
   public boolean visit(InfixExpression node) {
     InfixExpression.Operator op = node.getOperator();
     boolean logicalAnd = op == InfixExpression.Operator.CONDITIONAL_AND;
     boolean logicalOr = op == InfixExpression.Operator.CONDITIONAL_OR;
     if (logicalAnd || logicalOr) {
-      return handleConditionalOperator(node, logicalAnd);
+      handleConditionalOperator(node, logicalAnd);
+      return false;
     }
+    return true;
+  }
+
+  @Override
+  public void endVisit(InfixExpression node) {
+    InfixExpression.Operator op = node.getOperator();
     boolean equals = op == InfixExpression.Operator.EQUALS;
     boolean notEquals = op == InfixExpression.Operator.NOT_EQUALS;
     if (equals || notEquals) {
@@ -285,59 +515,34 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
       Expression rhs = node.getRightOperand();
       IVariableBinding maybeNullVar = null;
       if (lhs instanceof NullLiteral) {
-        maybeNullVar = Types.getVariableBinding(rhs);
+        maybeNullVar = getTrackedVariable(rhs);
       } else if (rhs instanceof NullLiteral) {
-        maybeNullVar = Types.getVariableBinding(lhs);
+        maybeNullVar = getTrackedVariable(lhs);
       }
-      if (maybeNullVar != null) {
-        if (equals) {
-          safeVarsFalse.add(maybeNullVar);
-        } else {
-          safeVarsTrue.add(maybeNullVar);
-        }
+      if (maybeNullVar != null && safeVars != null) {
+        Set<IVariableBinding> stateTrue = copy(safeVars);
+        Set<IVariableBinding> stateFalse = copy(safeVars);
+        (equals ? stateFalse : stateTrue).add(maybeNullVar);
+        setConditionStates(node, stateTrue, stateFalse);
       }
     }
-    return true;
   }
 
-  private boolean handleConditionalOperator(InfixExpression node, boolean logicalAnd) {
-    Set<IVariableBinding> newSafeVarsTrue = Sets.newHashSet();
-    Set<IVariableBinding> newSafeVarsFalse = Sets.newHashSet();
-    clearConditionalSafeVars();
-    node.getLeftOperand().accept(this);
-    if (logicalAnd) {
-      newSafeVarsTrue.addAll(safeVarsTrue);
-    } else {
-      newSafeVarsFalse.addAll(safeVarsFalse);
+  private void handleConditionalOperator(InfixExpression node, boolean logicalAnd) {
+    List<Expression> operands = Lists.newArrayList(node.getLeftOperand(), node.getRightOperand());
+    operands.addAll(ASTUtil.getExtendedOperands(node));
+    // The state where evaluation stops before the last operand.
+    Set<IVariableBinding> shortCircuitState = null;
+    for (Expression operand : operands) {
+      acceptCondition(operand);
+      shortCircuitState = meet(shortCircuitState, logicalAnd ? safeVarsFalse : safeVarsTrue);
+      safeVars = logicalAnd ? safeVarsTrue : safeVarsFalse;
     }
-    pushScope();
-    addSafeVars(logicalAnd ? safeVarsTrue : safeVarsFalse);
-    int pushCount = 1;
-    clearConditionalSafeVars();
-    node.getRightOperand().accept(this);
     if (logicalAnd) {
-      newSafeVarsTrue.addAll(safeVarsTrue);
+      setConditionStates(node, safeVars, shortCircuitState);
     } else {
-      newSafeVarsFalse.addAll(safeVarsFalse);
-    }
-    for (Expression extendedOperand : ASTUtil.getExtendedOperands(node)) {
-      pushScope();
-      addSafeVars(logicalAnd ? safeVarsTrue : safeVarsFalse);
-      pushCount++;
-      clearConditionalSafeVars();
-      extendedOperand.accept(this);
-      if (logicalAnd) {
-        newSafeVarsTrue.addAll(safeVarsTrue);
-      } else {
-        newSafeVarsFalse.addAll(safeVarsFalse);
-      }
-    }
-    while (pushCount-- > 0) {
-      popScope();
+      setConditionStates(node, shortCircuitState, safeVars);
     }
-    safeVarsTrue = newSafeVarsTrue;
-    safeVarsFalse = newSafeVarsFalse;
-    return false;
   }
 
   private void handleAssignment(IVariableBinding var, Expression value) {
@@ -350,100 +555,514 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
 
   @Override
   public void endVisit(Assignment node) {
-    if (node.getOperator() == Assignment.Operator.ASSIGN) {
-      handleAssignment(Types.getVariableBinding(node.getLeftHandSide()), node.getRightHandSide());
+    Expression lhs = node.getLeftHandSide();
+    IVariableBinding var = Types.getVariableBinding(lhs);
+    if (var == null) {
+      return;
+    }
+    // A field may be assigned through another reference to this object.
+    removeSafeVar(var);
+    if (node.getOperator() == Assignment.Operator.ASSIGN && getTrackedVariable(lhs) != null) {
+      handleAssignment(var, node.getRightHandSide());
     }
   }
 
   @Override
   public void endVisit(VariableDeclarationFragment node) {
+    IVariableBinding var = Types.getVariableBinding(node);
     Expression initializer = node.getInitializer();
     if (initializer != null) {
-      handleAssignment(Types.getVariableBinding(node), initializer);
+      handleAssignment(var, initializer);
+    } else {
+      removeSafeVar(var);
+    }
+  }
+
+  @Override
+  public void endVisit(ReturnStatement node) {
+    safeVars = null;
+  }
+
+  @Override
+  public void endVisit(ThrowStatement node) {
+    safeVars = null;
+  }
+
+  @Override
+  public boolean visit(BreakStatement node) {
+    SimpleName label = node.getLabel();
+    JumpTarget target = findJumpTarget(label != null ? label.getIdentifier() : null, false);
+    if (target != null) {
+      target.breakState = meet(target.breakState, getJumpState(target));
+    } else {
+      addForwardJump(label);
+    }
+    safeVars = null;
+    return false;
+  }
+
+  @Override
+  public boolean visit(ContinueStatement node) {
+    SimpleName label = node.getLabel();
+    JumpTarget target = findJumpTarget(label != null ? label.getIdentifier() : null, true);
+    if (target != null) {
+      target.continueState = meet(target.continueState, getJumpState(target));
+    } else {
+      addForwardJump(label);
+    }
+    safeVars = null;
+    return false;
+  }
+
+  // Saves the state of a jump to a label that doesn't enclose it, to be
+  // joined when the label is reached.
+  private void addForwardJump(SimpleName label) {
+    assert label != null : "Unlabeled jump without a target.";
+    if (safeVars == null) {
+      return;
+    }
+    String name = label.getIdentifier();
+    List<ForwardJump> jumps = forwardJumps.get(name);
+    if (jumps == null) {
+      jumps = Lists.newArrayList();
+      forwardJumps.put(name, jumps);
+    }
+    jumps.add(new ForwardJump(
+        copy(safeVars), Lists.<Set<IVariableBinding>>newArrayList(finallyAssignments)));
+  }
+
+  // Returns the state of the jumps to a label that's reached, after any
+  // finally blocks they run on their way.
+  private Set<IVariableBinding> takeForwardJumpState(String label) {
+    List<ForwardJump> jumps = forwardJumps.remove(label);
+    if (jumps == null) {
+      return null;
+    }
+    Set<IVariableBinding> result = null;
+    for (ForwardJump jump : jumps) {
+      Set<IVariableBinding> state = copy(jump.state);
+      for (int i = finallyAssignments.size(); i < jump.finallyAssignments.size(); i++) {
+        state.removeAll(jump.finallyAssignments.get(i));
+        removeFields(state);
+      }
+      result = meet(result, state);
+    }
+    return result;
+  }
+
+  private JumpTarget findJumpTarget(String label, boolean isContinue) {
+    for (int i = jumpTargets.size() - 1; i >= 0; i--) {
+      JumpTarget target = jumpTargets.get(i);
+      if (label != null ? label.equals(target.label)
+          : target.isLoop || (!isContinue && target.isSwitch)) {
+        return target;
+      }
+    }
+    return null;
+  }
+
+  // Returns the state at a jump's target, after any finally blocks that the
+  // jump runs on its way.
+  private Set<IVariableBinding> getJumpState(JumpTarget target) {
+    Set<IVariableBinding> state = copy(safeVars);
+    for (int i = target.finallyDepth; i < finallyAssignments.size() && state != null; i++) {
+      state.removeAll(finallyAssignments.get(i));
+      removeFields(state);
+    }
+    return state;
+  }
+
+  private static String getLabel(Statement node) {
+    ASTNode parent = node.getParent();
+    return parent instanceof LabeledStatement
+        ? ((LabeledStatement) parent).getLabel().getIdentifier() : null;
+  }
+
+  private static boolean isLoop(Statement node) {
+    return node instanceof DoStatement || node instanceof EnhancedForStatement
+        || node instanceof ForStatement || node instanceof WhileStatement;
+  }
+
+  @Override
+  public boolean visit(LabeledStatement node) {
+    Set<IVariableBinding> jumpState = takeForwardJumpState(node.getLabel().getIdentifier());
+    if (jumpState != null) {
+      safeVars = meet(jumpState, safeVars);
+    }
+    Statement body = node.getBody();
+    if (isLoop(body)) {
+      // The loop is the target of the label.
+      return true;
     }
+    JumpTarget target = new JumpTarget(
+        node.getLabel().getIdentifier(), false, false, finallyAssignments.size());
+    jumpTargets.add(target);
+    body.accept(this);
+    jumpTargets.remove(jumpTargets.size() - 1);
+    safeVars = meet(safeVars, target.breakState);
+    return false;
   }
 
   @Override
   public boolean visit(DoStatement node) {
-    pushScope();
-    node.getBody().accept(this);
-    node.getExpression().accept(this);
-    popScope();
+    handleLoop(node);
     return false;
   }
 
   @Override
   public boolean visit(EnhancedForStatement node) {
-    addNilCheck(node.getExpression(), false);
-    node.getExpression().accept(this);
-    pushScope();
-    node.getBody().accept(this);
-    popScope();
+    handleLoop(node);
     return false;
   }
 
   @Override
   public boolean visit(ForStatement node) {
-    for (Expression initializer : ASTUtil.getInitializers(node)) {
-      initializer.accept(this);
-    }
-    Expression expr = node.getExpression();
-    if (expr != null) {
+    handleLoop(node);
+    return false;
+  }
+
+  @Override
+  public boolean visit(WhileStatement node) {
+    handleLoop(node);
+    return false;
+  }
+
+  private void handleLoop(Statement loop) {
+    // Evaluated once, before the first iteration.
+    if (loop instanceof ForStatement) {
+      for (Expression initializer : ASTUtil.getInitializers((ForStatement) loop)) {
+        initializer.accept(this);
+      }
+    } else if (loop instanceof EnhancedForStatement) {
+      Expression expr = ((EnhancedForStatement) loop).getExpression();
       expr.accept(this);
+      addNilCheck(expr, false);
     }
-    pushScope();
-    node.getBody().accept(this);
-    for (Expression updater : ASTUtil.getUpdaters(node)) {
-      updater.accept(this);
+    hoistNilCheck(loop);
+
+    Set<IVariableBinding> entryState = safeVars;
+    Set<IVariableBinding> headState = copy(entryState);
+    JumpTarget target = new JumpTarget(getLabel(loop), true, false, finallyAssignments.size());
+    jumpTargets.add(target);
+    // Facts only get removed from the head's state, so this terminates.
+    analysisDepth++;
+    while (true) {
+      Set<IVariableBinding> newHeadState = meet(entryState, iterateLoop(loop, headState, target));
+      if (Objects.equal(newHeadState, headState)) {
+        break;
+      }
+      headState = newHeadState;
     }
-    popScope();
-    return false;
+    analysisDepth--;
+    iterateLoop(loop, headState, target);
+    jumpTargets.remove(jumpTargets.size() - 1);
+    safeVars = target.breakState;
+  }
+
+  // Visits one iteration of a loop, starting from the state at its head.
+  // Returns the state at the end of the iteration, and leaves the states
+  // where the loop is exited in the target's breakState.
+  private Set<IVariableBinding> iterateLoop(
+      Statement loop, Set<IVariableBinding> headState, JumpTarget target) {
+    target.breakState = null;
+    target.continueState = null;
+    safeVars = copy(headState);
+    if (loop instanceof DoStatement) {
+      DoStatement node = (DoStatement) loop;
+      node.getBody().accept(this);
+      safeVars = meet(safeVars, target.continueState);
+      exitLoopUnless(node.getExpression(), target);
+    } else if (loop instanceof EnhancedForStatement) {
+      EnhancedForStatement node = (EnhancedForStatement) loop;
+      target.breakState = copy(safeVars);
+      // The loop variable is assigned elements that may be null.
+      removeSafeVar(Types.getVariableBinding(node.getParameter()));
+      node.getBody().accept(this);
+      safeVars = meet(safeVars, target.continueState);
+    } else if (loop instanceof ForStatement) {
+      ForStatement node = (ForStatement) loop;
+      if (node.getExpression() != null) {
+        exitLoopUnless(node.getExpression(), target);
+      }
+      node.getBody().accept(this);
+      safeVars = meet(safeVars, target.continueState);
+      for (Expression updater : ASTUtil.getUpdaters(node)) {
+        updater.accept(this);
+      }
+    } else {
+      WhileStatement node = (WhileStatement) loop;
+      exitLoopUnless(node.getExpression(), target);
+      node.getBody().accept(this);
+      safeVars = meet(safeVars, target.continueState);
+    }
+    return safeVars;
+  }
+
+  private void exitLoopUnless(Expression condition, JumpTarget target) {
+    acceptCondition(condition);
+    target.breakState = meet(target.breakState, safeVarsFalse);
+    safeVars = safeVarsTrue;
+  }
+
+  /**
+   * Moves the nil_chk of a local variable out of a while or for loop, when
+   * dereferencing it is the first thing the loop condition does and the
+   * loop doesn't assign it. The first evaluation of the condition then
+   * throws at the same point that the hoisted check does.
+   */
+  private void hoistNilCheck(Statement loop) {
+    Expression condition = null;
+    if (loop instanceof WhileStatement) {
+      condition = ((WhileStatement) loop).getExpression();
+    } else if (loop instanceof ForStatement) {
+      ForStatement forLoop = (ForStatement) loop;
+      for (Expression initializer : ASTUtil.getInitializers(forLoop)) {
+        FirstEffectFinder finder = new FirstEffectFinder();
+        initializer.accept(finder);
+        if (finder.found) {
+          return;
+        }
+      }
+      condition = forLoop.getExpression();
+    }
+    if (condition == null) {
+      return;
+    }
+    FirstEffectFinder finder = new FirstEffectFinder();
+    condition.accept(finder);
+    Expression receiver = finder.dereferenced;
+    IVariableBinding var = receiver != null ? getTrackedVariable(receiver) : null;
+    if (var == null || var.isField() || !needsNilCheck(receiver) || isAssigned(loop, var)) {
+      return;
+    }
+    addSafeVar(var);
+    if (analysisDepth > 0) {
+      return;
+    }
+    nilChecksAdded++;
+    Statement stmt = loop.getParent() instanceof LabeledStatement
+        ? (Statement) loop.getParent() : loop;
+    AST ast = loop.getAST();
+    // Not cast to the receiver's type, since the result isn't used.
+    MethodInvocation nilChk = ASTFactory.newMethodInvocation(ast, NIL_CHK_DECL, null);
+    ASTUtil.getArguments(nilChk).add(NodeCopier.copySubtree(ast, receiver));
+    ASTUtil.insertBefore(stmt, ast.newExpressionStatement(nilChk));
+  }
+
+  /**
+   * Finds the first thing an expression does, in evaluation order, that
+   * could throw or have a side effect. If that's dereferencing an expression,
+   * it's returned in "dereferenced". Anything evaluated conditionally isn't
+   * searched.
+   */
+  private static class FirstEffectFinder extends ASTVisitor {
+    private boolean found = false;
+    private Expression dereferenced = null;
+
+    private void foundEffect(Expression receiver) {
+      if (!found) {
+        found = true;
+        dereferenced = receiver;
+      }
+    }
+
+    @Override
+    public boolean preVisit2(ASTNode node) {
+      return !found;
+    }
+
+    @Override
+    public boolean visit(InfixExpression node) {
+      InfixExpression.Operator op = node.getOperator();
+      if (op == InfixExpression.Operator.CONDITIONAL_AND
+          || op == InfixExpression.Operator.CONDITIONAL_OR) {
+        node.getLeftOperand().accept(this);
+        foundEffect(null);
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean visit(ConditionalExpression node) {
+      node.getExpression().accept(this);
+      foundEffect(null);
+      return false;
+    }
+
+    @Override
+    public void endVisit(MethodInvocation node) {
+      Expression receiver = node.getExpression();
+      boolean isStatic = BindingUtil.isStatic(Types.getMethodBinding(node));
+      foundEffect(receiver != null && !isStatic ? receiver : null);
+    }
+
+    @Override
+    public void endVisit(FieldAccess node) {
+      foundEffect(node.getExpression());
+    }
+
+    @Override
+    public void endVisit(QualifiedName node) {
+      IVariableBinding var = Types.getVariableBinding(node);
+      if (var != null && !BindingUtil.isStatic(var)
+          && Types.getVariableBinding(node.getQualifier()) != null) {
+        foundEffect(node.getQualifier());
+      }
+    }
+
+    @Override
+    public void endVisit(ArrayAccess node) {
+      foundEffect(node.getArray());
+    }
+
+    @Override
+    public void endVisit(SuperMethodInvocation node) {
+      foundEffect(null);
+    }
+
+    @Override
+    public void endVisit(ClassInstanceCreation node) {
+      foundEffect(null);
+    }
+
+    @Override
+    public void endVisit(ArrayCreation node) {
+      foundEffect(null);
+    }
+
+    @Override
+    public void endVisit(CastExpression node) {
+      foundEffect(null);
+    }
+
+    @Override
+    public void endVisit(Assignment node) {
+      foundEffect(null);
+    }
+
+    @Override
+    public void endVisit(PrefixExpression node) {
+      PrefixExpression.Operator op = node.getOperator();
+      if (op == PrefixExpression.Operator.INCREMENT || op == PrefixExpression.Operator.DECREMENT) {
+        foundEffect(null);
+      }
+    }
+
+    @Override
+    public void endVisit(PostfixExpression node) {
+      foundEffect(null);
+    }
+  }
+
+  private static boolean isAssigned(ASTNode node, IVariableBinding var) {
+    return getAssignedVariables(node).contains(var);
+  }
+
+  private static Set<IVariableBinding> getAssignedVariables(ASTNode node) {
+    final Set<IVariableBinding> vars = Sets.newHashSet();
+    node.accept(new ASTVisitor() {
+      @Override
+      public void endVisit(Assignment node) {
+        IVariableBinding var = Types.getVariableBinding(node.getLeftHandSide());
+        if (var != null) {
+          vars.add(var);
+        }
+      }
+
+      @Override
+      public void endVisit(SingleVariableDeclaration node) {
+        vars.add(Types.getVariableBinding(node));
+      }
+
+      @Override
+      public void endVisit(VariableDeclarationFragment node) {
+        vars.add(Types.getVariableBinding(node));
+      }
+    });
+    return vars;
+  }
+
+  // Returns the state where an exception may be thrown from anywhere in a
+  // node: anything the node assigns or its calls may reassign is unknown.
+  private static Set<IVariableBinding> getExceptionState(
+      Set<IVariableBinding> entryState, ASTNode node) {
+    Set<IVariableBinding> state = copy(entryState);
+    if (state != null) {
+      state.removeAll(getAssignedVariables(node));
+      removeFields(state);
+    }
+    return state;
   }
 
   @Override
   public boolean visit(SwitchStatement node) {
     node.getExpression().accept(this);
-    pushScope();
+    Set<IVariableBinding> entryState = safeVars;
+    JumpTarget target = new JumpTarget(getLabel(node), false, true, finallyAssignments.size());
+    jumpTargets.add(target);
+    boolean hasDefault = false;
+    safeVars = null;
     for (Statement stmt : ASTUtil.getStatements(node)) {
-      stmt.accept(this);
+      if (stmt instanceof SwitchCase) {
+        // A case is reached from the switch expression or by falling through.
+        safeVars = meet(safeVars, entryState);
+        hasDefault |= ((SwitchCase) stmt).isDefault();
+      } else {
+        stmt.accept(this);
+      }
+    }
+    jumpTargets.remove(jumpTargets.size() - 1);
+    safeVars = meet(safeVars, target.breakState);
+    if (!hasDefault) {
+      safeVars = meet(safeVars, entryState);
     }
-    popScope();
-    return false;
-  }
-
-  @Override
-  public boolean visit(SwitchCase node) {
-    popScope();
-    pushScope();
     return false;
   }
 
   @Override
   public boolean visit(TryStatement node) {
-    pushScope();
+    Set<IVariableBinding> entryState = copy(safeVars);
+    Block finallyBlock = node.getFinally();
+    if (finallyBlock != null) {
+      finallyAssignments.add(getAssignedVariables(finallyBlock));
+    }
     for (VariableDeclarationExpression resource : ASTUtil.getResources(node)) {
       resource.accept(this);
     }
     node.getBody().accept(this);
-    popScope();
+    Set<IVariableBinding> exitState = safeVars;
+    Set<IVariableBinding> catchState = getExceptionState(entryState, node.getBody());
     for (CatchClause catchClause : ASTUtil.getCatchClauses(node)) {
-      pushScope();
-      catchClause.accept(this);
-      popScope();
+      safeVars = copy(catchState);
+      // A caught exception is never null.
+      addSafeVar(Types.getVariableBinding(catchClause.getException()));
+      catchClause.getBody().accept(this);
+      exitState = meet(exitState, safeVars);
     }
-    Block finallyBlock = node.getFinally();
     if (finallyBlock != null) {
+      finallyAssignments.remove(finallyAssignments.size() - 1);
+      // The finally block also runs when an exception isn't caught.
+      safeVars = meet(exitState, getExceptionState(entryState, node));
       finallyBlock.accept(this);
+      if (exitState == null) {
+        safeVars = null;
+      }
+    } else {
+      safeVars = exitState;
     }
     return false;
   }
 
   @Override
-  public boolean visit(WhileStatement node) {
+  public boolean visit(AssertStatement node) {
+    // Assertions may be disabled.
+    Set<IVariableBinding> entryState = copy(safeVars);
     node.getExpression().accept(this);
-    pushScope();
-    node.getBody().accept(this);
-    popScope();
+    if (node.getMessage() != null) {
+      node.getMessage().accept(this);
+    }
+    safeVars = meet(entryState, safeVars);
     return false;
   }
 }
@@ -69,7 +69,10 @@ public class OuterReferenceResolver extends ASTVisitor {
   // parameter in a constructor.
   public static final IVariableBinding OUTER_PARAMETER = GeneratedVariableBinding.newPlaceholder();
 
-  private static OuterReferenceResolver instance;
+  // Each translation thread has its own instance, so that independent
+  // compilation units can be translated concurrently.
+  private static final ThreadLocal<OuterReferenceResolver> instances =
+      new ThreadLocal<OuterReferenceResolver>();
 
   private Map<ITypeBinding, IVariableBinding> outerVars = Maps.newHashMap();
   private Set<ITypeBinding> usesOuterParam = Sets.newHashSet();
@@ -78,40 +81,44 @@ public class OuterReferenceResolver extends ASTVisitor {
   private ArrayList<Scope> scopeStack = Lists.newArrayList();
 
   public static void cleanup() {
-    instance = null;
+    instances.remove();
   }
 
   public static void initialize() {
-    if (instance == null) {
-      instance = new OuterReferenceResolver();
+    if (instances.get() == null) {
+      instances.set(new OuterReferenceResolver());
     }
   }
 
+  private static OuterReferenceResolver instance() {
+    return instances.get();
+  }
+
   public static void resolve(ASTNode node) {
     initialize();
-    assert instance.scopeStack.size() == 0;
-    node.accept(instance);
+    assert instance().scopeStack.size() == 0;
+    node.accept(instance());
   }
 
   public static boolean needsOuterReference(ITypeBinding type) {
-    assert instance != null;
-    return instance.outerVars.containsKey(type);
+    assert instance() != null;
+    return instance().outerVars.containsKey(type);
   }
 
   public static boolean needsOuterParam(ITypeBinding type) {
-    assert instance != null;
-    return !type.isLocal() || instance.outerVars.containsKey(type)
-        || instance.usesOuterParam.contains(type);
+    assert instance() != null;
+    return !type.isLocal() || instance().outerVars.containsKey(type)
+        || instance().usesOuterParam.contains(type);
   }
 
   public static IVariableBinding getOuterField(ITypeBinding type) {
-    assert instance != null;
-    return instance.outerVars.get(type);
+    assert instance() != null;
+    return instance().outerVars.get(type);
   }
 
   public static List<IVariableBinding> getCapturedVars(ITypeBinding type) {
-    assert instance != null;
-    List<Capture> capturesForType = instance.captures.get(type);
+    assert instance() != null;
+    List<Capture> capturesForType = instance().captures.get(type);
     List<IVariableBinding> capturedVars = Lists.newArrayListWithCapacity(capturesForType.size());
     for (Capture capture : capturesForType) {
       capturedVars.add(capture.var);
@@ -120,8 +127,8 @@ public class OuterReferenceResolver extends ASTVisitor {
   }
 
   public static List<IVariableBinding> getInnerFields(ITypeBinding type) {
-    assert instance != null;
-    List<Capture> capturesForType = instance.captures.get(type);
+    assert instance() != null;
+    List<Capture> capturesForType = instance().captures.get(type);
     List<IVariableBinding> innerFields = Lists.newArrayListWithCapacity(capturesForType.size());
     for (Capture capture : capturesForType) {
       innerFields.add(capture.field);
@@ -130,15 +137,15 @@ public class OuterReferenceResolver extends ASTVisitor {
   }
 
   public static List<IVariableBinding> getPath(ASTNode node) {
-    assert instance != null;
-    return instance.outerPaths.get(node);
+    assert instance() != null;
+    return instance().outerPaths.get(node);
   }
 
   public static void copyNode(ASTNode oldNode, ASTNode newNode) {
-    assert instance != null;
-    List<IVariableBinding> path = instance.outerPaths.get(oldNode);
+    assert instance() != null;
+    List<IVariableBinding> path = instance().outerPaths.get(oldNode);
     if (path != null) {
-      List<IVariableBinding> previous = instance.outerPaths.put(newNode, path);
+      List<IVariableBinding> previous = instance().outerPaths.put(newNode, path);
       assert previous == null;
     }
   }
@@ -14,6 +14,7 @@
 
 package com.google.devtools.j2objc.translate;
 
+import com.google.devtools.j2objc.Options;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
 import com.google.devtools.j2objc.types.NodeCopier;
 import com.google.devtools.j2objc.types.PointerTypeBinding;
@@ -46,6 +47,11 @@ import org.eclipse.jdt.core.dom.SwitchCase;
 public class StaticVarRewriter extends ErrorReportingASTVisitor {
 
   private boolean useAccessor(ASTNode currentNode, IVariableBinding var) {
+    // String constants are initialized by the compiler, so they can be read
+    // directly, without initializing their class first.
+    if (Options.directStaticConstants() && BindingUtil.isStaticStringConstant(var)) {
+      return false;
+    }
     return BindingUtil.isStatic(var) && !BindingUtil.isPrimitiveConstant(var)
         && !Types.getTypeBinding(ASTUtil.getOwningType(currentNode)).getTypeDeclaration().isEqualTo(
             var.getDeclaringClass().getTypeDeclaration());
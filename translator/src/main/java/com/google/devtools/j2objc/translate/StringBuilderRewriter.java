@@ -0,0 +1,351 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.devtools.j2objc.types.GeneratedMethodBinding;
+import com.google.devtools.j2objc.types.GeneratedTypeBinding;
+import com.google.devtools.j2objc.types.GeneratedVariableBinding;
+import com.google.devtools.j2objc.types.NodeCopier;
+import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.ASTUtil;
+import com.google.devtools.j2objc.util.BindingUtil;
+import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BreakStatement;
+import org.eclipse.jdt.core.dom.ContinueStatement;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.TryStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.WhileStatement;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites loops that grow a local string with "s = s + x" (which is what
+ * Rewriter makes of "s += x") to append to a StringBuilder instead, so that
+ * each iteration doesn't copy the whole string. The string is assigned the
+ * builder's contents when the loop completes.
+ *
+ * Only loops that can't leave early with the string still needed are
+ * rewritten: the string must be a local that is never null, isn't otherwise
+ * read or written in the loop, and the loop can't be left by a labeled jump
+ * or an exception caught in the same method.
+ */
+public class StringBuilderRewriter extends ErrorReportingASTVisitor {
+
+  private final ITypeBinding builderType;
+  private final IMethodBinding builderConstructor;
+  private final IMethodBinding toStringMethod;
+  private final Map<String, IMethodBinding> appendMethods = Maps.newHashMap();
+
+  public StringBuilderRewriter() {
+    ITypeBinding objectType = Types.resolveJavaType("java.lang.Object");
+    GeneratedTypeBinding type =
+        GeneratedTypeBinding.newTypeBinding("java.lang.StringBuilder", objectType, false);
+    builderType = type;
+    builderConstructor = GeneratedMethodBinding.newConstructor(type, Modifier.PUBLIC);
+    // Object's toString() is used, so that it's translated to "description".
+    toStringMethod = BindingUtil.findDeclaredMethod(objectType, "toString");
+    addAppendMethod(type, "java.lang.Object");
+    addAppendMethod(type, "java.lang.String");
+    addAppendMethod(type, "boolean");
+    addAppendMethod(type, "char");
+    addAppendMethod(type, "int");
+    addAppendMethod(type, "long");
+    addAppendMethod(type, "float");
+    addAppendMethod(type, "double");
+  }
+
+  private void addAppendMethod(GeneratedTypeBinding type, String paramTypeName) {
+    GeneratedMethodBinding method =
+        GeneratedMethodBinding.newMethod("append", Modifier.PUBLIC, type, type);
+    method.addParameter(Types.resolveJavaType(paramTypeName));
+    appendMethods.put(paramTypeName, method);
+  }
+
+  @Override
+  public void endVisit(DoStatement node) {
+    rewriteLoop(node);
+  }
+
+  @Override
+  public void endVisit(EnhancedForStatement node) {
+    rewriteLoop(node);
+  }
+
+  @Override
+  public void endVisit(ForStatement node) {
+    rewriteLoop(node);
+  }
+
+  @Override
+  public void endVisit(WhileStatement node) {
+    rewriteLoop(node);
+  }
+
+  private void rewriteLoop(Statement loop) {
+    MethodDeclaration method = ASTUtil.getOwningMethod(loop);
+    if (method == null || hasLabeledJump(loop) || isInTryStatement(loop, method)) {
+      return;
+    }
+    List<IVariableBinding> vars = Lists.newArrayList();
+    for (Assignment append : findAppends(loop)) {
+      IVariableBinding var = Types.getVariableBinding(append.getLeftHandSide());
+      if (!vars.contains(var)) {
+        vars.add(var);
+      }
+    }
+    Block block = null;
+    for (IVariableBinding var : vars) {
+      List<Assignment> appends = findAppends(loop, var);
+      // Each append refers to the variable twice, so any other reference
+      // means its value is needed during the loop.
+      if (countReferences(loop, var) != appends.size() * 2 || !isNeverNull(method, var)
+          || hasAppendInTryStatement(appends, loop)) {
+        continue;
+      }
+      if (block == null) {
+        block = loop.getAST().newBlock();
+        ASTUtil.setProperty(loop, block);
+        ASTUtil.getStatements(block).add(loop);
+      }
+      rewriteAppends(block, var, appends);
+    }
+  }
+
+  private void rewriteAppends(Block block, IVariableBinding var, List<Assignment> appends) {
+    AST ast = block.getAST();
+    GeneratedVariableBinding builder = new GeneratedVariableBinding(
+        var.getName() + "Builder__", 0, builderType, false, false, null, null);
+    List<Statement> stmts = ASTUtil.getStatements(block);
+    stmts.add(0, ASTFactory.newVariableDeclarationStatement(
+        ast, builder, ASTFactory.newClassInstanceCreation(ast, builderConstructor)));
+    stmts.add(1, newAppendStatement(ast, builder, ASTFactory.newSimpleName(ast, var)));
+    stmts.add(ast.newExpressionStatement(ASTFactory.newAssignment(
+        ast, ASTFactory.newSimpleName(ast, var), ASTFactory.newMethodInvocation(
+            ast, toStringMethod, ASTFactory.newSimpleName(ast, builder)))));
+
+    for (Assignment append : appends) {
+      List<Expression> operands = Lists.newArrayList();
+      addOperands((InfixExpression) append.getRightHandSide(), operands);
+      operands.remove(0);  // The variable itself.
+      Statement stmt = (Statement) append.getParent();
+      List<Statement> appendStmts = ASTUtil.asStatementList(stmt);
+      appendStmts.clear();
+      for (Expression operand : operands) {
+        appendStmts.add(newAppendStatement(ast, builder, NodeCopier.copySubtree(ast, operand)));
+      }
+    }
+  }
+
+  private Statement newAppendStatement(AST ast, IVariableBinding builder, Expression value) {
+    MethodInvocation invocation = ASTFactory.newMethodInvocation(
+        ast, getAppendMethod(Types.getTypeBinding(value)), ASTFactory.newSimpleName(ast, builder));
+    ASTUtil.getArguments(invocation).add(value);
+    return ast.newExpressionStatement(invocation);
+  }
+
+  private IMethodBinding getAppendMethod(ITypeBinding type) {
+    if (Types.isJavaStringType(type)) {
+      return appendMethods.get("java.lang.String");
+    } else if (type.isPrimitive()) {
+      String name = type.getName();
+      if (name.equals("byte") || name.equals("short")) {
+        name = "int";
+      }
+      return appendMethods.get(name);
+    }
+    return appendMethods.get("java.lang.Object");
+  }
+
+  /**
+   * Adds the operands of a string concatenation, flattening any nested
+   * concatenation that starts with a string, since its operands are appended
+   * in the same order.
+   */
+  private static void addOperands(InfixExpression node, List<Expression> operands) {
+    List<Expression> all = Lists.newArrayList(node.getLeftOperand(), node.getRightOperand());
+    all.addAll(ASTUtil.getExtendedOperands(node));
+    for (Expression operand : all) {
+      if (isStringConcatenation(operand)
+          && Types.isJavaStringType(
+              Types.getTypeBinding(((InfixExpression) operand).getLeftOperand()))) {
+        addOperands((InfixExpression) operand, operands);
+      } else {
+        operands.add(operand);
+      }
+    }
+  }
+
+  private static boolean isStringConcatenation(Expression node) {
+    return node instanceof InfixExpression
+        && ((InfixExpression) node).getOperator() == InfixExpression.Operator.PLUS
+        && Types.isJavaStringType(Types.getTypeBinding(node));
+  }
+
+  /**
+   * Returns the "s = s + ..." statements in a loop, where s is a local string.
+   */
+  private static List<Assignment> findAppends(Statement loop) {
+    final List<Assignment> appends = Lists.newArrayList();
+    loop.accept(new ASTVisitor() {
+      @Override
+      public void endVisit(Assignment node) {
+        if (isAppend(node)) {
+          appends.add(node);
+        }
+      }
+    });
+    return appends;
+  }
+
+  private static List<Assignment> findAppends(Statement loop, IVariableBinding var) {
+    List<Assignment> appends = Lists.newArrayList();
+    for (Assignment append : findAppends(loop)) {
+      if (var.isEqualTo(Types.getVariableBinding(append.getLeftHandSide()))) {
+        appends.add(append);
+      }
+    }
+    return appends;
+  }
+
+  private static boolean isAppend(Assignment node) {
+    if (node.getOperator() != Assignment.Operator.ASSIGN
+        || !(node.getParent() instanceof ExpressionStatement)
+        || !(node.getLeftHandSide() instanceof SimpleName)
+        || !isStringConcatenation(node.getRightHandSide())) {
+      return false;
+    }
+    IVariableBinding var = Types.getVariableBinding(node.getLeftHandSide());
+    Expression first = ((InfixExpression) node.getRightHandSide()).getLeftOperand();
+    return var != null && !var.isField() && !var.isParameter()
+        && first instanceof SimpleName && var.isEqualTo(Types.getVariableBinding(first));
+  }
+
+  private static int countReferences(ASTNode node, final IVariableBinding var) {
+    final int[] count = new int[1];
+    node.accept(new ASTVisitor() {
+      @Override
+      public boolean visit(SimpleName node) {
+        if (var.isEqualTo(Types.getVariableBinding(node))) {
+          count[0]++;
+        }
+        return true;
+      }
+    });
+    return count[0];
+  }
+
+  /**
+   * Returns true if every value the method assigns to a variable is a string
+   * literal, a concatenation or a builder's contents, none of which are null.
+   */
+  private boolean isNeverNull(MethodDeclaration method, final IVariableBinding var) {
+    final boolean[] result = new boolean[] { true };
+    method.accept(new ASTVisitor() {
+      @Override
+      public void endVisit(Assignment node) {
+        if (var.isEqualTo(Types.getVariableBinding(node.getLeftHandSide()))
+            && !isNonNullValue(node.getRightHandSide())) {
+          result[0] = false;
+        }
+      }
+
+      @Override
+      public void endVisit(SingleVariableDeclaration node) {
+        if (var.isEqualTo(Types.getVariableBinding(node))) {
+          result[0] = false;
+        }
+      }
+
+      @Override
+      public void endVisit(VariableDeclarationFragment node) {
+        if (var.isEqualTo(Types.getVariableBinding(node))
+            && (node.getInitializer() == null || !isNonNullValue(node.getInitializer()))) {
+          result[0] = false;
+        }
+      }
+    });
+    return result[0];
+  }
+
+  private boolean isNonNullValue(Expression value) {
+    return value instanceof StringLiteral || isStringConcatenation(value)
+        || (value instanceof MethodInvocation && Types.getMethodBinding(value) == toStringMethod);
+  }
+
+  private static boolean hasLabeledJump(Statement loop) {
+    final boolean[] result = new boolean[1];
+    loop.accept(new ASTVisitor() {
+      @Override
+      public boolean visit(BreakStatement node) {
+        result[0] |= node.getLabel() != null;
+        return false;
+      }
+
+      @Override
+      public boolean visit(ContinueStatement node) {
+        result[0] |= node.getLabel() != null;
+        return false;
+      }
+    });
+    return result[0];
+  }
+
+  /**
+   * Returns true if an append is inside a try statement in the loop, since an
+   * exception thrown by a later operand would leave a partial append.
+   */
+  private static boolean hasAppendInTryStatement(List<Assignment> appends, Statement loop) {
+    for (Assignment append : appends) {
+      if (isInTryStatement(append, loop)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isInTryStatement(ASTNode node, ASTNode root) {
+    for (ASTNode n = node.getParent(); n != root; n = n.getParent()) {
+      if (n instanceof TryStatement) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
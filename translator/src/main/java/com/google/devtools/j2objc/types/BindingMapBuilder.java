@@ -16,11 +16,9 @@
 
 package com.google.devtools.j2objc.types;
 
-import com.google.common.collect.Maps;
 import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
 
 import org.eclipse.jdt.core.dom.ASTNode;
-import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
 import org.eclipse.jdt.core.dom.AnnotationTypeMemberDeclaration;
 import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
@@ -43,7 +41,6 @@ import org.eclipse.jdt.core.dom.EnumDeclaration;
 import org.eclipse.jdt.core.dom.FieldAccess;
 import org.eclipse.jdt.core.dom.IBinding;
 import org.eclipse.jdt.core.dom.ITypeBinding;
-import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.InfixExpression;
 import org.eclipse.jdt.core.dom.InstanceofExpression;
 import org.eclipse.jdt.core.dom.LabeledStatement;
@@ -77,45 +74,32 @@ import org.eclipse.jdt.core.dom.UnionType;
 import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
-import java.util.Map;
-
 /**
- * Walks an AST and copies resolved bindings to maps in {@link Types}.
- * The reason this step is necessary is because the JDT DOM has no
- * way of adding types or resolving added or modified code.  With a
- * separate map, both ASTNodes and IOS synthetic nodes can be
- * resolved.
+ * Walks an AST and copies resolved bindings to the nodes they belong to,
+ * where {@link Types} finds them. The reason this step is necessary is
+ * because the JDT DOM has no way of adding types or resolving added or
+ * modified code.  With bindings stored separately from the parser's
+ * resolver, both ASTNodes and IOS synthetic nodes can be resolved.
  *
  * @author Tom Ball
  */
 class BindingMapBuilder extends ErrorReportingASTVisitor {
 
-  // keys may be ASTNodes or IOS nodes
-  private final Map<Object, IBinding> bindingMap = Maps.newHashMap();
-
-  public static Map<Object, IBinding> buildBindingMap(CompilationUnit unit) {
-    BindingMapBuilder builder = new BindingMapBuilder();
-    builder.run(unit);
-    BindingMapVerifier.verify(unit, builder.bindingMap);
-    return builder.bindingMap;
-  }
-
-  // Separate mapping for enum constant variable bindings, since they also have
-  // method bindings.
-  public static Map<EnumConstantDeclaration, IVariableBinding> buildEnumConstantMap(CompilationUnit unit) {
-    final Map<EnumConstantDeclaration, IVariableBinding> bindingMap = Maps.newHashMap();
-    unit.accept(new ASTVisitor() {
-      @Override
-      public void endVisit(EnumConstantDeclaration node) {
-        bindingMap.put(node, node.resolveVariable());
-      }
-    });
-    return bindingMap;
+  public static void buildBindings(CompilationUnit unit) {
+    new BindingMapBuilder().run(unit);
+    Types.verifyNode(unit);
   }
 
   private void put(ASTNode node, IBinding binding) {
     assert binding != null;
-    bindingMap.put(node, binding);
+    Types.putBinding(node, binding);
+  }
+
+  @Override
+  public void endVisit(EnumConstantDeclaration node) {
+    // Enum constants also have a constructor binding, so their variable
+    // binding is stored separately.
+    Types.putEnumConstantBinding(node, node.resolveVariable());
   }
 
   // There is a lot of seemingly duplicate code here, but each
@@ -71,8 +71,6 @@ import org.eclipse.jdt.core.dom.UnionType;
 import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
-import java.util.Map;
-
 /**
  * Walks an AST and asserts there is a resolved binding for every ASTNode type
  * that is supposed to have one.
@@ -80,19 +78,12 @@ import java.util.Map;
  * @author Tom Ball
  */
 class BindingMapVerifier extends ErrorReportingASTVisitor {
-  private final Map<Object, IBinding> bindingMap;
-
-  public static void verify(ASTNode node, Map<Object, IBinding> bindingMap) {
-    BindingMapVerifier builder = new BindingMapVerifier(bindingMap);
-    builder.run(node);
-  }
-
-  private BindingMapVerifier(Map<Object, IBinding> bindingMap) {
-    this.bindingMap = bindingMap;
+  public static void verify(ASTNode node) {
+    new BindingMapVerifier().run(node);
   }
 
-  private boolean verify(ASTNode node) {
-    IBinding binding = bindingMap.get(node);
+  private boolean verifyBinding(ASTNode node) {
+    IBinding binding = Types.getBindingUnsafe(node);
     assert binding != null;
     if (binding instanceof IVariableBinding) {
       assert !GeneratedVariableBinding.isPlaceholder((IVariableBinding) binding);
@@ -105,120 +96,120 @@ class BindingMapVerifier extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(AnnotationTypeMemberDeclaration node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(AnnotationTypeDeclaration node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(AnonymousClassDeclaration node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ArrayAccess node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ArrayCreation node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ArrayInitializer node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ArrayType node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(Assignment node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(BooleanLiteral node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(CastExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(CharacterLiteral node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ClassInstanceCreation node) {
-    IBinding binding = bindingMap.get(node);
+    IBinding binding = Types.getBindingUnsafe(node);
     assert binding instanceof IMethodBinding;
     assert ((IMethodBinding) binding).isVarargs() ||
         node.arguments().size() == ((IMethodBinding) binding).getParameterTypes().length;
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ConditionalExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ConstructorInvocation node) {
-    IBinding binding = bindingMap.get(node);
+    IBinding binding = Types.getBindingUnsafe(node);
     assert binding instanceof IMethodBinding;
     return true;
   }
 
   @Override
   public boolean visit(EnumConstantDeclaration node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(EnumDeclaration node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(FieldAccess node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(InfixExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(InstanceofExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(MarkerAnnotation node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(MethodDeclaration node) {
-    IMethodBinding binding = (IMethodBinding) bindingMap.get(node);
+    IMethodBinding binding = (IMethodBinding) Types.getBindingUnsafe(node);
     assert node.parameters().size() == binding.getParameterTypes().length;
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(MethodInvocation node) {
-    IBinding binding = bindingMap.get(node);
+    IBinding binding = Types.getBindingUnsafe(node);
     assert binding instanceof IMethodBinding;
     IMethodBinding method = (IMethodBinding) binding;
     assert method.isVarargs() || node.arguments().size() == method.getParameterTypes().length
@@ -228,97 +219,97 @@ class BindingMapVerifier extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(MethodRef node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(NormalAnnotation node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(NullLiteral node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(NumberLiteral node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ParameterizedType node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(ParenthesizedExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(PostfixExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(PrefixExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(PrimitiveType node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(QualifiedName node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(QualifiedType node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(SimpleName node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(SimpleType node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(SingleMemberAnnotation node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(SingleVariableDeclaration node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(StringLiteral node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(SuperConstructorInvocation node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(SuperFieldAccess node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(SuperMethodInvocation node) {
-    IBinding binding = bindingMap.get(node);
+    IBinding binding = Types.getBindingUnsafe(node);
     assert binding instanceof IMethodBinding;
     IMethodBinding method = (IMethodBinding) binding;
     assert method.isVarargs() || node.arguments().size() == method.getParameterTypes().length
@@ -328,35 +319,35 @@ class BindingMapVerifier extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(ThisExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(TypeDeclaration node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(TypeLiteral node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(TypeParameter node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   public boolean visit(UnionType node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(VariableDeclarationExpression node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 
   @Override
   public boolean visit(VariableDeclarationFragment node) {
-    return verify(node);
+    return verifyBinding(node);
   }
 }
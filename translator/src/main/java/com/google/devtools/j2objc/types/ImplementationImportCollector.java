@@ -20,8 +20,6 @@ import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.ast.Annotation;
 import com.google.devtools.j2objc.ast.AnnotationTypeDeclaration;
 import com.google.devtools.j2objc.ast.AnnotationTypeMemberDeclaration;
-import com.google.devtools.j2objc.ast.Assignment;
-import com.google.devtools.j2objc.ast.Assignment.Operator;
 import com.google.devtools.j2objc.ast.CastExpression;
 import com.google.devtools.j2objc.ast.CatchClause;
 import com.google.devtools.j2objc.ast.ClassInstanceCreation;
@@ -30,7 +28,6 @@ import com.google.devtools.j2objc.ast.EnumDeclaration;
 import com.google.devtools.j2objc.ast.Expression;
 import com.google.devtools.j2objc.ast.FieldAccess;
 import com.google.devtools.j2objc.ast.FieldDeclaration;
-import com.google.devtools.j2objc.ast.InfixExpression;
 import com.google.devtools.j2objc.ast.InstanceofExpression;
 import com.google.devtools.j2objc.ast.MarkerAnnotation;
 import com.google.devtools.j2objc.ast.MethodDeclaration;
@@ -127,18 +124,6 @@ public class ImplementationImportCollector extends TreeVisitor {
     return true;
   }
 
-  @Override
-  public boolean visit(Assignment node) {
-    if (node.getOperator() == Operator.PLUS_ASSIGN
-        && Types.isJavaStringType(node.getLeftHandSide().getTypeBinding())
-        && Types.isBooleanType(node.getRightHandSide().getTypeBinding())) {
-      // Implicit conversion from boolean -> String translates into a
-      // Boolean.toString(...) call, so add a reference to java.lang.Boolean.
-      addImports(Types.resolveJavaType("java.lang.Boolean"));
-    }
-    return true;
-  }
-
   @Override
   public boolean visit(CastExpression node) {
     addImports(node.getType());
@@ -227,31 +212,6 @@ public class ImplementationImportCollector extends TreeVisitor {
     return true;
   }
 
-  @Override
-  public boolean visit(InfixExpression node) {
-    if (Types.isJavaStringType(node.getTypeBinding())) {
-      boolean needsImport = false;
-      if (Types.isBooleanType(node.getLeftOperand().getTypeBinding())
-          || Types.isBooleanType(node.getRightOperand().getTypeBinding())) {
-        needsImport = true;
-      } else {
-        for (Expression extendedExpression : node.getExtendedOperands()) {
-          if (Types.isBooleanType(extendedExpression.getTypeBinding())) {
-            needsImport = true;
-            break;
-          }
-        }
-      }
-
-      if (needsImport) {
-        // Implicit conversion from boolean -> String translates into a
-        // Boolean.toString(...) call, so add a reference to java.lang.Boolean.
-        addImports(Types.resolveJavaType("java.lang.Boolean"));
-      }
-    }
-    return true;
-  }
-
   @Override
   public boolean visit(MarkerAnnotation node) {
     return visitAnnotation(node);
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.types;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+
+import java.util.Map;
+
+/**
+ * The method mappings of a translation, parsed once and shared by every
+ * compilation unit. Mappings are found by their JavaMethod keys, and are
+ * indexed by method name and number of parameters, so a method that can't
+ * be or override a mapped method is rejected without comparing bindings.
+ */
+public class MethodMappingIndex {
+
+  private static Map<String, String> lastMappings = null;
+  private static int lastMappingsSize = 0;
+  private static MethodMappingIndex lastIndex = null;
+
+  private final ImmutableMap<String, IOSMethod> methods;
+  private final ImmutableSet<String> signatures;
+
+  /**
+   * Returns the index of a set of method mappings, which is only built again
+   * if the mappings change.
+   */
+  public static synchronized MethodMappingIndex get(Map<String, String> mappings) {
+    if (mappings != lastMappings || mappings.size() != lastMappingsSize) {
+      lastIndex = new MethodMappingIndex(mappings);
+      lastMappings = mappings;
+      lastMappingsSize = mappings.size();
+    }
+    return lastIndex;
+  }
+
+  private MethodMappingIndex(Map<String, String> mappings) {
+    ImmutableMap.Builder<String, IOSMethod> methodsBuilder = ImmutableMap.builder();
+    ImmutableSet.Builder<String> signaturesBuilder = ImmutableSet.builder();
+    for (Map.Entry<String, String> entry : mappings.entrySet()) {
+      methodsBuilder.put(entry.getKey(), IOSMethod.create(entry.getValue()));
+      String signature = getSignatureKey(entry.getKey());
+      if (signature != null) {
+        signaturesBuilder.add(signature);
+      }
+    }
+    methods = methodsBuilder.build();
+    signatures = signaturesBuilder.build();
+  }
+
+  /**
+   * Returns the iOS method a Java method is mapped to, given its JavaMethod
+   * key, or null if it isn't mapped.
+   */
+  public IOSMethod getMapping(String key) {
+    return methods.get(key);
+  }
+
+  public boolean isMapped(String key) {
+    return methods.containsKey(key);
+  }
+
+  /**
+   * Returns true if a method has the name and number of parameters of a
+   * mapped method, so it may be mapped or override a mapped method.
+   */
+  public boolean hasMappedSignature(IMethodBinding method) {
+    return signatures.contains(getSignatureKey(method));
+  }
+
+  /**
+   * Returns a method's name and number of parameters, which a method shares
+   * with the methods it overrides.
+   */
+  public static String getSignatureKey(IMethodBinding method) {
+    return method.getName() + '/' + method.getParameterTypes().length;
+  }
+
+  /**
+   * Returns the name and number of parameters of a mapped method, given its
+   * JavaMethod key, such as "java.lang.String.indexOf(Ljava/lang/String;I)I".
+   */
+  @VisibleForTesting
+  static String getSignatureKey(String mappingKey) {
+    int paramsStart = mappingKey.indexOf('(');
+    int paramsEnd = mappingKey.indexOf(')', paramsStart);
+    if (paramsStart < 0 || paramsEnd < 0) {
+      return null;
+    }
+    String name = mappingKey.substring(mappingKey.lastIndexOf('.', paramsStart) + 1, paramsStart);
+    int nParams = 0;
+    for (int i = paramsStart + 1; i < paramsEnd; i++) {
+      char c = mappingKey.charAt(i);
+      if (c == '[') {
+        continue;
+      }
+      if (c == 'L') {
+        i = mappingKey.indexOf(';', i);
+        if (i < 0) {
+          return null;
+        }
+      }
+      nParams++;
+    }
+    return name + '/' + nParams;
+  }
+}
@@ -51,8 +51,8 @@ import java.util.Set;
 // core to be reused for other languages.
 public class Types {
   private final AST ast;
-  private final Map<Object, IBinding> bindingMap;
-  private final Map<EnumConstantDeclaration, IVariableBinding> enumConstantsMap;
+  // Bindings of objects other than JDT nodes, which carry their own.
+  private final Map<Object, IBinding> bindingMap = Maps.newHashMap();
   private final Map<ITypeBinding, ITypeBinding> typeMap = Maps.newHashMap();
   private final Map<ITypeBinding, ITypeBinding> renamedTypeMap = Maps.newHashMap();
   private final Map<ITypeBinding, ITypeBinding> primitiveToWrapperTypes =
@@ -71,7 +71,9 @@ public class Types {
   // Lazily load localRefType, since its initialization requires Types to be fully initialized.
   private ITypeBinding localRefType;
 
-  private static Types instance;
+  // Each translation thread has its own instance, so that independent
+  // compilation units can be translated concurrently.
+  private static final ThreadLocal<Types> instances = new ThreadLocal<Types>();
 
   // Non-standard naming pattern is used, since in this case it's more readable.
   private final IOSTypeBinding NSCopying;
@@ -92,6 +94,12 @@ public class Types {
   private final Set<Expression> nilChecks = Sets.newHashSet();
   private final Set<Expression> deferredFieldSetters = Sets.newHashSet();
 
+  // The names of the node properties bindings are stored in.
+  private static final String BINDING_PROPERTY = "j2objc.binding";
+  private static final String ENUM_CONSTANT_PROPERTY = "j2objc.enumConstant";
+
+  private static final boolean VERIFY_BINDINGS = Types.class.desiredAssertionStatus();
+
   // The first argument of a iOS method isn't named, but Java requires some sort of valid parameter
   // name.  The method mapper therefore uses this string, which the generators ignore.
   public static final String EMPTY_PARAMETER_NAME = "__empty_parameter__";
@@ -123,8 +131,7 @@ public class Types {
     initializeTypeMap();
     initializeCommonJavaTypes();
     populatePrimitiveAndWrapperTypeMaps();
-    bindingMap = BindingMapBuilder.buildBindingMap(unit);
-    enumConstantsMap = BindingMapBuilder.buildEnumConstantMap(unit);
+    BindingMapBuilder.buildBindings(unit);
   }
 
   private IOSTypeBinding mapIOSType(IOSTypeBinding type) {
@@ -196,11 +203,15 @@ public class Types {
    * Initialize this service using the AST returned by the parser.
    */
   public static void initialize(CompilationUnit unit) {
-    instance = new Types(unit);
+    instances.set(new Types(unit));
   }
 
   public static void cleanup() {
-    instance = null;
+    instances.remove();
+  }
+
+  private static Types instance() {
+    return instances.get();
   }
 
   /**
@@ -214,9 +225,9 @@ public class Types {
     if (binding.isArray()) {
       return resolveArrayType(binding.getComponentType());
     }
-    ITypeBinding newBinding = instance.typeMap.get(binding);
-    if (newBinding == null && binding.isAssignmentCompatible(instance.javaClassType)) {
-      newBinding = instance.typeMap.get(instance.javaClassType);
+    ITypeBinding newBinding = instance().typeMap.get(binding);
+    if (newBinding == null && binding.isAssignmentCompatible(instance().javaClassType)) {
+      newBinding = instance().typeMap.get(instance().javaClassType);
     }
     return newBinding != null ? newBinding : binding;
   }
@@ -225,7 +236,7 @@ public class Types {
    * Given a fully-qualified type name, return its binding.
    */
   public static ITypeBinding mapTypeName(String typeName) {
-    ITypeBinding binding = instance.ast.resolveWellKnownType(typeName);
+    ITypeBinding binding = instance().ast.resolveWellKnownType(typeName);
     return mapType(binding);
   }
 
@@ -233,54 +244,54 @@ public class Types {
    * Returns whether a given type has an iOS equivalent.
    */
   public static boolean hasIOSEquivalent(ITypeBinding binding) {
-    return binding.isArray() || instance.typeMap.containsKey(binding.getTypeDeclaration());
+    return binding.isArray() || instance().typeMap.containsKey(binding.getTypeDeclaration());
   }
 
   public static ITypeBinding resolveJavaType(String name) {
-    ITypeBinding result = instance.javaBindingMap.get(name);
+    ITypeBinding result = instance().javaBindingMap.get(name);
     if (result == null) {
-      result = instance.ast.resolveWellKnownType(name);
+      result = instance().ast.resolveWellKnownType(name);
     }
     return result;
   }
 
   public static ITypeBinding resolveIOSType(String name) {
-    return instance.iosBindingMap.get(name);
+    return instance().iosBindingMap.get(name);
   }
 
   public static boolean isJavaObjectType(ITypeBinding type) {
-    return instance.javaObjectType.equals(type);
+    return instance().javaObjectType.equals(type);
   }
 
   public static boolean isJavaStringType(ITypeBinding type) {
-    return instance.javaStringType.equals(type);
+    return instance().javaStringType.equals(type);
   }
 
   public static boolean isFloatingPointType(ITypeBinding type) {
-    return type.isEqualTo(instance.ast.resolveWellKnownType("double")) ||
-        type.isEqualTo(instance.ast.resolveWellKnownType("float")) ||
-        type == instance.ast.resolveWellKnownType("java.lang.Double") ||
-        type == instance.ast.resolveWellKnownType("java.lang.Float");
+    return type.isEqualTo(instance().ast.resolveWellKnownType("double")) ||
+        type.isEqualTo(instance().ast.resolveWellKnownType("float")) ||
+        type == instance().ast.resolveWellKnownType("java.lang.Double") ||
+        type == instance().ast.resolveWellKnownType("java.lang.Float");
   }
 
   public static boolean isBooleanType(ITypeBinding type) {
-    return type.isEqualTo(instance.booleanType) ||
-        type == instance.ast.resolveWellKnownType("java.lang.Boolean");
+    return type.isEqualTo(instance().booleanType) ||
+        type == instance().ast.resolveWellKnownType("java.lang.Boolean");
   }
 
   public static boolean isIntegralType(ITypeBinding type) {
-    return type.isEqualTo(instance.ast.resolveWellKnownType("byte")) ||
-        type.isEqualTo(instance.ast.resolveWellKnownType("short")) ||
-        type.isEqualTo(instance.ast.resolveWellKnownType("int")) ||
-        type == instance.ast.resolveWellKnownType("java.lang.Byte") ||
-        type == instance.ast.resolveWellKnownType("java.lang.Short") ||
-        type == instance.ast.resolveWellKnownType("java.lang.Integer") ||
+    return type.isEqualTo(instance().ast.resolveWellKnownType("byte")) ||
+        type.isEqualTo(instance().ast.resolveWellKnownType("short")) ||
+        type.isEqualTo(instance().ast.resolveWellKnownType("int")) ||
+        type == instance().ast.resolveWellKnownType("java.lang.Byte") ||
+        type == instance().ast.resolveWellKnownType("java.lang.Short") ||
+        type == instance().ast.resolveWellKnownType("java.lang.Integer") ||
         isLongType(type);
   }
 
   public static boolean isLongType(ITypeBinding type) {
-    return type.isEqualTo(instance.ast.resolveWellKnownType("long")) ||
-        type == instance.ast.resolveWellKnownType("java.lang.Long");
+    return type.isEqualTo(instance().ast.resolveWellKnownType("long")) ||
+        type == instance().ast.resolveWellKnownType("java.lang.Long");
   }
 
   public static ITypeBinding resolveIOSType(Type type) {
@@ -292,12 +303,12 @@ public class Types {
   }
 
   public static IOSTypeBinding resolveArrayType(ITypeBinding binding) {
-    IOSTypeBinding arrayBinding = instance.arrayBindingMap.get(binding);
-    return arrayBinding != null ? arrayBinding : instance.IOSObjectArray;
+    IOSTypeBinding arrayBinding = instance().arrayBindingMap.get(binding);
+    return arrayBinding != null ? arrayBinding : instance().IOSObjectArray;
   }
 
   public static IBinding getBinding(Object node) {
-    IBinding binding = instance.bindingMap.get(node);
+    IBinding binding = getBindingUnsafe(node);
     assert binding != null;
     return binding;
   }
@@ -306,18 +317,37 @@ public class Types {
    * Same as getBinding but does not check if the result it null.
    */
   public static IBinding getBindingUnsafe(Object node) {
-    return instance.bindingMap.get(node);
+    if (node instanceof ASTNode) {
+      return (IBinding) ((ASTNode) node).getProperty(BINDING_PROPERTY);
+    }
+    return instance().bindingMap.get(node);
   }
 
   public static void addBinding(Object node, IBinding binding) {
     assert binding != null;
     if (node instanceof EnumConstantDeclaration && binding instanceof IVariableBinding) {
-      instance.enumConstantsMap.put((EnumConstantDeclaration) node, (IVariableBinding) binding);
+      putEnumConstantBinding((EnumConstantDeclaration) node, (IVariableBinding) binding);
+    } else if (node instanceof ASTNode) {
+      putBinding((ASTNode) node, binding);
     } else {
-      instance.bindingMap.put(node, binding);
+      instance().bindingMap.put(node, binding);
     }
   }
 
+  /**
+   * Stores a binding in the node it belongs to. Unlike JDT's own bindings,
+   * these can be changed by translation passes and given to new nodes.
+   * Properties aren't part of the node's structure, so setting one isn't a
+   * modification of the AST.
+   */
+  static void putBinding(ASTNode node, IBinding binding) {
+    node.setProperty(BINDING_PROPERTY, binding);
+  }
+
+  static void putEnumConstantBinding(EnumConstantDeclaration node, IVariableBinding binding) {
+    node.setProperty(ENUM_CONSTANT_PROPERTY, binding);
+  }
+
   /**
    * Return a type binding for a specified ASTNode or IOS node, or null if
    * no type binding exists.
@@ -366,20 +396,23 @@ public class Types {
   }
 
   public static IVariableBinding getEnumConstantBinding(EnumConstantDeclaration node) {
-    return instance.enumConstantsMap.get(node);
+    return (IVariableBinding) node.getProperty(ENUM_CONSTANT_PROPERTY);
   }
 
   /**
    * Walks an AST and asserts there is a resolved binding for every
-   * ASTNode type that is supposed to have one.
+   * ASTNode type that is supposed to have one. Since the verifier only
+   * asserts, the walk is skipped unless assertions are enabled.
    */
   public static void verifyNode(ASTNode node) {
-    BindingMapVerifier.verify(node, instance.bindingMap);
+    if (VERIFY_BINDINGS) {
+      BindingMapVerifier.verify(node);
+    }
   }
 
   public static void verifyNodes(List<? extends ASTNode> nodes) {
     for (ASTNode node : nodes) {
-      BindingMapVerifier.verify(node, instance.bindingMap);
+      verifyNode(node);
     }
   }
 
@@ -387,13 +420,13 @@ public class Types {
       ITypeBinding originalBinding) {
     ITypeBinding renamedBinding =
         RenamedTypeBinding.rename(newName, newDeclaringClass, originalBinding);
-    instance.renamedTypeMap.put(originalBinding, renamedBinding);
+    instance().renamedTypeMap.put(originalBinding, renamedBinding);
     return renamedBinding;
   }
 
   public static ITypeBinding getRenamedBinding(ITypeBinding original) {
-    return original != null && instance.renamedTypeMap.containsKey(original)
-        ? instance.renamedTypeMap.get(original) : original;
+    return original != null && instance().renamedTypeMap.containsKey(original)
+        ? instance().renamedTypeMap.get(original) : original;
   }
 
   public static boolean isVoidType(Type type) {
@@ -401,72 +434,73 @@ public class Types {
   }
 
   public static boolean isVoidType(ITypeBinding type) {
-    return type.isEqualTo(instance.voidType);
+    return type.isEqualTo(instance().voidType);
   }
 
   public static boolean isJavaVoidType(ITypeBinding type) {
-    return type.isEqualTo(instance.javaVoidType);
+    return type.isEqualTo(instance().javaVoidType);
   }
 
   public static ITypeBinding getWrapperType(ITypeBinding primitiveType) {
-    return instance.primitiveToWrapperTypes.get(primitiveType);
+    return instance().primitiveToWrapperTypes.get(primitiveType);
   }
 
   public static ITypeBinding getPrimitiveType(ITypeBinding wrapperType) {
-    return instance.wrapperToPrimitiveTypes.get(wrapperType);
+    return instance().wrapperToPrimitiveTypes.get(wrapperType);
   }
 
   public static boolean isBoxedPrimitive(ITypeBinding type) {
-    return instance.wrapperToPrimitiveTypes.containsKey(type);
+    return instance().wrapperToPrimitiveTypes.containsKey(type);
   }
 
   public static ITypeBinding getNSNumber() {
-    return instance.NSNumber;
+    return instance().NSNumber;
   }
 
   public static ITypeBinding getNSObject() {
-    return instance.NSObject;
+    return instance().NSObject;
   }
 
   public static ITypeBinding getNSString() {
-    return instance.NSString;
+    return instance().NSString;
   }
 
   public static ITypeBinding getIOSClass() {
-    return instance.IOSClass;
+    return instance().IOSClass;
   }
 
   public static void addAutoreleasePool(Block block) {
     if (Options.useGC()) {
       ErrorUtil.warning(block, "@AutoreleasePool ignored in GC mode");
     }
-    instance.autoreleasePoolBlocks.add(block);
+    instance().autoreleasePoolBlocks.add(block);
   }
 
   public static boolean hasAutoreleasePool(Block block) {
-    return instance.autoreleasePoolBlocks.contains(block);
+    return instance().autoreleasePoolBlocks.contains(block);
   }
 
   public static void addNilCheck(Expression expression) {
-    instance.nilChecks.add(expression);
+    instance().nilChecks.add(expression);
   }
 
   public static boolean hasNilCheck(Expression expression) {
-    return instance.nilChecks.contains(expression);
+    return instance().nilChecks.contains(expression);
   }
 
   public static void addDeferredFieldSetter(Expression expression) {
-    instance.deferredFieldSetters.add(expression);
+    instance().deferredFieldSetters.add(expression);
   }
 
   public static boolean hasDeferredFieldSetter(Expression expression) {
-    return instance.deferredFieldSetters.contains(expression);
+    return instance().deferredFieldSetters.contains(expression);
   }
 
   public static ITypeBinding getLocalRefType() {
-    synchronized (instance) {
-      if (instance.localRefType == null) {
-        ITypeBinding objectType = instance.ast.resolveWellKnownType("java.lang.Object");
+    Types types = instance();
+    synchronized (types) {
+      if (types.localRefType == null) {
+        ITypeBinding objectType = types.ast.resolveWellKnownType("java.lang.Object");
         GeneratedTypeBinding refType =
             GeneratedTypeBinding.newTypeBinding("com.google.j2objc.util.ScopedLocalRef",
             objectType, false);
@@ -477,9 +511,9 @@ public class Types {
             GeneratedMethodBinding.newConstructor(refType, Modifier.PUBLIC);
         constructor.addParameter(objectType);
         refType.addMethod(constructor);
-        instance.localRefType = refType;
+        types.localRefType = refType;
       }
-      return instance.localRefType;
+      return types.localRefType;
     }
   }
 }
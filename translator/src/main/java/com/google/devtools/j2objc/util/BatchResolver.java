@@ -0,0 +1,258 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.WorkingCopyOwner;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.IErrorHandlingPolicy;
+import org.eclipse.jdt.internal.compiler.IProblemFactory;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem;
+import org.eclipse.jdt.internal.compiler.batch.FileSystem.Classpath;
+import org.eclipse.jdt.internal.compiler.batch.Main;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.AbortCompilation;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+import org.eclipse.jdt.internal.compiler.util.HashtableOfObject;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses and resolves a batch of compilation units whose contents are
+ * already in memory. ASTParser.createASTs() only accepts file paths and
+ * reads each file itself, so this does the same batch resolution with JDT's
+ * CompilationUnitResolver, given the units' contents instead.
+ *
+ * CompilationUnitResolver and the DOM methods that build a resolved tree
+ * aren't public, and a class can't be added to their package because the JDT
+ * jar is signed, so they are accessed by reflection. They match the JDT
+ * version in java_deps. If another JDT version doesn't have them,
+ * getUnavailableReason() says so and JdtParser parses each file separately.
+ */
+class BatchResolver {
+
+  private static final Constructor<?> RESOLVER_CONSTRUCTOR;
+  private static final Method BEGIN_TO_COMPILE;
+  private static final Field REQUESTED_SOURCES;
+  private static final Constructor<?> BINDING_TABLES_CONSTRUCTOR;
+  private static final Method CONVERT;
+  private static final String UNAVAILABLE_REASON;
+
+  static {
+    Constructor<?> resolverConstructor = null;
+    Method beginToCompile = null;
+    Field requestedSources = null;
+    Constructor<?> bindingTablesConstructor = null;
+    Method convert = null;
+    String unavailableReason = null;
+    try {
+      Class<?> resolverClass = Class.forName("org.eclipse.jdt.core.dom.CompilationUnitResolver");
+      Class<?> bindingTablesClass =
+          Class.forName("org.eclipse.jdt.core.dom.DefaultBindingResolver$BindingTables");
+      resolverConstructor = resolverClass.getConstructor(
+          INameEnvironment.class, IErrorHandlingPolicy.class, CompilerOptions.class,
+          ICompilerRequestor.class, IProblemFactory.class, IProgressMonitor.class, boolean.class);
+      beginToCompile = resolverClass.getDeclaredMethod(
+          "beginToCompile", ICompilationUnit[].class, String[].class);
+      requestedSources = resolverClass.getDeclaredField("requestedSources");
+      bindingTablesConstructor = bindingTablesClass.getDeclaredConstructor();
+      convert = resolverClass.getMethod("convert",
+          CompilationUnitDeclaration.class, char[].class, int.class, Map.class, boolean.class,
+          WorkingCopyOwner.class, bindingTablesClass, int.class, IProgressMonitor.class,
+          boolean.class);
+      if (requestedSources.getType() != HashtableOfObject.class) {
+        throw new NoSuchFieldException("requestedSources has type " + requestedSources.getType());
+      }
+      resolverConstructor.setAccessible(true);
+      beginToCompile.setAccessible(true);
+      requestedSources.setAccessible(true);
+      bindingTablesConstructor.setAccessible(true);
+      convert.setAccessible(true);
+    } catch (ClassNotFoundException e) {
+      unavailableReason = "class not found: " + e.getMessage();
+    } catch (NoSuchMethodException e) {
+      unavailableReason = "method not found: " + e.getMessage();
+    } catch (NoSuchFieldException e) {
+      unavailableReason = "field not found: " + e.getMessage();
+    } catch (SecurityException e) {
+      unavailableReason = e.toString();
+    }
+    RESOLVER_CONSTRUCTOR = resolverConstructor;
+    BEGIN_TO_COMPILE = beginToCompile;
+    REQUESTED_SOURCES = requestedSources;
+    BINDING_TABLES_CONSTRUCTOR = bindingTablesConstructor;
+    CONVERT = convert;
+    UNAVAILABLE_REASON = unavailableReason;
+  }
+
+  /**
+   * Called with each requested unit once it is resolved, in the order the
+   * units are processed.
+   */
+  interface Requestor {
+    void acceptAST(String path, char[] contents, CompilationUnit unit);
+  }
+
+  private BatchResolver() {}
+
+  /**
+   * Returns why the JDT version in use can't resolve batches with this
+   * class, or null if it can.
+   */
+  static String getUnavailableReason() {
+    return UNAVAILABLE_REASON;
+  }
+
+  /**
+   * Resolves the units, then converts each to a DOM tree with bindings, as
+   * ASTParser.createASTs() does with a JLS4 parser that resolves bindings.
+   * Units that the lookup environment adds from the sourcepath are resolved
+   * but not converted.
+   *
+   * @throws IllegalStateException if getUnavailableReason() isn't null
+   */
+  static void resolve(List<ICompilationUnit> units, Map<String, String> compilerOptions,
+      List<String> classpathEntries, List<String> sourcepathEntries, String encoding,
+      boolean includeRunningVMBootclasspath, Requestor requestor) {
+    if (UNAVAILABLE_REASON != null) {
+      throw new IllegalStateException("cannot resolve batches: " + UNAVAILABLE_REASON);
+    }
+    FileSystem environment = new FileSystem(
+        getClasspath(classpathEntries, sourcepathEntries, encoding,
+            includeRunningVMBootclasspath), null) {};
+    Compiler resolver = (Compiler) newInstance(RESOLVER_CONSTRUCTOR,
+        environment, DefaultErrorHandlingPolicies.exitAfterAllProblems(),
+        getCompilerOptions(compilerOptions), new ICompilerRequestor() {
+          @Override
+          public void acceptResult(CompilationResult result) {}
+        }, new DefaultProblemFactory(), null, false);
+    Object bindingTables = newInstance(BINDING_TABLES_CONSTRUCTOR);
+    Set<String> requested = Sets.newHashSet();
+    for (ICompilationUnit unit : units) {
+      requested.add(new String(unit.getFileName()));
+    }
+    try {
+      // No binding keys are requested. Every unit is processed below, which
+      // is what JDT needs to fully resolve the bindings of secondary types.
+      invoke(BEGIN_TO_COMPILE, resolver, units.toArray(new ICompilationUnit[0]), new String[0]);
+      // The resolver skips the units in its requested table, which its own
+      // loop processes; this loop replaces that one.
+      REQUESTED_SOURCES.set(resolver, new HashtableOfObject());
+      // More units may be added by the lookup environment during the loop.
+      for (int i = 0; i < resolver.totalUnits; i++) {
+        CompilationUnitDeclaration unit = resolver.unitsToProcess[i];
+        try {
+          resolver.process(unit, i);
+          String path = new String(unit.compilationResult.getFileName());
+          if (requested.remove(path)) {
+            char[] contents = unit.compilationResult.compilationUnit.getContents();
+            CompilationUnit ast = (CompilationUnit) invoke(CONVERT, null, unit, contents,
+                AST.JLS4, compilerOptions, true, null, bindingTables, 0, null, false);
+            requestor.acceptAST(path, contents, ast);
+          }
+        } finally {
+          unit.cleanUp();
+        }
+        resolver.unitsToProcess[i] = null;
+      }
+    } catch (AbortCompilation e) {
+      // As with ASTParser, the units that weren't converted are dropped.
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    } finally {
+      environment.cleanup();
+    }
+  }
+
+  private static Object newInstance(Constructor<?> constructor, Object... args) {
+    try {
+      return constructor.newInstance(args);
+    } catch (InvocationTargetException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (InstantiationException e) {
+      throw new AssertionError(e);
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static Object invoke(Method method, Object target, Object... args) {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  // Same as CompilationUnitResolver.getCompilerOptions() without statement
+  // recovery, which ASTParser doesn't enable by default.
+  private static CompilerOptions getCompilerOptions(Map<String, String> options) {
+    CompilerOptions compilerOptions = new CompilerOptions(options);
+    compilerOptions.performMethodsFullRecovery = false;
+    compilerOptions.performStatementsRecovery = false;
+    compilerOptions.parseLiteralExpressionsAsConstants = false;
+    compilerOptions.storeAnnotations = true;
+    compilerOptions.ignoreSourceFolderWarningOption = true;
+    return compilerOptions;
+  }
+
+  // Same as ASTParser.getClasspath().
+  private static Classpath[] getClasspath(List<String> classpathEntries,
+      List<String> sourcepathEntries, String encoding, boolean includeRunningVMBootclasspath) {
+    Main main = new Main(
+        new PrintWriter(System.out), new PrintWriter(System.err), false, null, null);
+    ArrayList<Classpath> classpaths = new ArrayList<Classpath>();
+    try {
+      if (includeRunningVMBootclasspath) {
+        org.eclipse.jdt.internal.compiler.util.Util.collectRunningVMBootclasspath(classpaths);
+      }
+      for (String entry : sourcepathEntries) {
+        main.processPathEntries(
+            Main.DEFAULT_SIZE_CLASSPATH, classpaths, entry, encoding, true, false);
+      }
+      for (String entry : classpathEntries) {
+        main.processPathEntries(
+            Main.DEFAULT_SIZE_CLASSPATH, classpaths, entry, null, false, false);
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException("invalid environment settings");
+    }
+    if (main.pendingErrors != null && !main.pendingErrors.isEmpty()) {
+      throw new IllegalStateException("invalid environment settings");
+    }
+    return classpaths.toArray(new Classpath[classpaths.size()]);
+  }
+}
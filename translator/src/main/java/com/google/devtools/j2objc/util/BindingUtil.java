@@ -73,6 +73,19 @@ public final class BindingUtil {
         && binding.getConstantValue() != null;
   }
 
+  /**
+   * Returns true if a field is a String constant whose global variable is
+   * initialized by the compiler, so it can be read before its class is
+   * initialized.
+   */
+  public static boolean isStaticStringConstant(IVariableBinding binding) {
+    if (!isConstant(binding)) {
+      return false;
+    }
+    Object value = binding.getConstantValue();
+    return value instanceof String && UnicodeUtils.hasValidCppCharacters((String) value);
+  }
+
   public static boolean isAbstract(IBinding binding) {
     return Modifier.isAbstract(binding.getModifiers());
   }
@@ -105,6 +118,32 @@ public final class BindingUtil {
     return !BindingUtil.isStatic(type);
   }
 
+  /**
+   * Returns true if a class declares an inline monitor when translated with
+   * --inline-monitors, which every class that directly extends
+   * java.lang.Object does.
+   */
+  public static boolean declaresInlineMonitor(ITypeBinding type) {
+    ITypeBinding superclass = type.getSuperclass();
+    return !type.isInterface() && superclass != null && Types.isJavaObjectType(superclass);
+  }
+
+  /**
+   * Returns true if instances of a class have an inline monitor, because the
+   * superclass that declares it is translated from source. Classes whose
+   * hierarchy only has library classes, like the JRE's, don't have one.
+   */
+  public static boolean hasInlineMonitor(ITypeBinding type) {
+    if (type.isArray() || type.isInterface() || type.isTypeVariable()) {
+      return false;
+    }
+    type = type.getTypeDeclaration();
+    while (type != null && !declaresInlineMonitor(type)) {
+      type = type.getSuperclass();
+    }
+    return type != null && type.isFromSource();
+  }
+
   /**
    * Convert an IBinding to a ITypeBinding. Returns null if the binding cannot
    * be converted to a type binding.
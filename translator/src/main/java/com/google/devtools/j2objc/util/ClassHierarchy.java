@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+import java.util.Set;
+
+/**
+ * Summarizes the classes declared by all the source files of a translation,
+ * which of their methods are overridden by any type in those files, and which
+ * invoke super methods. Types and methods are identified by their binding
+ * keys, which are the same in every compilation unit that references them.
+ */
+public class ClassHierarchy {
+
+  public static class Builder {
+    private final Set<String> classes = Sets.newHashSet();
+    private final Set<String> overriddenMethods = Sets.newHashSet();
+    private final Set<String> superInvokers = Sets.newHashSet();
+
+    public ClassHierarchy build() {
+      return new ClassHierarchy(ImmutableSet.copyOf(classes),
+          ImmutableSet.copyOf(overriddenMethods), ImmutableSet.copyOf(superInvokers));
+    }
+
+    /**
+     * Adds a class declared in a translated source file.
+     */
+    public Builder addClass(ITypeBinding type) {
+      classes.add(getKey(type));
+      return this;
+    }
+
+    /**
+     * Adds each method that a declared method overrides or implements, in
+     * any of its declaring type's supertypes.
+     */
+    public Builder addOverrides(IMethodBinding method) {
+      if (!BindingUtil.isStatic(method) && !method.isConstructor()) {
+        addOverrides(method, method.getDeclaringClass(), Sets.<ITypeBinding>newHashSet());
+      }
+      return this;
+    }
+
+    /**
+     * Adds a declared method that invokes a super method.
+     */
+    public Builder addSuperInvoker(IMethodBinding method) {
+      superInvokers.add(getKey(method));
+      return this;
+    }
+
+    private void addOverrides(IMethodBinding method, ITypeBinding type, Set<ITypeBinding> seen) {
+      ITypeBinding superclass = type.getSuperclass();
+      if (superclass != null) {
+        addOverriddenMethods(method, superclass, seen);
+      }
+      for (ITypeBinding intrface : type.getInterfaces()) {
+        addOverriddenMethods(method, intrface, seen);
+      }
+    }
+
+    private void addOverriddenMethods(
+        IMethodBinding method, ITypeBinding type, Set<ITypeBinding> seen) {
+      type = type.getTypeDeclaration();
+      if (!seen.add(type)) {
+        return;
+      }
+      for (IMethodBinding superMethod : type.getDeclaredMethods()) {
+        if (method.overrides(superMethod)) {
+          overriddenMethods.add(getKey(superMethod));
+        }
+      }
+      addOverrides(method, type, seen);
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final ImmutableSet<String> classes;
+  private final ImmutableSet<String> overriddenMethods;
+  private final ImmutableSet<String> superInvokers;
+
+  private ClassHierarchy(ImmutableSet<String> classes, ImmutableSet<String> overriddenMethods,
+      ImmutableSet<String> superInvokers) {
+    this.classes = classes;
+    this.overriddenMethods = overriddenMethods;
+    this.superInvokers = superInvokers;
+  }
+
+  /**
+   * Returns true if a class is declared in one of the translated source files.
+   */
+  public boolean containsClass(ITypeBinding type) {
+    return classes.contains(getKey(type));
+  }
+
+  /**
+   * Returns true if any type in the translated source files overrides a
+   * method.
+   */
+  public boolean isOverridden(IMethodBinding method) {
+    return overriddenMethods.contains(getKey(method));
+  }
+
+  /**
+   * Returns true if a method declared in the translated source files invokes
+   * a super method.
+   */
+  public boolean invokesSuper(IMethodBinding method) {
+    return superInvokers.contains(getKey(method));
+  }
+
+  private static String getKey(ITypeBinding type) {
+    return type.getTypeDeclaration().getKey();
+  }
+
+  private static String getKey(IMethodBinding method) {
+    return method.getMethodDeclaration().getKey();
+  }
+}
@@ -23,7 +23,9 @@ import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides convenient static error and warning methods.
@@ -32,30 +34,101 @@ import java.util.List;
  */
 public class ErrorUtil {
 
-  private static int errorCount = 0;
-  private static int warningCount = 0;
-  private static int functionizedMethodCount = 0;
-  private static String currentFileName = null;
+  private static final AtomicInteger errorCount = new AtomicInteger();
+  private static final AtomicInteger warningCount = new AtomicInteger();
+  private static final AtomicInteger functionizedMethodCount = new AtomicInteger();
   private static PrintStream errorStream = System.err;
-  private static List<String> errorMessages = Lists.newArrayList();
+  private static List<String> errorMessages = newMessageList();
+
+  // Per-thread state, so that units translated concurrently each report
+  // their own file name and can have their messages printed in order.
+  private static final ThreadLocal<String> currentFileName = new ThreadLocal<String>();
+  private static final ThreadLocal<List<String>> deferredMessages =
+      new ThreadLocal<List<String>>();
+  private static final ThreadLocal<int[]> threadErrorCount = newThreadCounter();
+  private static final ThreadLocal<int[]> threadWarningCount = newThreadCounter();
+
+  private static ThreadLocal<int[]> newThreadCounter() {
+    return new ThreadLocal<int[]>() {
+      @Override
+      protected int[] initialValue() {
+        return new int[1];
+      }
+    };
+  }
+
+  private static List<String> newMessageList() {
+    return Collections.synchronizedList(Lists.<String>newArrayList());
+  }
 
   public static void reset() {
-    errorCount = 0;
-    warningCount = 0;
-    currentFileName = null;
-    errorMessages = Lists.newArrayList();
+    errorCount.set(0);
+    warningCount.set(0);
+    functionizedMethodCount.set(0);
+    currentFileName.remove();
+    threadErrorCount.remove();
+    threadWarningCount.remove();
+    errorMessages = newMessageList();
   }
 
   public static void setCurrentFileName(String name) {
-    currentFileName = name;
+    currentFileName.set(name);
   }
 
   public static int errorCount() {
-    return errorCount;
+    return errorCount.get();
+  }
+
+  /**
+   * Returns the number of errors reported by the calling thread, which unlike
+   * errorCount() isn't affected by other files being translated concurrently.
+   */
+  public static int threadErrorCount() {
+    return threadErrorCount.get()[0];
   }
 
   public static int warningCount() {
-    return warningCount;
+    return warningCount.get();
+  }
+
+  /**
+   * Returns the number of warnings reported by the calling thread.
+   */
+  public static int threadWarningCount() {
+    return threadWarningCount.get()[0];
+  }
+
+  /**
+   * Holds the calling thread's error and warning messages until
+   * endDeferredOutput() is called, rather than printing them immediately.
+   */
+  public static void beginDeferredOutput() {
+    deferredMessages.set(Lists.<String>newArrayList());
+  }
+
+  /**
+   * Returns the messages held since beginDeferredOutput(), which should later
+   * be passed to printDeferredOutput().
+   */
+  public static List<String> endDeferredOutput() {
+    List<String> messages = deferredMessages.get();
+    deferredMessages.remove();
+    return messages != null ? messages : Collections.<String>emptyList();
+  }
+
+  public static void printDeferredOutput(List<String> messages) {
+    for (String message : messages) {
+      errorStream.println(message);
+    }
+  }
+
+  private static void print(String message) {
+    List<String> deferred = deferredMessages.get();
+    if (deferred != null) {
+      deferred.add(message);
+    } else {
+      errorStream.println(message);
+    }
   }
 
   public static List<String> getErrorMessages() {
@@ -72,15 +145,27 @@ public class ErrorUtil {
     });
   }
 
+  /**
+   * Redirects errors and warnings to the specified stream, returning the
+   * stream they were printed to before.
+   */
+  public static PrintStream setErrorStream(PrintStream stream) {
+    PrintStream previous = errorStream;
+    errorStream = stream;
+    return previous;
+  }
+
   public static void error(String message) {
     errorMessages.add(message);
-    errorStream.println("error: " + message);
-    errorCount++;
+    print("error: " + message);
+    errorCount.incrementAndGet();
+    threadErrorCount.get()[0]++;
   }
 
   public static void warning(String message) {
-    errorStream.println("warning: " + message);
-    warningCount++;
+    print("warning: " + message);
+    warningCount.incrementAndGet();
+    threadWarningCount.get()[0]++;
   }
 
   /**
@@ -88,11 +173,11 @@ public class ErrorUtil {
    */
   public static void error(ASTNode node, String message) {
     int line = getNodeLine(node);
-    error(String.format("%s:%s: %s", currentFileName, line, message));
+    error(String.format("%s:%s: %s", currentFileName.get(), line, message));
   }
 
   public static void error(TreeNode node, String message) {
-    error(String.format("%s:%s: %s", currentFileName, node.getLineNumber(), message));
+    error(String.format("%s:%s: %s", currentFileName.get(), node.getLineNumber(), message));
   }
 
   /**
@@ -100,11 +185,11 @@ public class ErrorUtil {
    */
   public static void warning(ASTNode node, String message) {
     int line = getNodeLine(node);
-    warning(String.format("%s:%s: %s", currentFileName, line, message));
+    warning(String.format("%s:%s: %s", currentFileName.get(), line, message));
   }
 
   public static void warning(TreeNode node, String message) {
-    warning(String.format("%s:%s: %s", currentFileName, node.getLineNumber(), message));
+    warning(String.format("%s:%s: %s", currentFileName.get(), node.getLineNumber(), message));
   }
 
   private static int getNodeLine(ASTNode node) {
@@ -113,10 +198,10 @@ public class ErrorUtil {
   }
 
   public static void functionizedMethod() {
-    ++functionizedMethodCount;
+    functionizedMethodCount.incrementAndGet();
   }
 
   public static int functionizedMethodCount() {
-    return functionizedMethodCount;
+    return functionizedMethodCount.get();
   }
 }
@@ -14,6 +14,7 @@
 
 package com.google.devtools.j2objc.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -22,12 +23,14 @@ import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.CompilationUnit;
-import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -40,6 +43,9 @@ public class JdtParser {
 
   private static final Logger logger = Logger.getLogger(JdtParser.class.getName());
 
+  // Whether a warning was reported that batches are parsed file by file.
+  private static final AtomicBoolean reportedBatchFallback = new AtomicBoolean();
+
   private Map<String, String> compilerOptions = initCompilerOptions();
   private List<String> classpathEntries = Lists.newArrayList();
   private List<String> sourcepathEntries = Lists.newArrayList();
@@ -119,33 +125,77 @@ public class JdtParser {
     return unit;
   }
 
+  /**
+   * Supplies the contents of the files parsed in a batch, each of which is
+   * read once and shared by the parser and the handler.
+   */
+  public interface SourceProvider {
+    public String getSource(String filePath) throws IOException;
+  }
+
   /**
    * Handler to be provided when parsing multiple files. The provided
-   * implementation is called with the parsed units.
+   * implementation is called with the parsed units and their sources.
    */
   public interface Handler {
-    public void handleParsedUnit(String filePath, CompilationUnit unit);
+    public void handleParsedUnit(String filePath, String source, CompilationUnit unit);
   }
 
-  public void parseFiles(List<String> filePaths, final Handler handler) {
-    ASTParser parser = newASTParser();
-    FileASTRequestor astRequestor = new FileASTRequestor() {
+  public void parseFiles(List<String> filePaths, SourceProvider provider, final Handler handler) {
+    String unavailableReason = BatchResolver.getUnavailableReason();
+    if (unavailableReason != null) {
+      if (reportedBatchFallback.compareAndSet(false, true)) {
+        ErrorUtil.warning("batch parsing isn't supported by this JDT version ("
+            + unavailableReason + "), so files are parsed one at a time");
+      }
+      parseFilesSeparately(filePaths, provider, handler);
+      return;
+    }
+    List<ICompilationUnit> units = Lists.newArrayListWithCapacity(filePaths.size());
+    for (String path : filePaths) {
+      try {
+        char[] contents = provider.getSource(path).toCharArray();
+        units.add(new org.eclipse.jdt.internal.compiler.batch.CompilationUnit(
+            contents, path, encoding));
+      } catch (IOException e) {
+        ErrorUtil.error(e.getMessage());
+      }
+    }
+    BatchResolver.resolve(units, compilerOptions, classpathEntries, sourcepathEntries, encoding,
+        includeRunningVMBootclasspath, new BatchResolver.Requestor() {
       @Override
-      public void acceptAST(String sourceFilePath, CompilationUnit ast) {
-        logger.fine("acceptAST: " + sourceFilePath);
-        int errors = ErrorUtil.errorCount();
-        checkCompilationErrors(sourceFilePath, ast);
-        if (errors == ErrorUtil.errorCount()) {
-          handler.handleParsedUnit(sourceFilePath, ast);
+      public void acceptAST(String path, char[] contents, CompilationUnit unit) {
+        logger.fine("acceptAST: " + path);
+        // Batches may be parsed concurrently, so only count this thread's errors.
+        int errors = ErrorUtil.threadErrorCount();
+        checkCompilationErrors(path, unit);
+        if (errors == ErrorUtil.threadErrorCount()) {
+          handler.handleParsedUnit(path, new String(contents), unit);
         }
       }
-    };
-    // JDT fails to resolve all secondary bindings unless there are the same
-    // number of "binding key" strings as source files. It doesn't appear to
-    // matter what the binding key strings should be (as long as they're non-
-    // null), so the paths array is reused.
-    String[] paths = filePaths.toArray(new String[0]);
-    parser.createASTs(paths, getEncodings(paths.length), paths, astRequestor, null);
+    });
+  }
+
+  /**
+   * Parses each file on its own, as parseFiles() does when batches can't be
+   * resolved together.
+   */
+  @VisibleForTesting
+  void parseFilesSeparately(List<String> filePaths, SourceProvider provider, Handler handler) {
+    for (String path : filePaths) {
+      String source;
+      try {
+        source = provider.getSource(path);
+      } catch (IOException e) {
+        ErrorUtil.error(e.getMessage());
+        continue;
+      }
+      int errors = ErrorUtil.threadErrorCount();
+      CompilationUnit unit = parse(path, source);
+      if (errors == ErrorUtil.threadErrorCount()) {
+        handler.handleParsedUnit(path, source, unit);
+      }
+    }
   }
 
   private ASTParser newASTParser() {
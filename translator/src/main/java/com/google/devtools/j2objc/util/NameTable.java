@@ -16,6 +16,7 @@
 
 package com.google.devtools.j2objc.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -23,6 +24,7 @@ import com.google.common.collect.Maps;
 import com.google.devtools.j2objc.Options;
 import com.google.devtools.j2objc.ast.CompilationUnit;
 import com.google.devtools.j2objc.ast.PackageDeclaration;
+import com.google.devtools.j2objc.types.AbstractTypeBinding;
 import com.google.devtools.j2objc.types.GeneratedVariableBinding;
 import com.google.devtools.j2objc.types.IOSMethod;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
@@ -44,9 +46,11 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import java.io.File;
+import java.lang.reflect.Proxy;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 /**
@@ -56,9 +60,15 @@ import java.util.logging.Logger;
  */
 public class NameTable {
 
-  private static NameTable instance;
+  // Each translation thread has its own instance, so that independent
+  // compilation units can be translated concurrently.
+  private static final ThreadLocal<NameTable> instances = new ThreadLocal<NameTable>();
   private final Map<IBinding, String> renamings = Maps.newHashMap();
 
+  // Full names of types, shared by all the compilation units of a translation.
+  private static volatile FullNameCache fullNameCache = null;
+  private static boolean fullNameCacheEnabled = true;
+
   public static final String INIT_NAME = "init";
   public static final String CLINIT_NAME = "initialize";
   public static final String DEALLOC_METHOD = "dealloc";
@@ -253,11 +263,15 @@ public class NameTable {
    * Initialize this service using the AST returned by the parser.
    */
   public static void initialize() {
-    instance = new NameTable(Options.getPackagePrefixes());
+    instances.set(new NameTable(Options.getPackagePrefixes()));
   }
 
   public static void cleanup() {
-    instance = null;
+    instances.remove();
+  }
+
+  private static NameTable instance() {
+    return instances.get();
   }
 
   /**
@@ -268,7 +282,7 @@ public class NameTable {
   public static String getName(IBinding binding) {
     assert binding != null;
     binding = getBindingDeclaration(binding);
-    String newName = instance.renamings.get(binding);
+    String newName = instance().renamings.get(binding);
     if (newName != null) {
       return newName;
     }
@@ -316,7 +330,7 @@ public class NameTable {
   }
 
   public static boolean isRenamed(IBinding binding) {
-    return instance.renamings.containsKey(binding);
+    return instance().renamings.containsKey(binding);
   }
 
   public static boolean isRenamed(SimpleName node) {
@@ -328,12 +342,19 @@ public class NameTable {
    */
   public static void rename(IBinding oldName, String newName) {
     oldName = getBindingDeclaration(oldName);
-    String previousName = instance.renamings.get(oldName);
+    String previousName = instance().renamings.get(oldName);
     if (previousName != null && !previousName.equals(newName)) {
       logger.fine(String.format("Changing previous rename: %s => %s, now: %s => %s",
           oldName.toString(), previousName, oldName, newName));
     }
-    instance.renamings.put(oldName, newName);
+    instance().renamings.put(oldName, newName);
+    FullNameCache cache = fullNameCache;
+    if (cache != null && oldName instanceof ITypeBinding) {
+      String key = oldName.getKey();
+      if (key != null) {
+        cache.names.remove(key);
+      }
+    }
   }
 
   /**
@@ -578,6 +599,20 @@ public class NameTable {
 
   public static String getFullName(ITypeBinding binding) {
     binding = Types.mapType(binding.getErasure());  // Make sure type variables aren't included.
+    String key = getFullNameKey(binding);
+    if (key == null) {
+      return computeFullName(binding);
+    }
+    ConcurrentMap<String, String> names = getFullNameCache().names;
+    String name = names.get(key);
+    if (name == null) {
+      name = computeFullName(binding);
+      names.put(key, name);
+    }
+    return name;
+  }
+
+  private static String computeFullName(ITypeBinding binding) {
     String suffix = binding.isEnum() ? "Enum" : "";
     String prefix = "";
     IMethodBinding outerMethod = binding.getDeclaringMethod();
@@ -610,6 +645,88 @@ public class NameTable {
     return pkgName + binding.getName() + suffix;
   }
 
+  /**
+   * Returns the key a type's full name is cached by, or null if it isn't
+   * cached. Generated and renamed types aren't cached, nor are types declared
+   * in a renamed type, since their names are particular to one compilation
+   * unit.
+   */
+  private static String getFullNameKey(ITypeBinding binding) {
+    if (!fullNameCacheEnabled || binding instanceof AbstractTypeBinding
+        || Proxy.isProxyClass(binding.getClass())) {
+      return null;
+    }
+    Map<IBinding, String> renamings = instance().renamings;
+    if (!renamings.isEmpty()) {
+      for (ITypeBinding type = binding; type != null; type = type.getDeclaringClass()) {
+        if (renamings.containsKey(type.getTypeDeclaration())) {
+          return null;
+        }
+      }
+    }
+    return binding.getKey();
+  }
+
+  /**
+   * Returns the full name cache, replacing it if the package prefixes or
+   * class mappings it was filled with have changed.
+   */
+  private static FullNameCache getFullNameCache() {
+    FullNameCache cache = fullNameCache;
+    if (cache == null || !cache.isCurrent()) {
+      synchronized (NameTable.class) {
+        cache = fullNameCache;
+        if (cache == null || !cache.isCurrent()) {
+          cache = fullNameCache = new FullNameCache();
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Discards the cached full names, so the next translation starts with an
+   * empty cache.
+   */
+  public static void clearFullNameCache() {
+    fullNameCache = null;
+  }
+
+  @VisibleForTesting
+  public static void setFullNameCacheEnabled(boolean enabled) {
+    fullNameCacheEnabled = enabled;
+  }
+
+  @VisibleForTesting
+  static String getCachedFullName(ITypeBinding binding) {
+    FullNameCache cache = fullNameCache;
+    return cache != null ? cache.names.get(binding.getKey()) : null;
+  }
+
+  /**
+   * Type full names by binding key. Binding keys are the same in every
+   * compilation unit that references a type, so names computed for one unit
+   * are reused by the rest of the translation. The names depend on the
+   * package prefixes and class mappings, which are recorded to tell when
+   * the names are stale; the class mappings are loaded with the first unit
+   * translated.
+   */
+  private static class FullNameCache {
+    private final ConcurrentMap<String, String> names = Maps.newConcurrentMap();
+    private final Map<String, String> prefixes = Options.getPackagePrefixes();
+    private final int prefixesSize = prefixes.size();
+    private final Map<String, String> classMappings = Options.getClassMappings();
+    private final int classMappingsSize = classMappings.size();
+
+    private boolean isCurrent() {
+      Map<String, String> currentPrefixes = Options.getPackagePrefixes();
+      Map<String, String> currentClassMappings = Options.getClassMappings();
+      return currentPrefixes == prefixes && currentPrefixes.size() == prefixesSize
+          && currentClassMappings == classMappings
+          && currentClassMappings.size() == classMappingsSize;
+    }
+  }
+
   /**
    * Returns a "Type_method" function name for static methods, such as from
    * enum types.
@@ -674,7 +791,8 @@ public class NameTable {
   }
 
   public static void mapPackageToPrefix(String packageName, String prefix) {
-    instance.prefixMap.put(packageName, prefix);
+    instance().prefixMap.put(packageName, prefix);
+    clearFullNameCache();
   }
 
   /**
@@ -684,7 +802,7 @@ public class NameTable {
    */
   public static String getPrefix(String packageName) {
     if (hasPrefix(packageName)) {
-      return instance.prefixMap.get(packageName);
+      return instance().prefixMap.get(packageName);
     }
     StringBuilder sb = new StringBuilder();
     for (String part : packageName.split("\\.")) {
@@ -694,6 +812,6 @@ public class NameTable {
   }
 
   public static boolean hasPrefix(String packageName) {
-    return instance.prefixMap.containsKey(packageName);
+    return instance().prefixMap.containsKey(packageName);
   }
 }
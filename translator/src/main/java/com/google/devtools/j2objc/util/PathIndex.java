@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Answers whether a classpath or sourcepath entry contains a file, without
+ * reopening jar files. Each jar's entry names are read once, the first time
+ * it is queried, and kept until the jar is modified. Directory entries are
+ * checked on the file system, since they may change between translations.
+ */
+public final class PathIndex {
+
+  private static final Map<String, JarIndex> jarIndexes = Maps.newHashMap();
+
+  private PathIndex() {}
+
+  // The entry names of a jar file, and the jar's state when they were read.
+  private static class JarIndex {
+    private final long lastModified;
+    private final long length;
+    private final Set<String> entries;
+
+    private JarIndex(long lastModified, long length, Set<String> entries) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * Returns true if a path entry contains a file. The file's path is relative
+   * to the entry and uses '/' separators, as jar files do.
+   */
+  public static boolean contains(String pathEntry, String path) {
+    File f = new File(pathEntry);
+    if (f.isDirectory()) {
+      return new File(f, path).exists();
+    } else if (f.isFile() && pathEntry.endsWith(".jar")) {
+      return getJarEntries(f).contains(path);
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if any of the path entries contains a file.
+   */
+  public static boolean contains(Iterable<String> pathEntries, String path) {
+    for (String pathEntry : pathEntries) {
+      if (contains(pathEntry, path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static synchronized Set<String> getJarEntries(File jar) {
+    String key = jar.getPath();
+    JarIndex index = jarIndexes.get(key);
+    if (index == null || index.lastModified != jar.lastModified()
+        || index.length != jar.length()) {
+      index = new JarIndex(jar.lastModified(), jar.length(), readJarEntries(jar));
+      jarIndexes.put(key, index);
+    }
+    return index.entries;
+  }
+
+  private static Set<String> readJarEntries(File jar) {
+    ImmutableSet.Builder<String> entries = ImmutableSet.builder();
+    try {
+      ZipFile zfile = new ZipFile(jar);
+      try {
+        Enumeration<? extends ZipEntry> enumerator = zfile.entries();
+        while (enumerator.hasMoreElements()) {
+          entries.add(enumerator.nextElement().getName());
+        }
+      } finally {
+        zfile.close();
+      }
+    } catch (IOException e) {
+      // The jar isn't read again until it changes, so this is only reported once.
+      ErrorUtil.warning(e.getMessage());
+    }
+    return entries.build();
+  }
+}
@@ -15,7 +15,11 @@
 package com.google.devtools.j2objc.util;
 
 import com.google.common.collect.Lists;
+import com.google.devtools.j2objc.ast.TreeNode;
 
+import org.eclipse.jdt.core.dom.ASTNode;
+
+import java.io.File;
 import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.List;
@@ -39,6 +43,22 @@ public class TimeTracker {
   public void tick(String event) {
   }
 
+  /**
+   * Ends a time slice that wrote the specified output file.
+   */
+  public void tick(String event, File output) {
+    tick(event);
+  }
+
+  /**
+   * Sets the tree that subsequent time slices operate on.
+   */
+  public void setTree(ASTNode root) {
+  }
+
+  public void setTree(TreeNode root) {
+  }
+
   public void push() {
   }
 
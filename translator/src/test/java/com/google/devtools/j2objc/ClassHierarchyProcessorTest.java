@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.collect.Lists;
+import com.google.devtools.j2objc.util.ErrorUtil;
+import com.google.devtools.j2objc.util.JdtParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests for {@link ClassHierarchyProcessor}, translating several files with
+ * the class hierarchy it reads from them, as J2ObjC does with --closed-world.
+ */
+public class ClassHierarchyProcessorTest extends GenerationTest {
+
+  private List<String> paths;
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    addSourceFile("package p; public class A { int n; "
+        + "public int getN() { return n; } public int getM() { return n + 1; } }", "p/A.java");
+    addSourceFile("package p; public class B extends A { "
+        + "public int getM() { return 0; } }", "p/B.java");
+    addSourceFile("package p; public class C { "
+        + "int test(A a) { return a.getN() + a.getM(); } }", "p/C.java");
+    paths = Lists.newArrayList();
+    for (String name : new String[] { "A.java", "B.java", "C.java" }) {
+      paths.add(new File(tempDir, "p/" + name).getPath());
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.reset();
+    super.tearDown();
+  }
+
+  public void testOverriddenMethodStaysMethod() throws IOException {
+    translate(true);
+    String translation = getTranslatedFile("p/C.m");
+    assertTranslation(translation, "PA_getN_(nil_chk(a)) + [a getM]");
+    assertNotInTranslation(translation, "PA_getM_");
+    assertNotInTranslation(getTranslatedFile("p/A.h"), "PA_getM_");
+  }
+
+  public void testNonOverriddenMethodCalledAsFunction() throws IOException {
+    translate(true);
+    assertTranslation(getTranslatedFile("p/C.m"), "PA_getN_(nil_chk(a))");
+    assertTranslation(getTranslatedFile("p/A.h"), "FOUNDATION_EXPORT int PA_getN_(PA * self);");
+    assertTranslatedLines(getTranslatedFile("p/A.m"),
+        "- (int)getN {", "return PA_getN_(self);", "}");
+  }
+
+  public void testNonOverriddenMethodNeedsClosedWorld() throws IOException {
+    translate(false);
+    String translation = getTranslatedFile("p/C.m");
+    assertTranslation(translation, "[((PA *) nil_chk(a)) getN]");
+    assertNotInTranslation(translation, "PA_getN_");
+    assertNotInTranslation(getTranslatedFile("p/A.h"), "PA_getN_");
+  }
+
+  // Translates the sources into tempDir with --final-methods-as-functions,
+  // reading their class hierarchy first if closedWorld is true.
+  private void translate(boolean closedWorld) throws IOException {
+    List<String> args = Lists.newArrayList(
+        "-d", tempDir.getPath(), "-sourcepath", tempDir.getPath(),
+        "--final-methods-as-functions");
+    if (closedWorld) {
+      args.add("--closed-world");
+    }
+    Options.reset();
+    Options.load(args.toArray(new String[0]));
+
+    JdtParser parser = new JdtParser();
+    parser.addClasspathEntries(getComGoogleDevtoolsJ2objcPath());
+    parser.addSourcepathEntry(tempDir.getPath());
+    TranslationProcessor translationProcessor = new TranslationProcessor(parser);
+    if (closedWorld) {
+      ClassHierarchyProcessor hierarchyProcessor = new ClassHierarchyProcessor(parser);
+      hierarchyProcessor.processFiles(paths);
+      translationProcessor.setClassHierarchy(hierarchyProcessor.getClassHierarchy());
+    }
+    translationProcessor.processFiles(paths);
+    assertEquals(0, ErrorUtil.errorCount());
+  }
+}
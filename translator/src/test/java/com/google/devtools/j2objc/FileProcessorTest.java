@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link FileProcessor}.
+ */
+public class FileProcessorTest extends TestCase {
+
+  private File tempDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    tempDir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File dir : tempDir.listFiles()) {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+    tempDir.delete();
+  }
+
+  private String addFile(String path, int size) throws IOException {
+    File f = new File(tempDir, path);
+    Files.createParentDirs(f);
+    Files.write(Strings.repeat(" ", size), f, Charsets.UTF_8);
+    return f.getPath();
+  }
+
+  // Returns the sizes of files, keyed by path.
+  private static Map<String, Long> sizes(String... paths) {
+    Map<String, Long> sizes = Maps.newLinkedHashMap();
+    for (String path : paths) {
+      sizes.put(path, new File(path).length());
+    }
+    return sizes;
+  }
+
+  // Returns the file names of each batch.
+  private static List<List<String>> names(List<List<String>> batches) {
+    List<List<String>> result = Lists.newArrayList();
+    for (List<String> batch : batches) {
+      List<String> batchNames = Lists.newArrayList();
+      for (String path : batch) {
+        batchNames.add(new File(path).getName());
+      }
+      result.add(batchNames);
+    }
+    return result;
+  }
+
+  public void testPartitionByPackage() throws IOException {
+    String b1 = addFile("b/B1.java", 100);
+    String a1 = addFile("a/A1.java", 100);
+    String c1 = addFile("c/C1.java", 300);
+    String a2 = addFile("a/A2.java", 100);
+    String b2 = addFile("b/B2.java", 100);
+    long budget = 400 * 40;  // Room for four 100-byte files.
+
+    // Packages a and b fit together; c starts a new batch rather than
+    // splitting across two.
+    List<List<String>> batches =
+        FileProcessor.partitionByPackage(sizes(b1, a1, c1, a2, b2), budget, 0);
+    assertEquals(Arrays.asList(
+        Arrays.asList("A1.java", "A2.java", "B1.java", "B2.java"),
+        Arrays.asList("C1.java")), names(batches));
+
+    // The file count limit still applies, after which c fits with the rest of b.
+    batches = FileProcessor.partitionByPackage(sizes(b1, a1, c1, a2, b2), budget, 3);
+    assertEquals(Arrays.asList(
+        Arrays.asList("A1.java", "A2.java", "B1.java"),
+        Arrays.asList("B2.java", "C1.java")), names(batches));
+  }
+
+  public void testPartitionSplitsLargePackages() throws IOException {
+    String a1 = addFile("a/A1.java", 100);
+    String a2 = addFile("a/A2.java", 100);
+    String a3 = addFile("a/A3.java", 100);
+    String b1 = addFile("b/B1.java", 500);
+    long budget = 250 * 40;
+
+    List<List<String>> batches =
+        FileProcessor.partitionByPackage(sizes(a1, a2, a3, b1), budget, 0);
+    assertEquals(Arrays.asList(
+        Arrays.asList("A1.java", "A2.java"),
+        Arrays.asList("A3.java"),
+        Arrays.asList("B1.java")), names(batches));  // Over budget on its own.
+  }
+}
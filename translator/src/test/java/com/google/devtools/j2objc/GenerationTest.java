@@ -72,6 +72,7 @@ public abstract class GenerationTest extends TestCase {
       "-d", tempDir.getAbsolutePath(),
       "--mem-debug" // Run tests with memory debugging by default.
     });
+    TranslationProcessor.loadMappingFiles();
     parser = initializeParser(tempDir);
   }
 
@@ -120,6 +121,8 @@ public abstract class GenerationTest extends TestCase {
    */
   protected CompilationUnit translateType(String name, String source) {
     org.eclipse.jdt.core.dom.CompilationUnit unit = compileType(name, source);
+    // Each translated source is its own translation, which may redeclare types.
+    NameTable.clearFullNameCache();
     NameTable.initialize();
     Types.initialize(unit);
     return TranslationProcessor.applyMutations(unit, name + ".java", source, TimeTracker.noop());
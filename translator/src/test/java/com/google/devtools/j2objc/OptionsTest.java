@@ -14,6 +14,7 @@
 
 package com.google.devtools.j2objc;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.Map;
@@ -65,4 +66,65 @@ public class OptionsTest extends GenerationTest {
     assertEquals("JL", prefixMap.get("java.lang"));
     assertEquals("FB", prefixMap.get("foo.bar"));
   }
+
+  public void testTranslationThreads() throws IOException {
+    try {
+      String[] files = Options.load(new String[] { "-j", "4", "Test.java" });
+      assertEquals(1, files.length);
+      assertEquals(4, Options.translationThreads());
+      Options.load(new String[] { "--threads=2", "Test.java" });
+      assertEquals(2, Options.translationThreads());
+    } finally {
+      Options.setTranslationThreads(1);
+    }
+  }
+
+  public void testBatchTranslateMemory() throws IOException {
+    try {
+      assertEquals(0, Options.batchTranslateMemory());
+      Options.load(new String[] { "--batch-translate-memory=512", "Test.java" });
+      assertEquals(512, Options.batchTranslateMemory());
+    } finally {
+      Options.setBatchTranslateMemory(0);
+    }
+  }
+
+  public void testMetadataKeepRules() throws IOException {
+    try {
+      assertTrue(Options.keepsMetadata("foo.bar.Test"));
+      Options.addMetadataKeepRule("foo.*");
+      Options.addMetadataKeepRule("com.**.Keep*");
+      assertTrue(Options.keepsMetadata("foo.Test"));
+      assertTrue(Options.keepsMetadata("foo.Test$Inner"));
+      assertFalse(Options.keepsMetadata("foo.bar.Test"));
+      assertTrue(Options.keepsMetadata("com.a.b.KeepMe"));
+      assertFalse(Options.keepsMetadata("com.a.b.Other"));
+      assertFalse(Options.keepsMetadata("comXa.KeepMe"));
+    } finally {
+      Options.resetMetadataKeepRules();
+    }
+  }
+
+  public void testCacheDirectory() throws IOException {
+    try {
+      assertNull(Options.getCacheDirectory());
+      Options.load(new String[] { "--cache-dir", "build/cache", "Test.java" });
+      assertEquals(new File("build/cache"), Options.getCacheDirectory());
+    } finally {
+      Options.setCacheDirectory(null);
+    }
+  }
+
+  public void testClosedWorld() throws IOException {
+    try {
+      assertFalse(Options.closedWorld());
+      Options.load(new String[] {
+        "--final-methods-as-functions", "--closed-world", "Test.java" });
+      assertTrue(Options.finalMethodsAsFunctions());
+      assertTrue(Options.closedWorld());
+    } finally {
+      Options.resetFinalMethodsAsFunctions();
+      Options.resetClosedWorld();
+    }
+  }
 }
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.ast.CompilationUnit;
+import com.google.devtools.j2objc.util.TimeTracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for {@link Profiler}.
+ */
+public class ProfilerTest extends GenerationTest {
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.reset();
+    super.tearDown();
+  }
+
+  public void testProfileFlag() throws IOException {
+    assertNull(Options.getProfileFile());
+    Options.load(new String[] { "--profile=build/profile.json", "Test.java" });
+    assertEquals(new File("build/profile.json"), Options.getProfileFile());
+  }
+
+  public void testReport() throws IOException {
+    CompilationUnit unit = translateType("Test", "public class Test { int foo() { return 1; } }");
+    Profiler profiler = new Profiler();
+    TimeTracker ticker = profiler.start("Test.java");
+    ticker.setTree(unit);
+    ticker.push();
+    ticker.tick("Analysis");
+    File output = new File(tempDir, "Test.h");
+    Files.write("abc", output, Charsets.UTF_8);
+    ticker.tick("Generation", output);
+    ticker.pop();
+    ticker.tick("Total");
+    profiler.start("Other.java").tick("Analysis");
+
+    String json = profiler.toJson();
+    // Files are sorted, and each file's steps are in order.
+    assertTrue(json.indexOf("{\"file\": \"Other.java\"")
+        < json.indexOf("{\"file\": \"Test.java\""));
+    assertTrue(json.indexOf("{\"step\": \"Analysis\", \"level\": 1")
+        < json.indexOf("{\"step\": \"Generation\", \"level\": 1"));
+    assertTrue(json.indexOf("{\"step\": \"Generation\", \"level\": 1")
+        < json.indexOf("{\"step\": \"Total\", \"level\": 0"));
+
+    // A pass that doesn't change the tree has the same size before and after.
+    Matcher m = Pattern.compile("\"step\": \"Analysis\", \"level\": 1, "
+        + "[^}]*\"nodesBefore\": (\\d+), \"nodesAfter\": (\\d+)").matcher(json);
+    assertTrue(m.find());
+    assertEquals(m.group(1), m.group(2));
+    assertTrue(Integer.parseInt(m.group(1)) > 1);
+    assertTrue(json.matches("(?s).*\"step\": \"Generation\", [^}]*\"outputBytes\": 3}.*"));
+
+    // The other file has no tree.
+    assertTrue(json.matches(
+        "(?s).*\\{\"file\": \"Other.java\", \"steps\": \\[\\s*\\{\"step\": \"Analysis\", "
+        + "\"level\": 0, \"nanos\": \\d+(, \"allocatedBytes\": \\d+)?\\}\\]\\}.*"));
+
+    // Totals are aggregated across files.
+    assertTrue(json.matches("(?s).*\\{\"step\": \"Analysis\", \"count\": 2, \"totalNanos\": \\d+, "
+        + "\"nanos\": \\{\"p50\": \\d+, \"p90\": \\d+, \"p99\": \\d+, \"max\": \\d+\\}.*"));
+    assertTrue(json.matches("(?s).*\\{\"step\": \"Generation\", \"count\": 1, [^\\n]*"
+        + "\"totalOutputBytes\": 3}.*"));
+  }
+}
@@ -16,20 +16,24 @@
 
 package com.google.devtools.j2objc;
 
+import com.google.devtools.j2objc.ast.ChildListTest;
 import com.google.devtools.j2objc.gen.ArrayAccessTest;
 import com.google.devtools.j2objc.gen.ArrayCreationTest;
 import com.google.devtools.j2objc.gen.HiddenFieldDetectorTest;
+import com.google.devtools.j2objc.gen.ImplementationScannerTest;
 import com.google.devtools.j2objc.gen.LineDirectivesTest;
 import com.google.devtools.j2objc.gen.ObjectiveCHeaderGeneratorTest;
 import com.google.devtools.j2objc.gen.ObjectiveCImplementationGeneratorTest;
 import com.google.devtools.j2objc.gen.ObjectiveCSegmentedHeaderGeneratorTest;
 import com.google.devtools.j2objc.gen.ObjectiveCSourceFileGeneratorTest;
 import com.google.devtools.j2objc.gen.PrimitiveArrayTest;
+import com.google.devtools.j2objc.gen.SourceBuilderTest;
 import com.google.devtools.j2objc.gen.StatementGeneratorTest;
 import com.google.devtools.j2objc.translate.ASTFactoryTest;
 import com.google.devtools.j2objc.translate.AnonymousClassConverterTest;
 import com.google.devtools.j2objc.translate.ArrayRewriterTest;
 import com.google.devtools.j2objc.translate.AutoboxerTest;
+import com.google.devtools.j2objc.translate.BoxingEliminatorTest;
 import com.google.devtools.j2objc.translate.ComplexExpressionExtractorTest;
 import com.google.devtools.j2objc.translate.CopyAllFieldsWriterTest;
 import com.google.devtools.j2objc.translate.DeadCodeEliminatorTest;
@@ -46,16 +50,20 @@ import com.google.devtools.j2objc.translate.OuterReferenceFixerTest;
 import com.google.devtools.j2objc.translate.OuterReferenceResolverTest;
 import com.google.devtools.j2objc.translate.RewriterTest;
 import com.google.devtools.j2objc.translate.StaticVarRewriterTest;
+import com.google.devtools.j2objc.translate.StringBuilderRewriterTest;
 import com.google.devtools.j2objc.translate.TypeSorterTest;
 import com.google.devtools.j2objc.translate.UnsequencedExpressionRewriterTest;
 import com.google.devtools.j2objc.types.BindingMapBuilderTest;
 import com.google.devtools.j2objc.types.HeaderImportCollectorTest;
 import com.google.devtools.j2objc.types.ImplementationImportCollectorTest;
+import com.google.devtools.j2objc.types.MethodMappingIndexTest;
 import com.google.devtools.j2objc.types.RenamedTypeBindingTest;
 import com.google.devtools.j2objc.util.BindingUtilTest;
 import com.google.devtools.j2objc.util.DeadCodeMapTest;
 import com.google.devtools.j2objc.util.ErrorReportingASTVisitorTest;
+import com.google.devtools.j2objc.util.JdtParserTest;
 import com.google.devtools.j2objc.util.NameTableTest;
+import com.google.devtools.j2objc.util.PathIndexTest;
 import com.google.devtools.j2objc.util.ProGuardUsageParserTest;
 import com.google.devtools.j2objc.util.UnicodeUtilsTest;
 
@@ -78,6 +86,9 @@ public class SmallTests {
     AutoboxerTest.class,
     BindingMapBuilderTest.class,
     BindingUtilTest.class,
+    BoxingEliminatorTest.class,
+    ChildListTest.class,
+    ClassHierarchyProcessorTest.class,
     ComplexExpressionExtractorTest.class,
     CopyAllFieldsWriterTest.class,
     DeadCodeEliminatorTest.class,
@@ -85,15 +96,19 @@ public class SmallTests {
     DestructorGeneratorTest.class,
     EnhancedForRewriterTest.class,
     ErrorReportingASTVisitorTest.class,
+    FileProcessorTest.class,
     FunctionizerTest.class,
     GwtConverterTest.class,
     HeaderImportCollectorTest.class,
     HiddenFieldDetectorTest.class,
     ImplementationImportCollectorTest.class,
+    ImplementationScannerTest.class,
     InitializationNormalizerTest.class,
     InnerClassExtractorTest.class,
     JavaToIOSMethodTranslatorTest.class,
+    JdtParserTest.class,
     LineDirectivesTest.class,
+    MethodMappingIndexTest.class,
     NameTableTest.class,
     NilCheckResolverTest.class,
     ObjectiveCHeaderGeneratorTest.class,
@@ -104,12 +119,19 @@ public class SmallTests {
     OptionsTest.class,
     OuterReferenceFixerTest.class,
     OuterReferenceResolverTest.class,
+    PathIndexTest.class,
     PrimitiveArrayTest.class,
     ProGuardUsageParserTest.class,
+    ProfilerTest.class,
     RenamedTypeBindingTest.class,
     RewriterTest.class,
+    SourceBuilderTest.class,
     StatementGeneratorTest.class,
     StaticVarRewriterTest.class,
+    StringBuilderRewriterTest.class,
+    TranslationCacheTest.class,
+    TranslationProcessorTest.class,
+    TranslationWorkerTest.class,
     TypeSorterTest.class,
     UnicodeUtilsTest.class,
     UnsequencedExpressionRewriterTest.class
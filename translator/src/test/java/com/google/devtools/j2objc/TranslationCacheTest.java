@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.util.ErrorUtil;
+import com.google.devtools.j2objc.util.JdtParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Tests for {@link TranslationCache}.
+ */
+public class TranslationCacheTest extends GenerationTest {
+
+  // Appended to the cached copies of generated files, so a translation that
+  // restores them can be told apart from one that generates them again.
+  private static final String CACHED_MARKER = "// restored from cache\n";
+
+  private File cacheDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    cacheDir = new File(tempDir, "cache");
+    addSourceFile("public class A { B b; int f() { return b.g(); } }", "A.java");
+    addSourceFile("public class B { int g() { return 42; } }", "B.java");
+    translate();
+    assertFalse(isRestored("A.m"));
+    markCachedOutputs();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.reset();
+    super.tearDown();
+  }
+
+  public void testUnchangedSourcesAreRestored() throws IOException {
+    translate();
+    assertTrue(isRestored("A.h"));
+    assertTrue(isRestored("A.m"));
+    assertTrue(isRestored("B.m"));
+  }
+
+  public void testEditedSourceIsTranslated() throws IOException {
+    addSourceFile("public class A { B b; int f() { return b.g() + 1; } }", "A.java");
+    translate();
+    assertFalse(isRestored("A.m"));
+    assertTranslation(getTranslatedFile("A.m"), "+ 1");
+    assertTrue(isRestored("B.m"));
+  }
+
+  public void testDependencyApiChangeInvalidatesEntry() throws IOException {
+    addSourceFile("public class B { int g() { return 42; } int h() { return 0; } }", "B.java");
+    translate();
+    assertFalse(isRestored("A.m"));
+    assertFalse(isRestored("B.m"));
+  }
+
+  public void testDependencyImplementationChangeKeepsEntry() throws IOException {
+    addSourceFile(
+        "public class B { int g() { return h(); } private int h() { return 42; } }", "B.java");
+    translate();
+    assertTrue(isRestored("A.m"));
+    assertFalse(isRestored("B.m"));
+  }
+
+  public void testMappingChangeInvalidatesEntries() throws IOException {
+    File mappingFile = new File(tempDir, "test.mappings");
+    Files.write("B.g()I = NSNumber intValue\n", mappingFile, Charset.defaultCharset());
+    translate("--mapping", mappingFile.getPath());
+    assertFalse(isRestored("A.m"));
+    assertTranslation(getTranslatedFile("A.m"), "intValue]");
+    assertFalse(isRestored("B.m"));
+  }
+
+  public void testOptionChangeInvalidatesEntries() throws IOException {
+    translate("-g");
+    assertFalse(isRestored("A.m"));
+    assertTranslation(getTranslatedFile("A.m"), "#line");
+    assertFalse(isRestored("B.m"));
+  }
+
+  // Translates A.java and B.java into tempDir, with the cache and any
+  // additional flags.
+  private void translate(String... flags) throws IOException {
+    List<String> args = Lists.newArrayList("-d", tempDir.getPath(),
+        "-sourcepath", tempDir.getPath(), "--cache-dir", cacheDir.getPath());
+    for (String flag : flags) {
+      args.add(flag);
+    }
+    Options.reset();
+    Options.load(args.toArray(new String[0]));
+    TranslationProcessor.loadMappingFiles();
+
+    JdtParser parser = new JdtParser();
+    parser.addClasspathEntries(getComGoogleDevtoolsJ2objcPath());
+    parser.addSourcepathEntry(tempDir.getPath());
+    new TranslationProcessor(parser).processFiles(Lists.newArrayList(
+        new File(tempDir, "A.java").getPath(), new File(tempDir, "B.java").getPath()));
+    assertEquals(0, ErrorUtil.errorCount());
+  }
+
+  private void markCachedOutputs() throws IOException {
+    File[] entries = cacheDir.listFiles();
+    assertEquals(2, entries.length);
+    for (File entry : entries) {
+      for (File f : entry.listFiles()) {
+        if (!f.getName().endsWith(".properties")) {
+          Files.append(CACHED_MARKER, f, Charset.defaultCharset());
+        }
+      }
+    }
+  }
+
+  private boolean isRestored(String fileName) throws IOException {
+    return getTranslatedFile(fileName).endsWith(CACHED_MARKER);
+  }
+}
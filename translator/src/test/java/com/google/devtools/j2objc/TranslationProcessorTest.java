@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.util.ErrorUtil;
+import com.google.devtools.j2objc.util.JdtParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link TranslationProcessor}.
+ */
+public class TranslationProcessorTest extends GenerationTest {
+
+  private List<String> paths;
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    addSourceFile("public class A { B b; int f() { return b.g(); } }", "A.java");
+    addSourceFile("public class B { int g() { return 42; } }", "B.java");
+    addSourceFile("public class C { void f() { int i = \"c\"; } }", "C.java");
+    addSourceFile("public class D extends A { String s = \"\" + f(); }", "D.java");
+    addSourceFile("public class E { void f() { Undefined u; } }", "E.java");
+    paths = Lists.newArrayList();
+    for (String name : new String[] { "A.java", "B.java", "C.java", "D.java", "E.java" }) {
+      paths.add(new File(tempDir, name).getPath());
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.setTranslationThreads(1);
+    super.tearDown();
+  }
+
+  public void testMultipleThreadsMatchSerialRun() throws IOException {
+    Translation serial = translate("serial", 1);
+    Translation parallel = translate("parallel", 2);
+    assertEquals(2, serial.errors.size());
+    assertEquals(serial.errors, parallel.errors);
+    assertEquals(serial.stderr, parallel.stderr);
+    assertEquals(serial.stdout, parallel.stdout);
+    assertEquals(serial.files.keySet(), parallel.files.keySet());
+    assertEquals(serial.files, parallel.files);
+  }
+
+  public void testConcurrentBatchesMatchSerialRun() throws IOException {
+    Translation serial = translate("serial", 1, "--batch-translate-max=2");
+    Translation parallel = translate("parallel", 2, "--batch-translate-max=2");
+    assertEquals(serial.errors, parallel.errors);
+    assertEquals(serial.stderr, parallel.stderr);
+    assertEquals(serial.stdout, parallel.stdout);
+    assertEquals(serial.files, parallel.files);
+  }
+
+  // The output of a translation run.
+  private static class Translation {
+    private final Map<String, String> files = Maps.newTreeMap();
+    private List<String> errors;
+    private String stdout;
+    private String stderr;
+  }
+
+  // Translates the sources into a new output directory, with timings, and
+  // returns what was printed and generated. Times and their padding are
+  // replaced by "N". Errors are recorded as threads report them, so they're
+  // sorted; only their printed order is kept.
+  private Translation translate(String outputName, int threads, String... flags)
+      throws IOException {
+    File outputDir = new File(tempDir, outputName);
+    List<String> args = Lists.newArrayList(
+        "-d", outputDir.getPath(), "-sourcepath", tempDir.getPath(), "-v");
+    for (String flag : flags) {
+      args.add(flag);
+    }
+    Options.load(args.toArray(new String[0]));
+    Options.setTranslationThreads(threads);
+    ErrorUtil.reset();
+
+    JdtParser parser = new JdtParser();
+    parser.addClasspathEntries(getComGoogleDevtoolsJ2objcPath());
+    parser.addSourcepathEntry(tempDir.getPath());
+
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream previousOut = System.out;
+    PrintStream previousErr = ErrorUtil.setErrorStream(new PrintStream(stderr, true));
+    System.setOut(new PrintStream(stdout, true));
+    try {
+      new TranslationProcessor(parser).processFiles(paths);
+    } finally {
+      System.setOut(previousOut);
+      ErrorUtil.setErrorStream(previousErr);
+    }
+
+    Translation translation = new Translation();
+    translation.errors = Ordering.natural().sortedCopy(ErrorUtil.getErrorMessages());
+    translation.stdout = stdout.toString().replaceAll("(?m)^ *\\d+ ms", "N ms");
+    translation.stderr = stderr.toString();
+    for (File f : outputDir.listFiles()) {
+      translation.files.put(f.getName(), Files.toString(f, Charset.defaultCharset()));
+    }
+    return translation;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.devtools.j2objc.util.ErrorUtil;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link TranslationWorker}.
+ */
+public class TranslationWorkerTest extends TestCase {
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.reset();
+    ErrorUtil.reset();
+  }
+
+  public void testReadRequest() throws IOException {
+    TranslationWorker.JsonReader reader = new TranslationWorker.JsonReader(new StringReader(
+        "{\"arguments\": [\"-d\", \"a \\\"b\\\"\\u0041\"], \"inputs\": [], \"requestId\": 12}\n"
+        + " {\"arguments\": []}"));
+    Map<String, Object> request = reader.readRequest();
+    assertEquals(Arrays.asList("-d", "a \"b\"A"), request.get("arguments"));
+    assertEquals(12L, request.get("requestId"));
+    assertTrue(((List<?>) request.get("inputs")).isEmpty());
+    request = reader.readRequest();
+    assertTrue(((List<?>) request.get("arguments")).isEmpty());
+    assertNull(reader.readRequest());
+  }
+
+  public void testResponses() throws IOException {
+    String input = "{\"arguments\": [\"--no-such-flag\", \"Test.java\"], \"requestId\": 7}"
+        + "{\"arguments\": [\"-d\", \"build\"], \"requestId\": 8}";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TranslationWorker worker = new TranslationWorker(
+        new ByteArrayInputStream(input.getBytes(Charsets.UTF_8)),
+        new PrintStream(output, true, "UTF-8"));
+    assertEquals(0, worker.run());
+
+    String[] responses = output.toString("UTF-8").split("\n");
+    assertEquals(2, responses.length);
+    assertTrue(responses[0].startsWith("{\"exitCode\":1,"));
+    assertTrue(responses[0].contains("invalid flag: --no-such-flag"));
+    assertTrue(responses[0].endsWith(",\"requestId\":7}"));
+
+    // Options are reset between requests, so the bad flag isn't seen again.
+    assertTrue(responses[1].startsWith("{\"exitCode\":1,"));
+    assertTrue(responses[1].contains("no source files"));
+    assertFalse(responses[1].contains("no-such-flag"));
+    assertTrue(responses[1].endsWith(",\"requestId\":8}"));
+  }
+
+  public void testInvalidRequest() {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream stderr = System.err;
+    System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    try {
+      TranslationWorker worker = new TranslationWorker(
+          new ByteArrayInputStream("[\"Test.java\"]".getBytes(Charsets.UTF_8)),
+          new PrintStream(output));
+      assertEquals(1, worker.run());
+    } finally {
+      System.setErr(stderr);
+    }
+    assertEquals(0, output.size());
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.ast;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link ChildList}.
+ */
+public class ChildListTest extends TestCase {
+
+  private static ReturnStatement newStatement() {
+    return new ReturnStatement((Expression) null);
+  }
+
+  public void testAddAndRemove() {
+    Block block = new Block();
+    List<Statement> stmts = block.getStatements();
+    Statement a = newStatement();
+    Statement b = newStatement();
+    Statement c = newStatement();
+    stmts.add(a);
+    stmts.add(c);
+    stmts.add(1, b);
+    assertEquals(Arrays.asList(a, b, c), stmts);
+    assertSame(block, b.getParent());
+
+    b.remove();
+    assertEquals(Arrays.asList(a, c), stmts);
+    assertNull(b.getParent());
+    assertSame(c, stmts.remove(1));
+    assertEquals(Arrays.asList(a), stmts);
+    assertNull(c.getParent());
+  }
+
+  public void testModifyDuringTraversal() {
+    Block block = new Block();
+    final List<Statement> stmts = block.getStatements();
+    for (int i = 0; i < 10; i++) {
+      stmts.add(newStatement());
+    }
+    final Statement removed = stmts.get(1);
+    final Statement inserted = newStatement();
+    final List<Statement> visited = Lists.newArrayList();
+    block.accept(new TreeVisitor() {
+      @Override
+      public boolean visit(ReturnStatement node) {
+        if (visited.isEmpty()) {
+          removed.remove();
+          stmts.add(0, inserted);
+        }
+        visited.add(node);
+        return true;
+      }
+    });
+
+    // The traversal visits the statements the block had when it started,
+    // except the one removed before it was reached.
+    assertEquals(9, visited.size());
+    assertFalse(visited.contains(removed));
+    assertFalse(visited.contains(inserted));
+    assertEquals(10, stmts.size());
+    assertSame(inserted, stmts.get(0));
+    assertFalse(stmts.contains(removed));
+  }
+}
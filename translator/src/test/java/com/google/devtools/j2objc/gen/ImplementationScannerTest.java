@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.gen;
+
+import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.ast.CompilationUnit;
+import com.google.devtools.j2objc.types.ImplementationImportCollector;
+
+/**
+ * Unit tests for {@link ImplementationScanner}.
+ */
+public class ImplementationScannerTest extends GenerationTest {
+
+  public void testMatchesSeparateScans() {
+    String source = "import java.util.*; public class Test { int i; List<String> l;"
+        + "  Test(int i) { this(i, new ArrayList<String>()); }"
+        + "  Test(int i, List<String> l) { this.i = i; this.l = l; }"
+        + "  void foo(int i_) { for (String s : l) { bar(s); } }"
+        + "  void bar(String s) { Map<String, Integer> m = new HashMap<String, Integer>(); }}";
+    CompilationUnit unit = translateType("Test", source);
+    ImplementationScanner scanner = new ImplementationScanner();
+    scanner.collect(unit);
+
+    assertEquals(HiddenFieldDetector.getFieldNameConflicts(unit),
+        scanner.getFieldNameConflicts());
+    assertEquals(1, scanner.getFieldNameConflicts().size());
+    InvokedConstructorFinder finder = new InvokedConstructorFinder();
+    finder.run(unit);
+    assertEquals(finder.getInvokedConstructors(), scanner.getInvokedConstructors());
+    assertEquals(1, scanner.getInvokedConstructors().size());
+    ImplementationImportCollector collector = new ImplementationImportCollector();
+    collector.collect(unit);
+    assertEquals(collector.getImports(), scanner.getImports());
+    assertFalse(scanner.getImports().isEmpty());
+  }
+}
@@ -34,6 +34,9 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     Options.resetDeprecatedDeclarations();
     Options.resetMemoryManagementOption();
     Options.setStripReflection(false);
+    Options.resetCompactMetadata();
+    Options.resetMetadataKeepRules();
+    Options.resetInlineMonitors();
     super.tearDown();
   }
 
@@ -216,8 +219,26 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     assertTranslation(translation, "@implementation ColorEnum");
     assertTranslation(translation,
         "ColorEnum_RED = [[ColorEnum alloc] initWithNSString:@\"RED\" withInt:0];");
-    assertTranslation(translation, "for (int i = 0; i < 3; i++) {");
-    assertTranslation(translation, "ColorEnum *e = ColorEnum_values[i];");
+    assertTranslatedLines(translation,
+        "NSMutableDictionary *namesToValues = "
+        + "[[NSMutableDictionary alloc] initWithCapacity:3];",
+        "for (int i = 0; i < 3; i++) {",
+        "  [namesToValues setObject:ColorEnum_values[i] forKey:[ColorEnum_values[i] name]];",
+        "}",
+        "ColorEnum_namesToValues = namesToValues;",
+        "ColorEnum_valuesType = [IOSClass classWithClass:[ColorEnum class]];");
+    assertTranslation(translation,
+        "return [IOSObjectArray arrayWithObjects:ColorEnum_values count:3 "
+        + "type:ColorEnum_valuesType];");
+    assertTranslatedLines(translation,
+        "+ (ColorEnum *)valueOfWithNSString:(NSString *)name {",
+        "  ColorEnum *e = name ? [ColorEnum_namesToValues objectForKey:name] : nil;",
+        "  if (e) {",
+        "    return e;",
+        "  }",
+        "  @throw [[[JavaLangIllegalArgumentException alloc] initWithNSString:name] autorelease];",
+        "  return nil;",
+        "}");
   }
 
   public void testEnumWithParameters() throws IOException {
@@ -387,36 +408,14 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     assertTranslation(translation, "#include \"Foo.h\"");
   }
 
-  public void testImportJavaLangBooleanPlusAssign() throws IOException {
+  public void testNoJavaLangBooleanImportForConcatenation() throws IOException {
     String translation = translateSourceFile(
         "class Test { " +
-        "  void foo() { boolean b = true; String s = \"\"; s += b; } }",
+        "  void foo() { boolean b = true; String s = \"\" + \"\" + b; s += b; } }",
         "Test", "Test.m");
-    assertTranslation(translation, "#include \"java/lang/Boolean.h\"");
-  }
-
-  public void testImportJavaLangBooleanInfixLeft() throws IOException {
-    String translation = translateSourceFile(
-        "class Test { " +
-        "  void foo() { boolean b = true; String s = b + \"\"; } }",
-        "Test", "Test.m");
-    assertTranslation(translation, "#include \"java/lang/Boolean.h\"");
-  }
-
-  public void testImportJavaLangBooleanInfixRight() throws IOException {
-    String translation = translateSourceFile(
-        "class Test { " +
-        "  void foo() { boolean b = true; String s = \"\" + b; } }",
-        "Test", "Test.m");
-    assertTranslation(translation, "#include \"java/lang/Boolean.h\"");
-  }
-
-  public void testImportJavaLangBooleanInfixExtendedOperands() throws IOException {
-    String translation = translateSourceFile(
-        "class Test { " +
-        "  void foo() { boolean b = true; String s = \"\" + \"\" + b; } }",
-        "Test", "Test.m");
-    assertTranslation(translation, "#include \"java/lang/Boolean.h\"");
+    // Booleans are passed to JreStrcat directly, so Boolean isn't referenced.
+    assertTranslation(translation, "JreStrcat(\"Z\", b)");
+    assertNotInTranslation(translation, "#include \"java/lang/Boolean.h\"");
   }
 
   public void testEnumWithEnumField() throws IOException {
@@ -715,6 +714,31 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     assertTranslation(translation, "@synchronized(self)");
   }
 
+  public void testInlineMonitors() throws IOException {
+    Options.enableInlineMonitors();
+    String translation = translateSourceFile(
+        "class Test { int n; synchronized void inc() { n++; } " +
+        "void dec() { synchronized (this) { n--; } } " +
+        "void lock(Object o) { synchronized (o) { n = 0; } } }",
+        "Test", "Test.h");
+    assertTranslation(translation, "JreMonitor *__monitor;");
+    translation = getTranslatedFile("Test.m");
+    assertOccurrences(translation, "JreMonitorEnter(self, &self->__monitor);", 2);
+    assertOccurrences(translation, "JreMonitorExit(self->__monitor);", 2);
+    assertNotInTranslation(translation, "@synchronized(self)");
+    // Other objects may not have an inline monitor.
+    assertTranslation(translation, "@synchronized (o)");
+    assertTranslation(translation, "- (JreMonitor **)__monitorRef {");
+  }
+
+  public void testInlineMonitorsNeedTranslatedRootClass() throws IOException {
+    Options.enableInlineMonitors();
+    String translation = translateSourceFile(
+        "class Test extends Exception { synchronized void test() {} }", "Test", "Test.m");
+    assertTranslation(translation, "@synchronized(self)");
+    assertNotInTranslation(translation, "__monitor");
+  }
+
   public void testMethodMetadata() throws IOException {
     String translation = translateSourceFile(
         // Separate methods are used so each only has one modifier.
@@ -741,6 +765,31 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     		"\"Ljava.lang.InterruptedException;Ljava.lang.Error;\" },");
   }
 
+  public void testCompactMetadata() throws IOException {
+    Options.enableCompactMetadata();
+    String translation = translateSourceFile(
+        "class Test { Object test1() { return null; } Object test2() { return null; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "static const char Test_metadataStrings[] =");
+    assertTranslation(translation, "static const J2ObjcCompactMethodInfo methods[] = {");
+    assertTranslation(translation,
+        "static const J2ObjcCompactClassInfo _Test = { Test_metadataStrings, ");
+    assertTranslation(translation, "return JreExpandClassInfo(&_Test, &info);");
+    // Both methods share the return type's string.
+    String returnType = "\"Ljava.lang.Object;\\0\"";
+    assertOccurrences(translation, returnType, 1);
+  }
+
+  public void testMetadataKeepRules() throws IOException {
+    Options.addMetadataKeepRule("foo.*");
+    String translation = translateSourceFile(
+        "package foo; class Test { class Inner {} }", "Test", "foo/Test.m");
+    assertTranslation(translation, "+ (J2ObjcClassInfo *)__metadata");
+    translation = translateSourceFile(
+        "package foo.bar; class Test {}", "Test", "foo/bar/Test.m");
+    assertNotInTranslation(translation, "__metadata");
+  }
+
   public void testAnnotationWithField() throws IOException {
     String translation = translateSourceFile(
         "@interface Test { String FOO = \"foo\"; int I = 5; }", "Test", "Test.h");
@@ -751,4 +800,12 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     translation = getTranslatedFile("Test.m");
     assertTranslation(translation, "NSString * Test_FOO_ = @\"foo\";");
   }
+
+  public void testNoPartialOutputFilesLeft() throws IOException {
+    translateSourceFile("class Test { int foo() { return 1; } }", "Test", "Test.m");
+    getTranslatedFile("Test.h");
+    for (String name : tempDir.list()) {
+      assertFalse(name + " left in output directory", name.endsWith(".tmp"));
+    }
+  }
 }
@@ -0,0 +1,63 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.gen;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link SourceBuilder}.
+ */
+public class SourceBuilderTest extends TestCase {
+
+  public void testReindent() {
+    SourceBuilder builder = new SourceBuilder(false);
+    builder.indent();
+    assertEquals("  {\n    int i = 0;\n    \n#line 5\n  }",
+        builder.reindent("  {\n int i = 0;  \r\n\n#line 5\n}\n\n"));
+  }
+
+  public void testPrintReindentedCountsLines() {
+    SourceBuilder builder = new SourceBuilder(false);
+    builder.print("- (void)test ");
+    builder.printReindented("{\nreturn;\n}\n");
+    builder.newline();
+    assertEquals("- (void)test {\n  return;\n}\n", builder.toString());
+    assertEquals(2, builder.getCurrentLine());
+  }
+
+  public void testStreamedOutput() throws IOException {
+    SourceBuilder builder = new SourceBuilder(false);
+    StringBuilder expected = new StringBuilder();
+    builder.print("#include \"Test.h\"\n");
+    expected.append("#include \"Test.h\"\n");
+    StringWriter out = new StringWriter();
+    builder.setOutput(out);
+    for (int i = 0; i < 5000; i++) {
+      builder.printReindented("{\nfoo(" + i + ");\n}");
+      builder.newline();
+      expected.append("{\n  foo(" + i + ");\n}\n");
+    }
+    builder.print("// end");
+    expected.append("// end\n");
+    assertTrue(out.getBuffer().length() > 0);
+    builder.close();
+    assertFalse(builder.isStreaming());
+    assertEquals(expected.toString(), out.toString());
+    assertEquals(15000, builder.getCurrentLine());
+  }
+}
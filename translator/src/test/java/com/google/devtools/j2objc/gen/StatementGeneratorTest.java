@@ -276,8 +276,8 @@ public class StatementGeneratorTest extends GenerationTest {
       " + \" i=\" + i + \" l=\" + l + \" s=\" + s; }}",
       "Example", "Example.m");
     assertTranslation(translation,
-        "return [NSString stringWithFormat:@\"obj=%@ b=%@ c=%C d=%f f=%f i=%d l=%lld s=%d\", " +
-        "obj_, [JavaLangBoolean toStringWithBoolean:b_], c_, d_, f_, i_, l_, s_];");
+        "return JreStrcat(\"$@$Z$C$D$F$I$J$S\", @\"obj=\", obj_, @\" b=\", b_, @\" c=\", c_, "
+        + "@\" d=\", d_, @\" f=\", f_, @\" i=\", i_, @\" l=\", l_, @\" s=\", s_);");
   }
 
   public void testStringConcatenationWithLiterals() throws IOException {
@@ -307,7 +307,7 @@ public class StatementGeneratorTest extends GenerationTest {
         "    String a = \"foo\" + getStr() + \"bar\" + getInt() + \"baz\"; } }",
         "Test", "Test.m");
     assertTranslation(translation,
-        "[NSString stringWithFormat:@\"foo%@bar%dbaz\", [self getStr], [self getInt]]");
+        "JreStrcat(\"$$$I$\", @\"foo\", [self getStr], @\"bar\", [self getInt], @\"baz\")");
   }
 
   public void testIntCastInStringConcatenation() throws IOException {
@@ -317,7 +317,8 @@ public class StatementGeneratorTest extends GenerationTest {
         "  String b = \"foo\" + a.hashCode() + \"bar\" + a.length() + \"baz\"; } }",
         "Test", "Test.m");
     assertTranslation(translation,
-        "[NSString stringWithFormat:@\"foo%dbar%dbaz\", ((int) [a hash]), ((int) [a length])]");
+        "JreStrcat(\"$I$I$\", @\"foo\", ((int) [a hash]), @\"bar\", ((int) [a length]), "
+        + "@\"baz\")");
   }
 
   public void testVarargsMethodInvocation() throws IOException {
@@ -672,7 +673,7 @@ public class StatementGeneratorTest extends GenerationTest {
       "  A() { myString = \"Foo\"; myString += \"Bar\"; }}",
       "A", "A.m");
     assertTranslation(translation,
-        "A_set_myString_(self, [NSString stringWithFormat:@\"%@Bar\", myString_]);");
+        "A_set_myString_(self, JreStrcat(\"$$\", myString_, @\"Bar\"));");
   }
 
   public void testPrimitiveConstantInSwitchCase() throws IOException {
@@ -1086,7 +1087,7 @@ public class StatementGeneratorTest extends GenerationTest {
       "A", "A.m");
     assertTranslation(translation,
         "[NSString stringWithString:" +
-        "[NSString stringWithFormat:@\"%@%@\", o, B_get_separator_()]];");
+        "JreStrcat(\"@$\", o, B_get_separator_())];");
   }
 
   public void testStringConcatWithBoolean() throws IOException {
@@ -1094,15 +1095,14 @@ public class StatementGeneratorTest extends GenerationTest {
       "public class A { String test(boolean b) { return \"foo: \" + b; }}",
       "A", "A.m");
     assertTranslation(translation,
-        "return [NSString stringWithFormat:@\"foo: %@\", " +
-        "[JavaLangBoolean toStringWithBoolean:b]];");
+        "return JreStrcat(\"$Z\", @\"foo: \", b);");
   }
 
   public void testStringConcatWithChar() throws IOException {
     String translation = translateSourceFile(
       "public class A { String test(char c) { return \"foo: \" + c; }}",
       "A", "A.m");
-    assertTranslation(translation, "return [NSString stringWithFormat:@\"foo: %C\", c];");
+    assertTranslation(translation, "return JreStrcat(\"$C\", @\"foo: \", c);");
   }
 
   // Verify that double quote character constants are concatenated correctly.
@@ -1286,8 +1286,8 @@ public class StatementGeneratorTest extends GenerationTest {
         "int a = 5; int b = 6; assert a < b : a + \" should be lower than \" + b;}}",
         "Test", "Test.m");
     assertTranslation(translation,
-      "NSAssert(a < b, [[NSString stringWithFormat:@\"%d should be lower than %d\" " +
-      "J2OBJC_COMMA() a J2OBJC_COMMA() b] description])");
+      "NSAssert(a < b, [JreStrcat(\"I$I\" J2OBJC_COMMA() a J2OBJC_COMMA() " +
+      "@\" should be lower than \" J2OBJC_COMMA() b) description])");
   }
 
   // Verify that a Unicode escape sequence is preserved with string
@@ -1354,7 +1354,7 @@ public class StatementGeneratorTest extends GenerationTest {
     String translation = translateSourceFile(
       "public class Test { String test(String s) { return '\"' + s + '\"'; }}",
       "Test", "Test.m");
-    assertTranslation(translation, "return [NSString stringWithFormat:@\"\\\"%@\\\"\", s];");
+    assertTranslation(translation, "return JreStrcat(\"$$$\", @\"\\\"\", s, @\"\\\"\");");
   }
 
   public void testIntConcatenation() throws IOException {
@@ -1431,8 +1431,7 @@ public class StatementGeneratorTest extends GenerationTest {
     String translation = translateSourceFile(
       "public class Test { String test(String s) { return \"the nil value is \" + null; }}",
       "Test", "Test.m");
-    assertTranslation(translation,
-        "return [NSString stringWithFormat:@\"the nil value is %@\", @\"null\"];");
+    assertTranslation(translation, "return @\"the nil value is null\";");
   }
 
   public void testTypeVariableWithBoundsIsCast() throws IOException {
@@ -1500,11 +1499,31 @@ public class StatementGeneratorTest extends GenerationTest {
     assertTranslation(translation, "case 0:\n      return 42;");
     assertTranslation(translation, "case 1:\n      return 666;");
     assertTranslation(translation, "default:\n      return -1;");
+    assertTranslatedLines(translation,
+        "static NSDictionary *__caseIndexes;",
+        "static dispatch_once_t __caseIndexesOnce;",
+        "dispatch_once(&__caseIndexesOnce, ^{",
+        "  __caseIndexes = [[NSDictionary alloc] initWithObjectsAndKeys:"
+        + "[NSNumber numberWithInt:0], @\"foo\", [NSNumber numberWithInt:1], @\"bar\", nil];",
+        "});",
+        "NSNumber *__index = [__caseIndexes objectForKey:s];",
+        "switch (__index ? [__index intValue] : -1) {");
+    assertNotInTranslation(translation, "indexOfObject");
+  }
+
+  public void testStringSwitchWithEscapedCaseValues() throws IOException {
+    String translation = translateSourceFile(
+        "public class Test { int test(String s) { " +
+        "  switch(s) {" +
+        "    case \"a\\\"b\": return 1;" +
+        "    case \"\": return 2;" +
+        "  }" +
+        "  return 0; }}",
+        "Test", "Test.m");
     assertTranslation(translation,
-        "NSArray *__caseValues = [NSArray arrayWithObjects:@\"foo\", @\"bar\", nil];");
-    assertTranslation(translation,
-        "NSUInteger __index = [__caseValues indexOfObject:s];");
-    assertTranslation(translation, "switch (__index)");
+        "[NSNumber numberWithInt:0], @\"a\\\"b\", [NSNumber numberWithInt:1], @\"\", nil];");
+    assertTranslation(translation, "case 0:\n      return 1;");
+    assertTranslation(translation, "case 1:\n      return 2;");
   }
 
   // Verify Java 7 try-with-resources translation.
@@ -1688,8 +1707,9 @@ public class StatementGeneratorTest extends GenerationTest {
         + "    void derivedMethod() {}"
         + "  }"
         + "}", "Test", "Test.m");
-    // Verify foo.derivedMethod() has cast of appropriate type variable.
-    assertTranslation(translation, "[((Test_DerivedFoo *) foo_) derivedMethod];");
+    // Verify foo.derivedMethod() has cast of appropriate type variable. The
+    // field is checked again, since baseMethod() may have reassigned it.
+    assertTranslation(translation, "[((Test_DerivedFoo *) nil_chk(foo_)) derivedMethod];");
   }
 
   // Verify that casting from a floating point primitive to an integral primitive
@@ -71,4 +71,34 @@ public class ArrayRewriterTest extends GenerationTest {
         "[IOSObjectArray arrayWithObjects:(id[]){ array } count:1 " +
         "type:[IOSClass classWithClass:[NSObject class]]]];");
   }
+
+  public void testIndexedLoopAccessesAreUnchecked() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(int[] ints, String[] strings) {"
+        + " for (int i = 0; i < ints.length; i++) { ints[i] += ints[i] * 2; }"
+        + " for (int i = 0; i < strings.length; ++i) { strings[i] = strings[i].trim(); }}}",
+        "Test", "Test.m");
+    assertTranslation(translation,
+        "(*IOSIntArray_GetRefUnchecked(ints, i)) += IOSIntArray_GetUnchecked(ints, i) * 2;");
+    assertTranslation(translation, "IOSObjectArray_SetUnchecked(strings, i, "
+        + "[((NSString *) IOSObjectArray_GetUnchecked(strings, i)) trim]);");
+  }
+
+  public void testAccessesOutsideCanonicalLoopsAreChecked() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int[] field; void test(int[] a, int[] b) {"
+        + " for (int i = 0; i < a.length; i++) { b[i] = a[i + 1]; }"
+        + " for (int i = 0; i <= a.length; i++) { a[i] = 0; }"
+        + " for (int i = 0; i < a.length; i++) { a[i] = 1; a = b; }"
+        + " for (int i = 0; i < a.length; i++) { a[i] = 2; i += 2; }"
+        + " for (int i = 0; i < field.length; i++) { field[i] = 3; }}}",
+        "Test", "Test.m");
+    assertTranslation(translation,
+        "(*IOSIntArray_GetRef(nil_chk(b), i)) = IOSIntArray_Get(a, i + 1);");
+    assertTranslation(translation, "(*IOSIntArray_GetRef(a, i)) = 0;");
+    assertTranslation(translation, "(*IOSIntArray_GetRef(a, i)) = 1;");
+    assertTranslation(translation, "(*IOSIntArray_GetRef(a, i)) = 2;");
+    assertTranslation(translation, "(*IOSIntArray_GetRef(field_, i)) = 3;");
+    assertNotInTranslation(translation, "Unchecked");
+  }
 }
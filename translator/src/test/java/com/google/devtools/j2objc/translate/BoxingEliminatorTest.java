@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.Options;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link BoxingEliminator}.
+ */
+public class BoxingEliminatorTest extends GenerationTest {
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.resetUnboxLocals();
+    super.tearDown();
+  }
+
+  public void testUnboxOfBoxedValueIsRemoved() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int test(int x, int y) { return Integer.valueOf(x + y).intValue() * 2; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "return (x + y) * 2;");
+    assertNotInTranslation(translation, "valueOfWithInt");
+  }
+
+  public void testRunningTotalIsPrimitive() throws IOException {
+    Options.enableUnboxLocals();
+    String translation = translateSourceFile(
+        "class Test { int sum(java.util.List<Integer> list) { Integer total = 0; " +
+        "for (int i = 0; i < list.size(); i++) { total += list.get(i); } return total; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "int total = 0;");
+    assertTranslation(translation, "total = total + ");
+    assertNotInTranslation(translation, "[total intValue]");
+    assertTranslation(translation, "return total;");
+    assertNotInTranslation(translation, "valueOfWithInt");
+  }
+
+  public void testLocalsStayBoxedByDefault() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int test(int x) { Integer i = x; return i; } }", "Test", "Test.m");
+    assertTranslation(translation, "JavaLangInteger *i = [JavaLangInteger valueOfWithInt:x];");
+  }
+
+  public void testNullableLocalStaysBoxed() throws IOException {
+    Options.enableUnboxLocals();
+    String translation = translateSourceFile(
+        "class Test { Integer test(boolean b) { Integer i = 1; if (b) { i = null; } return i; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "JavaLangInteger *i = [JavaLangInteger valueOfWithInt:1];");
+  }
+}
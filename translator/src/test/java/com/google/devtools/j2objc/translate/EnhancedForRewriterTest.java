@@ -51,7 +51,8 @@ public class EnhancedForRewriterTest extends GenerationTest {
         "- (void)testWithJavaLangIterable:(id<JavaLangIterable>)strings {",
           "{",
             "id<JavaUtilIterator> iter__ = [((id<JavaLangIterable>) nil_chk(strings)) iterator];",
-            "while ([((id<JavaUtilIterator>) nil_chk(iter__)) hasNext]) {",
+            "nil_chk(iter__);",
+            "while ([iter__ hasNext]) {",
               "NSString *s = [iter__ next];",
             "}",
           "}",
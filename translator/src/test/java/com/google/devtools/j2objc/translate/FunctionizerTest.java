@@ -74,7 +74,7 @@ public class FunctionizerTest extends GenerationTest {
     translation = getTranslatedFile("A.m");
     assertTranslation(translation, functionHeader + ";");
     assertTranslatedLines(translation, functionHeader + " {",
-        "return [NSString stringWithFormat:@\"%@%@\", msg, cls];");
+        "return JreStrcat(\"$@\", msg, cls);");
     assertTranslation(translation, "return A_str_(self, msg, [self getClass]);");
   }
 
@@ -223,7 +223,7 @@ public class FunctionizerTest extends GenerationTest {
     // Check new function.
     assertTranslatedLines(translation, functionHeader + " {",
         "A_init();",
-        "return [NSString stringWithFormat:@\"%@%@\", msg, cls];");
+        "return JreStrcat(\"$@\", msg, cls);");
     // Check wrapper.
     assertTranslatedLines(translation,
         "+ (NSString *)strWithNSString:(NSString *)msg",
@@ -325,5 +325,45 @@ public class FunctionizerTest extends GenerationTest {
     assertTranslation(translation, "static void A_setO_(A * self, id o) { self->o_ = o; }");
     assertTranslatedLines(translation, "- (void)setOWithId:(id)o {", "A_setO_(self, o);", "}");
   }
-}
 
+  // Verify final methods are functionized and their functions declared in the header.
+  public void testFinalMethod() throws IOException {
+    String translation = translateSourceFile(
+        "class A { int n; final int getN() { return n; } int test() { return getN(); }}",
+        "A", "A.h");
+    assertTranslation(translation, "FOUNDATION_EXPORT int A_getN_(A * self);");
+    translation = getTranslatedFile("A.m");
+    assertNotInTranslation(translation, "static int A_getN_");
+    assertTranslatedLines(translation, "int A_getN_(A * self) {", "return self->n_;");
+    assertTranslatedLines(translation, "- (int)getN {", "return A_getN_(self);");
+    assertTranslatedLines(translation, "- (int)test {", "return A_getN_(self);");
+  }
+
+  public void testFinalClassMethod() throws IOException {
+    String translation = translateSourceFile(
+        "final class A { String s; String getS() { return s; } "
+        + "  static String test(A a) { return a.getS(); }}",
+        "A", "A.h");
+    assertTranslation(translation, "FOUNDATION_EXPORT NSString * A_getS_(A * self);");
+    translation = getTranslatedFile("A.m");
+    assertTranslation(translation, "return A_getS_(nil_chk(a));");
+  }
+
+  // Verify an inherited final method is called with the subclass instance.
+  public void testInheritedFinalMethod() throws IOException {
+    String translation = translateSourceFile(
+        "class A { final int one() { return 1; } "
+        + "  static class B extends A { int test() { return one(); }}}",
+        "A", "A.m");
+    assertTranslatedLines(translation, "- (int)test {", "return A_one_(self);");
+  }
+
+  // Verify non-final methods stay methods when the class hierarchy isn't known.
+  public void testOverridableMethod() throws IOException {
+    String translation = translateSourceFile(
+        "class A { int one() { return 1; } int test() { return one(); }}",
+        "A", "A.m");
+    assertTranslation(translation, "return [self one];");
+    assertNotInTranslation(translation, "A_one_");
+  }
+}
@@ -217,8 +217,8 @@ public class InitializationNormalizerTest extends GenerationTest {
     String translation = translateSourceFile(source, "Test", "Test.m");
     assertTranslation(translation, "NSString * Test_foo_;");
     assertTranslation(translation,
-        "JreOperatorRetainedAssign(&Test_foo_, nil, [NSString stringWithFormat:@\"hello%@\", "
-        + "[NSString stringWithCharacters:(unichar[]) { (int) 0xffff } length:1]]);");
+        "JreOperatorRetainedAssign(&Test_foo_, nil, [NSString stringWithCharacters:(unichar[]) { "
+        + "(int) 0x68, (int) 0x65, (int) 0x6c, (int) 0x6c, (int) 0x6f, (int) 0xffff } length:6]);");
   }
 
   public void testInitializersPlacedAfterOuterAssignments() throws IOException {
@@ -244,7 +244,8 @@ public class InitializationNormalizerTest extends GenerationTest {
         "JreOperatorRetainedAssign(&Test_iSet_, nil, " +
         "[[[JavaUtilHashSet alloc] init] autorelease])";
     String setAdd = "[Test_iSet_ addWithId:[JavaLangInteger valueOfWithInt:Test_I]]";
-    String setSize = "Test_iSetSize_ = [Test_iSet_ size]";
+    // add() may reassign iSet, so it's checked again.
+    String setSize = "Test_iSetSize_ = [((id<JavaUtilSet>) nil_chk(Test_iSet_)) size]";
     assertTranslation(translation, setInit);
     assertTranslation(translation, setAdd);
     assertTranslation(translation, setSize);
@@ -137,4 +137,89 @@ public class NilCheckResolverTest extends GenerationTest {
         "Test", "Test.m");
     assertTranslation(translation, "nil_chk(strings)");
   }
+
+  public void testNilCheckAfterReassignmentInLoop() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(Object o, boolean b) { "
+        + "o = new Object(); while (b) { o.toString(); o = null; } } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "while (b) {",
+        "[nil_chk(o) description];",
+        "o = nil;",
+        "}");
+  }
+
+  public void testFieldsInvalidatedByCalls() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { Test f; int i; void foo() {} "
+        + "void test() { f.i = 1; f.i = 2; foo(); f.i = 3; } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "((Test *) nil_chk(f_))->i_ = 1;",
+        "f_->i_ = 2;",
+        "[self foo];",
+        "((Test *) nil_chk(f_))->i_ = 3;");
+  }
+
+  public void testNilCheckAfterBreak() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(Object o, boolean b) { "
+        + "while (true) { if (b) { o.toString(); break; } o = null; } o.toString(); } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "[nil_chk(o) description];",
+        "break;",
+        "}",
+        "o = nil;",
+        "}",
+        "[o description];");
+  }
+
+  public void testNilCheckAfterLabeledBreak() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int test(int n) { Object o = new Object(); "
+        + "outer: for (int i = 0; i < n; i++) { for (int j = 0; j < n; j++) { "
+        + "if (j == 1) { o = null; break outer; } } } return o.hashCode(); } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "break_outer: ;",
+        "return ((int) [nil_chk(o) hash]);");
+  }
+
+  public void testNilCheckAfterLabeledContinue() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(int n) { Object o = new Object(); "
+        + "outer: for (int i = 0; i < n; i++) { o.toString(); for (int j = 0; j < n; j++) { "
+        + "if (j == 1) { o = null; continue outer; } } o.toString(); } } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "for (int i = 0; i < n; i++) {",
+        "{",
+        "[nil_chk(o) description];");
+    assertTranslatedLines(translation,
+        "[o description];",
+        "}",
+        "continue_outer: ;");
+  }
+
+  public void testLoopInvariantNilCheckHoisted() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int test(java.util.List<String> l) { int n = 0; "
+        + "for (int i = 0; i < l.size(); i++) { n += l.get(i).length(); } return n; } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "nil_chk(l);",
+        "for (int i = 0; i < [l size]; i++) {");
+    assertTranslation(translation, "[l getWithInt:i]");
+  }
+
+  public void testNilCheckNotHoistedFromConditionalDereference() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(java.util.List<String> l, boolean b) { "
+        + "while (b && l.isEmpty()) { b = false; } } }",
+        "Test", "Test.m");
+    assertTranslation(translation,
+        "while (b && [((id<JavaUtilList>) nil_chk(l)) isEmpty]) {");
+  }
 }
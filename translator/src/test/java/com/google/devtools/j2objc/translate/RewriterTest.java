@@ -403,7 +403,7 @@ public class RewriterTest extends GenerationTest {
     String translation = translateSourceFile(
         "class Test { void test() { String s = 1 + 2.3f + \"foo\"; } }", "Test", "Test.m");
     assertTranslation(translation,
-        "NSString *s = [NSString stringWithFormat:@\"%ffoo\", 1 + 2.3f]");
+        "NSString *s = JreStrcat(\"F$\", 1 + 2.3f, @\"foo\")");
   }
 
   public void testVariableDeclarationsInSwitchStatement() throws IOException {
@@ -529,8 +529,8 @@ public class RewriterTest extends GenerationTest {
         "return (object == this) || (object instanceof Test) && (i == ((Test) object).i); } }",
         "Test", "Test.m");
     assertTranslatedLines(translation, "(object == self) || " +
-        "(([object isKindOfClass:[Test class]]) && (i_ == ((Test *) nil_chk(((Test *) " +
-        "check_class_cast(object, [Test class]))))->i_));");
+        "(([object isKindOfClass:[Test class]]) && (i_ == ((Test *) " +
+        "check_class_cast(object, [Test class]))->i_));");
   }
 
   // Objective-C requires that bit-wise and tests be surrounded by parens when mixed with or tests.
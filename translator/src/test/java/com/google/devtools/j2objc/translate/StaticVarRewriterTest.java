@@ -15,6 +15,7 @@
 package com.google.devtools.j2objc.translate;
 
 import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.Options;
 
 import java.io.IOException;
 
@@ -25,6 +26,12 @@ import java.io.IOException;
  */
 public class StaticVarRewriterTest extends GenerationTest {
 
+  @Override
+  protected void tearDown() throws Exception {
+    Options.resetDirectStaticConstants();
+    super.tearDown();
+  }
+
   public void testRewriteChildOfQualifiedName() throws IOException {
     String translation = translateSourceFile(
         "class Test { static Test test = new Test(); Object obj = new Object();"
@@ -32,6 +39,17 @@ public class StaticVarRewriterTest extends GenerationTest {
         "Test", "Test.m");
     assertTranslatedLines(translation,
         "[nil_chk(((Test *) nil_chk(Test_get_test_()))->obj_) description];",
-        "[Test_get_test_()->obj_ description];");
+        "[nil_chk(((Test *) nil_chk(Test_get_test_()))->obj_) description];");
+  }
+
+  public void testDirectStaticConstants() throws IOException {
+    Options.enableDirectStaticConstants();
+    String translation = translateSourceFile(
+        "class Test { static class Other { static final String NAME = \"other\"; "
+        + "static final String LATER = String.valueOf(1); } "
+        + "Object name() { return Other.NAME; } Object later() { return Other.LATER; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "return Test_Other_NAME_;");
+    assertTranslation(translation, "return Test_Other_get_LATER_();");
   }
 }
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.devtools.j2objc.GenerationTest;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link StringBuilderRewriter}.
+ */
+public class StringBuilderRewriterTest extends GenerationTest {
+
+  public void testLoopAppendsToBuilder() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { String join(int[] values) { String s = \"\"; "
+        + "for (int v : values) { s += v; s += \", \" + v; } return s; } }",
+        "Test", "Test.m");
+    assertTranslation(translation,
+        "JavaLangStringBuilder *sBuilder__ = [[[JavaLangStringBuilder alloc] init] autorelease];");
+    assertTranslation(translation, "[sBuilder__ appendWithNSString:s];");
+    assertTranslation(translation, "[sBuilder__ appendWithInt:v];");
+    assertTranslation(translation, "[sBuilder__ appendWithNSString:@\", \"];");
+    assertTranslation(translation, "s = [sBuilder__ description];");
+    assertNotInTranslation(translation, "JreStrcat");
+  }
+
+  public void testStringReadInLoopIsNotRewritten() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { String test(int n) { String s = \"\"; "
+        + "while (s.length() < n) { s += n; } return s; } }",
+        "Test", "Test.m");
+    assertNotInTranslation(translation, "JavaLangStringBuilder");
+    assertTranslation(translation, "s = JreStrcat(\"$I\", s, n);");
+  }
+
+  public void testPossiblyNullStringIsNotRewritten() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { String test(String s, int n) { "
+        + "for (int i = 0; i < n; i++) { s += i; } return s; } }",
+        "Test", "Test.m");
+    assertNotInTranslation(translation, "JavaLangStringBuilder");
+  }
+
+  public void testLabeledBreakIsNotRewritten() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { String test(int n) { String s = \"\"; "
+        + "outer: for (int i = 0; i < n; i++) { for (int j = 0; j < i; j++) { "
+        + "if (j == 3) break outer; s += j; } } return s; } }",
+        "Test", "Test.m");
+    assertNotInTranslation(translation, "JavaLangStringBuilder");
+  }
+
+  public void testAppendInTryStatementIsNotRewritten() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { String f() { return \"x\"; } String test(String a, int n) { "
+        + "String s = \"\"; for (int i = 0; i < n; i++) { "
+        + "try { s = s + a + f(); } catch (RuntimeException e) {} } return s; } }",
+        "Test", "Test.m");
+    assertNotInTranslation(translation, "JavaLangStringBuilder");
+  }
+}
@@ -18,6 +18,11 @@ package com.google.devtools.j2objc.types;
 
 import com.google.devtools.j2objc.GenerationTest;
 
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
+import org.eclipse.jdt.core.dom.SimpleName;
+
 /**
  * Unit tests for the {@link BindingMapBuilder} class.
  *
@@ -36,4 +41,20 @@ public class BindingMapBuilderTest extends GenerationTest {
         "}";
     translateType("Test", source);
   }
+
+  public void testBindingsAreStoredInNodes() {
+    CompilationUnit unit = compileType("Test", "enum Test { A }");
+    Types.initialize(unit);
+    EnumDeclaration decl = (EnumDeclaration) unit.types().get(0);
+    EnumConstantDeclaration constant = (EnumConstantDeclaration) decl.enumConstants().get(0);
+    assertSame(decl.resolveBinding(), Types.getTypeBinding(decl));
+    assertSame(constant.resolveConstructorBinding(), Types.getMethodBinding(constant));
+    assertSame(constant.resolveVariable(), Types.getEnumConstantBinding(constant));
+
+    // A binding replaced by a translation pass is only seen through Types.
+    SimpleName name = constant.getName();
+    Types.addBinding(name, Types.resolveIOSType("NSObject"));
+    assertSame(Types.resolveIOSType("NSObject"), Types.getBinding(name));
+    assertSame(constant.resolveVariable(), name.resolveBinding());
+  }
 }
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.types;
+
+import com.google.common.collect.Maps;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+/**
+ * Tests for {@link MethodMappingIndex}.
+ */
+public class MethodMappingIndexTest extends TestCase {
+
+  public void testSignatureKeys() {
+    assertEquals("hashCode/0", MethodMappingIndex.getSignatureKey("java.lang.Object.hashCode()I"));
+    assertEquals("indexOf/2",
+        MethodMappingIndex.getSignatureKey("java.lang.String.indexOf(Ljava/lang/String;I)I"));
+    assertEquals("String/4", MethodMappingIndex.getSignatureKey(
+        "java.lang.String.String([BIILjava/lang/String;)V"));
+    assertEquals("valueOf/1",
+        MethodMappingIndex.getSignatureKey("java.lang.String.valueOf([[C)Ljava/lang/String;"));
+    assertNull(MethodMappingIndex.getSignatureKey("java.lang.Object.hashCode"));
+  }
+
+  public void testIndexIsShared() {
+    Map<String, String> mappings = Maps.newHashMap();
+    mappings.put("java.lang.Object.hashCode()I", "NSObject hash");
+    MethodMappingIndex index = MethodMappingIndex.get(mappings);
+    assertSame(index, MethodMappingIndex.get(mappings));
+    assertEquals("hash", index.getMapping("java.lang.Object.hashCode()I").getName());
+    assertFalse(index.isMapped("java.lang.Object.toString()Ljava/lang/String;"));
+
+    // A changed map is indexed again.
+    mappings.put("java.lang.Object.toString()Ljava/lang/String;", "NSObject description");
+    MethodMappingIndex newIndex = MethodMappingIndex.get(mappings);
+    assertNotSame(index, newIndex);
+    assertTrue(newIndex.isMapped("java.lang.Object.toString()Ljava/lang/String;"));
+  }
+}
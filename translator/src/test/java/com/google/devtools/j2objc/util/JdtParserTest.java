@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link JdtParser}.
+ */
+public class JdtParserTest extends TestCase {
+
+  static {
+    ErrorUtil.setTestMode();
+  }
+
+  private final Map<String, String> sources = ImmutableMap.of(
+      "foo/A.java", "package foo; public class A extends B {}",
+      "foo/B.java", "package foo; public class B { A a; }",
+      "foo/D.java", "package foo; public class D {}");
+
+  private final JdtParser.SourceProvider provider = new JdtParser.SourceProvider() {
+    @Override
+    public String getSource(String path) throws IOException {
+      String source = sources.get(path);
+      if (source == null) {
+        throw new IOException("no such file: " + path);
+      }
+      return source;
+    }
+  };
+
+  @Override
+  protected void tearDown() throws Exception {
+    ErrorUtil.reset();
+  }
+
+  public void testParseFilesFromProvider() {
+    final List<String> paths = Lists.newArrayList();
+    final Map<String, CompilationUnit> units = Maps.newHashMap();
+    new JdtParser().parseFiles(Arrays.asList("foo/A.java", "foo/B.java"), provider,
+        new JdtParser.Handler() {
+      @Override
+      public void handleParsedUnit(String path, String source, CompilationUnit unit) {
+        assertEquals(sources.get(path), source);
+        paths.add(path);
+        units.put(path, unit);
+      }
+    });
+    assertEquals(0, ErrorUtil.errorCount());
+    assertEquals(Arrays.asList("foo/A.java", "foo/B.java"), paths);
+
+    // The files aren't on disk, so their bindings were resolved from the
+    // provided sources.
+    TypeDeclaration a = (TypeDeclaration) units.get("foo/A.java").types().get(0);
+    assertEquals("foo.B", a.resolveBinding().getSuperclass().getQualifiedName());
+  }
+
+  public void testParseFilesReportsUnreadableFiles() {
+    final List<String> paths = Lists.newArrayList();
+    new JdtParser().parseFiles(Arrays.asList("foo/A.java", "foo/C.java", "foo/B.java"), provider,
+        new JdtParser.Handler() {
+      @Override
+      public void handleParsedUnit(String path, String source, CompilationUnit unit) {
+        paths.add(path);
+      }
+    });
+    assertEquals(Arrays.asList("no such file: foo/C.java"), ErrorUtil.getErrorMessages());
+    assertEquals(Arrays.asList("foo/A.java", "foo/B.java"), paths);
+  }
+
+  public void testBatchResolverAvailable() {
+    assertNull(BatchResolver.getUnavailableReason());
+  }
+
+  public void testParseFilesSeparately() {
+    final List<String> paths = Lists.newArrayList();
+    final Map<String, CompilationUnit> units = Maps.newHashMap();
+    new JdtParser().parseFilesSeparately(Arrays.asList("foo/D.java", "foo/C.java"), provider,
+        new JdtParser.Handler() {
+      @Override
+      public void handleParsedUnit(String path, String source, CompilationUnit unit) {
+        assertEquals(sources.get(path), source);
+        paths.add(path);
+        units.put(path, unit);
+      }
+    });
+    assertEquals(Arrays.asList("no such file: foo/C.java"), ErrorUtil.getErrorMessages());
+    assertEquals(Arrays.asList("foo/D.java"), paths);
+    TypeDeclaration d = (TypeDeclaration) units.get("foo/D.java").types().get(0);
+    assertEquals("foo.D", d.resolveBinding().getQualifiedName());
+  }
+}
@@ -58,6 +58,20 @@ public class NameTableTest extends GenerationTest {
     assertEquals("FBSomeClass_Inner", NameTable.getFullName(decl.getTypeBinding()));
   }
 
+  // Verify full names are cached for later units, until the type is renamed.
+  public void testGetFullNameIsCached() {
+    String source = "package foo.bar; public class SomeClass { static class Inner {}}";
+    CompilationUnit unit = translateType("SomeClass", source);
+    ITypeBinding inner = unit.getTypes().get(1).getTypeBinding();
+    assertEquals("FooBarSomeClass_Inner", NameTable.getFullName(inner));
+    NameTable.initialize();
+    assertEquals("FooBarSomeClass_Inner", NameTable.getCachedFullName(inner));
+    NameTable.rename(inner, "Renamed");
+    assertNull(NameTable.getCachedFullName(inner));
+    assertEquals("FooBarSomeClass_Renamed", NameTable.getFullName(inner));
+    assertNull(NameTable.getCachedFullName(inner));
+  }
+
   // Verify class name without package is unchanged.
   public void testGetFullNameNoPackage() {
     String source = "public class SomeClass {}";
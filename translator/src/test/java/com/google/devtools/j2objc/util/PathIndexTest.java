@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests for {@link PathIndex}.
+ */
+public class PathIndexTest extends TestCase {
+
+  private File tempDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    tempDir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    new File(tempDir, "foo/Bar.java").delete();
+    new File(tempDir, "foo").delete();
+    new File(tempDir, "test.jar").delete();
+    tempDir.delete();
+  }
+
+  private String writeJar(String... entries) throws IOException {
+    File jar = new File(tempDir, "test.jar");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+    return jar.getPath();
+  }
+
+  public void testJarEntries() throws IOException {
+    String jar = writeJar("foo/Bar.class", "foo/Baz.java");
+    assertTrue(PathIndex.contains(jar, "foo/Bar.class"));
+    assertTrue(PathIndex.contains(jar, "foo/Baz.java"));
+    assertFalse(PathIndex.contains(jar, "foo/Baz.class"));
+
+    // A modified jar is read again.
+    jar = writeJar("foo/Bar.class", "foo/Baz.class", "foo/Qux.class");
+    assertTrue(PathIndex.contains(jar, "foo/Baz.class"));
+    assertFalse(PathIndex.contains(jar, "foo/Baz.java"));
+  }
+
+  public void testDirectoryEntries() throws IOException {
+    String dir = tempDir.getPath();
+    assertFalse(PathIndex.contains(dir, "foo/Bar.java"));
+    File source = new File(tempDir, "foo/Bar.java");
+    Files.createParentDirs(source);
+    Files.touch(source);
+    assertTrue(PathIndex.contains(dir, "foo/Bar.java"));
+    assertTrue(PathIndex.contains(Arrays.asList("no-such-dir", dir), "foo/Bar.java"));
+    assertFalse(PathIndex.contains(Arrays.asList("no-such-dir"), "foo/Bar.java"));
+  }
+}